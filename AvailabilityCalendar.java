@@ -0,0 +1,322 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks which nights each room and conference hall of a resort is reserved
+ *
+ * Every unit keeps its stays in a map ordered by check-in day. A unit is never booked twice for
+ * the same night, so its stays never overlap and the only stay that can clash with a request is
+ * the last one starting before the request ends. Checking a unit or looking up its occupant is
+ * therefore one floor lookup, logarithmic in the number of stays the unit has ever had, and
+ * listing the free units of a type costs one lookup per unit of that type.
+ *
+ * Checking and reserving a unit is atomic per unit, so bookings may come from many threads
+ */
+public class AvailabilityCalendar {
+    private final Map<Integer, UnitSchedule> unitsByNumber = new ConcurrentHashMap<>();
+    private volatile Map<String, UnitSchedule[]> unitsByType = new HashMap<>();
+
+    /**
+     * The stays of one unit, keyed by check-in day
+     */
+    private static final class UnitSchedule {
+        private final String type;
+        private final int unitNumber;
+        private final TreeMap<Long, Stay> stays = new TreeMap<>();
+
+        /**
+         * Creates an empty schedule
+         *
+         * @param type the unit type
+         * @param unitNumber the unit number
+         */
+        private UnitSchedule(String type, int unitNumber) {
+            this.type = type;
+            this.unitNumber = unitNumber;
+        }
+
+        /**
+         * Checks whether no stay overlaps the given nights
+         *
+         * @param firstDay the epoch day of the first night
+         * @param endDay the epoch day after the last night
+         * @return true if the unit is free for every night
+         */
+        private synchronized boolean isFree(long firstDay, long endDay) {
+            Map.Entry<Long, Stay> previous = stays.lowerEntry(endDay);
+            return previous == null || previous.getValue().endDay <= firstDay;
+        }
+
+        /**
+         * Finds the reservation staying on a night
+         *
+         * @param day the epoch day of the night
+         * @return the reservation ID, or 0 if the unit is free that night
+         */
+        private synchronized int occupantOn(long day) {
+            Map.Entry<Long, Stay> stay = stays.floorEntry(day);
+            return stay != null && stay.getValue().endDay > day ? stay.getValue().reservationId : 0;
+        }
+
+        /**
+         * Reserves the given nights if none of them is taken
+         *
+         * @param firstDay the epoch day of the first night
+         * @param endDay the epoch day after the last night
+         * @param reservationId the reservation taking the nights
+         * @throws UnitUnavailableException if another stay overlaps the nights
+         */
+        private synchronized void occupy(long firstDay, long endDay, int reservationId) {
+            Map.Entry<Long, Stay> previous = stays.lowerEntry(endDay);
+            if (previous != null && previous.getValue().endDay > firstDay) {
+                throw new UnitUnavailableException(unitNumber, "Unit " + unitNumber + " is already reserved from "
+                        + LocalDate.ofEpochDay(previous.getKey()) + " by reservation " + previous.getValue().reservationId);
+            }
+            stays.put(firstDay, new Stay(endDay, reservationId));
+        }
+
+        /**
+         * Frees the nights of a reservation
+         *
+         * @param firstDay the epoch day of the first night
+         * @param reservationId the reservation holding the nights
+         * @return true if the reservation held the nights
+         */
+        private synchronized boolean release(long firstDay, int reservationId) {
+            Stay stay = stays.get(firstDay);
+            if (stay == null || stay.reservationId != reservationId) {
+                return false;
+            }
+            stays.remove(firstDay);
+            return true;
+        }
+    }
+
+    /**
+     * The nights one reservation holds a unit
+     */
+    private static final class Stay {
+        private final long endDay;
+        private final int reservationId;
+
+        /**
+         * Creates a stay
+         *
+         * @param endDay the epoch day after the last night
+         * @param reservationId the reservation holding the unit
+         */
+        private Stay(long endDay, int reservationId) {
+            this.endDay = endDay;
+            this.reservationId = reservationId;
+        }
+    }
+
+    /**
+     * Adds a room or hall that can be reserved by date
+     *
+     * @param type the unit type, "room" or "conference", ignoring case
+     * @param unitNumber the number of the unit, unique across the resort
+     * @throws IllegalArgumentException if the number is not positive or already used
+     */
+    public synchronized void addUnit(String type, int unitNumber) {
+        if (unitNumber <= 0) {
+            throw new IllegalArgumentException("Invalid unit number: " + unitNumber);
+        }
+        String key = typeKey(type);
+        UnitSchedule schedule = new UnitSchedule(key, unitNumber);
+        if (unitsByNumber.putIfAbsent(unitNumber, schedule) != null) {
+            throw new IllegalArgumentException("Unit " + unitNumber + " already exists");
+        }
+
+        UnitSchedule[] sameType = unitsByType.getOrDefault(key, new UnitSchedule[0]);
+        UnitSchedule[] grown = Arrays.copyOf(sameType, sameType.length + 1);
+        int position = sameType.length;
+        while (position > 0 && grown[position - 1].unitNumber > unitNumber) {
+            grown[position] = grown[position - 1];
+            position--;
+        }
+        grown[position] = schedule;
+        Map<String, UnitSchedule[]> copy = new HashMap<>(unitsByType);
+        copy.put(key, grown);
+        unitsByType = copy;
+    }
+
+    /**
+     * Checks whether a unit exists
+     *
+     * @param unitNumber the unit number
+     * @return true if the unit was added
+     */
+    public boolean hasUnit(int unitNumber) {
+        return unitsByNumber.containsKey(unitNumber);
+    }
+
+    /**
+     * Retrieves the numbers of the units of a type
+     *
+     * @param type the unit type, ignoring case
+     * @return the unit numbers in ascending order
+     */
+    public List<Integer> getUnitNumbers(String type) {
+        UnitSchedule[] units = unitsByType.getOrDefault(typeKey(type), new UnitSchedule[0]);
+        List<Integer> unitNumbers = new ArrayList<>(units.length);
+        for (UnitSchedule unit : units) {
+            unitNumbers.add(unit.unitNumber);
+        }
+        return unitNumbers;
+    }
+
+    /**
+     * Checks whether a unit is free for every night of a stay
+     *
+     * @param unitNumber the unit number
+     * @param checkInDate the date of the first night
+     * @param numberOfNights the number of nights
+     * @return true if none of the nights is reserved
+     * @throws IllegalArgumentException if the unit does not exist or the number of nights is not positive
+     */
+    public boolean isFree(int unitNumber, LocalDate checkInDate, int numberOfNights) {
+        long firstDay = checkInDate.toEpochDay();
+        return unit(unitNumber).isFree(firstDay, endDay(firstDay, numberOfNights));
+    }
+
+    /**
+     * Finds the units of a type that are free on a night
+     *
+     * @param type the unit type, ignoring case
+     * @param date the date of the night
+     * @return the free unit numbers in ascending order
+     */
+    public List<Integer> findFreeUnits(String type, LocalDate date) {
+        return findFreeUnits(type, date, 1);
+    }
+
+    /**
+     * Finds the units of a type that are free for every night of a stay
+     *
+     * @param type the unit type, ignoring case
+     * @param checkInDate the date of the first night
+     * @param numberOfNights the number of nights
+     * @return the free unit numbers in ascending order
+     * @throws IllegalArgumentException if the number of nights is not positive
+     */
+    public List<Integer> findFreeUnits(String type, LocalDate checkInDate, int numberOfNights) {
+        long firstDay = checkInDate.toEpochDay();
+        long endDay = endDay(firstDay, numberOfNights);
+        List<Integer> free = new ArrayList<>();
+        for (UnitSchedule unit : unitsByType.getOrDefault(typeKey(type), new UnitSchedule[0])) {
+            if (unit.isFree(firstDay, endDay)) {
+                free.add(unit.unitNumber);
+            }
+        }
+        return free;
+    }
+
+    /**
+     * Finds the reservation holding a unit on a night
+     *
+     * @param unitNumber the unit number
+     * @param date the date of the night
+     * @return the reservation ID, or 0 if the unit is free that night
+     * @throws IllegalArgumentException if the unit does not exist
+     */
+    public int getOccupant(int unitNumber, LocalDate date) {
+        return unit(unitNumber).occupantOn(date.toEpochDay());
+    }
+
+    /**
+     * Reserves the unit of a scheduled reservation for its nights
+     *
+     * @param reservation a reservation with a check-in date and unit
+     * @throws IllegalArgumentException if the reservation is not scheduled, or its unit does not
+     *                                  exist or is of another type
+     * @throws UnitUnavailableException if some of the nights are already reserved
+     */
+    public void reserve(Reservation reservation) {
+        if (!reservation.isScheduled()) {
+            throw new IllegalArgumentException("Reservation " + reservation.getReservationId() + " has no check-in date");
+        }
+        UnitSchedule unit = unit(reservation.getUnitNumber());
+        if (!unit.type.equals(typeKey(reservation.getReservationType()))) {
+            throw new IllegalArgumentException("Unit " + unit.unitNumber + " is not a " + reservation.getReservationType().toLowerCase(Locale.ROOT) + " unit");
+        }
+        long firstDay = reservation.getCheckInDate().toEpochDay();
+        unit.occupy(firstDay, endDay(firstDay, reservation.getNumberOfNights()), reservation.getReservationId());
+    }
+
+    /**
+     * Puts back the stay of a reservation saved by an earlier run, adding its unit if it is not known yet
+     *
+     * @param reservation a scheduled reservation
+     * @throws UnitUnavailableException if the saved reservations overlap
+     */
+    public void restore(Reservation reservation) {
+        synchronized (this) {
+            if (!hasUnit(reservation.getUnitNumber())) {
+                addUnit(reservation.getReservationType(), reservation.getUnitNumber());
+            }
+        }
+        reserve(reservation);
+    }
+
+    /**
+     * Frees the nights held by a scheduled reservation
+     *
+     * @param reservation the cancelled reservation
+     * @return true if the reservation held its unit
+     */
+    public boolean release(Reservation reservation) {
+        if (!reservation.isScheduled()) {
+            return false;
+        }
+        UnitSchedule unit = unitsByNumber.get(reservation.getUnitNumber());
+        return unit != null && unit.release(reservation.getCheckInDate().toEpochDay(), reservation.getReservationId());
+    }
+
+    /**
+     * Retrieves the schedule of a unit
+     *
+     * @param unitNumber the unit number
+     * @return the schedule
+     * @throws IllegalArgumentException if the unit does not exist
+     */
+    private UnitSchedule unit(int unitNumber) {
+        UnitSchedule unit = unitsByNumber.get(unitNumber);
+        if (unit == null) {
+            throw new IllegalArgumentException("There is no unit " + unitNumber);
+        }
+        return unit;
+    }
+
+    /**
+     * Computes the day after the last night of a stay
+     *
+     * @param firstDay the epoch day of the first night
+     * @param numberOfNights the number of nights
+     * @return the epoch day of the check-out
+     * @throws IllegalArgumentException if the number of nights is not positive
+     */
+    private static long endDay(long firstDay, int numberOfNights) {
+        if (numberOfNights <= 0) {
+            throw new IllegalArgumentException("Invalid number of nights: " + numberOfNights);
+        }
+        return firstDay + numberOfNights;
+    }
+
+    /**
+     * Normalizes a unit type
+     *
+     * @param type the unit type
+     * @return the lower case type
+     */
+    private static String typeKey(String type) {
+        return type.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,374 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs a script of desk commands against a resort without prompting
+ *
+ * One command per line, blank lines and lines starting with # are skipped:
+ * <pre>
+ * room NIGHTS [REQUIREMENT ...]      (at most 3 requirements)
+ * conference NIGHTS GUESTS
+ * check ID
+ * cancel ID
+ * list
+ * </pre>
+ * The script is tokenized straight from a reused byte buffer, so commands and numbers are
+ * recognized without building strings; only requirement names become strings. Results are
+ * written through a ReservationReportWriter, a bad line is reported with its line number and
+ * skipped, and a summary with the throughput is printed at the end
+ */
+public class BatchCommandRunner {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_REQUIREMENTS = 3;
+
+    private static final byte[] ROOM = bytes("room");
+    private static final byte[] CONFERENCE = bytes("conference");
+    private static final byte[] CHECK = bytes("check");
+    private static final byte[] CANCEL = bytes("cancel");
+    private static final byte[] LIST = bytes("list");
+
+    private final MusandamResort resort;
+    private final ReservationReportWriter output;
+    private final boolean echoResults;
+    private final StringBuilder message = new StringBuilder(128);
+    private final List<String> requirements = new ArrayList<>(3);
+
+    private InputStream input;
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferEnd;
+    private int lineStart;
+    private int lineEnd;
+    private int nextLineStart;
+    private int cursor;
+    private int tokenStart;
+    private int tokenEnd;
+    private boolean endOfInput;
+
+    private long lineNumber;
+    private long commands;
+    private long bookings;
+    private long checks;
+    private long cancellations;
+    private long listings;
+    private long misses;
+    private long errors;
+
+    /**
+     * Creates a runner
+     *
+     * @param resort the resort to run the commands against
+     * @param output the writer receiving results, errors and the summary
+     * @param echoResults whether to write the reservation of each command, or only errors and the summary
+     */
+    public BatchCommandRunner(MusandamResort resort, ReservationReportWriter output, boolean echoResults) {
+        this.resort = resort;
+        this.output = output;
+        this.echoResults = echoResults;
+    }
+
+    /**
+     * Encodes a keyword as ASCII bytes
+     *
+     * @param keyword the keyword
+     * @return the bytes of the keyword
+     */
+    private static byte[] bytes(String keyword) {
+        return keyword.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Runs every command of a script and writes the summary
+     *
+     * @param script the script to read, left open
+     * @throws IOException if the script cannot be read or the output cannot be written
+     */
+    public void run(InputStream script) throws IOException {
+        input = script;
+        long start = System.nanoTime();
+        while (nextLine()) {
+            lineNumber++;
+            if (!nextToken() || buffer[tokenStart] == '#') {
+                continue;
+            }
+            commands++;
+            try {
+                runCommand();
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                reportError(e.getMessage());
+            }
+        }
+        writeSummary(System.nanoTime() - start);
+        output.flush();
+    }
+
+    /**
+     * Dispatches the command on the current line
+     *
+     * @throws IOException if the output cannot be written
+     */
+    private void runCommand() throws IOException {
+        if (tokenIs(ROOM)) {
+            int numberOfNights = nextInt("number of nights");
+            requirements.clear();
+            while (nextToken()) {
+                if (requirements.size() == MAX_REQUIREMENTS) {
+                    throw new IllegalArgumentException("cannot accommodate more than " + MAX_REQUIREMENTS + " requirements");
+                }
+                requirements.add(new String(buffer, tokenStart, tokenEnd - tokenStart, StandardCharsets.UTF_8));
+            }
+            // The reservation encodes the requirements as it is built, so the list can be reused
+            Reservation reservation = resort.addRoomReservation(numberOfNights, requirements);
+            bookings++;
+            echo(reservation);
+        } else if (tokenIs(CONFERENCE)) {
+            int numberOfNights = nextInt("number of nights");
+            int numberOfGuests = nextInt("number of guests");
+            expectEndOfLine();
+            Reservation reservation = resort.addConferenceReservation(numberOfNights, numberOfGuests);
+            bookings++;
+            echo(reservation);
+        } else if (tokenIs(CHECK)) {
+            int reservationId = nextInt("reservation ID");
+            expectEndOfLine();
+            checks++;
+            echoOrMiss(resort.getReservationById(reservationId), reservationId);
+        } else if (tokenIs(CANCEL)) {
+            int reservationId = nextInt("reservation ID");
+            expectEndOfLine();
+            Reservation cancelled = resort.cancelReservationById(reservationId);
+            if (cancelled != null) {
+                cancellations++;
+            }
+            echoOrMiss(cancelled, reservationId);
+        } else if (tokenIs(LIST)) {
+            expectEndOfLine();
+            listings++;
+            if (echoResults) {
+                output.writeHeader();
+                for (Reservation reservation : resort.getReservationSnapshot()) {
+                    output.writeRow(reservation);
+                }
+            }
+        } else {
+            throw new IllegalArgumentException("unknown command \""
+                    + new String(buffer, tokenStart, tokenEnd - tokenStart, StandardCharsets.UTF_8) + "\"");
+        }
+    }
+
+    /**
+     * Writes a reservation row when results are echoed
+     *
+     * @param reservation the reservation
+     * @throws IOException if the output cannot be written
+     */
+    private void echo(Reservation reservation) throws IOException {
+        if (echoResults) {
+            output.writeRow(reservation);
+        }
+    }
+
+    /**
+     * Writes a reservation row, or a message if the reservation was not found
+     *
+     * @param reservation the reservation, or null
+     * @param reservationId the requested ID
+     * @throws IOException if the output cannot be written
+     */
+    private void echoOrMiss(Reservation reservation, int reservationId) throws IOException {
+        if (reservation != null) {
+            echo(reservation);
+            return;
+        }
+        misses++;
+        if (echoResults) {
+            message.setLength(0);
+            message.append("There is no such reservation: ").append(reservationId);
+            output.writeLine(message);
+        }
+    }
+
+    /**
+     * Writes an error message for the current line
+     *
+     * @param reason the reason the line was rejected
+     * @throws IOException if the output cannot be written
+     */
+    private void reportError(String reason) throws IOException {
+        errors++;
+        message.setLength(0);
+        message.append("Line ").append(lineNumber).append(": ").append(reason);
+        output.writeLine(message);
+    }
+
+    /**
+     * Writes the counters and throughput of the run
+     *
+     * @param elapsedNanos the duration of the run
+     * @throws IOException if the output cannot be written
+     */
+    private void writeSummary(long elapsedNanos) throws IOException {
+        double seconds = elapsedNanos / 1e9;
+        message.setLength(0);
+        message.append("Batch complete: ").append(commands).append(" commands (")
+                .append(bookings).append(" bookings, ")
+                .append(checks).append(" checks, ")
+                .append(cancellations).append(" cancellations, ")
+                .append(listings).append(" listings, ")
+                .append(misses).append(" not found, ")
+                .append(errors).append(" errors) in ")
+                .append(elapsedNanos / 1_000_000).append(" ms, ")
+                .append(seconds > 0 ? Math.round(commands / seconds) : commands).append(" commands/s");
+        output.writeLine(message);
+    }
+
+    /**
+     * Checks whether the current token equals a keyword, ignoring ASCII case
+     *
+     * @param keyword the lower case keyword
+     * @return true if the token is the keyword
+     */
+    private boolean tokenIs(byte[] keyword) {
+        if (tokenEnd - tokenStart != keyword.length) {
+            return false;
+        }
+        for (int i = 0; i < keyword.length; i++) {
+            if ((buffer[tokenStart + i] | 0x20) != keyword[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the next token as a positive decimal integer
+     *
+     * @param field the name of the expected field, for error messages
+     * @return the parsed number
+     * @throws IllegalArgumentException if the token is missing or not a positive integer
+     */
+    private int nextInt(String field) {
+        if (!nextToken()) {
+            throw new IllegalArgumentException("missing " + field);
+        }
+        long value = 0;
+        for (int i = tokenStart; i < tokenEnd; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9 || value > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("invalid " + field);
+            }
+            value = value * 10 + digit;
+        }
+        if (value == 0 || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("invalid " + field);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Rejects trailing tokens after a complete command
+     *
+     * @throws IllegalArgumentException if the line has more tokens
+     */
+    private void expectEndOfLine() {
+        if (nextToken()) {
+            throw new IllegalArgumentException("unexpected trailing input");
+        }
+    }
+
+    /**
+     * Advances to the next token of the current line
+     *
+     * @return false if the line has no more tokens
+     */
+    private boolean nextToken() {
+        while (cursor < lineEnd && isBlank(buffer[cursor])) {
+            cursor++;
+        }
+        if (cursor == lineEnd) {
+            return false;
+        }
+        tokenStart = cursor;
+        while (cursor < lineEnd && !isBlank(buffer[cursor])) {
+            cursor++;
+        }
+        tokenEnd = cursor;
+        return true;
+    }
+
+    /**
+     * Checks whether a byte separates tokens
+     *
+     * @param value the byte
+     * @return true for spaces, tabs and carriage returns
+     */
+    private static boolean isBlank(byte value) {
+        return value == ' ' || value == '\t' || value == '\r';
+    }
+
+    /**
+     * Advances to the next line of the script, refilling the buffer as needed
+     *
+     * @return false at the end of the script
+     * @throws IOException if the script cannot be read
+     */
+    private boolean nextLine() throws IOException {
+        int scan = nextLineStart;
+        while (true) {
+            for (; scan < bufferEnd; scan++) {
+                if (buffer[scan] == '\n') {
+                    startLine(nextLineStart, scan, scan + 1);
+                    return true;
+                }
+            }
+            if (endOfInput) {
+                if (nextLineStart == bufferEnd) {
+                    return false;
+                }
+                startLine(nextLineStart, bufferEnd, bufferEnd);
+                return true;
+            }
+            scan -= nextLineStart;
+            refill();
+        }
+    }
+
+    /**
+     * Marks the bounds of the current line
+     *
+     * @param start the first byte of the line
+     * @param end the byte after the last one of the line
+     * @param next the first byte of the following line
+     */
+    private void startLine(int start, int end, int next) {
+        lineStart = start;
+        lineEnd = end;
+        nextLineStart = next;
+        cursor = lineStart;
+    }
+
+    /**
+     * Moves the unread bytes to the front of the buffer and reads more, growing the buffer for very long lines
+     *
+     * @throws IOException if the script cannot be read
+     */
+    private void refill() throws IOException {
+        int unread = bufferEnd - nextLineStart;
+        if (unread == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        } else {
+            System.arraycopy(buffer, nextLineStart, buffer, 0, unread);
+        }
+        nextLineStart = 0;
+        bufferEnd = unread;
+        int read = input.read(buffer, bufferEnd, buffer.length - bufferEnd);
+        if (read < 0) {
+            endOfInput = true;
+        } else {
+            bufferEnd += read;
+        }
+    }
+}
@@ -5,18 +5,32 @@ public class BookingInfo {
     private String unitType;
     private double nightPrice;
     private double rateDecrement;
+    private double guestNightPrice;
 
     /**
-     * Creates a new BookingInfo instance
+     * Creates a new BookingInfo instance without guest fees
      *
-     * @param unitType reservation type, for this case either "room" or "conference"
+     * @param unitType reservation type, for example "room" or "conference"
      * @param rateDecrement Rate of decrement used to compute reservation cost
      * @param nightPrice nightly cost used to compute reservation cost
      */
     public BookingInfo(String unitType, double rateDecrement, double nightPrice) {
+        this(unitType, rateDecrement, nightPrice, 0);
+    }
+
+    /**
+     * Creates a new BookingInfo instance
+     *
+     * @param unitType reservation type, for example "room" or "conference"
+     * @param rateDecrement Rate of decrement used to compute reservation cost
+     * @param nightPrice nightly cost used to compute reservation cost
+     * @param guestNightPrice cost of each guest per night, added to the reservation cost
+     */
+    public BookingInfo(String unitType, double rateDecrement, double nightPrice, double guestNightPrice) {
         this.unitType = unitType;
         this.nightPrice = nightPrice;
         this.rateDecrement = rateDecrement;
+        this.guestNightPrice = guestNightPrice;
     }
 
     /**
@@ -46,4 +60,13 @@ public class BookingInfo {
     public double getRateDecrement() {
         return rateDecrement;
     }
+
+    /**
+     * Retrieves the cost of each guest per night
+     *
+     * @return the guest night price
+     */
+    public double getGuestNightPrice() {
+        return guestNightPrice;
+    }
 }
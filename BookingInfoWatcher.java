@@ -0,0 +1,138 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * Watches the bookingInfo file and swaps the new rates into a resort whenever it changes
+ *
+ * The new file is fully read and compiled before it replaces the current pricing table,
+ * so bookings in progress never see a half-loaded table. A file that cannot be parsed,
+ * or that drops a unit type the resort currently prices, is ignored and the old rates stay
+ */
+public class BookingInfoWatcher implements Closeable {
+    private static final long SETTLE_DELAY_MILLIS = 100;
+
+    private final Path bookingInfoPath;
+    private final MusandamResort resort;
+    private final WatchService watchService;
+    private final Thread watchThread;
+
+    /**
+     * Creates a watcher for the given file and resort
+     *
+     * @param bookingInfoPath the bookingInfo file to watch
+     * @param resort the resort to update
+     * @throws IOException if the directory of the file cannot be watched
+     */
+    private BookingInfoWatcher(Path bookingInfoPath, MusandamResort resort) throws IOException {
+        this.bookingInfoPath = bookingInfoPath.toAbsolutePath();
+        this.resort = resort;
+        this.watchService = this.bookingInfoPath.getFileSystem().newWatchService();
+        this.bookingInfoPath.getParent().register(
+                watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY
+        );
+        this.watchThread = new Thread(this::watchLoop, "booking-info-watcher");
+        this.watchThread.setDaemon(true);
+    }
+
+    /**
+     * Starts watching the bookingInfo file on a background daemon thread
+     *
+     * @param bookingInfoPath the bookingInfo file to watch
+     * @param resort the resort whose rates are replaced on each change
+     * @return the running watcher, to be closed when no longer needed
+     * @throws IOException if the directory of the file cannot be watched
+     */
+    public static BookingInfoWatcher start(Path bookingInfoPath, MusandamResort resort) throws IOException {
+        BookingInfoWatcher watcher = new BookingInfoWatcher(bookingInfoPath, resort);
+        watcher.watchThread.start();
+        return watcher;
+    }
+
+    /**
+     * Waits for changes to the watched directory and reloads the file when it is touched
+     */
+    private void watchLoop() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean bookingInfoChanged = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    Path changed = (Path) event.context();
+                    if (changed != null && bookingInfoPath.getFileName().equals(changed)) {
+                        bookingInfoChanged = true;
+                    }
+                }
+                key.reset();
+
+                if (bookingInfoChanged) {
+                    // Editors often write in several steps; let the file settle and fold the burst of events
+                    Thread.sleep(SETTLE_DELAY_MILLIS);
+                    drainPendingEvents();
+                    reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // The watcher was closed
+        }
+    }
+
+    /**
+     * Discards the events queued while the file was settling
+     */
+    private void drainPendingEvents() {
+        WatchKey key;
+        while ((key = watchService.poll()) != null) {
+            key.pollEvents();
+            key.reset();
+        }
+    }
+
+    /**
+     * Reads the bookingInfo file and swaps its rates into the resort if it is complete
+     */
+    private void reload() {
+        PricingTable pricingTable;
+        try {
+            pricingTable = PricingCatalogLoader.load(bookingInfoPath);
+        } catch (NoSuchFileException e) {
+            System.out.println("bookingInfo file disappeared, keeping the current rates.");
+            return;
+        } catch (PricingCatalogException e) {
+            System.out.println("bookingInfo file is malformed, keeping the current rates: " + e.getMessage());
+            return;
+        } catch (IOException e) {
+            System.out.println("bookingInfo file cannot be read, keeping the current rates: " + e.getMessage());
+            return;
+        }
+
+        for (String unitType : resort.getPricingTable().getUnitTypes()) {
+            if (pricingTable.indexOf(unitType) < 0) {
+                System.out.println("bookingInfo file is missing \"" + unitType + "\", keeping the current rates.");
+                return;
+            }
+        }
+        resort.setPricingTable(pricingTable);
+    }
+
+    /**
+     * Stops watching the file
+     */
+    @Override
+    public void close() {
+        watchThread.interrupt();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            // Nothing left to release
+        }
+    }
+}
@@ -0,0 +1,197 @@
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One booking of a bulk batch passed to MusandamResort.addReservations
+ *
+ * Holds what the single-booking methods take as arguments; the guest requirements are
+ * encoded by the shared RequirementDictionary when the request is created, and those it
+ * has no bit for are kept as strings
+ */
+public final class BookingRequest {
+    private final boolean conference;
+    private final int numberOfNights;
+    private final int numberOfGuests;
+    private final long requirementMask;
+    private final List<String> unencodedRequirements;
+    private final LocalDate checkInDate;
+    private final int unitNumber;
+
+    /**
+     * Creates a request
+     *
+     * @param conference true for a conference hall, false for a room
+     * @param numberOfNights the number of nights
+     * @param numberOfGuests the number of guests, 0 for rooms
+     * @param requirementMask the encoded guest requirements, 0 for conferences
+     * @param unencodedRequirements the guest requirements without a bit, empty for conferences
+     * @param checkInDate the date of the first night, or null for an undated booking
+     * @param unitNumber the number of the unit, or 0 for an undated booking
+     */
+    private BookingRequest(boolean conference, int numberOfNights, int numberOfGuests, long requirementMask,
+                           List<String> unencodedRequirements, LocalDate checkInDate, int unitNumber) {
+        this.conference = conference;
+        this.numberOfNights = numberOfNights;
+        this.numberOfGuests = numberOfGuests;
+        this.requirementMask = requirementMask;
+        this.unencodedRequirements = unencodedRequirements;
+        this.checkInDate = checkInDate;
+        this.unitNumber = unitNumber;
+    }
+
+    /**
+     * Requests a room, as addRoomReservation does
+     *
+     * @param numberOfNights number of nights
+     * @param requirements the list of guest requirements
+     * @return the request
+     */
+    public static BookingRequest room(int numberOfNights, List<String> requirements) {
+        return roomRequest(numberOfNights, requirements, null, 0);
+    }
+
+    /**
+     * Requests a specific room from a check-in date
+     *
+     * @param numberOfNights number of nights
+     * @param requirements the list of guest requirements
+     * @param checkInDate the date of the first night
+     * @param unitNumber the number of the room
+     * @return the request
+     * @throws IllegalArgumentException if the date is missing or the unit number is not positive
+     */
+    public static BookingRequest room(int numberOfNights, List<String> requirements, LocalDate checkInDate, int unitNumber) {
+        return roomRequest(numberOfNights, requirements, Reservation.requireDate(checkInDate), Reservation.requireUnit(unitNumber));
+    }
+
+    /**
+     * Requests a room, dated or not
+     *
+     * @param numberOfNights number of nights
+     * @param requirements the list of guest requirements
+     * @param checkInDate the date of the first night, or null for an undated booking
+     * @param unitNumber the number of the room, or 0 for an undated booking
+     * @return the request
+     */
+    private static BookingRequest roomRequest(int numberOfNights, List<String> requirements, LocalDate checkInDate, int unitNumber) {
+        RequirementDictionary dictionary = RequirementDictionary.shared();
+        long requirementMask = dictionary.encode(requirements);
+        return new BookingRequest(false, numberOfNights, 0, requirementMask, dictionary.unencoded(requirements),
+                checkInDate, unitNumber);
+    }
+
+    /**
+     * Requests a conference hall, as addConferenceReservation does
+     *
+     * @param numberOfNights number of nights
+     * @param numberOfGuests number of guests
+     * @return the request
+     */
+    public static BookingRequest conference(int numberOfNights, int numberOfGuests) {
+        return new BookingRequest(true, numberOfNights, numberOfGuests, 0, Collections.emptyList(), null, 0);
+    }
+
+    /**
+     * Requests a specific conference hall from a check-in date
+     *
+     * @param numberOfNights number of nights
+     * @param numberOfGuests number of guests
+     * @param checkInDate the date of the first night
+     * @param unitNumber the number of the hall
+     * @return the request
+     * @throws IllegalArgumentException if the date is missing or the unit number is not positive
+     */
+    public static BookingRequest conference(int numberOfNights, int numberOfGuests, LocalDate checkInDate, int unitNumber) {
+        return new BookingRequest(true, numberOfNights, numberOfGuests, 0, Collections.emptyList(),
+                Reservation.requireDate(checkInDate), Reservation.requireUnit(unitNumber));
+    }
+
+    /**
+     * Checks whether the request is for a conference hall
+     *
+     * @return true for a conference hall, false for a room
+     */
+    public boolean isConference() {
+        return conference;
+    }
+
+    /**
+     * Retrieves the unit type of the request
+     *
+     * @return RoomReservation.UNIT_TYPE or ConferenceReservation.UNIT_TYPE
+     */
+    public String getUnitType() {
+        return conference ? ConferenceReservation.UNIT_TYPE : RoomReservation.UNIT_TYPE;
+    }
+
+    /**
+     * Retrieves the number of nights
+     *
+     * @return the number of nights
+     */
+    public int getNumberOfNights() {
+        return numberOfNights;
+    }
+
+    /**
+     * Retrieves the number of guests
+     *
+     * @return the number of guests, 0 for rooms
+     */
+    public int getNumberOfGuests() {
+        return numberOfGuests;
+    }
+
+    /**
+     * Retrieves the guest requirements encoded by the shared RequirementDictionary
+     *
+     * @return the requirement bitmask, 0 for conferences
+     */
+    public long getRequirementMask() {
+        return requirementMask;
+    }
+
+    /**
+     * Retrieves the guest requirements the shared RequirementDictionary had no bit for
+     *
+     * @return the requirements missing from the mask, usually empty
+     */
+    public List<String> getUnencodedRequirements() {
+        return unencodedRequirements;
+    }
+
+    /**
+     * Retrieves the date of the first night
+     *
+     * @return the check-in date, or null for an undated booking
+     */
+    public LocalDate getCheckInDate() {
+        return checkInDate;
+    }
+
+    /**
+     * Retrieves the number of the requested unit
+     *
+     * @return the unit number, or 0 for an undated booking
+     */
+    public int getUnitNumber() {
+        return unitNumber;
+    }
+
+    /**
+     * Creates the reservation this request asks for
+     *
+     * @param reservationId the ID taken for the reservation
+     * @param costInCents the cost of the reservation in cents
+     * @return the reservation
+     */
+    Reservation toReservation(int reservationId, long costInCents) {
+        if (conference) {
+            return new ConferenceReservation(reservationId, numberOfNights, costInCents, numberOfGuests,
+                    checkInDate, unitNumber);
+        }
+        return new RoomReservation(reservationId, numberOfNights, costInCents, requirementMask,
+                unencodedRequirements, checkInDate, unitNumber);
+    }
+}
@@ -0,0 +1,132 @@
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks that a bulk booking that fails leaves nothing behind
+ *
+ * Fails batches on a unit that does not exist, on a unit already taken and in a listener,
+ * then checks that no reservation of the batch is stored or holds its unit, and that the IDs
+ * of a batch failing before it is stored are handed out again. Exits with status 1 on failure.
+ *
+ * Run with: java BulkBookingTest
+ */
+public class BulkBookingTest {
+    private static final LocalDate CHECK_IN = LocalDate.of(2027, 1, 1);
+
+    private BulkBookingTest() {
+    }
+
+    /**
+     * Runs the checks
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        try {
+            run();
+            System.out.println("BulkBookingTest passed");
+        } catch (AssertionError e) {
+            System.out.println("BulkBookingTest failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Fails batches in each way and checks what is left
+     */
+    private static void run() {
+        VersionedReservationStore store = new VersionedReservationStore();
+        MusandamResort resort = new MusandamResort(List.of(new BookingInfo(RoomReservation.UNIT_TYPE, 0.1, 100)), store);
+        resort.addUnit(RoomReservation.UNIT_TYPE, 1);
+        resort.addUnit(RoomReservation.UNIT_TYPE, 2);
+
+        int firstId = resort.addRoomReservation(1, List.of()).getReservationId();
+
+        failBatch(resort, IllegalArgumentException.class, Arrays.asList(
+                BookingRequest.room(1, List.of(), CHECK_IN, 1), BookingRequest.room(1, List.of(), CHECK_IN, 9)));
+        checkNothingLeft(resort, store, 1);
+        Reservation next = resort.addRoomReservation(1, List.of());
+        check(next.getReservationId() == firstId + 1, "the IDs of a batch on a missing unit are reused, got " + next.getReservationId());
+
+        Reservation taken = resort.addRoomReservation(1, List.of(), CHECK_IN, 2);
+        failBatch(resort, UnitUnavailableException.class, Arrays.asList(
+                BookingRequest.room(1, List.of()), BookingRequest.room(1, List.of(), CHECK_IN, 1),
+                BookingRequest.room(1, List.of(), CHECK_IN, 2)));
+        checkNothingLeft(resort, store, 3);
+        next = resort.addRoomReservation(1, List.of());
+        check(next.getReservationId() == taken.getReservationId() + 1,
+                "the IDs of a batch on a taken unit are reused, got " + next.getReservationId());
+        resort.cancelReservationById(taken.getReservationId());
+
+        int[] notified = {0};
+        resort.addReservationListener(new ReservationListener() {
+            @Override
+            public void reservationAdded(Reservation reservation) {
+                if (++notified[0] == 3) {
+                    throw new IllegalStateException("listener failure");
+                }
+            }
+
+            @Override
+            public void reservationCancelled(Reservation reservation) {
+                notified[0]--;
+            }
+        });
+        int stored = store.size();
+        failBatch(resort, IllegalStateException.class, Arrays.asList(
+                BookingRequest.room(1, List.of(), CHECK_IN, 1), BookingRequest.room(1, List.of(), CHECK_IN, 2),
+                BookingRequest.room(1, List.of())));
+        checkNothingLeft(resort, store, stored);
+        check(store.snapshot().size() == stored, "snapshots do not keep a failed batch");
+        check(notified[0] == 1, "the listener is told of the cancellations, net " + notified[0]);
+
+        notified[0] = 100;
+        List<Reservation> batch = resort.addReservations(Arrays.asList(
+                BookingRequest.room(1, List.of(), CHECK_IN, 1), BookingRequest.room(1, List.of(), CHECK_IN, 2)));
+        check(store.snapshot().size() == stored + 2, "a later batch is stored whole");
+        check(resort.getAvailabilityCalendar().getOccupant(2, CHECK_IN) == batch.get(1).getReservationId(),
+                "a later batch takes the released units");
+    }
+
+    /**
+     * Books a batch that must fail
+     *
+     * @param resort the resort
+     * @param expected the type of the failure
+     * @param requests the batch
+     */
+    private static void failBatch(MusandamResort resort, Class<? extends RuntimeException> expected, List<BookingRequest> requests) {
+        try {
+            resort.addReservations(requests);
+        } catch (RuntimeException e) {
+            check(expected.isInstance(e), "expected " + expected.getSimpleName() + ", got " + e);
+            return;
+        }
+        throw new AssertionError("the batch was booked");
+    }
+
+    /**
+     * Checks that unit 1 is free on the check-in date and that the store holds a given number of reservations
+     *
+     * @param resort the resort
+     * @param store the store of the resort
+     * @param stored the number of reservations expected in the store
+     */
+    private static void checkNothingLeft(MusandamResort resort, VersionedReservationStore store, int stored) {
+        check(store.size() == stored, "the store holds " + stored + " reservations, got " + store.size());
+        check(resort.getAvailabilityCalendar().isFree(1, CHECK_IN, 1), "unit 1 is released");
+    }
+
+    /**
+     * Fails the run if a condition does not hold
+     *
+     * @param condition the condition
+     * @param description what the condition checks
+     */
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            throw new AssertionError(description);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Memory-compact reservation store for resorts holding millions of bookings
+ *
+ * Instead of one object per booking, the fields of every reservation are kept in parallel
+ * primitive arrays, one row per booking in insertion order. Room requirements are kept as
+ * their RequirementDictionary bitmask, costs as whole cents and check-in dates as epoch days;
+ * the rare requirements the dictionary has no bit for are kept aside by reservation ID.
+ * A row costs about three dozen bytes plus its slot in the primitive ID index, and scans walk
+ * contiguous arrays.
+ *
+ * Reservations are handed out as lightweight views built on demand, so the object returned by
+ * get is a new instance holding the same values, not the instance originally stored.
+ * Cancelled rows are marked dead and reclaimed in bulk once they outnumber the live ones.
+ *
+ * Not thread-safe
+ */
+public class ColumnarReservationStore implements ReservationStore {
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int MIN_DEAD_ROWS_TO_COMPACT = 1024;
+    private static final long NO_ROW = -1;
+    private static final int NO_CHECK_IN = Integer.MIN_VALUE;
+
+    private static final byte DEAD = 0;
+    private static final byte ROOM = 1;
+    private static final byte CONFERENCE = 2;
+
+    private int[] reservationIds;
+    private int[] numbersOfNights;
+    private long[] costsInCents;
+    private byte[] types;
+    private long[] details;
+    private int[] checkInDays;
+    private int[] unitNumbers;
+    private int rowCount;
+    private int deadRows;
+
+    private final IntLongMap rowsById;
+    private final Map<Integer, List<String>> unencodedRequirementsById = new HashMap<>();
+
+    /**
+     * Receives the fields of each live row during a scan
+     */
+    public interface RowVisitor {
+
+        /**
+         * Called once per live row
+         *
+         * @param reservationId the reservation ID
+         * @param numberOfNights the number of nights reserved
+         * @param costInCents total cost of the reservation in cents
+         */
+        void visit(int reservationId, int numberOfNights, long costInCents);
+    }
+
+    /**
+     * Creates an empty store with the default capacity
+     */
+    public ColumnarReservationStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty store sized to hold the expected number of reservations without growing
+     *
+     * @param expectedSize the number of reservations expected to be stored
+     */
+    public ColumnarReservationStore(int expectedSize) {
+        int capacity = Math.max(expectedSize, 16);
+        reservationIds = new int[capacity];
+        numbersOfNights = new int[capacity];
+        costsInCents = new long[capacity];
+        types = new byte[capacity];
+        details = new long[capacity];
+        checkInDays = new int[capacity];
+        unitNumbers = new int[capacity];
+        rowsById = new IntLongMap(expectedSize);
+    }
+
+    /**
+     * Stores a reservation, replacing any reservation with the same ID in place
+     *
+     * @param reservation a RoomReservation or ConferenceReservation
+     * @return a view of the replaced reservation, or null if the ID was not stored yet
+     * @throws IllegalArgumentException if the reservation type is not supported, or its
+     *                                  check-in date is too far from 1970 to keep as an int epoch day
+     */
+    @Override
+    public Reservation put(Reservation reservation) {
+        byte type;
+        long detail;
+        List<String> unencodedRequirements = null;
+        if (reservation instanceof RoomReservation) {
+            type = ROOM;
+            detail = ((RoomReservation) reservation).getRequirementMask();
+            unencodedRequirements = ((RoomReservation) reservation).getUnencodedRequirements();
+        } else if (reservation instanceof ConferenceReservation) {
+            type = CONFERENCE;
+            detail = ((ConferenceReservation) reservation).getNumberOfGuests();
+        } else {
+            throw new IllegalArgumentException("Unsupported reservation type: " + reservation.getClass().getName());
+        }
+        int checkInDay = NO_CHECK_IN;
+        if (reservation.isScheduled()) {
+            long epochDay = reservation.getCheckInDate().toEpochDay();
+            if (epochDay <= NO_CHECK_IN || epochDay > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Check-in date out of range: " + reservation.getCheckInDate());
+            }
+            checkInDay = (int) epochDay;
+        }
+
+        int reservationId = reservation.getReservationId();
+        int row = (int) rowsById.get(reservationId, NO_ROW);
+        Reservation replaced = null;
+        if (row == NO_ROW) {
+            if (rowCount == reservationIds.length) {
+                grow(reservationIds.length << 1);
+            }
+            row = rowCount++;
+            rowsById.put(reservationId, row);
+        } else {
+            replaced = view(row);
+        }
+
+        reservationIds[row] = reservationId;
+        numbersOfNights[row] = reservation.getNumberOfNights();
+        costsInCents[row] = reservation.getCostInCents();
+        types[row] = type;
+        details[row] = detail;
+        checkInDays[row] = checkInDay;
+        unitNumbers[row] = reservation.getUnitNumber();
+        if (unencodedRequirements != null && !unencodedRequirements.isEmpty()) {
+            unencodedRequirementsById.put(reservationId, unencodedRequirements);
+        } else if (replaced != null && !unencodedRequirementsById.isEmpty()) {
+            unencodedRequirementsById.remove(reservationId);
+        }
+        return replaced;
+    }
+
+    /**
+     * Retrieves a view of the reservation with the given ID
+     *
+     * @param reservationId the reservation ID to search
+     * @return a new view of the reservation, or null if not found
+     */
+    @Override
+    public Reservation get(int reservationId) {
+        long row = rowsById.get(reservationId, NO_ROW);
+        return row == NO_ROW ? null : view((int) row);
+    }
+
+    /**
+     * Removes the reservation with the given ID
+     *
+     * @param reservationId the reservation ID to remove
+     * @return a view of the removed reservation, or null if not found
+     */
+    @Override
+    public Reservation remove(int reservationId) {
+        long row = rowsById.get(reservationId, NO_ROW);
+        if (row == NO_ROW) {
+            return null;
+        }
+        Reservation removed = view((int) row);
+        rowsById.remove(reservationId);
+        if (!unencodedRequirementsById.isEmpty()) {
+            unencodedRequirementsById.remove(reservationId);
+        }
+        types[(int) row] = DEAD;
+        deadRows++;
+        if (deadRows >= MIN_DEAD_ROWS_TO_COMPACT && deadRows > rowCount - deadRows) {
+            compact();
+        }
+        return removed;
+    }
+
+    @Override
+    public int size() {
+        return rowCount - deadRows;
+    }
+
+    /**
+     * Builds views of the stored reservations in insertion order
+     *
+     * @return the reservations in booking order
+     */
+    @Override
+    public List<Reservation> toList() {
+        List<Reservation> list = new ArrayList<>(size());
+        for (int row = 0; row < rowCount; row++) {
+            if (types[row] != DEAD) {
+                list.add(view(row));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Scans the live rows in insertion order without building any reservation objects
+     *
+     * @param visitor the visitor called for each live row
+     */
+    public void forEachRow(RowVisitor visitor) {
+        for (int row = 0; row < rowCount; row++) {
+            if (types[row] != DEAD) {
+                visitor.visit(reservationIds[row], numbersOfNights[row], costsInCents[row]);
+            }
+        }
+    }
+
+    /**
+     * Finds the room reservations needing every requirement of a mask
+     *
+     * Tests the requirement column directly, so only matching rows become objects
+     *
+     * @param requirementMask a bitmask built by RequirementDictionary.maskOf
+     * @return views of the matching room reservations in booking order
+     */
+    @Override
+    public List<Reservation> findRoomReservations(long requirementMask) {
+        List<Reservation> matches = new ArrayList<>();
+        if (requirementMask == -1) {
+            return matches;
+        }
+        for (int row = 0; row < rowCount; row++) {
+            if (types[row] == ROOM && (details[row] & requirementMask) == requirementMask) {
+                matches.add(view(row));
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Builds a reservation object from a row
+     *
+     * @param row the row index
+     * @return the reservation view, keeping the stored ID
+     */
+    private Reservation view(int row) {
+        LocalDate checkInDate = checkInDays[row] == NO_CHECK_IN ? null : LocalDate.ofEpochDay(checkInDays[row]);
+        if (types[row] == ROOM) {
+            List<String> unencodedRequirements = unencodedRequirementsById.isEmpty()
+                    ? Collections.emptyList()
+                    : unencodedRequirementsById.getOrDefault(reservationIds[row], Collections.emptyList());
+            return new RoomReservation(reservationIds[row], numbersOfNights[row], costsInCents[row], details[row],
+                    unencodedRequirements, checkInDate, unitNumbers[row]);
+        }
+        return new ConferenceReservation(reservationIds[row], numbersOfNights[row], costsInCents[row], (int) details[row],
+                checkInDate, unitNumbers[row]);
+    }
+
+    /**
+     * Grows the row arrays once so that the given number of new reservations fit
+     *
+     * @param additionalReservations the number of reservations about to be stored
+     */
+    @Override
+    public void ensureCapacity(int additionalReservations) {
+        int needed = rowCount + additionalReservations;
+        if (needed > reservationIds.length) {
+            grow(Math.max(needed, reservationIds.length << 1));
+        }
+    }
+
+    /**
+     * Grows the row arrays
+     *
+     * @param capacity the new number of rows, larger than the current one
+     */
+    private void grow(int capacity) {
+        reservationIds = Arrays.copyOf(reservationIds, capacity);
+        numbersOfNights = Arrays.copyOf(numbersOfNights, capacity);
+        costsInCents = Arrays.copyOf(costsInCents, capacity);
+        types = Arrays.copyOf(types, capacity);
+        details = Arrays.copyOf(details, capacity);
+        checkInDays = Arrays.copyOf(checkInDays, capacity);
+        unitNumbers = Arrays.copyOf(unitNumbers, capacity);
+    }
+
+    /**
+     * Slides the live rows over the dead ones, keeping their order, and re-points the ID index
+     */
+    private void compact() {
+        int live = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (types[row] == DEAD) {
+                continue;
+            }
+            if (live != row) {
+                reservationIds[live] = reservationIds[row];
+                numbersOfNights[live] = numbersOfNights[row];
+                costsInCents[live] = costsInCents[row];
+                types[live] = types[row];
+                details[live] = details[row];
+                checkInDays[live] = checkInDays[row];
+                unitNumbers[live] = unitNumbers[row];
+                rowsById.put(reservationIds[live], live);
+            }
+            live++;
+        }
+        rowCount = live;
+        deadRows = 0;
+    }
+}
@@ -1,3 +1,5 @@
+import java.time.LocalDate;
+
 /**
  * Represents a Conference reservation
  *
@@ -6,22 +8,38 @@
  * Extends from the abstract Reservation class
  */
 public class ConferenceReservation extends Reservation {
+    /**
+     * The unit type whose tariff prices conference hall reservations
+     */
+    public static final String UNIT_TYPE = "conference";
+
     private int numberOfGuests;
 
     /**
      * Constructs a ConferenceReservation instance
      *
-     * Calls the inherited constructor from the Reservation class
-     *
+     * @param reservationId the reservation ID
      * @param numberOfNights the number of nights reserved
-     * @param costOfReservation total cost of the reservation
+     * @param costInCents total cost of the reservation in cents
      * @param numberOfGuests the number of guests
+     * @param checkInDate the date of the first night, or null if no date was booked
+     * @param unitNumber the number of the reserved hall, or 0 if no date was booked
      */
-    public ConferenceReservation(int numberOfNights, double costOfReservation, int numberOfGuests) {
-        super(numberOfNights, costOfReservation);
+    public ConferenceReservation(int reservationId, int numberOfNights, long costInCents, int numberOfGuests,
+                                 LocalDate checkInDate, int unitNumber) {
+        super(reservationId, numberOfNights, costInCents, checkInDate, unitNumber);
         this.numberOfGuests = numberOfGuests;
     }
 
+    /**
+     * Retrieves the number of guests
+     *
+     * @return the number of guests
+     */
+    public int getNumberOfGuests() {
+        return numberOfGuests;
+    }
+
     /**
      * Returns the human-readable reservation type string
      *
@@ -42,6 +60,17 @@ public class ConferenceReservation extends Reservation {
         return "With no. of guests: " + numberOfGuests;
     }
 
+    /**
+     * Appends the number of guests to a builder, in the same form as getAdditionalDetails
+     *
+     * @param builder the builder to append to
+     * @return the builder
+     */
+    @Override
+    public StringBuilder appendAdditionalDetails(StringBuilder builder) {
+        return builder.append("With no. of guests: ").append(numberOfGuests);
+    }
+
     /**
      * Converts the ConferenceReservation object to a human-readable string
      *
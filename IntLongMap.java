@@ -0,0 +1,191 @@
+import java.util.Arrays;
+
+/**
+ * Hash map from primitive int keys to primitive long values
+ *
+ * Uses open addressing with linear probing and backward-shift deletion,
+ * so neither keys nor values are ever boxed and removals leave no tombstones
+ *
+ * Not thread-safe
+ */
+public class IntLongMap {
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private int[] keys;
+    private long[] values;
+    private boolean[] used;
+    private int size;
+    private int resizeThreshold;
+
+    /**
+     * Creates an empty map with the default capacity
+     */
+    public IntLongMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty map sized to hold the expected number of entries without resizing
+     *
+     * @param expectedSize the number of entries expected to be stored
+     */
+    public IntLongMap(int expectedSize) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * Allocates empty slot arrays of the given power of two capacity
+     *
+     * @param capacity the number of slots
+     */
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new long[capacity];
+        used = new boolean[capacity];
+        size = 0;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * Spreads the bits of a key so sequential keys do not cluster
+     *
+     * @param key the key
+     * @return the home slot of the key
+     */
+    private int homeSlot(int key) {
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (keys.length - 1);
+    }
+
+    /**
+     * Finds the slot holding a key
+     *
+     * @param key the key to search
+     * @return the slot index, or -1 if the key is absent
+     */
+    private int findSlot(int key) {
+        int mask = keys.length - 1;
+        for (int slot = homeSlot(key); used[slot]; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Associates a value with a key, replacing any previous value
+     *
+     * @param key the key
+     * @param value the value
+     */
+    public void put(int key, long value) {
+        int mask = keys.length - 1;
+        int slot = homeSlot(key);
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        used[slot] = true;
+        if (++size > resizeThreshold) {
+            resize(keys.length << 1);
+        }
+    }
+
+    /**
+     * Retrieves the value of a key
+     *
+     * @param key the key to search
+     * @param missingValue the value to return when the key is absent
+     * @return the value of the key, or missingValue if the key is absent
+     */
+    public long get(int key, long missingValue) {
+        int slot = findSlot(key);
+        return slot == -1 ? missingValue : values[slot];
+    }
+
+    /**
+     * Checks whether a key is present
+     *
+     * @param key the key to search
+     * @return true if the key is present
+     */
+    public boolean containsKey(int key) {
+        return findSlot(key) != -1;
+    }
+
+    /**
+     * Removes a key
+     *
+     * Later entries of the same probe run are shifted back, so lookups never need tombstones
+     *
+     * @param key the key to remove
+     * @return true if the key was present
+     */
+    public boolean remove(int key) {
+        int slot = findSlot(key);
+        if (slot == -1) {
+            return false;
+        }
+        int mask = keys.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (used[next]) {
+            int home = homeSlot(keys[next]);
+            // Move the entry back if the hole lies on its probe path from its home slot
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        used[hole] = false;
+        size--;
+        return true;
+    }
+
+    /**
+     * Retrieves the number of entries
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes every entry, keeping the current capacity
+     */
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    /**
+     * Rebuilds the table at a larger capacity
+     *
+     * @param capacity the new number of slots
+     */
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-bucket histogram of latencies in nanoseconds
+ *
+ * Buckets are log-linear: every power of two is split into eight equal sub-buckets, so a
+ * recorded value is off by at most an eighth of itself, from a nanosecond up to over an hour.
+ * Each bucket is a striped LongAdder, so recording from many threads neither contends nor
+ * allocates once the adders have spread
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 42;
+
+    /**
+     * The number of buckets, the last one also counting every latency above 2^43 ns
+     */
+    public static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+
+    /**
+     * Creates an empty histogram
+     */
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records one latency
+     *
+     * @param nanos the latency in nanoseconds, negative values count as 0
+     */
+    public void record(long nanos) {
+        buckets[bucketOf(Math.max(nanos, 0))].increment();
+    }
+
+    /**
+     * Copies the current bucket counts
+     *
+     * Counts recorded concurrently may or may not be included
+     *
+     * @param counts the array receiving the counts, of BUCKET_COUNT length
+     */
+    public void copyCounts(long[] counts) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets[i].sum();
+        }
+    }
+
+    /**
+     * Clears every bucket
+     */
+    public void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+    }
+
+    /**
+     * Finds the bucket of a latency
+     *
+     * @param nanos the non-negative latency
+     * @return the bucket index
+     */
+    static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = Math.min(63 - Long.numberOfLeadingZeros(nanos), MAX_EXPONENT);
+        if (exponent == MAX_EXPONENT && nanos >= (1L << (MAX_EXPONENT + 1))) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Retrieves the largest latency counted in a bucket
+     *
+     * @param bucket the bucket index
+     * @return the upper bound of the bucket in nanoseconds
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (subBucket + 1) * width - 1;
+    }
+
+    /**
+     * Estimates the mean latency from bucket counts, taking the middle of each bucket
+     *
+     * @param counts the bucket counts
+     * @param total the sum of the counts
+     * @return the estimated mean in nanoseconds, or 0 if nothing was counted
+     */
+    static double mean(long[] counts, long total) {
+        if (total == 0) {
+            return 0;
+        }
+        double sum = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                long lowerBound = i == 0 ? 0 : upperBoundOf(i - 1) + 1;
+                sum += counts[i] * ((lowerBound + upperBoundOf(i)) / 2.0);
+            }
+        }
+        return sum / total;
+    }
+
+    /**
+     * Reads a percentile from bucket counts
+     *
+     * @param counts the bucket counts
+     * @param total the sum of the counts
+     * @param percentile the percentile, between 0 and 1
+     * @return the upper bound of the bucket holding the percentile, or 0 if nothing was counted
+     */
+    static long percentile(long[] counts, long total, double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return upperBoundOf(i);
+            }
+        }
+        return upperBoundOf(counts.length - 1);
+    }
+}
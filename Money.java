@@ -0,0 +1,95 @@
+/**
+ * Fixed-point arithmetic on amounts held as whole cents in a long
+ *
+ * Rates are held as parts per million, so rates with up to six decimals are exact, and the
+ * only rounding is a single half-up rounding to the cent when a rate is applied. None of the
+ * methods allocate
+ */
+public final class Money {
+    public static final long CENTS_PER_UNIT = 100;
+    public static final long PARTS_PER_MILLION = 1_000_000;
+
+    private Money() {
+    }
+
+    /**
+     * Converts an amount to whole cents, rounding half away from zero
+     *
+     * @param amount the amount, for example 71.193
+     * @return the amount in cents, for example 7119
+     */
+    public static long toCents(double amount) {
+        return Math.round(amount * CENTS_PER_UNIT);
+    }
+
+    /**
+     * Converts cents to the closest double amount
+     *
+     * Converting the result back with toCents gives the same cents
+     *
+     * @param cents the amount in cents
+     * @return the amount
+     */
+    public static double toAmount(long cents) {
+        return cents / (double) CENTS_PER_UNIT;
+    }
+
+    /**
+     * Converts a rate to parts per million, rounding to the nearest part
+     *
+     * @param rate the rate, for example 0.05
+     * @return the rate in parts per million, for example 50000
+     */
+    public static long toPartsPerMillion(double rate) {
+        return Math.round(rate * PARTS_PER_MILLION);
+    }
+
+    /**
+     * Multiplies a non-negative amount by a non-negative rate, rounding half up to the cent
+     *
+     * The amount is split around a million so the intermediate products cannot overflow
+     * unless the result itself does
+     *
+     * @param cents the amount in cents
+     * @param partsPerMillion the rate in parts per million
+     * @return the product in cents
+     * @throws ArithmeticException if the product does not fit in a long
+     */
+    public static long multiply(long cents, long partsPerMillion) {
+        long wholeMillions = cents / PARTS_PER_MILLION;
+        long remainder = cents % PARTS_PER_MILLION;
+        long product = Math.multiplyExact(wholeMillions, partsPerMillion);
+        return Math.addExact(product, (remainder * partsPerMillion + PARTS_PER_MILLION / 2) / PARTS_PER_MILLION);
+    }
+
+    /**
+     * Appends an amount with two decimals, such as 71.19
+     *
+     * @param builder the builder to append to
+     * @param cents the amount in cents
+     * @return the builder
+     */
+    public static StringBuilder append(StringBuilder builder, long cents) {
+        long magnitude = cents;
+        if (cents < 0) {
+            builder.append('-');
+            magnitude = -cents;
+        }
+        long fraction = magnitude % CENTS_PER_UNIT;
+        builder.append(magnitude / CENTS_PER_UNIT).append('.');
+        if (fraction < 10) {
+            builder.append('0');
+        }
+        return builder.append(fraction);
+    }
+
+    /**
+     * Formats an amount with two decimals, such as 71.19
+     *
+     * @param cents the amount in cents
+     * @return the formatted amount
+     */
+    public static String format(long cents) {
+        return append(new StringBuilder(24), cents).toString();
+    }
+}
@@ -1,5 +1,8 @@
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Represents a resort instance
@@ -7,10 +10,15 @@ import java.util.List;
  * Contains the reservations and required details used to compute the reservation cost
  */
 public class MusandamResort {
-    private static double CONFERENCE_COST_PER_GUEST = 15.0;
+    private static final int EVENT_LOCK_STRIPES = 64;
 
-    private List<Reservation> reservations;
-    private List<BookingInfo> bookingInfoList;
+    private ReservationStore reservations;
+    private final ReservationIdSequence idSequence;
+    private volatile PricingTable pricingTable;
+    private final AvailabilityCalendar calendar = new AvailabilityCalendar();
+    private volatile ReservationMetrics metrics;
+    private final List<ReservationListener> listeners = new CopyOnWriteArrayList<>();
+    private final Object[] eventLocks = new Object[EVENT_LOCK_STRIPES];
 
     /**
      * Constructor for a MusandamResort instance
@@ -18,28 +26,316 @@ public class MusandamResort {
      * @param bookingInfoList list containing the numerical details to compute the reservation costs
      */
     public MusandamResort(List<BookingInfo> bookingInfoList) {
-        this.bookingInfoList = bookingInfoList;
-        this.reservations = new ArrayList<>();
+        this(bookingInfoList, new ReservationIndex());
     }
 
     /**
-     * Computes the base cost of the reservation
-     * Does not include the cost of guest per night in conference reservations
+     * Constructor for a MusandamResort instance keeping its reservations in the given store
      *
-     * @param type the type of reservation to compute, either "room" or "conference"
-     * @param numberOfNights the number of nights
-     * @return the base cost of the reservation
+     * Pass a StripedReservationStore to book, check and cancel reservations from many threads at once,
+     * or a VersionedReservationStore to also take snapshots of them without copying
+     *
+     * @param bookingInfoList list containing the numerical details to compute the reservation costs
+     * @param reservations the store holding the reservations of the resort
+     */
+    public MusandamResort(List<BookingInfo> bookingInfoList, ReservationStore reservations) {
+        this(PricingTable.compile(bookingInfoList), reservations);
+    }
+
+    /**
+     * Constructor for a MusandamResort instance priced from a loaded catalog
+     *
+     * @param pricingTable the pricing table, for example from PricingCatalogLoader
+     */
+    public MusandamResort(PricingTable pricingTable) {
+        this(pricingTable, new ReservationIndex());
+    }
+
+    /**
+     * Constructor for a MusandamResort instance priced from a loaded catalog, keeping its reservations in the given store
+     *
+     * @param pricingTable the pricing table, for example from PricingCatalogLoader
+     * @param reservations the store holding the reservations of the resort
+     */
+    public MusandamResort(PricingTable pricingTable, ReservationStore reservations) {
+        this(pricingTable, reservations, Reservation.getIdSequence());
+    }
+
+    /**
+     * Constructor for a MusandamResort instance handing out reservation IDs from its own sequence
+     *
+     * Resorts sharing one reservation space, such as the shards of a ShardedResort, each take
+     * a sequence striding over IDs the others never use
+     *
+     * @param pricingTable the pricing table, for example from PricingCatalogLoader
+     * @param reservations the store holding the reservations of the resort
+     * @param idSequence the sequence handing out the IDs of new reservations
+     */
+    public MusandamResort(PricingTable pricingTable, ReservationStore reservations, ReservationIdSequence idSequence) {
+        this.pricingTable = pricingTable;
+        this.reservations = reservations;
+        this.idSequence = idSequence;
+        for (int i = 0; i < EVENT_LOCK_STRIPES; i++) {
+            this.eventLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * Registers a listener notified of every later booking and cancellation
+     *
+     * @param listener the listener to register
      */
-    private double computeBaseCostOfReservation(String type, int numberOfNights) {
-        BookingInfo bookingInfoForType = null;
-        for (BookingInfo bookingInfo : bookingInfoList) {
-            if (type.equals(bookingInfo.getUnitType())) {
-                bookingInfoForType = bookingInfo;
+    public void addReservationListener(ReservationListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener
+     *
+     * @param listener the listener to unregister
+     */
+    public void removeReservationListener(ReservationListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Retrieves the lock ordering the notifications about one reservation ID
+     *
+     * @param reservationId the reservation ID
+     * @return the lock for the ID
+     */
+    private Object eventLockFor(int reservationId) {
+        return eventLocks[reservationId & (EVENT_LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * Stores a new reservation and notifies the listeners
+     *
+     * If the store or a listener fails, the booking is undone before the failure is rethrown,
+     * so its unit does not stay reserved for a reservation that does not exist
+     *
+     * @param reservation the new reservation
+     */
+    private void storeReservation(Reservation reservation) {
+        synchronized (eventLockFor(reservation.getReservationId())) {
+            if (reservation.isScheduled()) {
+                calendar.reserve(reservation);
+            }
+            boolean stored = false;
+            int notifiedListeners = 0;
+            try {
+                this.reservations.put(reservation);
+                stored = true;
+                for (ReservationListener listener : listeners) {
+                    listener.reservationAdded(reservation);
+                    notifiedListeners++;
+                }
+            } catch (RuntimeException | Error e) {
+                retractNotifications(reservation, notifiedListeners, e);
+                if (stored) {
+                    this.reservations.remove(reservation.getReservationId());
+                }
+                calendar.release(reservation);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Tells the listeners already notified of a booking that failed part way through that
+     * it was cancelled
+     *
+     * Must be called holding the event lock of the reservation. A listener failing here, even
+     * with an Error, is added to the failure as suppressed, so the caller still goes on to
+     * remove the reservation and release its unit
+     *
+     * @param reservation the reservation that failed
+     * @param notifiedListeners the number of listeners notified of the booking, in order
+     * @param failure the failure, collecting any failure of the listeners while retracting
+     */
+    private void retractNotifications(Reservation reservation, int notifiedListeners, Throwable failure) {
+        for (ReservationListener listener : listeners) {
+            if (notifiedListeners-- == 0) {
                 break;
             }
+            try {
+                listener.reservationCancelled(reservation);
+            } catch (Throwable e) {
+                failure.addSuppressed(e);
+            }
+        }
+    }
+
+    /**
+     * Runs an action holding the event locks of the given stripes
+     *
+     * The locks are taken in stripe order, so batches never deadlock with each other, and
+     * single bookings and cancellations only ever hold one lock
+     *
+     * @param stripes which stripes to lock
+     * @param fromStripe the first stripe not handled yet
+     * @param action the action to run once every lock is held
+     */
+    private void withEventLocks(boolean[] stripes, int fromStripe, Runnable action) {
+        for (int stripe = fromStripe; stripe < EVENT_LOCK_STRIPES; stripe++) {
+            if (stripes[stripe]) {
+                synchronized (eventLocks[stripe]) {
+                    withEventLocks(stripes, stripe + 1, action);
+                }
+                return;
+            }
         }
-        // At this point bookingInfoForType should be non-null
-        return (1.0 - bookingInfoForType.getRateDecrement()) * (bookingInfoForType.getNightPrice() * numberOfNights);
+        action.run();
+    }
+
+    /**
+     * Retrieves the sequence handing out the IDs of new reservations
+     *
+     * @return the shared Reservation.getIdSequence() unless the resort was given its own
+     */
+    public ReservationIdSequence getIdSequence() {
+        return idSequence;
+    }
+
+    /**
+     * Enables or disables the latency metrics of the desk operations
+     *
+     * @param metrics the metrics to record into, or null to stop measuring
+     */
+    public void setMetrics(ReservationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Retrieves the latency metrics of the desk operations
+     *
+     * @return the metrics, or null if they are disabled
+     */
+    public ReservationMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Reads the clock if metrics are enabled
+     *
+     * @param metrics the metrics read once by the calling operation
+     * @return the start time, or 0 when metrics are disabled
+     */
+    private static long startTimer(ReservationMetrics metrics) {
+        return metrics == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Records a completed call if metrics are enabled
+     *
+     * @param metrics the metrics read once by the calling operation
+     * @param operation the operation
+     * @param startNanos the start time returned by startTimer
+     */
+    private static void stopTimer(ReservationMetrics metrics, ReservationMetrics.Operation operation, long startNanos) {
+        if (metrics != null) {
+            metrics.record(operation, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Computes the cost of the reservation in whole cents
+     * Includes the cost of guest per night in conference reservations
+     *
+     * @param type the type of reservation to compute, for example RoomReservation.UNIT_TYPE
+     * @param numberOfNights the number of nights
+     * @param numberOfGuests the number of guests, 0 for rooms
+     * @return the cost of the reservation in cents
+     * @throws IllegalArgumentException if there is no booking info for the type
+     */
+    private long computeCostOfReservationCents(String type, int numberOfNights, int numberOfGuests) {
+        return pricingTable.computeCostCents(type, numberOfNights, numberOfGuests);
+    }
+
+    /**
+     * Computes the cost of a dated reservation in whole cents, each night at the rates of its season
+     *
+     * @param type the type of reservation to compute
+     * @param checkInDate the date of the first night, or null to use the base rates
+     * @param numberOfNights the number of nights
+     * @param numberOfGuests the number of guests, 0 for rooms
+     * @return the cost of the reservation in cents
+     * @throws IllegalArgumentException if there is no booking info for the type
+     */
+    private long computeCostOfReservationCents(String type, LocalDate checkInDate, int numberOfNights, int numberOfGuests) {
+        if (checkInDate == null) {
+            return computeCostOfReservationCents(type, numberOfNights, numberOfGuests);
+        }
+        return pricingTable.computeCostCents(type, checkInDate, numberOfNights, numberOfGuests);
+    }
+
+    /**
+     * Prices a stay at the current rates without booking it or taking a reservation ID
+     *
+     * To price many stays at once, use quoteCents on getPricingTable()
+     *
+     * @param type the type of reservation to price, for example RoomReservation.UNIT_TYPE
+     * @param numberOfNights the number of nights
+     * @param numberOfGuests the number of guests, ignored for rooms
+     * @return the cost the reservation would have, in cents
+     * @throws IllegalArgumentException if there is no booking info for the type
+     */
+    public long quoteCostCents(String type, int numberOfNights, int numberOfGuests) {
+        return computeCostOfReservationCents(type, numberOfNights, numberOfGuests);
+    }
+
+    /**
+     * Prices a dated stay at the current rates, each night at the rates of its season
+     *
+     * @param type the type of reservation to price, for example RoomReservation.UNIT_TYPE
+     * @param checkInDate the date of the first night
+     * @param numberOfNights the number of nights
+     * @param numberOfGuests the number of guests, ignored for rooms
+     * @return the cost the reservation would have, in cents
+     * @throws IllegalArgumentException if there is no booking info for the type
+     */
+    public long quoteCostCents(String type, LocalDate checkInDate, int numberOfNights, int numberOfGuests) {
+        return computeCostOfReservationCents(type, checkInDate, numberOfNights, numberOfGuests);
+    }
+
+    /**
+     * Retrieves the pricing table currently used to compute reservation costs
+     *
+     * @return the current pricing table
+     */
+    public PricingTable getPricingTable() {
+        return pricingTable;
+    }
+
+    /**
+     * Replaces the pricing table used to compute reservation costs
+     *
+     * The swap is atomic: each booking is priced entirely with either the old or the new table
+     *
+     * @param pricingTable the new pricing table
+     */
+    public void setPricingTable(PricingTable pricingTable) {
+        this.pricingTable = pricingTable;
+    }
+
+    /**
+     * Retrieves the calendar of the rooms and halls that can be reserved by date
+     *
+     * @return the availability calendar
+     */
+    public AvailabilityCalendar getAvailabilityCalendar() {
+        return calendar;
+    }
+
+    /**
+     * Adds a room or hall that can be reserved by date
+     *
+     * @param type the unit type, for example RoomReservation.UNIT_TYPE
+     * @param unitNumber the number of the unit, unique across the resort
+     * @throws IllegalArgumentException if the number is not positive or already used
+     */
+    public void addUnit(String type, int unitNumber) {
+        calendar.addUnit(type, unitNumber);
     }
 
     /**
@@ -50,9 +346,36 @@ public class MusandamResort {
      * @return the room reservation instance
      */
     public Reservation addRoomReservation(int numberOfNights, List<String> requirements) {
-        double costOfReservation = computeBaseCostOfReservation("room", numberOfNights);
-        Reservation roomReservation = new RoomReservation(numberOfNights, costOfReservation, requirements);
-        this.reservations.add(roomReservation);
+        ReservationMetrics metrics = this.metrics;
+        long startNanos = startTimer(metrics);
+        long costInCents = computeCostOfReservationCents(RoomReservation.UNIT_TYPE, numberOfNights, 0);
+        Reservation roomReservation = new RoomReservation(idSequence.next(), numberOfNights, costInCents, requirements, null, 0);
+        storeReservation(roomReservation);
+        stopTimer(metrics, ReservationMetrics.Operation.ADD_ROOM_RESERVATION, startNanos);
+        return roomReservation;
+    }
+
+    /**
+     * Reserves a specific room from a check-in date
+     *
+     * @param numberOfNights number of nights
+     * @param requirements the list of guest requirements
+     * @param checkInDate the date of the first night
+     * @param unitNumber the number of the room
+     * @return the room reservation instance
+     * @throws IllegalArgumentException if the room does not exist
+     * @throws UnitUnavailableException if the room is already reserved for some of the nights
+     */
+    public Reservation addRoomReservation(int numberOfNights, List<String> requirements, LocalDate checkInDate, int unitNumber) {
+        ReservationMetrics metrics = this.metrics;
+        long startNanos = startTimer(metrics);
+        Reservation.requireDate(checkInDate);
+        Reservation.requireUnit(unitNumber);
+        long costInCents = computeCostOfReservationCents(RoomReservation.UNIT_TYPE, checkInDate, numberOfNights, 0);
+        Reservation roomReservation = new RoomReservation(idSequence.next(), numberOfNights, costInCents,
+                requirements, checkInDate, unitNumber);
+        storeReservation(roomReservation);
+        stopTimer(metrics, ReservationMetrics.Operation.ADD_ROOM_RESERVATION, startNanos);
         return roomReservation;
     }
 
@@ -64,11 +387,150 @@ public class MusandamResort {
      * @return the conference reservation instance
      */
     public Reservation addConferenceReservation(int numberOfNights, int numberOfGuests) {
-        double baseCostOfReservation = computeBaseCostOfReservation("conference", numberOfNights);
-        double costOfReservation = baseCostOfReservation + (numberOfNights * numberOfGuests * CONFERENCE_COST_PER_GUEST);
-        Reservation roomReservation = new ConferenceReservation(numberOfNights, costOfReservation, numberOfGuests);
-        this.reservations.add(roomReservation);
-        return roomReservation;
+        ReservationMetrics metrics = this.metrics;
+        long startNanos = startTimer(metrics);
+        long costInCents = computeCostOfReservationCents(ConferenceReservation.UNIT_TYPE, numberOfNights, numberOfGuests);
+        Reservation conferenceReservation = new ConferenceReservation(idSequence.next(), numberOfNights, costInCents,
+                numberOfGuests, null, 0);
+        storeReservation(conferenceReservation);
+        stopTimer(metrics, ReservationMetrics.Operation.ADD_CONFERENCE_RESERVATION, startNanos);
+        return conferenceReservation;
+    }
+
+    /**
+     * Reserves a specific conference hall from a check-in date
+     *
+     * @param numberOfNights number of nights
+     * @param numberOfGuests number of guests
+     * @param checkInDate the date of the first night
+     * @param unitNumber the number of the hall
+     * @return the conference reservation instance
+     * @throws IllegalArgumentException if the hall does not exist
+     * @throws UnitUnavailableException if the hall is already reserved for some of the nights
+     */
+    public Reservation addConferenceReservation(int numberOfNights, int numberOfGuests, LocalDate checkInDate, int unitNumber) {
+        ReservationMetrics metrics = this.metrics;
+        long startNanos = startTimer(metrics);
+        Reservation.requireDate(checkInDate);
+        Reservation.requireUnit(unitNumber);
+        long costInCents = computeCostOfReservationCents(ConferenceReservation.UNIT_TYPE, checkInDate, numberOfNights,
+                numberOfGuests);
+        Reservation conferenceReservation = new ConferenceReservation(idSequence.next(), numberOfNights, costInCents,
+                numberOfGuests, checkInDate, unitNumber);
+        storeReservation(conferenceReservation);
+        stopTimer(metrics, ReservationMetrics.Operation.ADD_CONFERENCE_RESERVATION, startNanos);
+        return conferenceReservation;
+    }
+
+    /**
+     * Books a batch of reservations all-or-nothing
+     *
+     * The whole batch is priced in one pass against one pricing table, takes one block of
+     * consecutive reservation IDs, and reserves the units of its dated bookings. If any booking
+     * cannot be priced or built, or its unit is taken, the units already reserved for the batch are
+     * released, the ID block is given back unless other IDs were handed out meanwhile, and
+     * nothing is stored.
+     *
+     * The batch is then published as one unit, holding the event locks of all its IDs: it is
+     * stored with a single putAll, so stores publishing snapshots show all of it or none of
+     * it, and only then are the listeners notified of each reservation. If the store or a
+     * listener fails, the listeners already notified are told the reservations were cancelled,
+     * the batch is removed and its units released before the failure is rethrown
+     *
+     * @param requests the bookings, for example from a group or tour-operator feed
+     * @return the reservations, in the order of the requests
+     * @throws IllegalArgumentException if a booking cannot be priced or its unit does not exist
+     * @throws UnitUnavailableException if a unit is already reserved for some of the nights,
+     *                                  by an earlier booking or by another booking of the batch
+     */
+    public List<Reservation> addReservations(List<BookingRequest> requests) {
+        int count = requests.size();
+        PricingTable pricingTable = this.pricingTable;
+        int roomIndex = pricingTable.indexOf(RoomReservation.UNIT_TYPE);
+        int conferenceIndex = pricingTable.indexOf(ConferenceReservation.UNIT_TYPE);
+        long[] costsInCents = new long[count];
+        for (int i = 0; i < count; i++) {
+            BookingRequest request = requests.get(i);
+            int unitTypeIndex = request.isConference() ? conferenceIndex : roomIndex;
+            if (unitTypeIndex < 0) {
+                throw new IllegalArgumentException("Booking " + i + ": no booking info for unit type: " + request.getUnitType());
+            }
+            try {
+                costsInCents[i] = request.getCheckInDate() == null
+                        ? pricingTable.computeCostCents(unitTypeIndex, request.getNumberOfNights(), request.getNumberOfGuests())
+                        : pricingTable.computeCostCents(unitTypeIndex, request.getCheckInDate().toEpochDay(),
+                                request.getNumberOfNights(), request.getNumberOfGuests());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Booking " + i + ": " + e.getMessage(), e);
+            }
+        }
+
+        int firstReservationId = idSequence.nextBlock(count);
+        int stride = idSequence.getStride();
+        Reservation[] booked = new Reservation[count];
+        boolean[] stripes = new boolean[EVENT_LOCK_STRIPES];
+        int reservedUnits = 0;
+        try {
+            for (int i = 0, reservationId = firstReservationId; i < count; i++, reservationId += stride) {
+                booked[i] = requests.get(i).toReservation(reservationId, costsInCents[i]);
+                stripes[reservationId & (EVENT_LOCK_STRIPES - 1)] = true;
+            }
+            for (; reservedUnits < count; reservedUnits++) {
+                if (booked[reservedUnits].isScheduled()) {
+                    calendar.reserve(booked[reservedUnits]);
+                }
+            }
+        } finally {
+            if (reservedUnits < count) {
+                for (int i = 0; i < reservedUnits; i++) {
+                    calendar.release(booked[i]);
+                }
+                idSequence.releaseBlock(firstReservationId, count);
+            }
+        }
+
+        List<Reservation> batch = Arrays.asList(booked);
+        withEventLocks(stripes, 0, () -> publishBatch(batch));
+        return batch;
+    }
+
+    /**
+     * Stores a batch whose units are reserved and notifies the listeners, undoing the whole
+     * batch if the store or a listener fails
+     *
+     * Must be called holding the event locks of every reservation of the batch
+     *
+     * @param batch the reservations of the batch
+     */
+    private void publishBatch(List<Reservation> batch) {
+        boolean stored = false;
+        int notifiedReservations = 0;
+        int notifiedListeners = 0;
+        try {
+            this.reservations.putAll(batch);
+            stored = true;
+            for (; notifiedReservations < batch.size(); notifiedReservations++) {
+                notifiedListeners = 0;
+                for (ReservationListener listener : listeners) {
+                    listener.reservationAdded(batch.get(notifiedReservations));
+                    notifiedListeners++;
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            for (int i = 0; i < notifiedReservations; i++) {
+                retractNotifications(batch.get(i), Integer.MAX_VALUE, e);
+            }
+            if (notifiedReservations < batch.size()) {
+                retractNotifications(batch.get(notifiedReservations), notifiedListeners, e);
+            }
+            if (stored) {
+                this.reservations.removeAll(batch);
+            }
+            for (Reservation reservation : batch) {
+                calendar.release(reservation);
+            }
+            throw e;
+        }
     }
 
     /**
@@ -78,12 +540,55 @@ public class MusandamResort {
      * @return the retrieved reservation, or null if not found
      */
     public Reservation getReservationById(int reservationId) {
-        for (Reservation reservation : reservations) {
-            if (reservation.getReservationId() == reservationId) {
-                return reservation;
+        ReservationMetrics metrics = this.metrics;
+        long startNanos = startTimer(metrics);
+        Reservation reservation = reservations.get(reservationId);
+        stopTimer(metrics, ReservationMetrics.Operation.GET_RESERVATION_BY_ID, startNanos);
+        return reservation;
+    }
+
+    /**
+     * Retrieves a cancelled reservation, if the store keeps cancelled reservations
+     *
+     * A TombstoneReservationStore remembers cancellations until its compactor reclaims them
+     *
+     * @param reservationId the reservationID to search
+     * @return the cancelled reservation, or null if it is not known as cancelled
+     */
+    public Reservation getCancelledReservationById(int reservationId) {
+        return reservations.getCancelled(reservationId);
+    }
+
+    /**
+     * Retrieves the room reservations whose guests asked for all the given requirements
+     *
+     * Requirements with a bit in the shared RequirementDictionary are matched by a bitwise
+     * test in the store. Once the dictionary is full, requirements without a bit may still
+     * be booked: the rooms matching the others by mask are then kept if they list those
+     * requirements as strings, which scans every room when none of the requirements has a bit
+     *
+     * @param requirements the requirements to look for, for example "internet"
+     * @return the matching room reservations in booking order
+     */
+    public List<Reservation> findRoomReservationsRequiring(String... requirements) {
+        RequirementDictionary dictionary = RequirementDictionary.shared();
+        long requirementMask = dictionary.maskOf(requirements);
+        if (requirementMask != -1 || !dictionary.isFull()) {
+            return reservations.findRoomReservations(requirementMask);
+        }
+        List<String> wanted = Arrays.asList(requirements);
+        List<String> unencoded = dictionary.unencoded(wanted);
+        List<Reservation> matches = new ArrayList<>();
+        if (unencoded.isEmpty()) {
+            // Only empty requirements lacked a bit, and no booking keeps those
+            return matches;
+        }
+        for (Reservation reservation : reservations.findRoomReservations(dictionary.encodedMaskOf(wanted))) {
+            if (((RoomReservation) reservation).getUnencodedRequirements().containsAll(unencoded)) {
+                matches.add(reservation);
             }
         }
-        return null;
+        return matches;
     }
 
     /**
@@ -93,25 +598,85 @@ public class MusandamResort {
      * @return the cancelled reservation, or null if not found
      */
     public Reservation cancelReservationById(int reservationId) {
-        int indexToRemove = -1;
-        for (int i = 0; i < this.reservations.size(); i++) {
-            if (this.reservations.get(i).getReservationId() == reservationId) {
-                indexToRemove = i;
-                break;
+        ReservationMetrics metrics = this.metrics;
+        long startNanos = startTimer(metrics);
+        Reservation cancelledReservation;
+        synchronized (eventLockFor(reservationId)) {
+            cancelledReservation = this.reservations.remove(reservationId);
+            if (cancelledReservation != null) {
+                calendar.release(cancelledReservation);
+                for (ReservationListener listener : listeners) {
+                    listener.reservationCancelled(cancelledReservation);
+                }
             }
         }
-        if (indexToRemove != -1) {
-            return this.reservations.remove(indexToRemove);
+        stopTimer(metrics, ReservationMetrics.Operation.CANCEL_RESERVATION_BY_ID, startNanos);
+        return cancelledReservation;
+    }
+
+    /**
+     * Puts back a reservation saved by an earlier run, keeping its ID
+     *
+     * Listeners are not notified, the reservation ID sequence is moved past the ID, and the
+     * unit of a scheduled reservation is reserved again, added to the calendar if needed
+     *
+     * @param reservation the saved reservation
+     */
+    public void restoreReservation(Reservation reservation) {
+        idSequence.advancePast(reservation.getReservationId());
+        if (reservation.isScheduled()) {
+            calendar.restore(reservation);
         }
-        return null;
+        this.reservations.put(reservation);
     }
 
     /**
-     * Retrieves the reservations for the resort
+     * Replays a cancellation saved by an earlier run
+     *
+     * Listeners are not notified
      *
-     * @return the reservations for the resort
+     * @param reservationId the ID of the cancelled reservation
+     * @return the removed reservation, or null if it was not restored
+     */
+    public Reservation restoreCancellation(int reservationId) {
+        Reservation cancelledReservation = this.reservations.remove(reservationId);
+        if (cancelledReservation != null) {
+            calendar.release(cancelledReservation);
+        }
+        return cancelledReservation;
+    }
+
+    /**
+     * Retrieves the reservations for the resort in the order they were booked
+     *
+     * @return a copy of the reservations for the resort
      */
     public List<Reservation> getReservations() {
+        return reservations.toList();
+    }
+
+    /**
+     * Takes a point-in-time view of the reservations for the resort
+     *
+     * The view is not affected by later bookings and cancellations, so it can be iterated
+     * while other threads write. With a VersionedReservationStore it is taken in constant
+     * time without copying or blocking writers; other stores copy their reservations
+     *
+     * @return the snapshot of the reservations
+     */
+    public ReservationSnapshot getReservationSnapshot() {
+        return reservations.snapshot();
+    }
+
+    /**
+     * Retrieves the store holding the reservations of the resort
+     *
+     * Reads straight from the store are not recorded by the desk metrics, for scans such as
+     * paging that look up many reservations per request
+     *
+     * @return the reservation store
+     */
+    ReservationStore getReservationStore() {
         return reservations;
     }
 }
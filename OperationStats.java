@@ -0,0 +1,129 @@
+import javax.management.ConstructorParameters;
+import java.util.Locale;
+
+/**
+ * Latency and throughput of one resort operation over a period
+ *
+ * Latencies are read from LatencyHistogram buckets, so they are accurate to an
+ * eighth of the value
+ */
+public class OperationStats {
+    private final String operation;
+    private final long count;
+    private final double throughputPerSecond;
+    private final double meanMicros;
+    private final double p50Micros;
+    private final double p99Micros;
+    private final double p999Micros;
+    private final double maxMicros;
+
+    /**
+     * Creates the statistics of an operation
+     *
+     * @param operation the operation name
+     * @param count the number of calls
+     * @param throughputPerSecond the calls per second over the period
+     * @param meanMicros the mean latency in microseconds
+     * @param p50Micros the median latency in microseconds
+     * @param p99Micros the 99th percentile latency in microseconds
+     * @param p999Micros the 99.9th percentile latency in microseconds
+     * @param maxMicros the largest latency in microseconds
+     */
+    @ConstructorParameters({"operation", "count", "throughputPerSecond", "meanMicros",
+            "p50Micros", "p99Micros", "p999Micros", "maxMicros"})
+    public OperationStats(String operation, long count, double throughputPerSecond, double meanMicros,
+                          double p50Micros, double p99Micros, double p999Micros, double maxMicros) {
+        this.operation = operation;
+        this.count = count;
+        this.throughputPerSecond = throughputPerSecond;
+        this.meanMicros = meanMicros;
+        this.p50Micros = p50Micros;
+        this.p99Micros = p99Micros;
+        this.p999Micros = p999Micros;
+        this.maxMicros = maxMicros;
+    }
+
+    /**
+     * Retrieves the operation name
+     *
+     * @return the operation name, for example "addRoomReservation"
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * Retrieves the number of calls
+     *
+     * @return the number of calls over the period
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Retrieves the calls per second
+     *
+     * @return the throughput over the period
+     */
+    public double getThroughputPerSecond() {
+        return throughputPerSecond;
+    }
+
+    /**
+     * Retrieves the mean latency
+     *
+     * @return the mean latency in microseconds
+     */
+    public double getMeanMicros() {
+        return meanMicros;
+    }
+
+    /**
+     * Retrieves the median latency
+     *
+     * @return the median latency in microseconds
+     */
+    public double getP50Micros() {
+        return p50Micros;
+    }
+
+    /**
+     * Retrieves the 99th percentile latency
+     *
+     * @return the 99th percentile latency in microseconds
+     */
+    public double getP99Micros() {
+        return p99Micros;
+    }
+
+    /**
+     * Retrieves the 99.9th percentile latency
+     *
+     * @return the 99.9th percentile latency in microseconds
+     */
+    public double getP999Micros() {
+        return p999Micros;
+    }
+
+    /**
+     * Retrieves the largest latency
+     *
+     * @return the largest latency in microseconds
+     */
+    public double getMaxMicros() {
+        return maxMicros;
+    }
+
+    /**
+     * Formats the statistics as one line of the metrics report
+     *
+     * @return the formatted statistics
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "%-26s count=%d rate=%.1f/s mean=%.1fus p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus",
+                operation, count, throughputPerSecond, meanMicros, p50Micros, p99Micros, p999Micros, maxMicros);
+    }
+}
@@ -0,0 +1,31 @@
+import java.io.IOException;
+
+/**
+ * Thrown when a line of a pricing catalog cannot be parsed or contradicts an earlier line
+ */
+public class PricingCatalogException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final int lineNumber;
+
+    /**
+     * Creates an exception for a line of a catalog
+     *
+     * @param source the catalog file name, for the message
+     * @param lineNumber the line number, starting at 1
+     * @param message what is wrong with the line
+     */
+    public PricingCatalogException(String source, int lineNumber, String message) {
+        super(source + " line " + lineNumber + ": " + message);
+        this.lineNumber = lineNumber;
+    }
+
+    /**
+     * Retrieves the line the error was found on
+     *
+     * @return the line number, starting at 1
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+}
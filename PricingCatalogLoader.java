@@ -0,0 +1,494 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Loads a pricing catalog file into a PricingTable
+ *
+ * One tariff per line, blank lines and lines starting with # are skipped:
+ * <pre>
+ * UNIT TYPE : RATE OF DECREMENT : NIGHT PRICE [: GUEST NIGHT PRICE]
+ * UNIT TYPE @ FIRST NIGHT..LAST NIGHT : RATE OF DECREMENT : NIGHT PRICE [: GUEST NIGHT PRICE]
+ * </pre>
+ * The first form is the base tariff of a unit type, given once per type. The second is a season
+ * of a type whose base tariff appears on an earlier line, with ISO dates such as
+ * 2026-12-20..2027-01-05; seasons of one type may not share a night, and a season without a
+ * guest night price keeps the one of its base tariff. Base lines of the original bookingInfo
+ * format had no guest night price; for the conference type they get the fee of 15 the resort
+ * has always charged, for every other type none.
+ *
+ * The file is read through a FileChannel in one transfer and parsed straight from its bytes:
+ * amounts and rates are read as fixed-point decimals without going through double, and only
+ * the unit type names become strings. Any error stops the load and names its line
+ */
+public final class PricingCatalogLoader {
+    private static final String LEGACY_GUEST_FEE_UNIT_TYPE = "conference";
+    private static final long LEGACY_GUEST_NIGHT_CENTS = 1500;
+    private static final int PRICE_DECIMALS = 2;
+    private static final int RATE_DECIMALS = 6;
+    private static final int MAX_DIGITS = 18;
+    private static final int DATE_LENGTH = 10;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final byte[] data;
+    private final int length;
+    private final String source;
+    private final int[] separators = new int[3];
+    private int lineNumber;
+
+    private int[] hashSlots;
+    private String[] unitTypes;
+    private long[] nightPriceCents;
+    private long[] ratePartsPerMillion;
+    private long[] guestNightCents;
+    private int unitTypeCount;
+
+    private int[] seasonUnitTypes = new int[INITIAL_CAPACITY];
+    private int[] seasonFirstDays = new int[INITIAL_CAPACITY];
+    private int[] seasonEndDays = new int[INITIAL_CAPACITY];
+    private long[] seasonNightCents = new long[INITIAL_CAPACITY];
+    private long[] seasonRatePartsPerMillion = new long[INITIAL_CAPACITY];
+    private long[] seasonGuestNightCents = new long[INITIAL_CAPACITY];
+    private int[] seasonLines = new int[INITIAL_CAPACITY];
+    private int seasonCount;
+
+    /**
+     * Creates a loader over the bytes of a catalog
+     *
+     * @param data the catalog bytes
+     * @param length the number of bytes to parse
+     * @param source the catalog file name, for error messages
+     */
+    private PricingCatalogLoader(byte[] data, int length, String source) {
+        this.data = data;
+        this.length = length;
+        this.source = source;
+
+        // Most lines of a large catalog are base tariffs, so size for one type per line up front
+        int lines = 1;
+        for (int i = 0; i < length; i++) {
+            if (data[i] == '\n') {
+                lines++;
+            }
+        }
+        int capacity = Math.max(lines, INITIAL_CAPACITY);
+        this.unitTypes = new String[capacity];
+        this.nightPriceCents = new long[capacity];
+        this.ratePartsPerMillion = new long[capacity];
+        this.guestNightCents = new long[capacity];
+        this.hashSlots = new int[Integer.highestOneBit(capacity * 2) << 1];
+    }
+
+    /**
+     * Loads the pricing catalog of a file
+     *
+     * @param path the catalog file, for example bookingInfo
+     * @return the pricing table of every tariff of the file
+     * @throws PricingCatalogException if a line is not valid
+     * @throws IOException if the file cannot be read
+     */
+    public static PricingTable load(Path path) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Pricing catalog too large: " + size + " bytes");
+            }
+            buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Keep reading until the whole file is in
+            }
+        }
+        return parse(buffer.array(), buffer.position(), path.getFileName().toString());
+    }
+
+    /**
+     * Parses a pricing catalog held in memory
+     *
+     * @param data the catalog bytes, UTF-8 encoded
+     * @param length the number of bytes to parse
+     * @param source the catalog name, for error messages
+     * @return the pricing table of every tariff of the catalog
+     * @throws PricingCatalogException if a line is not valid
+     */
+    public static PricingTable parse(byte[] data, int length, String source) throws PricingCatalogException {
+        PricingCatalogLoader loader = new PricingCatalogLoader(data, length, source);
+        loader.parseLines();
+        return loader.build();
+    }
+
+    /**
+     * Parses every line of the catalog
+     *
+     * @throws PricingCatalogException if a line is not valid
+     */
+    private void parseLines() throws PricingCatalogException {
+        int lineStart = 0;
+        while (lineStart < length) {
+            lineNumber++;
+            int lineEnd = lineStart;
+            while (lineEnd < length && data[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            int start = skipBlanks(lineStart, lineEnd);
+            int end = trimBlanks(start, lineEnd);
+            if (start < end && data[start] != '#') {
+                parseLine(start, end);
+            }
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    /**
+     * Parses one tariff line
+     *
+     * @param start the first non-blank byte of the line
+     * @param end the end of the line without trailing blanks
+     * @throws PricingCatalogException if the line is not valid
+     */
+    private void parseLine(int start, int end) throws PricingCatalogException {
+        int fieldCount = 1;
+        for (int i = start; i < end; i++) {
+            if (data[i] == ':') {
+                if (fieldCount > separators.length) {
+                    throw error("expected at most 4 fields separated by ':'");
+                }
+                separators[fieldCount - 1] = i;
+                fieldCount++;
+            }
+        }
+        if (fieldCount < 3) {
+            throw error("expected unit type : rate of decrement : night price");
+        }
+
+        int typeEnd = separators[0];
+        int seasonMark = positionOf((byte) '@', start, typeEnd);
+        String unitType = text(start, seasonMark < 0 ? typeEnd : seasonMark);
+        if (unitType.isEmpty()) {
+            throw error("missing unit type");
+        }
+        long rate = parseDecimal(separators[0] + 1, separators[1], RATE_DECIMALS, "rate of decrement");
+        if (rate > Money.PARTS_PER_MILLION) {
+            throw error("rate of decrement must be between 0 and 1");
+        }
+        int priceEnd = fieldCount > 3 ? separators[2] : end;
+        long nightCents = parseDecimal(separators[1] + 1, priceEnd, PRICE_DECIMALS, "night price");
+        long guestCents = fieldCount > 3 ? parseDecimal(separators[2] + 1, end, PRICE_DECIMALS, "guest night price") : -1;
+
+        if (seasonMark < 0) {
+            addUnitType(unitType, rate, nightCents, guestCents);
+        } else {
+            addSeason(unitType, seasonMark + 1, typeEnd, rate, nightCents, guestCents);
+        }
+    }
+
+    /**
+     * Records the base tariff of a unit type
+     *
+     * @param unitType the unit type
+     * @param rate the rate of decrement in parts per million
+     * @param nightCents the night price in cents
+     * @param guestCents the guest night price in cents, or -1 if the line has none
+     * @throws PricingCatalogException if the unit type already has a base tariff
+     */
+    private void addUnitType(String unitType, long rate, long nightCents, long guestCents) throws PricingCatalogException {
+        int mask = hashSlots.length - 1;
+        int slot = PricingTable.spread(unitType.hashCode()) & mask;
+        while (hashSlots[slot] != 0) {
+            if (unitTypes[hashSlots[slot] - 1].equals(unitType)) {
+                throw error("unit type \"" + unitType + "\" is already priced");
+            }
+            slot = (slot + 1) & mask;
+        }
+        hashSlots[slot] = unitTypeCount + 1;
+        if (guestCents < 0) {
+            guestCents = LEGACY_GUEST_FEE_UNIT_TYPE.equals(unitType) ? LEGACY_GUEST_NIGHT_CENTS : 0;
+        }
+        unitTypes[unitTypeCount] = unitType;
+        nightPriceCents[unitTypeCount] = nightCents;
+        ratePartsPerMillion[unitTypeCount] = rate;
+        guestNightCents[unitTypeCount] = guestCents;
+        unitTypeCount++;
+    }
+
+    /**
+     * Records a season of a unit type priced on an earlier line
+     *
+     * @param unitType the unit type
+     * @param rangeStart the start of the date range text
+     * @param rangeEnd the end of the date range text
+     * @param rate the rate of decrement in parts per million
+     * @param nightCents the night price in cents
+     * @param guestCents the guest night price in cents, or -1 to keep the base one
+     * @throws PricingCatalogException if the type has no base tariff yet or the range is not valid
+     */
+    private void addSeason(String unitType, int rangeStart, int rangeEnd, long rate, long nightCents, long guestCents)
+            throws PricingCatalogException {
+        int unitTypeIndex = indexOf(unitType);
+        if (unitTypeIndex < 0) {
+            throw error("season of unit type \"" + unitType + "\" before its base tariff");
+        }
+        int start = skipBlanks(rangeStart, rangeEnd);
+        int end = trimBlanks(start, rangeEnd);
+        if (end - start != DATE_LENGTH * 2 + 2 || data[start + DATE_LENGTH] != '.' || data[start + DATE_LENGTH + 1] != '.') {
+            throw error("expected a season such as 2026-12-20..2027-01-05, found \"" + text(start, end) + "\"");
+        }
+        long firstDay = parseDate(start);
+        long lastDay = parseDate(start + DATE_LENGTH + 2);
+        if (lastDay < firstDay) {
+            throw error("season ends before it starts");
+        }
+
+        if (seasonCount == seasonFirstDays.length) {
+            int capacity = seasonCount * 2;
+            seasonUnitTypes = Arrays.copyOf(seasonUnitTypes, capacity);
+            seasonFirstDays = Arrays.copyOf(seasonFirstDays, capacity);
+            seasonEndDays = Arrays.copyOf(seasonEndDays, capacity);
+            seasonNightCents = Arrays.copyOf(seasonNightCents, capacity);
+            seasonRatePartsPerMillion = Arrays.copyOf(seasonRatePartsPerMillion, capacity);
+            seasonGuestNightCents = Arrays.copyOf(seasonGuestNightCents, capacity);
+            seasonLines = Arrays.copyOf(seasonLines, capacity);
+        }
+        seasonUnitTypes[seasonCount] = unitTypeIndex;
+        seasonFirstDays[seasonCount] = (int) firstDay;
+        seasonEndDays[seasonCount] = (int) (lastDay + 1);
+        seasonNightCents[seasonCount] = nightCents;
+        seasonRatePartsPerMillion[seasonCount] = rate;
+        seasonGuestNightCents[seasonCount] = guestCents < 0 ? guestNightCents[unitTypeIndex] : guestCents;
+        seasonLines[seasonCount] = lineNumber;
+        seasonCount++;
+    }
+
+    /**
+     * Groups the seasons by unit type, sorts them by first night and builds the table
+     *
+     * @return the pricing table
+     * @throws PricingCatalogException if two seasons of a type share a night
+     */
+    private PricingTable build() throws PricingCatalogException {
+        int[] offsets = new int[unitTypeCount + 1];
+        for (int i = 0; i < seasonCount; i++) {
+            offsets[seasonUnitTypes[i] + 1]++;
+        }
+        for (int i = 0; i < unitTypeCount; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+
+        // Each key is the first night in the high half and the line order of the season in the low half
+        long[] keys = new long[seasonCount];
+        int[] next = Arrays.copyOf(offsets, unitTypeCount);
+        for (int i = 0; i < seasonCount; i++) {
+            keys[next[seasonUnitTypes[i]]++] = ((long) seasonFirstDays[i] << 32) | i;
+        }
+        int[] firstDays = new int[seasonCount];
+        int[] endDays = new int[seasonCount];
+        long[] nightCents = new long[seasonCount];
+        long[] rates = new long[seasonCount];
+        long[] guestCents = new long[seasonCount];
+        for (int type = 0; type < unitTypeCount; type++) {
+            Arrays.sort(keys, offsets[type], offsets[type + 1]);
+            for (int position = offsets[type]; position < offsets[type + 1]; position++) {
+                int season = (int) keys[position];
+                if (position > offsets[type] && seasonFirstDays[season] < endDays[position - 1]) {
+                    int other = (int) keys[position - 1];
+                    lineNumber = Math.max(seasonLines[season], seasonLines[other]);
+                    throw error("season overlaps the season on line " + Math.min(seasonLines[season], seasonLines[other]));
+                }
+                firstDays[position] = seasonFirstDays[season];
+                endDays[position] = seasonEndDays[season];
+                nightCents[position] = seasonNightCents[season];
+                rates[position] = seasonRatePartsPerMillion[season];
+                guestCents[position] = seasonGuestNightCents[season];
+            }
+        }
+
+        return new PricingTable(Arrays.copyOf(unitTypes, unitTypeCount), Arrays.copyOf(nightPriceCents, unitTypeCount),
+                Arrays.copyOf(ratePartsPerMillion, unitTypeCount), Arrays.copyOf(guestNightCents, unitTypeCount),
+                offsets, firstDays, endDays, nightCents, rates, guestCents, hashSlots);
+    }
+
+    /**
+     * Finds a unit type priced on an earlier line
+     *
+     * @param unitType the unit type
+     * @return the index of the type, or -1 if it has no base tariff yet
+     */
+    private int indexOf(String unitType) {
+        int mask = hashSlots.length - 1;
+        int slot = PricingTable.spread(unitType.hashCode()) & mask;
+        int entry;
+        while ((entry = hashSlots[slot]) != 0) {
+            if (unitTypes[entry - 1].equals(unitType)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Parses a non-negative decimal as a fixed-point number, rounding extra decimals half up
+     *
+     * @param fieldStart the start of the field
+     * @param fieldEnd the end of the field
+     * @param decimals the number of decimals to keep
+     * @param name the field name, for error messages
+     * @return the value times ten to the power of decimals
+     * @throws PricingCatalogException if the field is not a decimal number
+     */
+    private long parseDecimal(int fieldStart, int fieldEnd, int decimals, String name) throws PricingCatalogException {
+        int start = skipBlanks(fieldStart, fieldEnd);
+        int end = trimBlanks(start, fieldEnd);
+        long value = 0;
+        int integerDigits = 0;
+        int fractionDigits = -1;
+        boolean roundUp = false;
+        for (int i = start; i < end; i++) {
+            byte b = data[i];
+            if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else if (b >= '0' && b <= '9') {
+                if (fractionDigits < 0) {
+                    if (++integerDigits + decimals > MAX_DIGITS) {
+                        throw error(name + " is too large: " + text(start, end));
+                    }
+                    value = value * 10 + (b - '0');
+                } else if (fractionDigits < decimals) {
+                    value = value * 10 + (b - '0');
+                    fractionDigits++;
+                } else if (fractionDigits++ == decimals) {
+                    roundUp = b >= '5';
+                }
+            } else {
+                throw error("invalid " + name + " \"" + text(start, end) + "\"");
+            }
+        }
+        if (integerDigits == 0 && fractionDigits <= 0) {
+            throw error("invalid " + name + " \"" + text(start, end) + "\"");
+        }
+        for (int i = Math.max(fractionDigits, 0); i < decimals; i++) {
+            value *= 10;
+        }
+        return roundUp ? value + 1 : value;
+    }
+
+    /**
+     * Parses an ISO date such as 2026-12-20
+     *
+     * @param start the first byte of the date
+     * @return the epoch day of the date
+     * @throws PricingCatalogException if the bytes are not a valid date
+     */
+    private long parseDate(int start) throws PricingCatalogException {
+        if (data[start + 4] != '-' || data[start + 7] != '-') {
+            throw error("invalid date \"" + text(start, start + DATE_LENGTH) + "\"");
+        }
+        try {
+            return LocalDate.of(digits(start, 4), digits(start + 5, 2), digits(start + 8, 2)).toEpochDay();
+        } catch (DateTimeException e) {
+            throw error("invalid date \"" + text(start, start + DATE_LENGTH) + "\"");
+        }
+    }
+
+    /**
+     * Parses a run of decimal digits
+     *
+     * @param start the first digit
+     * @param count the number of digits
+     * @return the value of the digits
+     * @throws PricingCatalogException if a byte is not a digit
+     */
+    private int digits(int start, int count) throws PricingCatalogException {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            if (data[i] < '0' || data[i] > '9') {
+                throw error("invalid date \"" + text(start, start + count) + "\"");
+            }
+            value = value * 10 + (data[i] - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Finds a byte in a range
+     *
+     * @param wanted the byte to find
+     * @param start the start of the range
+     * @param end the end of the range
+     * @return the position of the byte, or -1 if the range does not hold it
+     */
+    private int positionOf(byte wanted, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (data[i] == wanted) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Skips leading spaces and tabs
+     *
+     * @param start the start of the range
+     * @param end the end of the range
+     * @return the first byte that is not blank, or end
+     */
+    private int skipBlanks(int start, int end) {
+        while (start < end && isBlank(data[start])) {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * Drops trailing spaces, tabs and carriage returns
+     *
+     * @param start the start of the range
+     * @param end the end of the range
+     * @return the end of the range without trailing blanks
+     */
+    private int trimBlanks(int start, int end) {
+        while (end > start && isBlank(data[end - 1])) {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Checks whether a byte is a space, tab or carriage return
+     *
+     * @param b the byte
+     * @return true if the byte is blank
+     */
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    /**
+     * Decodes a trimmed range of the catalog as text
+     *
+     * @param start the start of the range
+     * @param end the end of the range
+     * @return the text without leading and trailing blanks
+     */
+    private String text(int start, int end) {
+        int from = skipBlanks(start, end);
+        return new String(data, from, trimBlanks(from, end) - from, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Builds the error for the current line
+     *
+     * @param message what is wrong with the line
+     * @return the exception to throw
+     */
+    private PricingCatalogException error(String message) {
+        return new PricingCatalogException(source, lineNumber, message);
+    }
+}
@@ -0,0 +1,447 @@
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable lookup table of the pricing details for each unit type
+ *
+ * Night prices are held as whole cents and rate decrements as parts per million, and every cost
+ * is computed in fixed point with one half-up rounding to the cent per tariff, so equal stays
+ * always cost exactly the same. Each unit type gets an index into parallel primitive arrays and
+ * is found through an open-addressing hash of those indexes, so a table of thousands of unit
+ * types holds no per-type objects besides the type names, and many stays can be priced at once
+ * without lookups or allocation.
+ *
+ * A unit type may also have seasons: ranges of nights with their own tariff. The seasons of
+ * all types are kept in one set of flat arrays, sorted by first night within each type, and
+ * a dated stay is priced night range by night range, one binary search per stay. Safe to read
+ * from any number of threads
+ */
+public final class PricingTable {
+    private final String[] unitTypes;
+    private final long[] nightPriceCents;
+    private final long[] keptPartsPerMillion;
+    private final long[] guestNightCents;
+    private final int[] hashSlots;
+
+    private final int[] seasonOffsets;
+    private final int[] seasonFirstDays;
+    private final int[] seasonEndDays;
+    private final long[] seasonNightCents;
+    private final long[] seasonKeptPartsPerMillion;
+    private final long[] seasonGuestNightCents;
+
+    /**
+     * Creates a pricing table from compiled tariffs; the arrays are owned by the new instance
+     *
+     * The seasons of the unit type at index i are found from seasonOffsets[i] up to
+     * seasonOffsets[i + 1], sorted by first night and not overlapping
+     *
+     * @param unitTypes the distinct unit types, in index order
+     * @param nightPriceCents the night price of each unit type, in cents
+     * @param ratePartsPerMillion the rate decrement of each unit type, in parts per million
+     * @param guestNightCents the fee per guest and night of each unit type, in cents
+     * @param seasonOffsets the start of the seasons of each unit type, with one extra end entry
+     * @param seasonFirstDays the epoch day of the first night of each season
+     * @param seasonEndDays the epoch day after the last night of each season
+     * @param seasonNightCents the night price of each season, in cents
+     * @param seasonRatePartsPerMillion the rate decrement of each season, in parts per million
+     * @param seasonGuestNightCents the fee per guest and night of each season, in cents
+     * @param hashSlots the open-addressing slots of the unit types, holding index + 1 at the
+     *                  slot found by probing from spread(hashCode), or null to build them
+     */
+    PricingTable(String[] unitTypes, long[] nightPriceCents, long[] ratePartsPerMillion, long[] guestNightCents,
+                 int[] seasonOffsets, int[] seasonFirstDays, int[] seasonEndDays, long[] seasonNightCents,
+                 long[] seasonRatePartsPerMillion, long[] seasonGuestNightCents, int[] hashSlots) {
+        this.unitTypes = unitTypes;
+        this.nightPriceCents = nightPriceCents;
+        this.keptPartsPerMillion = keptOf(ratePartsPerMillion);
+        this.guestNightCents = guestNightCents;
+        this.seasonOffsets = seasonOffsets;
+        this.seasonFirstDays = seasonFirstDays;
+        this.seasonEndDays = seasonEndDays;
+        this.seasonNightCents = seasonNightCents;
+        this.seasonKeptPartsPerMillion = keptOf(seasonRatePartsPerMillion);
+        this.seasonGuestNightCents = seasonGuestNightCents;
+
+        this.hashSlots = hashSlots != null ? hashSlots : hashSlotsOf(unitTypes);
+    }
+
+    /**
+     * Compiles the booking info records into a pricing table without seasons
+     *
+     * When a unit type appears more than once, the first record wins
+     *
+     * @param bookingInfoList the booking info records
+     * @return the pricing table
+     */
+    public static PricingTable compile(List<BookingInfo> bookingInfoList) {
+        Set<String> seen = new HashSet<>();
+        int count = 0;
+        String[] unitTypes = new String[bookingInfoList.size()];
+        long[] nightPriceCents = new long[unitTypes.length];
+        long[] ratePartsPerMillion = new long[unitTypes.length];
+        long[] guestNightCents = new long[unitTypes.length];
+        for (BookingInfo bookingInfo : bookingInfoList) {
+            if (seen.add(bookingInfo.getUnitType())) {
+                unitTypes[count] = bookingInfo.getUnitType();
+                nightPriceCents[count] = Money.toCents(bookingInfo.getNightPrice());
+                ratePartsPerMillion[count] = Money.toPartsPerMillion(bookingInfo.getRateDecrement());
+                guestNightCents[count] = Money.toCents(bookingInfo.getGuestNightPrice());
+                count++;
+            }
+        }
+        return new PricingTable(Arrays.copyOf(unitTypes, count), Arrays.copyOf(nightPriceCents, count),
+                Arrays.copyOf(ratePartsPerMillion, count), Arrays.copyOf(guestNightCents, count),
+                new int[count + 1], new int[0], new int[0], new long[0], new long[0], new long[0], null);
+    }
+
+    /**
+     * Builds the open-addressing slots of distinct unit types, at most half full
+     *
+     * @param unitTypes the unit types, in index order
+     * @return the slots, each holding 0 or the index of a unit type plus one
+     */
+    private static int[] hashSlotsOf(String[] unitTypes) {
+        int[] slots = new int[Integer.highestOneBit(Math.max(unitTypes.length, 1) * 2) << 1];
+        int mask = slots.length - 1;
+        for (int i = 0; i < unitTypes.length; i++) {
+            int slot = spread(unitTypes[i].hashCode()) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = i + 1;
+        }
+        return slots;
+    }
+
+    /**
+     * Converts rate decrements to the share of the price that is kept
+     *
+     * @param ratePartsPerMillion the rate decrements in parts per million
+     * @return the kept shares in parts per million, in a new array
+     */
+    private static long[] keptOf(long[] ratePartsPerMillion) {
+        long[] kept = new long[ratePartsPerMillion.length];
+        for (int i = 0; i < kept.length; i++) {
+            kept[i] = Money.PARTS_PER_MILLION - ratePartsPerMillion[i];
+        }
+        return kept;
+    }
+
+    /**
+     * Scatters the bits of a hash code so that similar type names land in distant slots
+     *
+     * @param hashCode the hash code of a type name
+     * @return the spread hash
+     */
+    static int spread(int hashCode) {
+        int hash = hashCode * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Retrieves the base pricing details of a unit type
+     *
+     * @param unitType the unit type, for example "room" or "conference"
+     * @return the booking info for the unit type, or null if the type is not priced
+     */
+    public BookingInfo getBookingInfo(String unitType) {
+        int index = indexOf(unitType);
+        if (index < 0) {
+            return null;
+        }
+        return new BookingInfo(unitType,
+                (Money.PARTS_PER_MILLION - keptPartsPerMillion[index]) / (double) Money.PARTS_PER_MILLION,
+                Money.toAmount(nightPriceCents[index]),
+                Money.toAmount(guestNightCents[index]));
+    }
+
+    /**
+     * Retrieves the priced unit types
+     *
+     * @return an unmodifiable view of the unit types, in index order
+     */
+    public List<String> getUnitTypes() {
+        return Collections.unmodifiableList(Arrays.asList(unitTypes));
+    }
+
+    /**
+     * Retrieves the number of seasons of every unit type together
+     *
+     * @return the number of seasonal tariffs
+     */
+    public int getSeasonCount() {
+        return seasonFirstDays.length;
+    }
+
+    /**
+     * Retrieves the index of a unit type in this table, for the batch quote
+     *
+     * Indexes belong to one table; a reloaded table may number the types differently
+     *
+     * @param unitType the unit type
+     * @return the index, or -1 if the type is not priced
+     */
+    public int indexOf(String unitType) {
+        int mask = hashSlots.length - 1;
+        int slot = spread(unitType.hashCode()) & mask;
+        int entry;
+        while ((entry = hashSlots[slot]) != 0) {
+            if (unitTypes[entry - 1].equals(unitType)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Computes the base cost of staying the given number of nights in a unit type
+     *
+     * @param unitType the unit type to price
+     * @param numberOfNights the number of nights
+     * @return the base cost, a whole number of cents
+     * @throws IllegalArgumentException if the unit type has no pricing details
+     */
+    public double computeBaseCost(String unitType, int numberOfNights) {
+        return Money.toAmount(computeCostCents(requireIndex(unitType), numberOfNights, 0));
+    }
+
+    /**
+     * Computes the total cost of an undated stay at the base tariff, including guest fees
+     *
+     * @param unitType the unit type to price
+     * @param numberOfNights the number of nights
+     * @param numberOfGuests the number of guests, ignored for unit types without guest fees
+     * @return the cost in cents
+     * @throws IllegalArgumentException if the unit type has no pricing details, or the cost is out of range
+     */
+    public long computeCostCents(String unitType, int numberOfNights, int numberOfGuests) {
+        return computeCostCents(requireIndex(unitType), numberOfNights, numberOfGuests);
+    }
+
+    /**
+     * Computes the total cost of a dated stay, each night at the tariff of its season
+     *
+     * @param unitType the unit type to price
+     * @param checkInDate the date of the first night
+     * @param numberOfNights the number of nights
+     * @param numberOfGuests the number of guests, ignored for unit types without guest fees
+     * @return the cost in cents
+     * @throws IllegalArgumentException if the unit type has no pricing details, or the cost is out of range
+     */
+    public long computeCostCents(String unitType, LocalDate checkInDate, int numberOfNights, int numberOfGuests) {
+        return computeCostCents(requireIndex(unitType), checkInDate.toEpochDay(), numberOfNights, numberOfGuests);
+    }
+
+    /**
+     * Computes the total cost of an undated stay in the unit type at an index
+     *
+     * The base cost is the night price times the nights less the rate decrement, rounded half
+     * up to the cent; guest fees are whole cents and added exactly
+     *
+     * @param unitTypeIndex the index of the unit type in this table
+     * @param numberOfNights the number of nights
+     * @param numberOfGuests the number of guests, ignored for unit types without guest fees
+     * @return the cost in cents
+     * @throws IllegalArgumentException if the index is not valid, a count is negative, or the cost is out of range
+     */
+    public long computeCostCents(int unitTypeIndex, int numberOfNights, int numberOfGuests) {
+        checkStay(unitTypeIndex, numberOfNights, numberOfGuests);
+        return tariffCost(nightPriceCents[unitTypeIndex], keptPartsPerMillion[unitTypeIndex],
+                guestNightCents[unitTypeIndex], numberOfNights, numberOfGuests);
+    }
+
+    /**
+     * Computes the total cost of a dated stay in the unit type at an index
+     *
+     * The stay is split into runs of nights sharing a tariff, either a season or the base
+     * tariff between seasons, and each run is priced like an undated stay
+     *
+     * @param unitTypeIndex the index of the unit type in this table
+     * @param checkInDay the epoch day of the first night
+     * @param numberOfNights the number of nights
+     * @param numberOfGuests the number of guests, ignored for unit types without guest fees
+     * @return the cost in cents
+     * @throws IllegalArgumentException if the index is not valid, a count is negative, or the cost is out of range
+     */
+    public long computeCostCents(int unitTypeIndex, long checkInDay, int numberOfNights, int numberOfGuests) {
+        checkStay(unitTypeIndex, numberOfNights, numberOfGuests);
+        int season = firstSeasonEndingAfter(unitTypeIndex, checkInDay);
+        int lastSeason = seasonOffsets[unitTypeIndex + 1];
+        if (season == lastSeason) {
+            return computeCostCents(unitTypeIndex, numberOfNights, numberOfGuests);
+        }
+
+        long day = checkInDay;
+        long endDay = checkInDay + numberOfNights;
+        long cost = 0;
+        try {
+            while (day < endDay) {
+                long runEnd;
+                long runCost;
+                if (season < lastSeason && seasonFirstDays[season] <= day) {
+                    runEnd = Math.min(endDay, seasonEndDays[season]);
+                    runCost = tariffCost(seasonNightCents[season], seasonKeptPartsPerMillion[season],
+                            seasonGuestNightCents[season], (int) (runEnd - day), numberOfGuests);
+                    season++;
+                } else {
+                    runEnd = season < lastSeason ? Math.min(endDay, seasonFirstDays[season]) : endDay;
+                    runCost = tariffCost(nightPriceCents[unitTypeIndex], keptPartsPerMillion[unitTypeIndex],
+                            guestNightCents[unitTypeIndex], (int) (runEnd - day), numberOfGuests);
+                }
+                cost = Math.addExact(cost, runCost);
+                day = runEnd;
+            }
+        } catch (ArithmeticException e) {
+            throw outOfRange(numberOfNights, numberOfGuests);
+        }
+        return cost;
+    }
+
+    /**
+     * Prices many undated stays at once without creating reservations or taking reservation IDs
+     *
+     * Reads the first count entries of each input array and writes the cost of each stay, in
+     * cents, at the same position of the output array. Nothing is allocated
+     *
+     * @param unitTypeIndexes the index of the unit type of each stay, from indexOf
+     * @param numbersOfNights the number of nights of each stay
+     * @param numbersOfGuests the number of guests of each stay
+     * @param costsInCents the array receiving the cost of each stay
+     * @param count the number of stays to price
+     * @throws IllegalArgumentException if a stay cannot be priced; earlier stays are already written
+     */
+    public void quoteCents(int[] unitTypeIndexes, int[] numbersOfNights, int[] numbersOfGuests,
+                           long[] costsInCents, int count) {
+        for (int i = 0; i < count; i++) {
+            costsInCents[i] = computeCostCents(unitTypeIndexes[i], numbersOfNights[i], numbersOfGuests[i]);
+        }
+    }
+
+    /**
+     * Prices many dated stays at once, each night at the tariff of its season
+     *
+     * @param unitTypeIndexes the index of the unit type of each stay, from indexOf
+     * @param checkInDays the epoch day of the first night of each stay
+     * @param numbersOfNights the number of nights of each stay
+     * @param numbersOfGuests the number of guests of each stay
+     * @param costsInCents the array receiving the cost of each stay
+     * @param count the number of stays to price
+     * @throws IllegalArgumentException if a stay cannot be priced; earlier stays are already written
+     */
+    public void quoteCents(int[] unitTypeIndexes, long[] checkInDays, int[] numbersOfNights, int[] numbersOfGuests,
+                           long[] costsInCents, int count) {
+        for (int i = 0; i < count; i++) {
+            costsInCents[i] = computeCostCents(unitTypeIndexes[i], checkInDays[i], numbersOfNights[i], numbersOfGuests[i]);
+        }
+    }
+
+    /**
+     * Prices every length of undated stay from one night up, for showing all prices of a unit at once
+     *
+     * @param unitType the unit type to price
+     * @param numberOfGuests the number of guests
+     * @param costsInCents the array receiving the cost of 1 night at index 0, 2 nights at index 1, and so on
+     * @throws IllegalArgumentException if the unit type has no pricing details, or a cost is out of range
+     */
+    public void quoteStayLengthsCents(String unitType, int numberOfGuests, long[] costsInCents) {
+        int index = requireIndex(unitType);
+        for (int i = 0; i < costsInCents.length; i++) {
+            costsInCents[i] = computeCostCents(index, i + 1, numberOfGuests);
+        }
+    }
+
+    /**
+     * Checks that a stay can be priced
+     *
+     * @param unitTypeIndex the index of the unit type
+     * @param numberOfNights the number of nights
+     * @param numberOfGuests the number of guests
+     * @throws IllegalArgumentException if the index is not valid or a count is negative
+     */
+    private void checkStay(int unitTypeIndex, int numberOfNights, int numberOfGuests) {
+        if (unitTypeIndex < 0 || unitTypeIndex >= unitTypes.length) {
+            throw new IllegalArgumentException("No booking info for unit type index: " + unitTypeIndex);
+        }
+        if (numberOfNights < 0 || numberOfGuests < 0) {
+            throw new IllegalArgumentException("Invalid stay: " + numberOfNights + " nights, " + numberOfGuests + " guests");
+        }
+    }
+
+    /**
+     * Prices nights at one tariff
+     *
+     * @param nightCents the night price in cents
+     * @param keptPartsPerMillion the share of the price kept after the rate decrement
+     * @param guestCents the fee per guest and night in cents
+     * @param numberOfNights the number of nights
+     * @param numberOfGuests the number of guests
+     * @return the cost in cents
+     * @throws IllegalArgumentException if the cost is out of range
+     */
+    private static long tariffCost(long nightCents, long keptPartsPerMillion, long guestCents,
+                                   int numberOfNights, int numberOfGuests) {
+        try {
+            long grossCents = Math.multiplyExact(nightCents, (long) numberOfNights);
+            long baseCents = Money.multiply(grossCents, keptPartsPerMillion);
+            long guestFeeCents = Math.multiplyExact(Math.multiplyExact(guestCents, (long) numberOfNights),
+                    (long) numberOfGuests);
+            return Math.addExact(baseCents, guestFeeCents);
+        } catch (ArithmeticException e) {
+            throw outOfRange(numberOfNights, numberOfGuests);
+        }
+    }
+
+    /**
+     * Finds the first season of a unit type that ends after a day
+     *
+     * @param unitTypeIndex the index of the unit type
+     * @param day the epoch day
+     * @return the season index, or the end of the seasons of the type if every season ended by then
+     */
+    private int firstSeasonEndingAfter(int unitTypeIndex, long day) {
+        int low = seasonOffsets[unitTypeIndex];
+        int high = seasonOffsets[unitTypeIndex + 1];
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (seasonEndDays[middle] <= day) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Builds the error for a cost that does not fit in a long
+     *
+     * @param numberOfNights the number of nights
+     * @param numberOfGuests the number of guests
+     * @return the exception to throw
+     */
+    private static IllegalArgumentException outOfRange(int numberOfNights, int numberOfGuests) {
+        return new IllegalArgumentException("Cost out of range for " + numberOfNights + " nights and "
+                + numberOfGuests + " guests");
+    }
+
+    /**
+     * Retrieves the index of a unit type that must be priced
+     *
+     * @param unitType the unit type
+     * @return the index
+     * @throws IllegalArgumentException if the unit type has no pricing details
+     */
+    private int requireIndex(String unitType) {
+        int index = indexOf(unitType);
+        if (index < 0) {
+            throw new IllegalArgumentException("No booking info for unit type: " + unitType);
+        }
+        return index;
+    }
+}
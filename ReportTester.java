@@ -1,6 +1,14 @@
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.ArrayList;
+import javax.management.JMException;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
@@ -9,38 +17,19 @@ import java.util.Scanner;
  * The main class to run for this assignment
  */
 public class ReportTester {
+    private static final String BOOKING_INFO_FILE = "bookingInfo";
+    private static final long METRICS_LOG_INTERVAL_MILLIS = 10_000;
+    private static final int DISPLAY_PAGE_SIZE = 20;
 
     /**
-     * Reads the bookingInfo file
+     * Loads the pricing catalog of the bookingInfo file
      *
-     * @return the list of booking info read from the file
-     * @throws FileNotFoundException if the file is not found
+     * @return the pricing table read from the file
+     * @throws NoSuchFileException if the file is not found
+     * @throws IOException if the file cannot be read, or a line is malformed
      */
-    private static List<BookingInfo> readBookingInfoFile() throws FileNotFoundException {
-        File bookingInfoFile = new File("bookingInfo");
-        List<BookingInfo> bookingInfoList = new ArrayList<>();
-
-        try (Scanner bookingInfoFileScanner = new Scanner(bookingInfoFile)) {
-            while (bookingInfoFileScanner.hasNextLine()) {
-                String fileLine = bookingInfoFileScanner.nextLine();
-                final String[] lineTokens = fileLine.split(":");
-
-                bookingInfoList.add(
-                        new BookingInfo(
-                                lineTokens[0].strip(),
-                                Double.parseDouble(lineTokens[1].strip()),
-                                Double.parseDouble(lineTokens[2].strip())
-                        )
-                );
-            }
-        }
-
-        if (bookingInfoList.size() > 2) {
-            System.out.println("bookingInfo.txt has more than 2 entries!");
-            System.exit(1);
-        }
-
-        return bookingInfoList;
+    private static PricingTable readBookingInfoFile() throws IOException {
+        return PricingCatalogLoader.load(Paths.get(BOOKING_INFO_FILE));
     }
 
     /**
@@ -144,12 +133,17 @@ public class ReportTester {
     private static void handleReservationPrompts(Scanner keyboardInput, MusandamResort resort, String reservationType) {
         int numberOfNights = promptForInteger("Enter number of nights: ", keyboardInput);
         Reservation reservation;
-        if ("r".equals(reservationType)) {
-            List<String> requirements = promptForRoomRequirements(keyboardInput);
-            reservation = resort.addRoomReservation(numberOfNights, requirements);
-        } else {
-            int numberOfGuests = promptForInteger("Enter number of guests: ", keyboardInput);
-            reservation = resort.addConferenceReservation(numberOfNights, numberOfGuests);
+        try {
+            if ("r".equals(reservationType)) {
+                List<String> requirements = promptForRoomRequirements(keyboardInput);
+                reservation = resort.addRoomReservation(numberOfNights, requirements);
+            } else {
+                int numberOfGuests = promptForInteger("Enter number of guests: ", keyboardInput);
+                reservation = resort.addConferenceReservation(numberOfNights, numberOfGuests);
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println("Cannot make the reservation: " + e.getMessage());
+            return;
         }
         displayTableHeader();
         displayTabulatedReservation(reservation);
@@ -191,36 +185,225 @@ public class ReportTester {
     }
 
     /**
-     * Displays all the reservations in tabular form
+     * Displays all the reservations in tabular form, one page at a time
+     *
+     * @param keyboardInput the scanner object to read user input
+     * @param listingIndex the ID index the pages are read from
+     */
+    private static void handleDisplayAllReservations(Scanner keyboardInput, ReservationIdIndex listingIndex) {
+        try (ReservationReportWriter reportWriter = ReservationReportWriter.toConsole()) {
+            String cursor = null;
+            do {
+                ReservationPage page = listingIndex.page(cursor, DISPLAY_PAGE_SIZE);
+                reportWriter.writeReport(page);
+                cursor = page.getNextCursor();
+            } while (cursor != null && promptForNextPage(keyboardInput));
+        } catch (IOException e) {
+            System.out.println("Failed to display the reservations: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Asks whether to display the next page of reservations
+     *
+     * @param keyboardInput the scanner object to read user input
+     * @return true to display the next page, false to go back to the menu
+     */
+    private static boolean promptForNextPage(Scanner keyboardInput) {
+        System.out.print("Press Enter for more reservations, or Q to go back to the menu: ");
+        return !keyboardInput.nextLine().strip().equalsIgnoreCase("q");
+    }
+
+    /**
+     * Starts reloading the rates whenever the bookingInfo file changes
      *
      * @param resort the resort instance
+     * @return the running watcher, or null if the file cannot be watched
      */
-    private static void handleDisplayAllReservations(MusandamResort resort) {
-        displayTableHeader();
-        for (Reservation reservation : resort.getReservations()) {
-            displayTabulatedReservation(reservation);
+    private static BookingInfoWatcher startBookingInfoWatcher(MusandamResort resort) {
+        try {
+            return BookingInfoWatcher.start(Paths.get(BOOKING_INFO_FILE), resort);
+        } catch (IOException e) {
+            System.out.println("Cannot watch the bookingInfo file, rates will not be reloaded.");
+            return null;
         }
     }
 
     /**
-     * Main method
+     * Retrieves the value following an option in the program arguments
      *
      * @param args the program arguments
+     * @param option the option name, for example "--journal"
+     * @return the value of the option, or null if the option is not given
      */
-    public static void main(String[] args) {
-        System.out.println("**** Welcome to Musandam Resort ****");
-        int menuChoice = 0;
+    private static String optionValue(String[] args, String option) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (option.equals(args[i])) {
+                return args[i + 1];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Restores the reservations saved in the journal directory and starts saving new changes there
+     *
+     * @param resort the resort instance
+     * @param journalDirectory the journal directory
+     * @return the attached journal
+     */
+    private static ReservationJournal attachJournal(MusandamResort resort, String journalDirectory) {
+        try {
+            ReservationJournal journal = ReservationJournal.attach(Paths.get(journalDirectory), resort);
+            System.out.println("Restored " + resort.getReservations().size() + " reservations from " + journalDirectory);
+            return journal;
+        } catch (IOException e) {
+            System.out.println("Cannot open the reservation journal: " + e.getMessage());
+            System.exit(1);
+            return null;
+        }
+    }
 
-        List<BookingInfo> bookingInfoList = null;
+    /**
+     * Snapshots and closes the journal so the next start replays as little as possible
+     *
+     * @param journal the journal to close
+     */
+    private static void closeJournal(ReservationJournal journal) {
+        try {
+            journal.snapshot();
+            journal.close();
+        } catch (IOException e) {
+            System.out.println("Failed to save the reservation journal: " + e.getMessage());
+        }
+    }
 
+    /**
+     * Loads the reservations of a dump file into the resort
+     *
+     * When a journal is attached, it is snapshotted afterwards so the loaded reservations are kept
+     *
+     * @param resort the resort instance
+     * @param dumpFile the dump file
+     * @param journal the attached journal, or null
+     */
+    private static void importDump(MusandamResort resort, String dumpFile, ReservationJournal journal) {
         try {
-            bookingInfoList = readBookingInfoFile();
-        } catch (FileNotFoundException e) {
-            System.out.println("Missing bookingInfo.txt file!");
+            int count = ReservationDump.load(Paths.get(dumpFile), resort);
+            System.out.println("Imported " + count + " reservations from " + dumpFile);
+            if (journal != null) {
+                journal.snapshot();
+            }
+        } catch (IOException | IllegalStateException e) {
+            System.out.println("Cannot import the reservations: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Writes the reservations of the resort to a dump file
+     *
+     * @param resort the resort instance
+     * @param dumpFile the dump file
+     */
+    private static void exportDump(MusandamResort resort, String dumpFile) {
+        try {
+            int count = ReservationDump.export(resort, Paths.get(dumpFile));
+            System.out.println("Exported " + count + " reservations to " + dumpFile);
+        } catch (IOException e) {
+            System.out.println("Failed to export the reservations: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Adds the rooms and halls that can be reserved by date
+     *
+     * @param resort the resort instance
+     * @param units comma separated type:first-last ranges, for example room:101-120,conference:1-3
+     */
+    private static void addUnits(MusandamResort resort, String units) {
+        try {
+            for (String range : units.split(",")) {
+                String[] typeAndNumbers = range.strip().split(":");
+                String[] numbers = typeAndNumbers[1].split("-");
+                int first = Integer.parseInt(numbers[0].strip());
+                int last = numbers.length > 1 ? Integer.parseInt(numbers[1].strip()) : first;
+                for (int unitNumber = first; unitNumber <= last; unitNumber++) {
+                    resort.addUnit(typeAndNumbers[0].strip(), unitNumber);
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.out.println("Invalid --units value " + units + ", expected for example room:101-120,conference:1-3");
             System.exit(1);
         }
+    }
 
-        MusandamResort resort = new MusandamResort(bookingInfoList);
+    /**
+     * Starts serving the resort over HTTP alongside the menu
+     *
+     * Turns off Nagle's algorithm for the JDK HTTP server first, as this process serves
+     * nothing else over HTTP
+     *
+     * @param resort the resort instance, backed by a thread-safe store
+     * @param port the port to listen on
+     * @return the running server
+     */
+    private static ReservationHttpServer startHttpServer(MusandamResort resort, String port) {
+        try {
+            ReservationHttpServer.enableNoDelay();
+            ReservationHttpServer server = ReservationHttpServer.start(resort, Integer.parseInt(port));
+            System.out.println("Serving reservations on http://localhost:" + server.getPort() + "/reservations");
+            return server;
+        } catch (NumberFormatException | IOException e) {
+            System.out.println("Cannot start the HTTP server on port " + port + ": " + e.getMessage());
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /**
+     * Measures the desk operations and exposes the metrics through JMX
+     *
+     * @param resort the resort instance
+     * @return the enabled metrics
+     */
+    private static ReservationMetrics enableMetrics(MusandamResort resort) {
+        ReservationMetrics metrics = new ReservationMetrics();
+        resort.setMetrics(metrics);
+        try {
+            metrics.register();
+        } catch (JMException e) {
+            System.out.println("Cannot register the metrics with JMX: " + e.getMessage());
+        }
+        return metrics;
+    }
+
+    /**
+     * Starts appending the metrics of each interval to a file
+     *
+     * @param metrics the enabled metrics
+     * @param logFile the file to append to
+     * @return the running reporter, or null if the file cannot be opened
+     */
+    private static Closeable startMetricsLog(ReservationMetrics metrics, String logFile) {
+        try {
+            Writer output = Files.newBufferedWriter(Paths.get(logFile), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            return metrics.startReporting(output, METRICS_LOG_INTERVAL_MILLIS);
+        } catch (IOException e) {
+            System.out.println("Cannot open the metrics log: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Shows the menu and runs the chosen services until the user exits
+     *
+     * @param resort the resort instance
+     * @param listingIndex the ID index the reservation listing is paged from
+     */
+    private static void runMenu(MusandamResort resort, ReservationIdIndex listingIndex) {
+        int menuChoice = 0;
 
         try (Scanner keyboardInput = new Scanner(System.in)) {
             while (menuChoice != 5) {
@@ -239,7 +422,7 @@ public class ReportTester {
                         handleCancelReservation(keyboardInput, resort);
                         break;
                     case 4:
-                        handleDisplayAllReservations(resort);
+                        handleDisplayAllReservations(keyboardInput, listingIndex);
                         break;
                     case 5:
                         System.out.println("Thank you for using the reservation system.");
@@ -250,4 +433,117 @@ public class ReportTester {
             }
         }
     }
+
+    /**
+     * Runs a command script instead of the interactive menu
+     *
+     * @param resort the resort instance
+     * @param script the script file, or "-" to read standard input
+     * @param echoResults whether to print the reservation of each command
+     */
+    private static void runBatch(MusandamResort resort, String script, boolean echoResults) {
+        try (ReservationReportWriter output = ReservationReportWriter.toConsole();
+             InputStream input = "-".equals(script) ? System.in : new FileInputStream(script)) {
+            new BatchCommandRunner(resort, output, echoResults).run(input);
+        } catch (IOException e) {
+            System.out.println("Failed to run the batch script: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Main method
+     *
+     * Pass --watch to reload the rates whenever the bookingInfo file changes,
+     * --journal followed by a directory to keep the reservations across restarts, and
+     * --batch followed by a script file, or - for standard input, to run commands without
+     * the menu; add --quiet to print only errors and the summary. Pass --http followed by a
+     * port to also serve the reservations as an HTTP/JSON API while the menu runs, and --units
+     * followed by ranges such as room:101-120,conference:1-3 to let units be reserved by date.
+     * Pass --metrics to measure the desk operations and expose them through JMX, and
+     * --metrics-log followed by a file to also append the metrics there every 10 seconds.
+     * Pass --import followed by a dump file to load its reservations at start, and --export
+     * followed by a dump file to write every reservation there on exit
+     *
+     * @param args the program arguments
+     */
+    public static void main(String[] args) {
+        System.out.println("**** Welcome to Musandam Resort ****");
+
+        PricingTable pricingTable = null;
+
+        try {
+            pricingTable = readBookingInfoFile();
+        } catch (NoSuchFileException e) {
+            System.out.println("Missing bookingInfo.txt file!");
+            System.exit(1);
+        } catch (IOException e) {
+            System.out.println("Cannot load the bookingInfo file: " + e.getMessage());
+            System.exit(1);
+        }
+
+        boolean watchBookingInfo = Arrays.asList(args).contains("--watch");
+
+        String journalDirectory = optionValue(args, "--journal");
+        String batchScript = optionValue(args, "--batch");
+        String httpPort = optionValue(args, "--http");
+
+        // HTTP requests book from many threads at once, next to the menu, so bookings go
+        // to a store that takes concurrent writers
+        MusandamResort resort = httpPort != null
+                ? new MusandamResort(pricingTable, new VersionedReservationStore())
+                : new MusandamResort(pricingTable);
+
+        String units = optionValue(args, "--units");
+        if (units != null) {
+            addUnits(resort, units);
+        }
+
+        String metricsLog = optionValue(args, "--metrics-log");
+        ReservationMetrics metrics = Arrays.asList(args).contains("--metrics") || metricsLog != null
+                ? enableMetrics(resort)
+                : null;
+        Closeable metricsReporter = metricsLog != null ? startMetricsLog(metrics, metricsLog) : null;
+
+        ReservationJournal journal = journalDirectory != null ? attachJournal(resort, journalDirectory) : null;
+        String importFile = optionValue(args, "--import");
+        if (importFile != null) {
+            importDump(resort, importFile, journal);
+        }
+        String exportFile = optionValue(args, "--export");
+        BookingInfoWatcher watcher = watchBookingInfo ? startBookingInfoWatcher(resort) : null;
+        // The menu listing pages through the booked IDs, attached before HTTP requests start booking
+        ReservationIdIndex listingIndex = batchScript == null ? ReservationIdIndex.attach(resort) : null;
+        ReservationHttpServer httpServer = httpPort != null ? startHttpServer(resort, httpPort) : null;
+
+        try {
+            if (batchScript != null) {
+                runBatch(resort, batchScript, !Arrays.asList(args).contains("--quiet"));
+            } else {
+                runMenu(resort, listingIndex);
+            }
+        } finally {
+            if (exportFile != null) {
+                exportDump(resort, exportFile);
+            }
+            if (metricsReporter != null) {
+                try {
+                    metricsReporter.close();
+                } catch (IOException e) {
+                    System.out.println("Failed to close the metrics log: " + e.getMessage());
+                }
+            }
+            if (metrics != null) {
+                metrics.unregister();
+            }
+            if (httpServer != null) {
+                httpServer.close();
+            }
+            if (watcher != null) {
+                watcher.close();
+            }
+            if (journal != null) {
+                closeJournal(journal);
+            }
+        }
+    }
 }
@@ -0,0 +1,236 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shared dictionary assigning each distinct guest requirement its own bit
+ *
+ * A booking's requirements are stored as a bitmask of these bits, so repeated values such as
+ * "TV" or "internet" are kept once, and bookings can be filtered with a bitwise test.
+ * Requirements decode in the order they were first seen by the dictionary, and the rendered
+ * detail string is cached per distinct mask.
+ *
+ * Thread-safe. Holds at most 63 distinct requirements; the top bit is never assigned,
+ * so the all-ones mask is free to mean "matches nothing". Requirements first seen once all
+ * bits are taken get no bit: bookings keep them as plain strings next to their mask, listed
+ * by unencoded, and pass them back to decode and render. Searches for such requirements
+ * narrow the bookings by the mask of the other requirements, then compare the strings
+ */
+public final class RequirementDictionary {
+    public static final int MAX_REQUIREMENTS = Long.SIZE - 1;
+
+    private static final RequirementDictionary SHARED = new RequirementDictionary();
+    private static final String DETAILS_PREFIX = "With requirements: ";
+
+    private final Map<String, Integer> bitsByRequirement = new ConcurrentHashMap<>();
+    private final String[] requirementsByBit = new String[MAX_REQUIREMENTS];
+    private final Map<Long, List<String>> decodedMasks = new ConcurrentHashMap<>();
+    private final Map<Long, String> renderedDetails = new ConcurrentHashMap<>();
+    private volatile int assignedBits;
+
+    /**
+     * Creates an empty dictionary
+     */
+    public RequirementDictionary() {
+    }
+
+    /**
+     * Retrieves the dictionary shared by all room reservations
+     *
+     * @return the shared dictionary
+     */
+    public static RequirementDictionary shared() {
+        return SHARED;
+    }
+
+    /**
+     * Encodes requirements as a bitmask, assigning bits to requirements seen for the first time
+     *
+     * Empty requirements are ignored, and repeated requirements are kept once. Requirements
+     * that get no bit because the dictionary is full are left out of the mask; keep them
+     * with unencoded
+     *
+     * @param requirements the guest requirements
+     * @return the bitmask of the requirements that have a bit
+     */
+    public long encode(List<String> requirements) {
+        long mask = 0;
+        for (String requirement : requirements) {
+            if (!requirement.isEmpty()) {
+                int bit = bitOf(requirement, true);
+                if (bit != -1) {
+                    mask |= 1L << bit;
+                }
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Lists the requirements that have no bit, once they went through encode
+     *
+     * Bits are never taken back, so a requirement encode left out of the mask stays
+     * without a bit
+     *
+     * @param requirements the guest requirements
+     * @return the distinct non-empty requirements without a bit, in the given order,
+     *         or an empty list, which is the usual case
+     */
+    public List<String> unencoded(List<String> requirements) {
+        List<String> unencoded = null;
+        for (String requirement : requirements) {
+            if (!requirement.isEmpty() && bitOf(requirement, false) == -1) {
+                if (unencoded == null) {
+                    unencoded = new ArrayList<>(2);
+                }
+                if (!unencoded.contains(requirement)) {
+                    unencoded.add(requirement);
+                }
+            }
+        }
+        return unencoded == null ? Collections.emptyList() : Collections.unmodifiableList(unencoded);
+    }
+
+    /**
+     * Checks whether every bit is assigned, so that requirements seen from now on get no bit
+     *
+     * @return true once the dictionary holds MAX_REQUIREMENTS requirements
+     */
+    public boolean isFull() {
+        return assignedBits == MAX_REQUIREMENTS;
+    }
+
+    /**
+     * Builds the mask of those of the given requirements that have a bit, without assigning bits
+     *
+     * @param requirements the requirements
+     * @return the bitmask of the requirements that have a bit, 0 if none has one
+     */
+    public long encodedMaskOf(List<String> requirements) {
+        long mask = 0;
+        for (String requirement : requirements) {
+            int bit = bitOf(requirement, false);
+            if (bit != -1) {
+                mask |= 1L << bit;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Builds the mask matching bookings that need all the given requirements
+     *
+     * @param requirements the requirements to look for
+     * @return the bitmask of the requirements, or -1 if a requirement has no bit, which no mask
+     *         matches: the requirement was never booked, or, once the dictionary is full, it is
+     *         kept unencoded and has to be matched by string
+     */
+    public long maskOf(String... requirements) {
+        long mask = 0;
+        for (String requirement : requirements) {
+            int bit = bitOf(requirement, false);
+            if (bit == -1) {
+                return -1;
+            }
+            mask |= 1L << bit;
+        }
+        return mask;
+    }
+
+    /**
+     * Decodes a bitmask into the list of requirements
+     *
+     * @param mask the bitmask
+     * @return the shared, unmodifiable list of requirements
+     */
+    public List<String> decode(long mask) {
+        List<String> requirements = decodedMasks.get(mask);
+        if (requirements == null) {
+            List<String> decoded = new ArrayList<>(Long.bitCount(mask));
+            for (long remaining = mask; remaining != 0; remaining &= remaining - 1) {
+                decoded.add(requirementsByBit[Long.numberOfTrailingZeros(remaining)]);
+            }
+            requirements = Collections.unmodifiableList(decoded);
+            decodedMasks.putIfAbsent(mask, requirements);
+        }
+        return requirements;
+    }
+
+    /**
+     * Decodes a bitmask followed by the requirements that have no bit
+     *
+     * @param mask the bitmask
+     * @param unencoded the requirements without a bit, as listed by unencoded
+     * @return the unmodifiable list of requirements, shared when none are unencoded
+     */
+    public List<String> decode(long mask, List<String> unencoded) {
+        List<String> encoded = decode(mask);
+        if (unencoded.isEmpty()) {
+            return encoded;
+        }
+        List<String> requirements = new ArrayList<>(encoded.size() + unencoded.size());
+        requirements.addAll(encoded);
+        requirements.addAll(unencoded);
+        return Collections.unmodifiableList(requirements);
+    }
+
+    /**
+     * Renders the additional details of a room reservation with the given requirements
+     *
+     * @param mask the bitmask of the requirements
+     * @return the cached detail string, for example "With requirements: TV coffee"
+     */
+    public String render(long mask) {
+        String details = renderedDetails.get(mask);
+        if (details == null) {
+            details = DETAILS_PREFIX + String.join(" ", decode(mask));
+            renderedDetails.putIfAbsent(mask, details);
+        }
+        return details;
+    }
+
+    /**
+     * Renders the additional details of a room reservation with requirements that have no bit
+     *
+     * @param mask the bitmask of the requirements
+     * @param unencoded the requirements without a bit, as listed by unencoded
+     * @return the detail string, cached when none are unencoded
+     */
+    public String render(long mask, List<String> unencoded) {
+        return unencoded.isEmpty() ? render(mask) : DETAILS_PREFIX + String.join(" ", decode(mask, unencoded));
+    }
+
+    /**
+     * Retrieves the bit of a requirement
+     *
+     * @param requirement the requirement
+     * @param assign whether to assign a bit to a requirement seen for the first time
+     * @return the bit index, or -1 if the requirement has no bit and assign is false,
+     *         or all bits are assigned
+     */
+    private int bitOf(String requirement, boolean assign) {
+        Integer bit = bitsByRequirement.get(requirement);
+        if (bit != null) {
+            return bit;
+        }
+        if (!assign) {
+            return -1;
+        }
+        synchronized (this) {
+            bit = bitsByRequirement.get(requirement);
+            if (bit != null) {
+                return bit;
+            }
+            if (assignedBits == MAX_REQUIREMENTS) {
+                return -1;
+            }
+            int newBit = assignedBits;
+            requirementsByBit[newBit] = requirement;
+            assignedBits = newBit + 1;
+            bitsByRequirement.put(requirement, newBit);
+            return newBit;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks that room bookings keep working once the shared RequirementDictionary is full
+ *
+ * Books more distinct requirements than the dictionary has bits for, then books, searches,
+ * encodes and re-stores rooms whose requirements got no bit. The dictionary is shared by the
+ * whole process, so the check runs in a JVM of its own and exits with status 1 on failure.
+ *
+ * Run with: java RequirementDictionaryTest
+ */
+public class RequirementDictionaryTest {
+    private static final int DISTINCT_REQUIREMENTS = RequirementDictionary.MAX_REQUIREMENTS + 10;
+
+    private RequirementDictionaryTest() {
+    }
+
+    /**
+     * Runs the checks
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        try {
+            run();
+            System.out.println("RequirementDictionaryTest passed");
+        } catch (AssertionError e) {
+            System.out.println("RequirementDictionaryTest failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Books past the dictionary limit and checks every path keeping the requirements
+     */
+    private static void run() {
+        MusandamResort resort = new MusandamResort(List.of(new BookingInfo(RoomReservation.UNIT_TYPE, 0.1, 100)));
+
+        int firstId = resort.addRoomReservation(1, List.of("req0")).getReservationId();
+        for (int i = 1; i < DISTINCT_REQUIREMENTS; i++) {
+            Reservation booked = resort.addRoomReservation(1, List.of("req" + i));
+            check(booked.getReservationId() == firstId + i, "IDs are consecutive past the limit");
+            check(((RoomReservation) booked).getRequirements().equals(List.of("req" + i)),
+                    "requirement req" + i + " is kept");
+        }
+
+        RoomReservation mixed = (RoomReservation) resort.addRoomReservation(2, List.of("req0", "coffee", "TV", "coffee"));
+        check(mixed.getReservationId() == firstId + DISTINCT_REQUIREMENTS, "no ID is lost");
+        check(mixed.getRequirements().equals(List.of("req0", "coffee", "TV")), "requirements decode, got " + mixed.getRequirements());
+        check(mixed.getAdditionalDetails().equals("With requirements: req0 coffee TV"),
+                "requirements render, got " + mixed.getAdditionalDetails());
+        check(resort.getReservationById(mixed.getReservationId()) == mixed, "the booking is stored");
+
+        check(RequirementDictionary.shared().maskOf("coffee") == -1, "unencoded requirements match no mask");
+        check(resort.findRoomReservationsRequiring("coffee").equals(List.of(mixed)), "unencoded requirements are searched by string");
+        check(resort.findRoomReservationsRequiring("req0", "TV").equals(List.of(mixed)),
+                "encoded and unencoded requirements are searched together");
+        check(resort.findRoomReservationsRequiring("req1", "TV").isEmpty(), "every requirement must match");
+        check(resort.findRoomReservationsRequiring("never booked").isEmpty(), "requirements never booked match nothing");
+        check(resort.findRoomReservationsRequiring("req0").size() == 2, "encoded requirements are still searched");
+        check(resort.findRoomReservationsRequiring("req" + (DISTINCT_REQUIREMENTS - 1)).size() == 1,
+                "requirements booked past the limit are searched");
+
+        ByteBuffer buffer = ByteBuffer.allocate(ReservationCodec.encodedSize(mixed));
+        ReservationCodec.write(buffer, mixed);
+        buffer.flip();
+        RoomReservation decoded = (RoomReservation) ReservationCodec.read(buffer);
+        check(decoded.getRequirements().equals(mixed.getRequirements()), "the codec keeps unencoded requirements");
+
+        ColumnarReservationStore columnar = new ColumnarReservationStore();
+        columnar.put(mixed);
+        check(columnar.get(mixed.getReservationId()).getAdditionalDetails().equals(mixed.getAdditionalDetails()),
+                "the columnar store keeps unencoded requirements");
+        MusandamResort columnarResort = new MusandamResort(List.of(new BookingInfo(RoomReservation.UNIT_TYPE, 0.1, 100)),
+                new ColumnarReservationStore());
+        columnarResort.addRoomReservation(1, List.of("req0", "coffee"));
+        columnarResort.addRoomReservation(1, List.of("req0"));
+        check(columnarResort.findRoomReservationsRequiring("req0", "coffee").size() == 1,
+                "the columnar store searches unencoded requirements");
+
+        List<Reservation> batch = resort.addReservations(Arrays.asList(
+                BookingRequest.room(1, List.of("tea")), BookingRequest.room(1, List.of("req1", "tea"))));
+        check(((RoomReservation) batch.get(1)).getRequirements().equals(List.of("req1", "tea")),
+                "bulk bookings keep unencoded requirements");
+    }
+
+    /**
+     * Fails the run if a condition does not hold
+     *
+     * @param condition the condition
+     * @param description what the condition checks
+     */
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            throw new AssertionError(description);
+        }
+    }
+}
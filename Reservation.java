@@ -1,29 +1,74 @@
+import java.time.LocalDate;
+
 /**
  * Base abstract reservation class
  *
  * This class includes all the common properties of reservations
  */
 public abstract class Reservation {
-    private static int currentReservationId = 1;
+    private static final ReservationIdSequence ID_SEQUENCE = new ReservationIdSequence(1);
 
     private int reservationId;
     private int numberOfNights;
-    private double costOfReservation;
+    private long costInCents;
+    private LocalDate checkInDate;
+    private int unitNumber;
 
     /**
      * Constructor to be inherited by concrete subclasses
      *
-     * Each call increments the static variable used to keep
-     * track of the next reservation ID to be assigned
+     * The ID is assigned by the caller, usually from the sequence of a resort
      *
+     * @param reservationId the reservation ID
      * @param numberOfNights the number of nights reserved
-     * @param costOfReservation total cost of the reservation
+     * @param costInCents total cost of the reservation in cents
+     * @param checkInDate the date of the first night, or null if no date was booked
+     * @param unitNumber the number of the reserved room or hall, or 0 if no date was booked
      */
-    protected Reservation(int numberOfNights, double costOfReservation) {
-        this.reservationId = Reservation.currentReservationId;
+    protected Reservation(int reservationId, int numberOfNights, long costInCents,
+                          LocalDate checkInDate, int unitNumber) {
+        this.reservationId = reservationId;
         this.numberOfNights = numberOfNights;
-        this.costOfReservation = costOfReservation;
-        Reservation.currentReservationId++;
+        this.costInCents = costInCents;
+        this.checkInDate = checkInDate;
+        this.unitNumber = checkInDate == null ? 0 : unitNumber;
+    }
+
+    /**
+     * Rejects a missing check-in date
+     *
+     * @param checkInDate the check-in date
+     * @return the check-in date
+     * @throws IllegalArgumentException if the date is null
+     */
+    static LocalDate requireDate(LocalDate checkInDate) {
+        if (checkInDate == null) {
+            throw new IllegalArgumentException("Missing check-in date");
+        }
+        return checkInDate;
+    }
+
+    /**
+     * Rejects a unit number that is not positive
+     *
+     * @param unitNumber the unit number
+     * @return the unit number
+     * @throws IllegalArgumentException if the unit number is not positive
+     */
+    static int requireUnit(int unitNumber) {
+        if (unitNumber <= 0) {
+            throw new IllegalArgumentException("Invalid unit number: " + unitNumber);
+        }
+        return unitNumber;
+    }
+
+    /**
+     * Retrieves the sequence handing out the IDs of new reservations
+     *
+     * @return the reservation ID sequence
+     */
+    public static ReservationIdSequence getIdSequence() {
+        return ID_SEQUENCE;
     }
 
     /**
@@ -50,7 +95,52 @@ public abstract class Reservation {
      * @return the total cost of reservation
      */
     public double getCostOfReservation() {
-        return costOfReservation;
+        return Money.toAmount(costInCents);
+    }
+
+    /**
+     * Retrieves the total cost of reservation in whole cents
+     *
+     * @return the total cost of reservation in cents
+     */
+    public long getCostInCents() {
+        return costInCents;
+    }
+
+    /**
+     * Checks whether the reservation holds a specific unit from a check-in date
+     *
+     * @return true if the reservation has a check-in date and unit
+     */
+    public boolean isScheduled() {
+        return checkInDate != null;
+    }
+
+    /**
+     * Retrieves the date of the first night
+     *
+     * @return the check-in date, or null if no date was booked
+     */
+    public LocalDate getCheckInDate() {
+        return checkInDate;
+    }
+
+    /**
+     * Retrieves the date the unit is left, the morning after the last night
+     *
+     * @return the check-out date, or null if no date was booked
+     */
+    public LocalDate getCheckOutDate() {
+        return checkInDate == null ? null : checkInDate.plusDays(numberOfNights);
+    }
+
+    /**
+     * Retrieves the number of the reserved room or hall
+     *
+     * @return the unit number, or 0 if no date was booked
+     */
+    public int getUnitNumber() {
+        return unitNumber;
     }
 
     /**
@@ -70,6 +160,18 @@ public abstract class Reservation {
      */
     public abstract String getAdditionalDetails();
 
+    /**
+     * Appends the additional details to a builder
+     *
+     * Subclasses override this to write the details without building an intermediate string
+     *
+     * @param builder the builder to append to
+     * @return the builder
+     */
+    public StringBuilder appendAdditionalDetails(StringBuilder builder) {
+        return builder.append(getAdditionalDetails());
+    }
+
     /**
      * Converts the Reservation object to a human-readable string
      *
@@ -77,6 +179,6 @@ public abstract class Reservation {
      */
     @Override
     public String toString() {
-        return "Reservation, " + reservationId + ", " + numberOfNights + ", " + costOfReservation;
+        return "Reservation, " + reservationId + ", " + numberOfNights + ", " + getCostOfReservation();
     }
 }
@@ -0,0 +1,242 @@
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running revenue and occupancy aggregates of a resort
+ *
+ * Registered as a listener, it updates its counters in constant time on every booking and
+ * cancellation, so the figures are available at any time without scanning the reservations.
+ * Counters are striped LongAdders, so bookings from many threads do not contend on them.
+ * The same figures can be rebuilt from scratch with a parallel fork-join pass over a list of
+ * reservations, to seed the aggregates or to check them against a very large store
+ */
+public class ReservationAnalytics implements ReservationListener {
+    private static final int PARALLEL_THRESHOLD = 16_384;
+    private static final int HISTOGRAM_BUCKETS = ReservationTotals.MAX_HISTOGRAM_NIGHTS + 1;
+
+    private final LongAdder[] counts = newAdders(ReservationTotals.TYPE_COUNT);
+    private final LongAdder[] nights = newAdders(ReservationTotals.TYPE_COUNT);
+    private final LongAdder[] revenueCents = newAdders(ReservationTotals.TYPE_COUNT);
+    private final LongAdder[][] nightsHistograms = new LongAdder[ReservationTotals.TYPE_COUNT][];
+
+    /**
+     * Creates empty aggregates
+     */
+    public ReservationAnalytics() {
+        for (int type = 0; type < ReservationTotals.TYPE_COUNT; type++) {
+            nightsHistograms[type] = newAdders(HISTOGRAM_BUCKETS);
+        }
+    }
+
+    /**
+     * Creates aggregates seeded with the current reservations of a resort and keeps them up to date
+     *
+     * Must be called before other threads start booking on the resort
+     *
+     * @param resort the resort to follow
+     * @return the attached aggregates
+     */
+    public static ReservationAnalytics attach(MusandamResort resort) {
+        ReservationAnalytics analytics = new ReservationAnalytics();
+        analytics.seed(recompute(resort.getReservations()));
+        resort.addReservationListener(analytics);
+        return analytics;
+    }
+
+    /**
+     * Allocates an array of zeroed adders
+     *
+     * @param length the number of adders
+     * @return the adders
+     */
+    private static LongAdder[] newAdders(int length) {
+        LongAdder[] adders = new LongAdder[length];
+        for (int i = 0; i < length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * Counts a new reservation
+     *
+     * @param reservation the new reservation
+     */
+    @Override
+    public void reservationAdded(Reservation reservation) {
+        update(reservation, 1);
+    }
+
+    /**
+     * Uncounts a cancelled reservation
+     *
+     * @param reservation the cancelled reservation
+     */
+    @Override
+    public void reservationCancelled(Reservation reservation) {
+        update(reservation, -1);
+    }
+
+    /**
+     * Adds or removes a reservation from every counter
+     *
+     * @param reservation the reservation
+     * @param sign 1 to add, -1 to remove
+     */
+    private void update(Reservation reservation, int sign) {
+        int type = ReservationTotals.typeIndex(reservation);
+        counts[type].add(sign);
+        nights[type].add((long) sign * reservation.getNumberOfNights());
+        revenueCents[type].add(sign * reservation.getCostInCents());
+        nightsHistograms[type][ReservationTotals.histogramBucket(reservation.getNumberOfNights())].add(sign);
+    }
+
+    /**
+     * Adds precomputed figures to the counters
+     *
+     * @param totals the figures to add
+     */
+    private void seed(ReservationTotals totals) {
+        for (int type = 0; type < ReservationTotals.TYPE_COUNT; type++) {
+            counts[type].add(totals.getCount(type));
+            nights[type].add(totals.getNights(type));
+            revenueCents[type].add(totals.getRevenueCents(type));
+            for (int bucket = 0; bucket < HISTOGRAM_BUCKETS; bucket++) {
+                nightsHistograms[type][bucket].add(totals.getStayCount(type, bucket));
+            }
+        }
+    }
+
+    /**
+     * Reads the current figures
+     *
+     * Each counter is read atomically, but figures changed by bookings running on other
+     * threads during the read may be only partly included
+     *
+     * @return the current totals
+     */
+    public ReservationTotals getTotals() {
+        Accumulator accumulator = new Accumulator();
+        for (int type = 0; type < ReservationTotals.TYPE_COUNT; type++) {
+            accumulator.counts[type] = counts[type].sum();
+            accumulator.nights[type] = nights[type].sum();
+            accumulator.revenueCents[type] = revenueCents[type].sum();
+            for (int bucket = 0; bucket < HISTOGRAM_BUCKETS; bucket++) {
+                accumulator.nightsHistograms[type][bucket] = nightsHistograms[type][bucket].sum();
+            }
+        }
+        return accumulator.toTotals();
+    }
+
+    /**
+     * Checks the running figures against a full recompute of the given reservations
+     *
+     * @param reservations the reservations the figures should describe
+     * @return true if the running figures match
+     */
+    public boolean verify(List<Reservation> reservations) {
+        return getTotals().equals(recompute(reservations));
+    }
+
+    /**
+     * Computes the figures of a list of reservations from scratch on the common fork-join pool
+     *
+     * @param reservations the reservations, expected to support fast random access
+     * @return the computed totals
+     */
+    public static ReservationTotals recompute(List<Reservation> reservations) {
+        return ForkJoinPool.commonPool().invoke(new RecomputeTask(reservations, 0, reservations.size())).toTotals();
+    }
+
+    /**
+     * Mutable per-type figures used while recomputing
+     */
+    private static final class Accumulator {
+        private final long[] counts = new long[ReservationTotals.TYPE_COUNT];
+        private final long[] nights = new long[ReservationTotals.TYPE_COUNT];
+        private final long[] revenueCents = new long[ReservationTotals.TYPE_COUNT];
+        private final long[][] nightsHistograms = new long[ReservationTotals.TYPE_COUNT][HISTOGRAM_BUCKETS];
+
+        /**
+         * Counts a reservation
+         *
+         * @param reservation the reservation
+         */
+        private void add(Reservation reservation) {
+            int type = ReservationTotals.typeIndex(reservation);
+            counts[type]++;
+            nights[type] += reservation.getNumberOfNights();
+            revenueCents[type] += reservation.getCostInCents();
+            nightsHistograms[type][ReservationTotals.histogramBucket(reservation.getNumberOfNights())]++;
+        }
+
+        /**
+         * Adds the figures of another accumulator to this one
+         *
+         * @param other the accumulator to merge
+         * @return this accumulator
+         */
+        private Accumulator merge(Accumulator other) {
+            for (int type = 0; type < ReservationTotals.TYPE_COUNT; type++) {
+                counts[type] += other.counts[type];
+                nights[type] += other.nights[type];
+                revenueCents[type] += other.revenueCents[type];
+                for (int bucket = 0; bucket < HISTOGRAM_BUCKETS; bucket++) {
+                    nightsHistograms[type][bucket] += other.nightsHistograms[type][bucket];
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Freezes the figures
+         *
+         * @return the totals
+         */
+        private ReservationTotals toTotals() {
+            return new ReservationTotals(counts, nights, revenueCents, nightsHistograms);
+        }
+    }
+
+    /**
+     * Fork-join task counting a range of a list, splitting it in halves while it is large
+     */
+    private static final class RecomputeTask extends RecursiveTask<Accumulator> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Reservation> reservations;
+        private final int from;
+        private final int to;
+
+        /**
+         * Creates a task for a range of the list
+         *
+         * @param reservations the reservations
+         * @param from the first index of the range
+         * @param to the index after the last one of the range
+         */
+        private RecomputeTask(List<Reservation> reservations, int from, int to) {
+            this.reservations = reservations;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Accumulator compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                Accumulator accumulator = new Accumulator();
+                for (int i = from; i < to; i++) {
+                    accumulator.add(reservations.get(i));
+                }
+                return accumulator;
+            }
+            int middle = (from + to) >>> 1;
+            RecomputeTask left = new RecomputeTask(reservations, from, middle);
+            left.fork();
+            Accumulator right = new RecomputeTask(reservations, middle, to).compute();
+            return left.join().merge(right);
+        }
+    }
+}
@@ -0,0 +1,548 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Micro-benchmarks for the reservation core
+ *
+ * Measures booking, lookup, cancellation, pricing and full listing on resorts pre-filled with
+ * 1K, 100K and 1M reservations, on one thread against the default store and on every processor
+ * against a StripedReservationStore. Each benchmark warms up before it is measured, and the
+ * results are printed as a table and written as JSON for comparing runs.
+ *
+ * Run with: java ReservationBenchmark [--quick] [--sizes 1000,100000] [--out results.json]
+ */
+public class ReservationBenchmark {
+    private static final int[] DEFAULT_STORE_SIZES = {1_000, 100_000, 1_000_000};
+    private static final int MAX_OPERATIONS_PER_BATCH = 50_000;
+    private static final int LISTED_RESERVATIONS_PER_BATCH = 1_000_000;
+    private static final List<String> REQUIREMENTS = Arrays.asList("TV", "internet", "coffee");
+
+    private static volatile long sink;
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final long iterationNanos;
+    private final ExecutorService workers;
+
+    /**
+     * One benchmarked operation
+     */
+    private interface Operation {
+
+        /**
+         * Performs the timed part of a batch
+         *
+         * @param state the benchmark state
+         * @param from the first operation index of this thread
+         * @param to the operation index after the last one of this thread
+         * @return a value derived from the results, so the work cannot be optimized away
+         */
+        long run(State state, int from, int to);
+
+        /**
+         * Restores the resort to its pre-filled size after a batch, untimed
+         *
+         * @param state the benchmark state
+         * @param operations the number of operations the batch performed
+         */
+        default void reset(State state, int operations) {
+        }
+    }
+
+    /**
+     * The resort under test and the IDs of its reservations
+     */
+    private static final class State {
+        private final MusandamResort resort;
+        private final int[] reservationIds;
+        private final int[] scratchIds;
+
+        /**
+         * Pre-fills a resort
+         *
+         * @param resort the resort to fill
+         * @param storeSize the number of reservations to book
+         */
+        private State(MusandamResort resort, int storeSize) {
+            this.resort = resort;
+            this.reservationIds = new int[storeSize];
+            this.scratchIds = new int[Math.min(storeSize, MAX_OPERATIONS_PER_BATCH)];
+            for (int i = 0; i < storeSize; i++) {
+                reservationIds[i] = book(resort, i).getReservationId();
+            }
+        }
+    }
+
+    /**
+     * Creates a benchmark runner
+     *
+     * @param warmupIterations the number of unrecorded iterations
+     * @param measurementIterations the number of recorded iterations
+     * @param iterationNanos the minimum timed duration of an iteration
+     * @param maximumThreads the largest number of threads a benchmark runs on
+     */
+    private ReservationBenchmark(int warmupIterations, int measurementIterations, long iterationNanos,
+                                 int maximumThreads) {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationNanos = iterationNanos;
+        this.workers = Executors.newFixedThreadPool(maximumThreads, runnable -> {
+            Thread thread = new Thread(runnable, "benchmark-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Books a room or a conference reservation, alternating on the index
+     *
+     * @param resort the resort to book in
+     * @param index the operation index
+     * @return the new reservation
+     */
+    private static Reservation book(MusandamResort resort, int index) {
+        if ((index & 1) == 0) {
+            return resort.addRoomReservation(1 + (index & 7), REQUIREMENTS);
+        }
+        return resort.addConferenceReservation(1 + (index & 7), 10 + (index & 31));
+    }
+
+    /**
+     * Lists the benchmarked operations by name
+     *
+     * @return the operation names
+     */
+    private static String[] operationNames() {
+        return new String[]{
+                "addRoomReservation",
+                "addConferenceReservation",
+                "addReservations",
+                "getReservationById",
+                "cancelReservationById",
+                "computeBaseCostOfReservation",
+                "quoteCents",
+                "getReservations"
+        };
+    }
+
+    /**
+     * Creates the operation with the given name
+     *
+     * @param name the operation name
+     * @return the operation
+     */
+    private static Operation operation(String name) {
+        switch (name) {
+            case "addRoomReservation":
+                return new Operation() {
+                    @Override
+                    public long run(State state, int from, int to) {
+                        long result = 0;
+                        for (int i = from; i < to; i++) {
+                            int id = state.resort.addRoomReservation(3, REQUIREMENTS).getReservationId();
+                            state.scratchIds[i] = id;
+                            result += id;
+                        }
+                        return result;
+                    }
+
+                    @Override
+                    public void reset(State state, int operations) {
+                        cancelScratch(state, operations);
+                    }
+                };
+            case "addConferenceReservation":
+                return new Operation() {
+                    @Override
+                    public long run(State state, int from, int to) {
+                        long result = 0;
+                        for (int i = from; i < to; i++) {
+                            int id = state.resort.addConferenceReservation(3, 20).getReservationId();
+                            state.scratchIds[i] = id;
+                            result += id;
+                        }
+                        return result;
+                    }
+
+                    @Override
+                    public void reset(State state, int operations) {
+                        cancelScratch(state, operations);
+                    }
+                };
+            case "addReservations":
+                return new Operation() {
+                    @Override
+                    public long run(State state, int from, int to) {
+                        List<BookingRequest> requests = new ArrayList<>(to - from);
+                        for (int i = from; i < to; i++) {
+                            requests.add((i & 1) == 0 ? BookingRequest.room(3, REQUIREMENTS) : BookingRequest.conference(3, 20));
+                        }
+                        long result = 0;
+                        int i = from;
+                        for (Reservation reservation : state.resort.addReservations(requests)) {
+                            int id = reservation.getReservationId();
+                            state.scratchIds[i++] = id;
+                            result += id;
+                        }
+                        return result;
+                    }
+
+                    @Override
+                    public void reset(State state, int operations) {
+                        cancelScratch(state, operations);
+                    }
+                };
+            case "getReservationById":
+                return (state, from, to) -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    long result = 0;
+                    for (int i = from; i < to; i++) {
+                        int id = state.reservationIds[random.nextInt(state.reservationIds.length)];
+                        result += state.resort.getReservationById(id).getNumberOfNights();
+                    }
+                    return result;
+                };
+            case "cancelReservationById":
+                return new Operation() {
+                    @Override
+                    public long run(State state, int from, int to) {
+                        long result = 0;
+                        for (int i = from; i < to; i++) {
+                            result += state.resort.cancelReservationById(state.reservationIds[i]).getNumberOfNights();
+                        }
+                        return result;
+                    }
+
+                    @Override
+                    public void reset(State state, int operations) {
+                        // Re-book the cancelled slots and rotate them to the end, so the next batch cancels fresh IDs
+                        int[] ids = state.reservationIds;
+                        for (int i = 0; i < operations; i++) {
+                            ids[i] = book(state.resort, i).getReservationId();
+                        }
+                        int[] rotated = new int[ids.length];
+                        System.arraycopy(ids, operations, rotated, 0, ids.length - operations);
+                        System.arraycopy(ids, 0, rotated, ids.length - operations, operations);
+                        System.arraycopy(rotated, 0, ids, 0, ids.length);
+                    }
+                };
+            case "computeBaseCostOfReservation":
+                return (state, from, to) -> {
+                    PricingTable pricingTable = state.resort.getPricingTable();
+                    double result = 0;
+                    for (int i = from; i < to; i++) {
+                        result += pricingTable.computeBaseCost((i & 1) == 0 ? "room" : "conference", 1 + (i & 15));
+                    }
+                    return (long) result;
+                };
+            case "quoteCents":
+                return (state, from, to) -> {
+                    PricingTable pricingTable = state.resort.getPricingTable();
+                    int room = pricingTable.indexOf("room");
+                    int conference = pricingTable.indexOf("conference");
+                    int count = to - from;
+                    int[] unitTypes = new int[count];
+                    int[] nights = new int[count];
+                    int[] guests = new int[count];
+                    long[] costs = new long[count];
+                    for (int i = 0; i < count; i++) {
+                        unitTypes[i] = ((from + i) & 1) == 0 ? room : conference;
+                        nights[i] = 1 + ((from + i) & 15);
+                        guests[i] = (from + i) & 31;
+                    }
+                    pricingTable.quoteCents(unitTypes, nights, guests, costs, count);
+                    long result = 0;
+                    for (int i = 0; i < count; i++) {
+                        result += costs[i];
+                    }
+                    return result;
+                };
+            case "getReservations":
+                return (state, from, to) -> {
+                    long result = 0;
+                    for (int i = from; i < to; i++) {
+                        result += state.resort.getReservations().size();
+                    }
+                    return result;
+                };
+            default:
+                throw new IllegalArgumentException("Unknown benchmark: " + name);
+        }
+    }
+
+    /**
+     * Cancels the reservations booked by an add batch
+     *
+     * @param state the benchmark state
+     * @param operations the number of reservations booked
+     */
+    private static void cancelScratch(State state, int operations) {
+        for (int i = 0; i < operations; i++) {
+            state.resort.cancelReservationById(state.scratchIds[i]);
+        }
+    }
+
+    /**
+     * Computes how many operations one batch performs
+     *
+     * @param name the operation name
+     * @param storeSize the number of pre-filled reservations
+     * @return the batch size
+     */
+    private static int batchSize(String name, int storeSize) {
+        if ("getReservations".equals(name)) {
+            return Math.max(1, LISTED_RESERVATIONS_PER_BATCH / storeSize);
+        }
+        return Math.min(storeSize, MAX_OPERATIONS_PER_BATCH);
+    }
+
+    /**
+     * Runs one batch split over the given number of threads
+     *
+     * @param operation the operation to run
+     * @param state the benchmark state
+     * @param batchSize the number of operations in the batch
+     * @param threads the number of threads
+     * @return the wall-clock duration of the batch in nanoseconds
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    private long runBatch(Operation operation, State state, int batchSize, int threads)
+            throws InterruptedException {
+        if (threads == 1) {
+            long start = System.nanoTime();
+            sink += operation.run(state, 0, batchSize);
+            return System.nanoTime() - start;
+        }
+
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int from = (int) ((long) batchSize * t / threads);
+            int to = (int) ((long) batchSize * (t + 1) / threads);
+            workers.execute(() -> {
+                ready.countDown();
+                try {
+                    go.await();
+                    sink += operation.run(state, from, to);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        ready.await();
+        long start = System.nanoTime();
+        go.countDown();
+        done.await();
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Runs batches until the timed duration reaches the iteration length
+     *
+     * @param operation the operation to run
+     * @param state the benchmark state
+     * @param batchSize the number of operations per batch
+     * @param threads the number of threads
+     * @return the throughput of the iteration in operations per second
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    private double runIteration(Operation operation, State state, int batchSize, int threads)
+            throws InterruptedException {
+        long timedNanos = 0;
+        long operations = 0;
+        while (timedNanos < iterationNanos) {
+            timedNanos += runBatch(operation, state, batchSize, threads);
+            operations += batchSize;
+            operation.reset(state, batchSize);
+        }
+        return operations * 1e9 / timedNanos;
+    }
+
+    /**
+     * Benchmarks one operation at one store size and thread count
+     *
+     * @param name the operation name
+     * @param storeSize the number of pre-filled reservations
+     * @param threads the number of threads
+     * @param bookingInfoList the pricing details of the resort
+     * @return the measured result
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    private Result measure(String name, int storeSize, int threads, List<BookingInfo> bookingInfoList)
+            throws InterruptedException {
+        ReservationStore store = threads == 1 ? new ReservationIndex() : new StripedReservationStore();
+        State state = new State(new MusandamResort(bookingInfoList, store), storeSize);
+        Operation operation = operation(name);
+        int batchSize = batchSize(name, storeSize);
+
+        for (int i = 0; i < warmupIterations; i++) {
+            runIteration(operation, state, batchSize, threads);
+        }
+        double[] scores = new double[measurementIterations];
+        for (int i = 0; i < measurementIterations; i++) {
+            scores[i] = runIteration(operation, state, batchSize, threads);
+        }
+        return new Result(name, storeSize, threads, scores);
+    }
+
+    /**
+     * The measured throughput of one benchmark
+     */
+    private static final class Result {
+        private final String benchmark;
+        private final int storeSize;
+        private final int threads;
+        private final double[] scores;
+
+        /**
+         * Creates a result
+         *
+         * @param benchmark the operation name
+         * @param storeSize the number of pre-filled reservations
+         * @param threads the number of threads
+         * @param scores the throughput of each measured iteration in operations per second
+         */
+        private Result(String benchmark, int storeSize, int threads, double[] scores) {
+            this.benchmark = benchmark;
+            this.storeSize = storeSize;
+            this.threads = threads;
+            this.scores = scores;
+        }
+
+        /**
+         * Computes the mean throughput
+         *
+         * @return the mean of the iteration scores
+         */
+        private double mean() {
+            double sum = 0;
+            for (double score : scores) {
+                sum += score;
+            }
+            return sum / scores.length;
+        }
+
+        /**
+         * Computes the sample standard deviation of the throughput
+         *
+         * @return the standard deviation of the iteration scores
+         */
+        private double error() {
+            if (scores.length < 2) {
+                return 0;
+            }
+            double mean = mean();
+            double squares = 0;
+            for (double score : scores) {
+                squares += (score - mean) * (score - mean);
+            }
+            return Math.sqrt(squares / (scores.length - 1));
+        }
+
+        /**
+         * Formats the result as a JSON object
+         *
+         * @return the JSON text
+         */
+        private String toJson() {
+            StringBuilder json = new StringBuilder();
+            json.append("{\"benchmark\":\"").append(benchmark).append('"')
+                    .append(",\"storeSize\":").append(storeSize)
+                    .append(",\"threads\":").append(threads)
+                    .append(",\"mode\":\"thrpt\",\"scoreUnit\":\"ops/s\"")
+                    .append(",\"score\":").append(String.format(Locale.ROOT, "%.1f", mean()))
+                    .append(",\"scoreError\":").append(String.format(Locale.ROOT, "%.1f", error()))
+                    .append(",\"rawScores\":[");
+            for (int i = 0; i < scores.length; i++) {
+                json.append(i == 0 ? "" : ",").append(String.format(Locale.ROOT, "%.1f", scores[i]));
+            }
+            return json.append("]}").toString();
+        }
+    }
+
+    /**
+     * Parses a comma separated list of store sizes
+     *
+     * @param value the option value
+     * @return the store sizes
+     */
+    private static int[] parseSizes(String value) {
+        String[] tokens = value.split(",");
+        int[] sizes = new int[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            sizes[i] = Integer.parseInt(tokens[i].strip());
+        }
+        return sizes;
+    }
+
+    /**
+     * Main method
+     *
+     * @param args --quick for short iterations, --sizes to choose the store sizes, --out for the JSON file
+     * @throws IOException if the results cannot be written
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        boolean quick = false;
+        int[] storeSizes = DEFAULT_STORE_SIZES;
+        Path output = Paths.get("benchmark-results.json");
+        for (int i = 0; i < args.length; i++) {
+            if ("--quick".equals(args[i])) {
+                quick = true;
+            } else if ("--sizes".equals(args[i]) && i + 1 < args.length) {
+                storeSizes = parseSizes(args[++i]);
+            } else if ("--out".equals(args[i]) && i + 1 < args.length) {
+                output = Paths.get(args[++i]);
+            }
+        }
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        int[] threadCounts = processors > 1 ? new int[]{1, processors} : new int[]{1};
+        ReservationBenchmark benchmark = quick
+                ? new ReservationBenchmark(1, 3, 200_000_000L, processors)
+                : new ReservationBenchmark(3, 5, 1_000_000_000L, processors);
+        List<BookingInfo> bookingInfoList = Arrays.asList(
+                new BookingInfo("room", 0.05, 24.98),
+                new BookingInfo("conference", 0.1, 100.0, 15.0)
+        );
+
+        System.out.printf("%-30s%12s%9s%18s%14s%n", "Benchmark", "StoreSize", "Threads", "Score (ops/s)", "Error");
+        List<Result> results = new ArrayList<>();
+        for (String name : operationNames()) {
+            for (int storeSize : storeSizes) {
+                for (int threads : threadCounts) {
+                    Result result = benchmark.measure(name, storeSize, threads, bookingInfoList);
+                    results.add(result);
+                    System.out.printf(Locale.ROOT, "%-30s%12d%9d%18.1f%14.1f%n",
+                            name, storeSize, threads, result.mean(), result.error());
+                }
+            }
+        }
+
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(output, StandardCharsets.UTF_8))) {
+            writer.println("[");
+            for (int i = 0; i < results.size(); i++) {
+                writer.print("  ");
+                writer.print(results.get(i).toJson());
+                writer.println(i + 1 < results.size() ? "," : "");
+            }
+            writer.println("]");
+        }
+        System.out.println("Results written to " + output);
+    }
+}
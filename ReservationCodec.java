@@ -0,0 +1,203 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary encoding of a single reservation
+ *
+ * Layout: type tag (byte), reservation ID (int), number of nights (int), cost in cents (long),
+ * then for rooms the requirement count (unsigned short) followed by each requirement as
+ * an unsigned short byte length and its UTF-8 bytes, and for conferences the number of guests (int).
+ * A scheduled reservation sets a flag in the tag and appends its check-in epoch day (long)
+ * and unit number (int), so records written before dates existed still decode. Records written
+ * before costs were kept in cents hold the cost as a double amount instead, and are read with
+ * readDoubleCost
+ */
+public final class ReservationCodec {
+    private static final byte ROOM_TAG = 1;
+    private static final byte CONFERENCE_TAG = 2;
+    private static final byte SCHEDULED_FLAG = 0x40;
+    private static final int SCHEDULE_SIZE = 8 + 4;
+    private static final int HEADER_SIZE = 1 + 4 + 4 + 8;
+    private static final int MAX_UNSIGNED_SHORT = 0xFFFF;
+
+    private ReservationCodec() {
+    }
+
+    /**
+     * Computes the number of bytes needed to encode a reservation
+     *
+     * @param reservation the reservation to encode
+     * @return the encoded size in bytes
+     */
+    public static int encodedSize(Reservation reservation) {
+        int size = reservation.isScheduled() ? HEADER_SIZE + SCHEDULE_SIZE : HEADER_SIZE;
+        if (reservation instanceof ConferenceReservation) {
+            return size + 4;
+        }
+        size += 2;
+        for (String requirement : requirementsOf(reservation)) {
+            size += 2 + utf8Length(requirement);
+        }
+        return size;
+    }
+
+    /**
+     * Encodes a reservation at the current position of the buffer
+     *
+     * @param buffer the buffer to write to, with at least encodedSize(reservation) bytes remaining
+     * @param reservation the reservation to encode
+     * @throws IllegalArgumentException if the reservation type is not supported
+     *                                  or a field is too long to encode
+     */
+    public static void write(ByteBuffer buffer, Reservation reservation) {
+        if (reservation instanceof ConferenceReservation) {
+            writeHeader(buffer, CONFERENCE_TAG, reservation);
+            buffer.putInt(((ConferenceReservation) reservation).getNumberOfGuests());
+            return;
+        }
+
+        List<String> requirements = requirementsOf(reservation);
+        if (requirements.size() > MAX_UNSIGNED_SHORT) {
+            throw new IllegalArgumentException("Too many requirements to encode: " + requirements.size());
+        }
+        writeHeader(buffer, ROOM_TAG, reservation);
+        buffer.putShort((short) requirements.size());
+        for (String requirement : requirements) {
+            byte[] bytes = requirement.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > MAX_UNSIGNED_SHORT) {
+                throw new IllegalArgumentException("Requirement too long to encode: " + bytes.length + " bytes");
+            }
+            buffer.putShort((short) bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    /**
+     * Decodes the reservation at the current position of the buffer
+     *
+     * The decoded reservation keeps its saved ID and does not take one from the sequence
+     *
+     * @param buffer the buffer to read from
+     * @return the decoded reservation
+     * @throws IllegalArgumentException if the type tag is unknown
+     */
+    public static Reservation read(ByteBuffer buffer) {
+        return read(buffer, false);
+    }
+
+    /**
+     * Decodes the reservation at the current position of the buffer, written with its cost
+     * as a double amount by the format before costs were kept in cents
+     *
+     * @param buffer the buffer to read from
+     * @return the decoded reservation, its cost rounded to whole cents
+     * @throws IllegalArgumentException if the type tag is unknown
+     */
+    public static Reservation readDoubleCost(ByteBuffer buffer) {
+        return read(buffer, true);
+    }
+
+    /**
+     * Decodes the reservation at the current position of the buffer
+     *
+     * @param buffer the buffer to read from
+     * @param doubleCost whether the cost is a double amount rather than cents
+     * @return the decoded reservation
+     * @throws IllegalArgumentException if the type tag is unknown
+     */
+    private static Reservation read(ByteBuffer buffer, boolean doubleCost) {
+        byte tag = buffer.get();
+        int reservationId = buffer.getInt();
+        int numberOfNights = buffer.getInt();
+        long costInCents = doubleCost ? Money.toCents(buffer.getDouble()) : buffer.getLong();
+        LocalDate checkInDate = null;
+        int unitNumber = 0;
+        if ((tag & SCHEDULED_FLAG) != 0) {
+            checkInDate = LocalDate.ofEpochDay(buffer.getLong());
+            unitNumber = buffer.getInt();
+            tag &= ~SCHEDULED_FLAG;
+        }
+
+        if (tag == CONFERENCE_TAG) {
+            return new ConferenceReservation(reservationId, numberOfNights, costInCents, buffer.getInt(),
+                    checkInDate, unitNumber);
+        }
+        if (tag != ROOM_TAG) {
+            throw new IllegalArgumentException("Unknown reservation type tag: " + tag);
+        }
+
+        int requirementCount = Short.toUnsignedInt(buffer.getShort());
+        List<String> requirements = new ArrayList<>(requirementCount);
+        for (int i = 0; i < requirementCount; i++) {
+            byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+            buffer.get(bytes);
+            requirements.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return new RoomReservation(reservationId, numberOfNights, costInCents, requirements, checkInDate, unitNumber);
+    }
+
+    /**
+     * Writes the fields common to every reservation type
+     *
+     * Scheduled reservations also get their check-in day and unit
+     *
+     * @param buffer the buffer to write to
+     * @param tag the type tag
+     * @param reservation the reservation to encode
+     */
+    private static void writeHeader(ByteBuffer buffer, byte tag, Reservation reservation) {
+        buffer.put(reservation.isScheduled() ? (byte) (tag | SCHEDULED_FLAG) : tag);
+        buffer.putInt(reservation.getReservationId());
+        buffer.putInt(reservation.getNumberOfNights());
+        buffer.putLong(reservation.getCostInCents());
+        if (reservation.isScheduled()) {
+            buffer.putLong(reservation.getCheckInDate().toEpochDay());
+            buffer.putInt(reservation.getUnitNumber());
+        }
+    }
+
+    /**
+     * Retrieves the requirements of a room reservation
+     *
+     * @param reservation the reservation, expected to be a room reservation
+     * @return the guest requirements
+     * @throws IllegalArgumentException if the reservation type is not supported
+     */
+    private static List<String> requirementsOf(Reservation reservation) {
+        if (!(reservation instanceof RoomReservation)) {
+            throw new IllegalArgumentException("Unsupported reservation type: " + reservation.getClass().getName());
+        }
+        return ((RoomReservation) reservation).getRequirements();
+    }
+
+    /**
+     * Computes the UTF-8 encoded length of a string without encoding it
+     *
+     * Unpaired surrogates count as the single replacement byte String.getBytes writes for them
+     *
+     * @param value the string
+     * @return the number of UTF-8 bytes
+     */
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
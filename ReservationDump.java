@@ -0,0 +1,208 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.util.List;
+
+/**
+ * Exports every reservation of a resort to a compact binary file and loads it back
+ *
+ * Layout: magic (int), format version (int), next reservation ID (int), reservation count (int),
+ * then one record per reservation: its encoded length (int) followed by the reservation in the
+ * ReservationCodec encoding. Records are written and read through one direct buffer and a
+ * FileChannel, so a dump of millions of bookings moves in large sequential transfers and only
+ * room requirements allocate while decoding. Every field round-trips exactly, including the
+ * whole-cent costs, check-in dates and units. Dumps of the first format version, which held
+ * costs as doubles, still load
+ */
+public final class ReservationDump {
+    private static final int DUMP_MAGIC = 0x52535644;
+    private static final int FORMAT_VERSION = 2;
+    private static final int DOUBLE_COST_FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 4;
+    private static final int LENGTH_SIZE = 4;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private ReservationDump() {
+    }
+
+    /**
+     * Writes every reservation of the resort to a dump file, replacing any existing file
+     *
+     * The dump is written to a temporary file next to the target and atomically renamed, so
+     * a crash leaves either the old or the new dump in place
+     *
+     * @param resort the resort to export
+     * @param path the dump file
+     * @return the number of reservations written
+     * @throws IOException if the file cannot be written
+     */
+    public static int export(MusandamResort resort, Path path) throws IOException {
+        List<Reservation> reservations = resort.getReservations();
+        int nextReservationId = resort.getIdSequence().peek();
+
+        Path temporaryPath = path.resolveSibling(path.getFileName() + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temporaryPath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.putInt(DUMP_MAGIC)
+                    .putInt(FORMAT_VERSION)
+                    .putInt(nextReservationId)
+                    .putInt(reservations.size());
+
+            for (Reservation reservation : reservations) {
+                int size = ReservationCodec.encodedSize(reservation);
+                if (buffer.remaining() < LENGTH_SIZE + size) {
+                    buffer.flip();
+                    writeFully(channel, buffer);
+                    buffer.clear();
+                }
+                if (LENGTH_SIZE + size > buffer.capacity()) {
+                    ByteBuffer large = ByteBuffer.allocate(LENGTH_SIZE + size);
+                    large.putInt(size);
+                    ReservationCodec.write(large, reservation);
+                    large.flip();
+                    writeFully(channel, large);
+                } else {
+                    buffer.putInt(size);
+                    ReservationCodec.write(buffer, reservation);
+                }
+            }
+            buffer.flip();
+            writeFully(channel, buffer);
+            channel.force(true);
+        }
+        Files.move(temporaryPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return reservations.size();
+    }
+
+    /**
+     * Loads every reservation of a dump file into the resort, keeping the saved IDs
+     *
+     * Reservations are put back like journal replays: listeners are not notified, scheduled
+     * units are reserved again, and the reservation ID sequence is moved past the saved one
+     *
+     * @param path the dump file
+     * @param resort the resort to load into, expected to hold none of the saved IDs
+     * @return the number of reservations loaded
+     * @throws IOException if the file cannot be read, is not a dump, or is truncated or corrupt
+     */
+    public static int load(Path path, MusandamResort resort) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.flip();
+            if (!fill(channel, buffer, HEADER_SIZE) || buffer.getInt() != DUMP_MAGIC) {
+                throw new IOException("Not a reservation dump: " + path);
+            }
+            int formatVersion = buffer.getInt();
+            if (formatVersion != FORMAT_VERSION && formatVersion != DOUBLE_COST_FORMAT_VERSION) {
+                throw new IOException("Unsupported reservation dump version " + formatVersion + ": " + path);
+            }
+            boolean doubleCost = formatVersion == DOUBLE_COST_FORMAT_VERSION;
+            int nextReservationId = buffer.getInt();
+            int reservationCount = buffer.getInt();
+
+            for (int i = 0; i < reservationCount; i++) {
+                if (!fill(channel, buffer, LENGTH_SIZE)) {
+                    throw new IOException("Truncated reservation dump " + path + " at reservation " + i);
+                }
+                int size = buffer.getInt();
+                if (size <= 0) {
+                    throw new IOException("Corrupt reservation dump " + path + " at reservation " + i);
+                }
+                ByteBuffer record = buffer;
+                if (size > buffer.capacity()) {
+                    record = ByteBuffer.allocate(size);
+                    record.put(buffer);
+                    while (record.hasRemaining() && channel.read(record) >= 0) {
+                        // Keep reading until the record is complete
+                    }
+                    record.flip();
+                } else if (!fill(channel, buffer, size)) {
+                    throw new IOException("Truncated reservation dump " + path + " at reservation " + i);
+                }
+                if (record.remaining() < size) {
+                    throw new IOException("Truncated reservation dump " + path + " at reservation " + i);
+                }
+                resort.restoreReservation(readRecord(record, size, doubleCost, path, i));
+            }
+            resort.getIdSequence().advancePast(nextReservationId - 1);
+            return reservationCount;
+        }
+    }
+
+    /**
+     * Decodes one record, checking that it fills exactly its encoded length
+     *
+     * @param buffer the buffer positioned at the record
+     * @param size the encoded length of the record
+     * @param doubleCost whether the dump holds costs as doubles
+     * @param path the dump file, for error messages
+     * @param index the position of the record in the dump, for error messages
+     * @return the decoded reservation
+     * @throws IOException if the record does not decode to exactly its length
+     */
+    private static Reservation readRecord(ByteBuffer buffer, int size, boolean doubleCost, Path path, int index)
+            throws IOException {
+        int limit = buffer.limit();
+        int recordEnd = buffer.position() + size;
+        buffer.limit(recordEnd);
+        try {
+            Reservation reservation = doubleCost ? ReservationCodec.readDoubleCost(buffer) : ReservationCodec.read(buffer);
+            if (buffer.position() != recordEnd) {
+                throw new IOException("Corrupt reservation dump " + path + " at reservation " + index);
+            }
+            return reservation;
+        } catch (BufferUnderflowException | IllegalArgumentException | DateTimeException e) {
+            throw new IOException("Corrupt reservation dump " + path + " at reservation " + index, e);
+        } finally {
+            buffer.limit(limit);
+        }
+    }
+
+    /**
+     * Makes sure the buffer holds at least the given number of unread bytes, reading more if needed
+     *
+     * The unread bytes are moved to the start of the buffer before reading, so the buffer
+     * must be able to hold the requested bytes
+     *
+     * @param channel the channel to read from
+     * @param buffer the buffer in read mode
+     * @param needed the number of bytes needed
+     * @return true if the bytes are available, false if the file ends first
+     * @throws IOException if the file cannot be read
+     */
+    private static boolean fill(FileChannel channel, ByteBuffer buffer, int needed) throws IOException {
+        if (buffer.remaining() >= needed) {
+            return true;
+        }
+        buffer.compact();
+        while (buffer.position() < needed) {
+            if (channel.read(buffer) < 0) {
+                buffer.flip();
+                return false;
+            }
+        }
+        buffer.flip();
+        return true;
+    }
+
+    /**
+     * Writes every remaining byte of the buffer to the channel
+     *
+     * @param channel the channel to write to
+     * @param buffer the buffer to write
+     * @throws IOException if the channel cannot be written
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
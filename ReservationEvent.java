@@ -0,0 +1,65 @@
+/**
+ * A booking or cancellation published on a resort's change feed
+ */
+public final class ReservationEvent {
+
+    /**
+     * What happened to the reservation
+     */
+    public enum Type {
+        CREATED,
+        CANCELLED
+    }
+
+    private final Type type;
+    private final long sequence;
+    private final Reservation reservation;
+
+    /**
+     * Creates an event
+     *
+     * @param type what happened to the reservation
+     * @param sequence the position of the event on the feed
+     * @param reservation the booked or cancelled reservation
+     */
+    ReservationEvent(Type type, long sequence, Reservation reservation) {
+        this.type = type;
+        this.sequence = sequence;
+        this.reservation = reservation;
+    }
+
+    /**
+     * Retrieves what happened to the reservation
+     *
+     * @return CREATED or CANCELLED
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Retrieves the position of the event on the feed
+     *
+     * Sequences start at 1 and are unique; the events of one reservation always carry
+     * increasing sequences and arrive in that order
+     *
+     * @return the sequence number
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Retrieves the booked or cancelled reservation
+     *
+     * @return the reservation
+     */
+    public Reservation getReservation() {
+        return reservation;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + sequence + " " + type + " " + reservation;
+    }
+}
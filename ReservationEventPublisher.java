@@ -0,0 +1,463 @@
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Publishes the bookings and cancellations of a resort to Flow subscribers
+ *
+ * Registered as a listener, it hands every change to each subscriber through its own bounded
+ * ring buffer. Booking threads only claim a slot in each ring, without locking or waiting, so a
+ * slow subscriber never holds up the booking path. Each subscriber is fed by a drain task that
+ * delivers as many buffered events as it has requested in one run, so busy feeds are delivered
+ * in batches rather than one task per event.
+ *
+ * A subscriber that falls a full buffer behind is not silently skipped: its subscription is
+ * cancelled and it receives onError with a FeedOverflowException after the events already
+ * buffered for it that it has demand for, so it can resynchronize from the resort and subscribe
+ * again. A subscriber that throws from onNext is cancelled and receives onError with what it
+ * threw. Closing the publisher completes every subscriber once its buffered events are delivered;
+ * events a subscriber has not requested by the time close returns are dropped, and it receives
+ * onError instead of onComplete when it next requests
+ */
+public class ReservationEventPublisher implements Flow.Publisher<ReservationEvent>, ReservationListener, Closeable {
+    public static final int DEFAULT_BUFFER_CAPACITY = 1024;
+
+    private final MusandamResort resort;
+    private final int bufferCapacity;
+    private final ExecutorService executor;
+    private final AtomicLong sequence = new AtomicLong();
+    private final List<RingSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+
+    /**
+     * Signalled to a subscriber whose buffer filled up, after which it missed events
+     */
+    public static class FeedOverflowException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        private final long firstMissedSequence;
+
+        /**
+         * Creates the exception
+         *
+         * @param bufferCapacity the capacity of the buffer that filled up
+         * @param firstMissedSequence the sequence of the first event that did not fit
+         */
+        FeedOverflowException(int bufferCapacity, long firstMissedSequence) {
+            super("Subscriber fell " + bufferCapacity + " events behind and missed events from #" + firstMissedSequence);
+            this.firstMissedSequence = firstMissedSequence;
+        }
+
+        /**
+         * Retrieves the sequence of the first event the subscriber missed
+         *
+         * @return the sequence number
+         */
+        public long getFirstMissedSequence() {
+            return firstMissedSequence;
+        }
+    }
+
+    /**
+     * Creates a publisher for the given resort
+     *
+     * @param resort the resort whose changes to publish
+     * @param bufferCapacity the number of undelivered events each subscriber may fall behind
+     */
+    private ReservationEventPublisher(MusandamResort resort, int bufferCapacity) {
+        this.resort = resort;
+        this.bufferCapacity = bufferCapacity;
+        this.executor = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "reservation-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts publishing the changes of a resort with the default buffer capacity
+     *
+     * @param resort the resort whose later bookings and cancellations to publish
+     * @return the attached publisher, to be closed when no longer needed
+     */
+    public static ReservationEventPublisher attach(MusandamResort resort) {
+        return attach(resort, DEFAULT_BUFFER_CAPACITY);
+    }
+
+    /**
+     * Starts publishing the changes of a resort
+     *
+     * @param resort the resort whose later bookings and cancellations to publish
+     * @param bufferCapacity the number of undelivered events each subscriber may fall behind,
+     *                       rounded up to a power of two
+     * @return the attached publisher, to be closed when no longer needed
+     * @throws IllegalArgumentException if the capacity is not positive or too large
+     */
+    public static ReservationEventPublisher attach(MusandamResort resort, int bufferCapacity) {
+        if (bufferCapacity <= 0 || bufferCapacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid buffer capacity: " + bufferCapacity);
+        }
+        int capacity = Integer.highestOneBit(bufferCapacity);
+        ReservationEventPublisher publisher = new ReservationEventPublisher(
+                resort, capacity == bufferCapacity ? capacity : capacity << 1);
+        resort.addReservationListener(publisher);
+        return publisher;
+    }
+
+    /**
+     * Subscribes to the changes made from now on
+     *
+     * onSubscribe is called before this method returns; nothing is delivered until the
+     * subscriber requests events. Subscribing to a closed publisher completes at once
+     *
+     * @param subscriber the subscriber
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super ReservationEvent> subscriber) {
+        RingSubscription subscription = new RingSubscription(subscriber, bufferCapacity);
+        subscriber.onSubscribe(subscription);
+        subscriptions.add(subscription);
+        if (closed) {
+            subscription.complete();
+        }
+    }
+
+    /**
+     * Retrieves the number of active subscribers
+     *
+     * @return the number of subscribers
+     */
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * Publishes a booking
+     *
+     * @param reservation the new reservation
+     */
+    @Override
+    public void reservationAdded(Reservation reservation) {
+        publish(new ReservationEvent(ReservationEvent.Type.CREATED, sequence.incrementAndGet(), reservation));
+    }
+
+    /**
+     * Publishes a cancellation
+     *
+     * @param reservation the cancelled reservation
+     */
+    @Override
+    public void reservationCancelled(Reservation reservation) {
+        publish(new ReservationEvent(ReservationEvent.Type.CANCELLED, sequence.incrementAndGet(), reservation));
+    }
+
+    /**
+     * Buffers an event for every subscriber, without blocking
+     *
+     * @param event the event
+     */
+    private void publish(ReservationEvent event) {
+        for (RingSubscription subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    /**
+     * Stops publishing and completes every subscriber once its buffered events are delivered
+     *
+     * Waits up to a second for the deliveries to finish
+     */
+    @Override
+    public void close() {
+        resort.removeReservationListener(this);
+        closed = true;
+        for (RingSubscription subscription : subscriptions) {
+            subscription.complete();
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The subscription of one subscriber, with its ring buffer and drain task
+     *
+     * The ring is a bounded multi-producer, single-consumer queue: each slot carries a sequence
+     * telling producers and the consumer whose turn it is, so booking threads claim slots with a
+     * single compare-and-set and the drain task takes events without locking. A work counter
+     * makes sure at most one drain task runs at a time, so the subscriber is signalled serially
+     */
+    private final class RingSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super ReservationEvent> subscriber;
+        private final Object[] slots;
+        private final AtomicLongArray slotSequences;
+        private final int mask;
+        private final AtomicLong tail = new AtomicLong();
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger pendingWork = new AtomicInteger();
+        private long head;
+
+        private volatile boolean cancelled;
+        private volatile boolean completing;
+        private volatile long firstMissedSequence;
+        private volatile Throwable requestError;
+        private boolean terminated;
+
+        /**
+         * Creates a subscription with an empty ring
+         *
+         * @param subscriber the subscriber
+         * @param capacity the ring capacity, a power of two
+         */
+        private RingSubscription(Flow.Subscriber<? super ReservationEvent> subscriber, int capacity) {
+            this.subscriber = subscriber;
+            this.slots = new Object[capacity];
+            this.slotSequences = new AtomicLongArray(capacity);
+            this.mask = capacity - 1;
+            for (int i = 0; i < capacity; i++) {
+                slotSequences.set(i, i);
+            }
+        }
+
+        /**
+         * Buffers an event, or marks the subscriber as overflowed if its ring is full
+         *
+         * @param event the event
+         */
+        private void offer(ReservationEvent event) {
+            if (cancelled || firstMissedSequence != 0) {
+                return;
+            }
+            long position = tail.get();
+            while (true) {
+                int index = (int) position & mask;
+                long turn = slotSequences.get(index) - position;
+                if (turn == 0) {
+                    if (tail.compareAndSet(position, position + 1)) {
+                        slots[index] = event;
+                        slotSequences.set(index, position + 1);
+                        break;
+                    }
+                    position = tail.get();
+                } else if (turn < 0) {
+                    firstMissedSequence = event.getSequence();
+                    break;
+                } else {
+                    position = tail.get();
+                }
+            }
+            signal();
+        }
+
+        /**
+         * Takes the oldest buffered event; only called by the drain task
+         *
+         * @return the event, or null if the ring is empty
+         */
+        private ReservationEvent poll() {
+            int index = (int) head & mask;
+            if (slotSequences.get(index) != head + 1) {
+                return null;
+            }
+            ReservationEvent event = (ReservationEvent) slots[index];
+            slots[index] = null;
+            slotSequences.set(index, head + slots.length);
+            head++;
+            return event;
+        }
+
+        /**
+         * Adds demand and delivers buffered events
+         *
+         * @param n the number of additional events wanted
+         */
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                requestError = new IllegalArgumentException("Requested a non-positive number of events: " + n);
+            } else {
+                demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            }
+            signal();
+        }
+
+        /**
+         * Stops delivering events and drops the buffered ones
+         */
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+            signal();
+        }
+
+        /**
+         * Asks for the subscriber to be completed once the buffer is delivered
+         */
+        private void complete() {
+            completing = true;
+            signal();
+        }
+
+        /**
+         * Schedules the drain task unless it is already scheduled or running
+         */
+        private void signal() {
+            if (pendingWork.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // The publisher was closed and its executor shut down. The calling thread may
+                    // be booking under an event lock, so nothing is delivered on it
+                    abandon();
+                }
+            }
+        }
+
+        /**
+         * Delivers buffered events up to the demand, then any terminal signal that is due
+         *
+         * A subscriber that throws is cancelled and receives onError with the failure, unless
+         * it threw from a terminal signal; the work counter is released either way, so the
+         * subscription never stops being served silently
+         */
+        @Override
+        public void run() {
+            int missed = 1;
+            while (true) {
+                if (!terminated) {
+                    try {
+                        drain();
+                    } catch (Throwable failure) {
+                        fail(failure);
+                    }
+                }
+                missed = pendingWork.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Cancels the subscription of a subscriber that threw; only called by the drain task
+         *
+         * @param failure what the subscriber threw
+         */
+        private void fail(Throwable failure) {
+            boolean signalled = terminated;
+            cancel();
+            if (!signalled) {
+                terminateQuietly(failure);
+            }
+        }
+
+        /**
+         * Ends the subscription without delivering the buffered events, once the executor is
+         * shut down; only called by the thread that took the work counter from zero
+         *
+         * The subscriber completes if nothing was left to deliver, and otherwise receives onError
+         * since it missed events
+         */
+        private void abandon() {
+            int missed = 1;
+            do {
+                if (!terminated) {
+                    boolean missedEvents = !isEmpty() || firstMissedSequence != 0 || !completing;
+                    cancel();
+                    terminateQuietly(missedEvents
+                            ? new IllegalStateException("The publisher was closed before the buffered events were delivered")
+                            : null);
+                }
+                missed = pendingWork.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /**
+         * Delivers what can be delivered now; only called by the drain task
+         */
+        private void drain() {
+            long requested = demand.get();
+            long emitted = 0;
+            while (emitted != requested && !cancelled && requestError == null) {
+                ReservationEvent event = poll();
+                if (event == null) {
+                    break;
+                }
+                subscriber.onNext(event);
+                emitted++;
+            }
+            if (emitted != 0 && requested != Long.MAX_VALUE) {
+                demand.addAndGet(-emitted);
+            }
+
+            Throwable error = requestError;
+            if (cancelled) {
+                terminate(null, false);
+            } else if (error != null) {
+                cancel();
+                terminate(error, true);
+            } else if (firstMissedSequence != 0 && (demand.get() == 0 || isEmpty())) {
+                cancel();
+                terminate(new FeedOverflowException(slots.length, firstMissedSequence), true);
+            } else if (completing && isEmpty()) {
+                subscriptions.remove(this);
+                terminate(null, true);
+            }
+        }
+
+        /**
+         * Checks whether the ring holds no event ready to deliver; only called by the drain task
+         *
+         * @return true if the ring is empty
+         */
+        private boolean isEmpty() {
+            return slotSequences.get((int) head & mask) != head + 1;
+        }
+
+        /**
+         * Sends the terminal signal, if any, and releases the buffered events
+         *
+         * @param error the error to signal, or null to complete
+         * @param notify whether to signal the subscriber at all
+         */
+        private void terminate(Throwable error, boolean notify) {
+            terminated = true;
+            while (poll() != null) {
+                // Drop the undelivered events
+            }
+            if (!notify) {
+                return;
+            }
+            if (error != null) {
+                subscriber.onError(error);
+            } else {
+                subscriber.onComplete();
+            }
+        }
+
+        /**
+         * Sends a terminal signal, ignoring anything the subscriber throws from it
+         *
+         * @param error the error to signal, or null to complete
+         */
+        private void terminateQuietly(Throwable error) {
+            try {
+                terminate(error, true);
+            } catch (Throwable ignored) {
+                // The subscription is over either way
+            }
+        }
+    }
+}
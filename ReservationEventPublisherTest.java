@@ -0,0 +1,288 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Checks the overflow, cancel, failure and close paths of ReservationEventPublisher
+ *
+ * Each check subscribes a recording subscriber to a publisher with a small buffer, books on
+ * the resort and waits for the subscriber to be signalled. Exits with status 1 on failure.
+ *
+ * Run with: java ReservationEventPublisherTest
+ */
+public class ReservationEventPublisherTest {
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private ReservationEventPublisherTest() {
+    }
+
+    /**
+     * A subscriber recording what it is signalled, requesting only when told to
+     */
+    private static final class RecordingSubscriber implements Flow.Subscriber<ReservationEvent> {
+        private final List<ReservationEvent> events = new ArrayList<>();
+        private final CountDownLatch terminated = new CountDownLatch(1);
+        private final int failOnEvent;
+        private final CountDownLatch firstEventDelivered = new CountDownLatch(1);
+        private final CountDownLatch gate;
+        private volatile Flow.Subscription subscription;
+        private volatile Throwable error;
+        private volatile boolean completed;
+
+        /**
+         * Creates a subscriber
+         *
+         * @param failOnEvent the number of the event onNext throws on, or 0 to never throw
+         */
+        private RecordingSubscriber(int failOnEvent) {
+            this(failOnEvent, null);
+        }
+
+        /**
+         * Creates a subscriber holding up the drain task in its first onNext until a gate opens
+         *
+         * @param failOnEvent the number of the event onNext throws on, or 0 to never throw
+         * @param gate the gate the first onNext waits for, or null to never wait
+         */
+        private RecordingSubscriber(int failOnEvent, CountDownLatch gate) {
+            this.failOnEvent = failOnEvent;
+            this.gate = gate;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(ReservationEvent event) {
+            if (gate != null && firstEventDelivered.getCount() == 1) {
+                firstEventDelivered.countDown();
+                try {
+                    gate.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            synchronized (events) {
+                events.add(event);
+                if (events.size() == failOnEvent) {
+                    throw new IllegalStateException("subscriber failure");
+                }
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            terminated.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            terminated.countDown();
+        }
+
+        /**
+         * Waits for onError or onComplete
+         *
+         * @return true if the subscriber was terminated in time
+         * @throws InterruptedException if interrupted while waiting
+         */
+        private boolean awaitTermination() throws InterruptedException {
+            return terminated.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+
+        /**
+         * Retrieves the events received so far
+         *
+         * @return a copy of the events
+         */
+        private List<ReservationEvent> events() {
+            synchronized (events) {
+                return new ArrayList<>(events);
+            }
+        }
+    }
+
+    /**
+     * Runs the checks
+     *
+     * @param args unused
+     * @throws InterruptedException if interrupted while waiting for a subscriber
+     */
+    public static void main(String[] args) throws InterruptedException {
+        try {
+            checkOverflow();
+            checkCancel();
+            checkFailingSubscriber();
+            checkClose();
+            System.out.println("ReservationEventPublisherTest passed");
+        } catch (AssertionError e) {
+            System.out.println("ReservationEventPublisherTest failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Falls more than a buffer behind and checks the overflow is signalled
+     *
+     * Without demand, the subscriber receives the overflow alone. With demand, its first
+     * onNext holds up the drain task while the buffer fills, and the buffered events it has
+     * demand for are delivered before the overflow
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static void checkOverflow() throws InterruptedException {
+        MusandamResort resort = newResort();
+        try (ReservationEventPublisher publisher = ReservationEventPublisher.attach(resort, 4)) {
+            RecordingSubscriber idle = new RecordingSubscriber(0);
+            publisher.subscribe(idle);
+            for (int i = 0; i < 5; i++) {
+                resort.addRoomReservation(1, List.of());
+            }
+            check(idle.awaitTermination(), "an overflowed subscriber is terminated");
+            check(idle.error instanceof ReservationEventPublisher.FeedOverflowException,
+                    "an overflowed subscriber receives FeedOverflowException, got " + idle.error);
+            check(((ReservationEventPublisher.FeedOverflowException) idle.error).getFirstMissedSequence() == 5,
+                    "the overflow names the first missed event");
+            check(idle.events().isEmpty(), "nothing is delivered without demand");
+            check(publisher.getSubscriberCount() == 0, "an overflowed subscriber is unsubscribed");
+
+            CountDownLatch gate = new CountDownLatch(1);
+            RecordingSubscriber slow = new RecordingSubscriber(0, gate);
+            publisher.subscribe(slow);
+            slow.subscription.request(2);
+            resort.addRoomReservation(1, List.of());
+            check(slow.firstEventDelivered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS), "the first event is delivered");
+            for (int i = 0; i < 5; i++) {
+                resort.addRoomReservation(1, List.of());
+            }
+            gate.countDown();
+            check(slow.awaitTermination(), "a slow subscriber is terminated once it overflowed");
+            check(slow.error instanceof ReservationEventPublisher.FeedOverflowException,
+                    "a slow subscriber receives FeedOverflowException, got " + slow.error);
+            List<ReservationEvent> events = slow.events();
+            check(events.size() == 2, "the buffered events with demand are delivered first, got " + events.size());
+            check(events.get(0).getSequence() == 6 && events.get(1).getSequence() == 7, "buffered events keep their order");
+            check(((ReservationEventPublisher.FeedOverflowException) slow.error).getFirstMissedSequence() == 11,
+                    "the overflow of a slow subscriber names the first missed event");
+        }
+    }
+
+    /**
+     * Cancels after the first event and checks nothing more is delivered
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static void checkCancel() throws InterruptedException {
+        MusandamResort resort = newResort();
+        try (ReservationEventPublisher publisher = ReservationEventPublisher.attach(resort, 4)) {
+            RecordingSubscriber subscriber = new RecordingSubscriber(0);
+            publisher.subscribe(subscriber);
+            subscriber.subscription.request(1);
+            Reservation booked = resort.addRoomReservation(1, List.of());
+            waitFor(() -> subscriber.events().size() == 1, "the requested event is delivered");
+            subscriber.subscription.cancel();
+            check(publisher.getSubscriberCount() == 0, "a cancelled subscriber is unsubscribed");
+            subscriber.subscription.request(10);
+            resort.cancelReservationById(booked.getReservationId());
+            for (int i = 0; i < 10; i++) {
+                resort.addRoomReservation(1, List.of());
+            }
+            Thread.sleep(100);
+            check(subscriber.events().size() == 1, "nothing is delivered after cancel");
+            check(subscriber.terminated.getCount() == 1, "a cancelled subscriber is not signalled again");
+        }
+    }
+
+    /**
+     * Throws from onNext and checks the subscriber receives the failure and bookings go on
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static void checkFailingSubscriber() throws InterruptedException {
+        MusandamResort resort = newResort();
+        try (ReservationEventPublisher publisher = ReservationEventPublisher.attach(resort, 4)) {
+            RecordingSubscriber failing = new RecordingSubscriber(2);
+            RecordingSubscriber healthy = new RecordingSubscriber(0);
+            publisher.subscribe(failing);
+            publisher.subscribe(healthy);
+            failing.subscription.request(Long.MAX_VALUE);
+            healthy.subscription.request(Long.MAX_VALUE);
+            for (int i = 0; i < 3; i++) {
+                resort.addRoomReservation(1, List.of());
+            }
+            check(failing.awaitTermination(), "a failing subscriber is terminated");
+            check(failing.error instanceof IllegalStateException && "subscriber failure".equals(failing.error.getMessage()),
+                    "a failing subscriber receives what it threw, got " + failing.error);
+            waitFor(() -> healthy.events().size() == 3, "other subscribers keep receiving events");
+            resort.addRoomReservation(1, List.of());
+            waitFor(() -> healthy.events().size() == 4, "the drain task of other subscribers keeps running");
+            check(failing.events().size() == 2, "a failing subscriber gets nothing after it threw");
+            check(resort.getReservations().size() == 4, "bookings are not affected by a failing subscriber");
+        }
+    }
+
+    /**
+     * Closes the publisher and checks buffered events are delivered before onComplete
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static void checkClose() throws InterruptedException {
+        MusandamResort resort = newResort();
+        ReservationEventPublisher publisher = ReservationEventPublisher.attach(resort, 4);
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+        resort.addRoomReservation(1, List.of());
+        resort.addRoomReservation(1, List.of());
+        publisher.close();
+        check(subscriber.awaitTermination(), "closing terminates the subscriber");
+        check(subscriber.completed, "closing completes the subscriber, got " + subscriber.error);
+        check(subscriber.events().size() == 2, "buffered events are delivered before onComplete");
+        resort.addRoomReservation(1, List.of());
+        check(subscriber.events().size() == 2, "a closed publisher stops publishing");
+    }
+
+    /**
+     * Creates a resort pricing rooms
+     *
+     * @return the resort
+     */
+    private static MusandamResort newResort() {
+        return new MusandamResort(List.of(new BookingInfo(RoomReservation.UNIT_TYPE, 0.1, 100)),
+                new StripedReservationStore());
+    }
+
+    /**
+     * Waits for a condition set by the drain task
+     *
+     * @param condition the condition
+     * @param description what the condition checks
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static void waitFor(BooleanSupplier condition, String description) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (!condition.getAsBoolean()) {
+            check(System.nanoTime() < deadline, description);
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Fails the run if a condition does not hold
+     *
+     * @param condition the condition
+     * @param description what the condition checks
+     */
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            throw new AssertionError(description);
+        }
+    }
+}
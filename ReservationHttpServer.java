@@ -0,0 +1,980 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the desk operations of a resort as a small HTTP/JSON API
+ *
+ * <pre>
+ * POST   /reservations/room         {"nights": 3, "requirements": ["TV", "internet"]}
+ * POST   /reservations/conference   {"nights": 2, "guests": 40}
+ * GET    /reservations/{id}
+ * DELETE /reservations/{id}
+ * GET    /reservations[?cursor=C&amp;limit=N]
+ * GET    /availability?type=room&amp;date=2024-05-01[&amp;nights=N]
+ * GET    /availability/{unit}?date=2024-05-01[&amp;nights=N]
+ * </pre>
+ * Bookings may add "checkIn": "2024-05-01" and "unit": 101 to reserve a specific unit by date.
+ * Listings answer {"reservations": [...], "nextCursor": "..."} in reservation ID order, 50 per
+ * page unless limit asks for up to 1000; nextCursor is null on the last page and is passed
+ * back as cursor for the next one.
+ * Bookings answer 201, lookups and cancellations 200 or 404, a unit already reserved for
+ * some of the nights 409, invalid requests 400, and any other failure, such as the journal
+ * failing to write, 500, each error with an {"error": "..."} body. Each request runs on its own
+ * virtual thread when the JDK has them, otherwise on a cached thread pool, so the resort must be backed by a thread-safe store such
+ * as StripedReservationStore or VersionedReservationStore. Pages are read live, so bookings and
+ * cancellations made between two pages show up in the later one if their IDs are past the cursor
+ */
+public class ReservationHttpServer implements Closeable {
+    private static final String RESERVATIONS_PATH = "/reservations";
+    private static final String AVAILABILITY_PATH = "/availability";
+    private static final int MAX_REQUIREMENTS = 3;
+    private static final int MAX_BODY_BYTES = 1 << 16;
+    private static final int CONNECTION_BACKLOG = 1024;
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int RESERVATION_JSON_BYTES = 112;
+    private static final String NO_DELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+    private final MusandamResort resort;
+    private final ReservationIdIndex listingIndex;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Creates a server bound to the given address
+     *
+     * @param resort the resort to serve
+     * @param address the address to listen on, port 0 picks a free port
+     * @throws IOException if the address cannot be bound
+     */
+    private ReservationHttpServer(MusandamResort resort, InetSocketAddress address) throws IOException {
+        this.resort = resort;
+        this.listingIndex = ReservationIdIndex.attach(resort);
+        this.server = HttpServer.create(address, CONNECTION_BACKLOG);
+        this.executor = newRequestExecutor();
+        this.server.setExecutor(executor);
+        this.server.createContext(RESERVATIONS_PATH, this::handle);
+        this.server.createContext(AVAILABILITY_PATH, this::handleAvailability);
+    }
+
+    /**
+     * Starts serving a resort on every interface
+     *
+     * Must be called after the reservations were restored, as the server indexes their IDs
+     * for listings before it starts taking bookings
+     *
+     * @param resort the resort to serve, backed by a thread-safe store
+     * @param port the port to listen on, 0 picks a free port
+     * @return the running server, to be closed when no longer needed
+     * @throws IOException if the port cannot be bound
+     */
+    public static ReservationHttpServer start(MusandamResort resort, int port) throws IOException {
+        return start(resort, new InetSocketAddress(port));
+    }
+
+    /**
+     * Starts serving a resort on the given address
+     *
+     * Must be called after the reservations were restored, as the server indexes their IDs
+     * for listings before it starts taking bookings
+     *
+     * @param resort the resort to serve, backed by a thread-safe store
+     * @param address the address to listen on, port 0 picks a free port
+     * @return the running server, to be closed when no longer needed
+     * @throws IOException if the address cannot be bound
+     */
+    public static ReservationHttpServer start(MusandamResort resort, InetSocketAddress address) throws IOException {
+        ReservationHttpServer httpServer = new ReservationHttpServer(resort, address);
+        httpServer.server.start();
+        return httpServer;
+    }
+
+    /**
+     * Turns off Nagle's algorithm for the JDK HTTP servers of this JVM
+     *
+     * The JDK server leaves it on, which holds small kept-alive responses back until the
+     * client's delayed ACK and caps each connection near 25 requests/s. The switch is the
+     * sun.net.httpserver.nodelay system property: it applies to every HttpServer of the
+     * process and is read once, when the first one is created. It is therefore left to the
+     * application owning the JVM to call this before starting its first server; an explicit
+     * setting of the property is kept
+     */
+    public static void enableNoDelay() {
+        if (System.getProperty(NO_DELAY_PROPERTY) == null) {
+            System.setProperty(NO_DELAY_PROPERTY, "true");
+        }
+    }
+
+    /**
+     * Creates the executor running the requests
+     *
+     * Virtual threads are looked up reflectively so the server still builds and runs on JDKs
+     * without them, where it falls back to a cached pool of daemon threads
+     *
+     * @return the request executor
+     */
+    private static ExecutorService newRequestExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "reservation-http");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Retrieves the port the server listens on
+     *
+     * @return the bound port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests, lets the running ones finish for up to a second and stops the server
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Routes a request to the operation matching its method and path
+     *
+     * @param exchange the request and its response
+     * @throws IOException if the response cannot be sent
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            try {
+                if (path.equals(RESERVATIONS_PATH) || path.equals(RESERVATIONS_PATH + "/")) {
+                    requireMethod(method, "GET");
+                    handleList(exchange);
+                    return;
+                }
+                if (!path.startsWith(RESERVATIONS_PATH + "/")) {
+                    sendError(exchange, 404, "no such resource");
+                    return;
+                }
+                String resource = path.substring(RESERVATIONS_PATH.length() + 1);
+                if (resource.equals("room")) {
+                    requireMethod(method, "POST");
+                    handleAddRoom(exchange);
+                } else if (resource.equals("conference")) {
+                    requireMethod(method, "POST");
+                    handleAddConference(exchange);
+                } else if ("GET".equals(method)) {
+                    handleGet(exchange, parseReservationId(resource));
+                } else if ("DELETE".equals(method)) {
+                    handleCancel(exchange, parseReservationId(resource));
+                } else {
+                    throw new MethodNotAllowedException("GET, DELETE");
+                }
+            } catch (MethodNotAllowedException e) {
+                exchange.getResponseHeaders().set("Allow", e.getMessage());
+                sendError(exchange, 405, "method not allowed");
+            } catch (UnitUnavailableException e) {
+                sendError(exchange, 409, e.getMessage());
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                sendError(exchange, 400, e.getMessage());
+            } catch (RuntimeException e) {
+                sendError(exchange, 500, "internal error");
+            }
+        }
+    }
+
+    /**
+     * Answers which units are free, or whether one unit is free, for a stay
+     *
+     * @param exchange the request and its response
+     * @throws IOException if the response cannot be sent
+     */
+    private void handleAvailability(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            String query = exchange.getRequestURI().getRawQuery();
+            try {
+                requireMethod(exchange.getRequestMethod(), "GET");
+                LocalDate date = parseDate(queryValue(query, "date"), "date");
+                int numberOfNights = queryInt(query, "nights", 1);
+                AvailabilityCalendar calendar = resort.getAvailabilityCalendar();
+
+                StringBuilder json = new StringBuilder(128);
+                if (path.equals(AVAILABILITY_PATH) || path.equals(AVAILABILITY_PATH + "/")) {
+                    String type = queryValue(query, "type");
+                    if (type == null) {
+                        throw new IllegalArgumentException("missing type");
+                    }
+                    json.append("{\"type\":");
+                    appendString(json, type);
+                    appendStay(json, date, numberOfNights);
+                    json.append(",\"freeUnits\":[");
+                    List<Integer> freeUnits = calendar.findFreeUnits(type, date, numberOfNights);
+                    for (int i = 0; i < freeUnits.size(); i++) {
+                        if (i > 0) {
+                            json.append(',');
+                        }
+                        json.append(freeUnits.get(i));
+                    }
+                    json.append("]}");
+                } else if (path.startsWith(AVAILABILITY_PATH + "/")) {
+                    String unit = path.substring(AVAILABILITY_PATH.length() + 1);
+                    int unitNumber;
+                    try {
+                        unitNumber = Integer.parseInt(unit);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("invalid unit \"" + unit + "\"");
+                    }
+                    if (!calendar.hasUnit(unitNumber)) {
+                        sendError(exchange, 404, "there is no unit " + unitNumber);
+                        return;
+                    }
+                    json.append("{\"unitNumber\":").append(unitNumber);
+                    appendStay(json, date, numberOfNights);
+                    json.append(",\"free\":").append(calendar.isFree(unitNumber, date, numberOfNights)).append('}');
+                } else {
+                    sendError(exchange, 404, "no such resource");
+                    return;
+                }
+                send(exchange, 200, json);
+            } catch (MethodNotAllowedException e) {
+                exchange.getResponseHeaders().set("Allow", e.getMessage());
+                sendError(exchange, 405, "method not allowed");
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+            } catch (RuntimeException e) {
+                sendError(exchange, 500, "internal error");
+            }
+        }
+    }
+
+    /**
+     * Books a room from a {"nights", "requirements"} body
+     *
+     * @param exchange the request and its response
+     * @throws IOException if the request cannot be read or the response sent
+     */
+    private void handleAddRoom(HttpExchange exchange) throws IOException {
+        JsonBody body = JsonBody.parse(readBody(exchange));
+        int numberOfNights = body.requirePositiveInt("nights");
+        List<String> requirements = body.getStrings("requirements");
+        if (requirements.size() > MAX_REQUIREMENTS) {
+            throw new IllegalArgumentException("cannot accommodate more than " + MAX_REQUIREMENTS + " requirements");
+        }
+        Reservation reservation = isScheduled(body)
+                ? resort.addRoomReservation(numberOfNights, requirements, parseDate(body.getString("checkIn"), "checkIn"), body.requirePositiveInt("unit"))
+                : resort.addRoomReservation(numberOfNights, requirements);
+        sendReservation(exchange, 201, reservation);
+    }
+
+    /**
+     * Books a conference hall from a {"nights", "guests"} body
+     *
+     * @param exchange the request and its response
+     * @throws IOException if the request cannot be read or the response sent
+     */
+    private void handleAddConference(HttpExchange exchange) throws IOException {
+        JsonBody body = JsonBody.parse(readBody(exchange));
+        int numberOfNights = body.requirePositiveInt("nights");
+        int numberOfGuests = body.requirePositiveInt("guests");
+        Reservation reservation = isScheduled(body)
+                ? resort.addConferenceReservation(numberOfNights, numberOfGuests, parseDate(body.getString("checkIn"), "checkIn"), body.requirePositiveInt("unit"))
+                : resort.addConferenceReservation(numberOfNights, numberOfGuests);
+        sendReservation(exchange, 201, reservation);
+    }
+
+    /**
+     * Checks whether a booking asks for a specific unit by date
+     *
+     * @param body the booking body
+     * @return true if the body has a check-in date or unit
+     */
+    private static boolean isScheduled(JsonBody body) {
+        return body.has("checkIn") || body.has("unit");
+    }
+
+    /**
+     * Parses an ISO date such as 2024-05-01
+     *
+     * @param value the text, or null
+     * @param field the name of the field, for error messages
+     * @return the date
+     * @throws IllegalArgumentException if the text is missing or not a date
+     */
+    private static LocalDate parseDate(String value, String field) {
+        if (value == null) {
+            throw new IllegalArgumentException("missing " + field);
+        }
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("invalid " + field + " \"" + value + "\"");
+        }
+    }
+
+    /**
+     * Answers one reservation, or 404
+     *
+     * @param exchange the request and its response
+     * @param reservationId the requested reservation ID
+     * @throws IOException if the response cannot be sent
+     */
+    private void handleGet(HttpExchange exchange, int reservationId) throws IOException {
+        sendReservationOrNotFound(exchange, resort.getReservationById(reservationId), reservationId);
+    }
+
+    /**
+     * Cancels a reservation and answers it, or 404
+     *
+     * @param exchange the request and its response
+     * @param reservationId the reservation ID to cancel
+     * @throws IOException if the response cannot be sent
+     */
+    private void handleCancel(HttpExchange exchange, int reservationId) throws IOException {
+        sendReservationOrNotFound(exchange, resort.cancelReservationById(reservationId), reservationId);
+    }
+
+    /**
+     * Answers a page of the reservations in ID order, with the cursor of the next page
+     *
+     * The page is read from the ID index of the server, so it costs the same however deep the
+     * cursor is
+     *
+     * @param exchange the request and its response
+     * @throws IOException if the response cannot be sent
+     * @throws IllegalArgumentException if the cursor or limit is invalid
+     */
+    private void handleList(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getRawQuery();
+        int limit = queryInt(query, "limit", DEFAULT_PAGE_SIZE);
+        if (limit == 0 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        ReservationPage page = listingIndex.page(queryValue(query, "cursor"), limit);
+
+        long capacity = 64L + (long) page.size() * RESERVATION_JSON_BYTES;
+        StringBuilder json = new StringBuilder((int) Math.min(capacity, MAX_PAGE_SIZE * RESERVATION_JSON_BYTES));
+        json.append("{\"reservations\":[");
+        for (int i = 0; i < page.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            appendReservation(json, page.getReservations().get(i));
+        }
+        json.append("],\"nextCursor\":");
+        if (page.hasNextPage()) {
+            appendString(json, page.getNextCursor());
+        } else {
+            json.append("null");
+        }
+        json.append('}');
+        send(exchange, 200, json);
+    }
+
+    /**
+     * Rejects a request whose method does not match the resource
+     *
+     * @param method the request method
+     * @param allowed the only method of the resource
+     * @throws MethodNotAllowedException if the methods differ
+     */
+    private static void requireMethod(String method, String allowed) {
+        if (!allowed.equals(method)) {
+            throw new MethodNotAllowedException(allowed);
+        }
+    }
+
+    /**
+     * Parses the reservation ID at the end of a path
+     *
+     * @param resource the path after /reservations/
+     * @return the reservation ID
+     * @throws IllegalArgumentException if the path does not end with an ID
+     */
+    private static int parseReservationId(String resource) {
+        try {
+            return Integer.parseInt(resource);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid reservation ID \"" + resource + "\"");
+        }
+    }
+
+    /**
+     * Reads a non-negative integer parameter from a query string
+     *
+     * @param query the raw query string, or null
+     * @param name the parameter name
+     * @param defaultValue the value when the parameter is missing
+     * @return the parameter value
+     * @throws IllegalArgumentException if the parameter is not a non-negative integer
+     */
+    private static int queryInt(String query, String name, int defaultValue) {
+        String value = queryValue(query, name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed >= 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("invalid " + name + " \"" + value + "\"");
+    }
+
+    /**
+     * Reads a parameter from a query string
+     *
+     * @param query the raw query string, or null
+     * @param name the parameter name
+     * @return the decoded parameter value, or null if the parameter is missing
+     */
+    private static String queryValue(String query, String name) {
+        if (query == null) {
+            return null;
+        }
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith(name) && parameter.length() > name.length() && parameter.charAt(name.length()) == '=') {
+                return URLDecoder.decode(parameter.substring(name.length() + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the request body as UTF-8
+     *
+     * @param exchange the request
+     * @return the body text
+     * @throws IOException if the body cannot be read
+     * @throws IllegalArgumentException if the body is too large
+     */
+    private static String readBody(HttpExchange exchange) throws IOException {
+        InputStream input = exchange.getRequestBody();
+        ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+        byte[] chunk = new byte[4096];
+        int read;
+        while ((read = input.read(chunk)) >= 0) {
+            body.write(chunk, 0, read);
+            if (body.size() > MAX_BODY_BYTES) {
+                throw new IllegalArgumentException("request body larger than " + MAX_BODY_BYTES + " bytes");
+            }
+        }
+        return body.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Answers a reservation, or 404 if it does not exist
+     *
+     * @param exchange the request and its response
+     * @param reservation the reservation, or null
+     * @param reservationId the requested reservation ID
+     * @throws IOException if the response cannot be sent
+     */
+    private static void sendReservationOrNotFound(HttpExchange exchange, Reservation reservation, int reservationId)
+            throws IOException {
+        if (reservation == null) {
+            sendError(exchange, 404, "there is no such reservation: " + reservationId);
+        } else {
+            sendReservation(exchange, 200, reservation);
+        }
+    }
+
+    /**
+     * Answers a single reservation as a JSON object
+     *
+     * @param exchange the request and its response
+     * @param status the HTTP status
+     * @param reservation the reservation
+     * @throws IOException if the response cannot be sent
+     */
+    private static void sendReservation(HttpExchange exchange, int status, Reservation reservation) throws IOException {
+        StringBuilder json = new StringBuilder(128);
+        appendReservation(json, reservation);
+        send(exchange, status, json);
+    }
+
+    /**
+     * Answers an {"error": "..."} object
+     *
+     * @param exchange the request and its response
+     * @param status the HTTP status
+     * @param message the error message
+     * @throws IOException if the response cannot be sent
+     */
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        StringBuilder json = new StringBuilder(64);
+        json.append("{\"error\":");
+        appendString(json, message == null ? "invalid request" : message);
+        json.append('}');
+        send(exchange, status, json);
+    }
+
+    /**
+     * Sends a JSON response with a known length, so the connection can be kept alive
+     *
+     * @param exchange the request and its response
+     * @param status the HTTP status
+     * @param json the response body
+     * @throws IOException if the response cannot be sent
+     */
+    private static void send(HttpExchange exchange, int status, CharSequence json) throws IOException {
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    /**
+     * Appends a reservation as a JSON object
+     *
+     * @param json the builder to append to
+     * @param reservation the reservation
+     */
+    private static void appendReservation(StringBuilder json, Reservation reservation) {
+        json.append("{\"reservationId\":").append(reservation.getReservationId())
+                .append(",\"reservationType\":");
+        appendString(json, reservation.getReservationType());
+        json.append(",\"numberOfNights\":").append(reservation.getNumberOfNights())
+                .append(",\"costOfReservation\":");
+        Money.append(json, reservation.getCostInCents());
+        if (reservation instanceof RoomReservation) {
+            json.append(",\"requirements\":[");
+            List<String> requirements = ((RoomReservation) reservation).getRequirements();
+            for (int i = 0; i < requirements.size(); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                appendString(json, requirements.get(i));
+            }
+            json.append(']');
+        } else if (reservation instanceof ConferenceReservation) {
+            json.append(",\"numberOfGuests\":").append(((ConferenceReservation) reservation).getNumberOfGuests());
+        }
+        if (reservation.isScheduled()) {
+            json.append(",\"checkInDate\":\"").append(reservation.getCheckInDate())
+                    .append("\",\"unitNumber\":").append(reservation.getUnitNumber());
+        }
+        json.append('}');
+    }
+
+    /**
+     * Appends the check-in date and number of nights of an availability answer
+     *
+     * @param json the builder to append to
+     * @param checkInDate the date of the first night
+     * @param numberOfNights the number of nights
+     */
+    private static void appendStay(StringBuilder json, LocalDate checkInDate, int numberOfNights) {
+        json.append(",\"checkInDate\":\"").append(checkInDate)
+                .append("\",\"numberOfNights\":").append(numberOfNights);
+    }
+
+    /**
+     * Appends a quoted and escaped JSON string
+     *
+     * @param json the builder to append to
+     * @param value the string
+     */
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * Signals a request method the resource does not support; the message lists the allowed methods
+     */
+    private static final class MethodNotAllowedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Creates the exception
+         *
+         * @param allowed the methods the resource supports, for the Allow header
+         */
+        private MethodNotAllowedException(String allowed) {
+            super(allowed, null, false, false);
+        }
+    }
+
+    /**
+     * The fields of a flat JSON request object
+     *
+     * Only the values the API reads are kept: integers, and arrays of strings. Other fields are
+     * parsed and skipped, so clients may send extra data
+     */
+    private static final class JsonBody {
+        /**
+         * Deepest nesting of arrays and objects accepted, counting the body object; the API
+         * itself needs 2, for an array of strings in the body
+         */
+        private static final int MAX_DEPTH = 16;
+
+        private final String text;
+        private int position;
+        private final List<String> names = new ArrayList<>(4);
+        private final List<Object> values = new ArrayList<>(4);
+
+        /**
+         * Creates a parser over a body
+         *
+         * @param text the body text
+         */
+        private JsonBody(String text) {
+            this.text = text;
+        }
+
+        /**
+         * Parses a request body holding one JSON object
+         *
+         * @param text the body text
+         * @return the parsed fields
+         * @throws IllegalArgumentException if the body is not a JSON object
+         */
+        static JsonBody parse(String text) {
+            JsonBody body = new JsonBody(text);
+            body.skipWhitespace();
+            body.expect('{');
+            body.skipWhitespace();
+            if (!body.consume('}')) {
+                do {
+                    body.skipWhitespace();
+                    String name = body.readString();
+                    body.skipWhitespace();
+                    body.expect(':');
+                    body.skipWhitespace();
+                    body.names.add(name);
+                    body.values.add(body.readValue(1));
+                    body.skipWhitespace();
+                } while (body.consume(','));
+                body.expect('}');
+            }
+            body.skipWhitespace();
+            if (body.position != text.length()) {
+                throw body.error("unexpected trailing input");
+            }
+            return body;
+        }
+
+        /**
+         * Retrieves the last value of a field
+         *
+         * @param name the field name
+         * @return the value, or null if the field is missing
+         */
+        private Object get(String name) {
+            int index = names.lastIndexOf(name);
+            return index < 0 ? null : values.get(index);
+        }
+
+        /**
+         * Checks whether a field is present
+         *
+         * @param name the field name
+         * @return true if the field was sent
+         */
+        boolean has(String name) {
+            return names.contains(name);
+        }
+
+        /**
+         * Retrieves a field that must be a string
+         *
+         * @param name the field name
+         * @return the value, or null if the field is missing
+         * @throws IllegalArgumentException if the field is not a string
+         */
+        String getString(String name) {
+            Object value = get(name);
+            if (value != null && !(value instanceof String)) {
+                throw new IllegalArgumentException("invalid " + name);
+            }
+            return (String) value;
+        }
+
+        /**
+         * Retrieves a field that must be a positive integer
+         *
+         * @param name the field name
+         * @return the value
+         * @throws IllegalArgumentException if the field is missing or not a positive integer
+         */
+        int requirePositiveInt(String name) {
+            Object value = get(name);
+            if (value == null) {
+                throw new IllegalArgumentException("missing " + name);
+            }
+            if (!(value instanceof Long) || (Long) value <= 0 || (Long) value > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("invalid " + name);
+            }
+            return (int) (long) (Long) value;
+        }
+
+        /**
+         * Retrieves a field that must be an array of strings
+         *
+         * @param name the field name
+         * @return the strings, or an empty list if the field is missing
+         * @throws IllegalArgumentException if the field is not an array of strings
+         */
+        @SuppressWarnings("unchecked")
+        List<String> getStrings(String name) {
+            Object value = get(name);
+            if (value == null) {
+                return new ArrayList<>(0);
+            }
+            if (!(value instanceof List)) {
+                throw new IllegalArgumentException("invalid " + name);
+            }
+            List<Object> items = (List<Object>) value;
+            for (Object item : items) {
+                if (!(item instanceof String)) {
+                    throw new IllegalArgumentException("invalid " + name);
+                }
+            }
+            return (List<String>) value;
+        }
+
+        /**
+         * Reads any JSON value
+         *
+         * @param depth the number of arrays and objects the value is nested in
+         * @return a Long for integers, a String, a List for arrays, or a marker for values the API ignores
+         * @throws IllegalArgumentException if the value is malformed or nested too deeply
+         */
+        private Object readValue(int depth) {
+            if (position == text.length()) {
+                throw error("missing value");
+            }
+            char c = text.charAt(position);
+            if (c == '"') {
+                return readString();
+            }
+            if ((c == '[' || c == '{') && depth == MAX_DEPTH) {
+                throw error("nested deeper than " + MAX_DEPTH + " levels");
+            }
+            if (c == '[') {
+                position++;
+                List<Object> items = new ArrayList<>(4);
+                skipWhitespace();
+                if (!consume(']')) {
+                    do {
+                        skipWhitespace();
+                        items.add(readValue(depth + 1));
+                        skipWhitespace();
+                    } while (consume(','));
+                    expect(']');
+                }
+                return items;
+            }
+            if (c == '{') {
+                position++;
+                skipWhitespace();
+                if (!consume('}')) {
+                    do {
+                        skipWhitespace();
+                        readString();
+                        skipWhitespace();
+                        expect(':');
+                        skipWhitespace();
+                        readValue(depth + 1);
+                        skipWhitespace();
+                    } while (consume(','));
+                    expect('}');
+                }
+                return Boolean.FALSE;
+            }
+            if (c == '-' || (c >= '0' && c <= '9')) {
+                return readNumber();
+            }
+            for (String literal : new String[] {"true", "false", "null"}) {
+                if (text.startsWith(literal, position)) {
+                    position += literal.length();
+                    return Boolean.FALSE;
+                }
+            }
+            throw error("unexpected character '" + c + "'");
+        }
+
+        /**
+         * Reads a number, keeping it only when it is an integer
+         *
+         * @return a Long for integers, or a marker for fractions and huge numbers
+         */
+        private Object readNumber() {
+            int start = position;
+            boolean integer = true;
+            while (position < text.length()) {
+                char c = text.charAt(position);
+                if (c == '.' || c == 'e' || c == 'E' || c == '+' || (c == '-' && position > start)) {
+                    integer = false;
+                } else if ((c < '0' || c > '9') && c != '-') {
+                    break;
+                }
+                position++;
+            }
+            String number = text.substring(start, position);
+            if (integer && number.matches("-?[0-9]+")) {
+                try {
+                    return Long.parseLong(number);
+                } catch (NumberFormatException e) {
+                    // Too large for any field of the API
+                    return Boolean.FALSE;
+                }
+            }
+            if (number.matches("-?[0-9]+(\\.[0-9]+)?([eE][-+]?[0-9]+)?")) {
+                return Boolean.FALSE;
+            }
+            throw error("invalid number");
+        }
+
+        /**
+         * Reads a quoted string, resolving escapes
+         *
+         * @return the string
+         */
+        private String readString() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (position < text.length()) {
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (position == text.length()) {
+                    break;
+                }
+                char escape = text.charAt(position++);
+                switch (escape) {
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'u':
+                        if (position + 4 > text.length()) {
+                            throw error("invalid escape");
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("invalid escape");
+                        }
+                        position += 4;
+                        break;
+                    default:
+                        value.append(escape);
+                        break;
+                }
+            }
+            throw error("unterminated string");
+        }
+
+        /**
+         * Skips JSON whitespace
+         */
+        private void skipWhitespace() {
+            while (position < text.length()) {
+                char c = text.charAt(position);
+                if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                    return;
+                }
+                position++;
+            }
+        }
+
+        /**
+         * Consumes a character if it comes next
+         *
+         * @param expected the character
+         * @return true if it was consumed
+         */
+        private boolean consume(char expected) {
+            if (position < text.length() && text.charAt(position) == expected) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Consumes a character that must come next
+         *
+         * @param expected the character
+         * @throws IllegalArgumentException if another character comes next
+         */
+        private void expect(char expected) {
+            if (!consume(expected)) {
+                throw error("expected '" + expected + "'");
+            }
+        }
+
+        /**
+         * Builds an error for the current position
+         *
+         * @param reason what is wrong
+         * @return the exception to throw
+         */
+        private IllegalArgumentException error(String reason) {
+            return new IllegalArgumentException("malformed JSON at offset " + position + ": " + reason);
+        }
+    }
+}
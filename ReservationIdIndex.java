@@ -0,0 +1,170 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Index of the booked reservation IDs, for paging through a resort in ID order
+ *
+ * Registered as a listener, it sets one bit per booked ID and clears it on cancellation, so it
+ * takes one bit per ID handed out rather than holding the reservations: pages look each ID up
+ * in the store of the resort, without counting as desk lookups in the metrics, and a
+ * TieredReservationStore only loads the reservations of the pages actually read. A second,
+ * 64 times smaller bitmap marks the words holding any booked ID, so a page skips runs of
+ * cancelled IDs 4096 at a time. Updates and page reads share a short lock, so bookings may
+ * come from many threads while pages are read
+ */
+public class ReservationIdIndex implements ReservationListener {
+    private static final int WORD_SHIFT = 6;
+    private static final int INITIAL_WORDS = 64;
+
+    private final ReservationStore store;
+    private long[] bookedWords = new long[INITIAL_WORDS];
+    private long[] nonEmptyWords = new long[1];
+
+    /**
+     * Creates an empty index over a store
+     *
+     * @param store the store the reservations are looked up in
+     */
+    private ReservationIdIndex(ReservationStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Creates an index holding the current reservation IDs of a resort and keeps it up to date
+     *
+     * Must be called after the reservations were restored, and before other threads start
+     * booking on the resort
+     *
+     * @param resort the resort to follow
+     * @return the attached index
+     * @throws IllegalArgumentException if a reservation ID is negative
+     */
+    public static ReservationIdIndex attach(MusandamResort resort) {
+        ReservationIdIndex index = new ReservationIdIndex(resort.getReservationStore());
+        for (Reservation reservation : resort.getReservations()) {
+            index.reservationAdded(reservation);
+        }
+        resort.addReservationListener(index);
+        return index;
+    }
+
+    /**
+     * Records the ID of a new reservation
+     *
+     * @param reservation the new reservation
+     * @throws IllegalArgumentException if the reservation ID is negative
+     */
+    @Override
+    public synchronized void reservationAdded(Reservation reservation) {
+        int reservationId = reservation.getReservationId();
+        if (reservationId < 0) {
+            throw new IllegalArgumentException("Invalid reservation ID: " + reservationId);
+        }
+        int word = reservationId >>> WORD_SHIFT;
+        if (word >= bookedWords.length) {
+            int length = (int) Math.min(Math.max(2L * bookedWords.length, word + 1L), (Integer.MAX_VALUE >>> WORD_SHIFT) + 1);
+            bookedWords = Arrays.copyOf(bookedWords, length);
+            nonEmptyWords = Arrays.copyOf(nonEmptyWords, ((length - 1) >>> WORD_SHIFT) + 1);
+        }
+        bookedWords[word] |= 1L << reservationId;
+        nonEmptyWords[word >>> WORD_SHIFT] |= 1L << word;
+    }
+
+    /**
+     * Forgets the ID of a cancelled reservation
+     *
+     * @param reservation the cancelled reservation
+     */
+    @Override
+    public synchronized void reservationCancelled(Reservation reservation) {
+        int reservationId = reservation.getReservationId();
+        int word = reservationId >>> WORD_SHIFT;
+        if (reservationId < 0 || word >= bookedWords.length) {
+            return;
+        }
+        bookedWords[word] &= ~(1L << reservationId);
+        if (bookedWords[word] == 0) {
+            nonEmptyWords[word >>> WORD_SHIFT] &= ~(1L << word);
+        }
+    }
+
+    /**
+     * Lists one page of the reservations in ID order
+     *
+     * @param cursor the cursor of the previous page, or null for the first page
+     * @param pageSize the most reservations to return
+     * @return the page, with the cursor of the next one
+     * @throws IllegalArgumentException if the cursor is invalid or the page size is not positive
+     */
+    public ReservationPage page(String cursor, int pageSize) {
+        return pageAfter(cursor == null ? -1 : ReservationPage.decodeCursor(cursor), pageSize);
+    }
+
+    /**
+     * Lists the reservations following an ID, in ID order
+     *
+     * Seeks to the next booked ID after the ID and looks up only the IDs of the page, skipping
+     * those cancelled since they were read. The ID need not be booked anymore
+     *
+     * @param afterReservationId the reservation ID the page starts after
+     * @param pageSize the most reservations to return
+     * @return the page, with the cursor of the next one
+     * @throws IllegalArgumentException if the page size is not positive
+     */
+    public ReservationPage pageAfter(int afterReservationId, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Invalid page size: " + pageSize);
+        }
+        List<Reservation> reservations = new ArrayList<>(Math.min(pageSize, 1024));
+        int reservationId = nextBookedId(afterReservationId);
+        while (reservations.size() < pageSize && reservationId >= 0) {
+            Reservation reservation = store.get(reservationId);
+            if (reservation != null) {
+                reservations.add(reservation);
+            }
+            reservationId = nextBookedId(reservationId);
+        }
+        String nextCursor = reservationId >= 0
+                ? ReservationPage.cursorAfter(reservations.get(reservations.size() - 1).getReservationId())
+                : null;
+        return new ReservationPage(reservations, nextCursor);
+    }
+
+    /**
+     * Finds the first booked ID after an ID
+     *
+     * Looks in the word of the ID first, then finds the next word holding a booked ID in the
+     * bitmap of non-empty words
+     *
+     * @param reservationId the ID to search after
+     * @return the next booked ID, or -1 if there is none
+     */
+    private synchronized int nextBookedId(int reservationId) {
+        if (reservationId == Integer.MAX_VALUE) {
+            return -1;
+        }
+        int from = Math.max(reservationId + 1, 0);
+        int word = from >>> WORD_SHIFT;
+        if (word >= bookedWords.length) {
+            return -1;
+        }
+        long bits = bookedWords[word] & (-1L << from);
+        if (bits != 0) {
+            return (word << WORD_SHIFT) + Long.numberOfTrailingZeros(bits);
+        }
+        if (++word >= bookedWords.length) {
+            return -1;
+        }
+        int summaryWord = word >>> WORD_SHIFT;
+        long summaryBits = nonEmptyWords[summaryWord] & (-1L << word);
+        while (summaryBits == 0) {
+            if (++summaryWord >= nonEmptyWords.length) {
+                return -1;
+            }
+            summaryBits = nonEmptyWords[summaryWord];
+        }
+        word = (summaryWord << WORD_SHIFT) + Long.numberOfTrailingZeros(summaryBits);
+        return (word << WORD_SHIFT) + Long.numberOfTrailingZeros(bookedWords[word]);
+    }
+}
@@ -0,0 +1,109 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free source of reservation IDs
+ *
+ * Safe to share between threads; every call to next() returns a distinct ID. A sequence may
+ * step by a stride, so that several sequences hand out disjoint IDs: with a stride of N,
+ * the sequences starting at 1 to N together cover every ID exactly once
+ */
+public class ReservationIdSequence {
+    private final AtomicInteger nextReservationId;
+    private final int stride;
+
+    /**
+     * Creates a sequence handing out consecutive IDs from the given starting value
+     *
+     * @param firstReservationId the first ID to hand out
+     */
+    public ReservationIdSequence(int firstReservationId) {
+        this(firstReservationId, 1);
+    }
+
+    /**
+     * Creates a sequence handing out every stride-th ID from the given starting value
+     *
+     * @param firstReservationId the first ID to hand out
+     * @param stride the difference between consecutive IDs
+     * @throws IllegalArgumentException if the stride is not positive
+     */
+    public ReservationIdSequence(int firstReservationId, int stride) {
+        if (stride <= 0) {
+            throw new IllegalArgumentException("Invalid ID stride: " + stride);
+        }
+        this.nextReservationId = new AtomicInteger(firstReservationId);
+        this.stride = stride;
+    }
+
+    /**
+     * Allocates the next reservation ID
+     *
+     * @return a reservation ID never handed out before by this sequence
+     */
+    public int next() {
+        return nextReservationId.getAndAdd(stride);
+    }
+
+    /**
+     * Allocates a block of IDs in one step
+     *
+     * The block holds the returned ID and the following count - 1 IDs of the sequence, each a
+     * stride apart; no other call hands out any of them
+     *
+     * @param count the number of IDs to allocate
+     * @return the first ID of the block
+     * @throws IllegalArgumentException if the count is negative
+     */
+    public int nextBlock(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Invalid ID block size: " + count);
+        }
+        return nextReservationId.getAndAdd(Math.multiplyExact(count, stride));
+    }
+
+    /**
+     * Gives back a block of IDs that ended up unused
+     *
+     * Only possible while no other ID was handed out after the block; otherwise the IDs of
+     * the block are skipped for good
+     *
+     * @param firstReservationId the first ID of the block, as returned by nextBlock
+     * @param count the number of IDs in the block
+     * @return true if the IDs will be handed out again
+     */
+    public boolean releaseBlock(int firstReservationId, int count) {
+        return nextReservationId.compareAndSet(firstReservationId + count * stride, firstReservationId);
+    }
+
+    /**
+     * Retrieves the ID the next call to next() will hand out
+     *
+     * @return the next reservation ID
+     */
+    public int peek() {
+        return nextReservationId.get();
+    }
+
+    /**
+     * Retrieves the difference between consecutive IDs
+     *
+     * @return the stride, 1 for consecutive IDs
+     */
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * Makes sure the sequence never hands out the given ID or any ID below it again
+     *
+     * The sequence keeps stepping by its stride from where it started, so it moves to the
+     * first of its own IDs above the given one. Used after restoring reservations whose IDs
+     * were assigned in an earlier run
+     *
+     * @param reservationId an ID already in use
+     */
+    public void advancePast(int reservationId) {
+        nextReservationId.accumulateAndGet(reservationId, (next, used) ->
+                next > used ? next : next + ((used - next) / stride + 1) * stride);
+    }
+}
@@ -0,0 +1,322 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Hash index of reservations keyed by the primitive reservation ID
+ *
+ * Uses open addressing over int keys so lookups never box the ID, and links the
+ * occupied slots together so the reservations can still be listed in insertion order
+ *
+ * Not thread-safe; see StripedReservationStore for concurrent use
+ */
+public class ReservationIndex implements ReservationStore, Iterable<Reservation> {
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private static final byte FREE = 0;
+    private static final byte USED = 1;
+    private static final byte REMOVED = 2;
+
+    private int[] keys;
+    private Reservation[] values;
+    private byte[] states;
+    private int[] before;
+    private int[] after;
+
+    private int head = -1;
+    private int tail = -1;
+    private int size;
+    private int occupiedSlots;
+    private int resizeThreshold;
+
+    /**
+     * Creates an empty index with the default capacity
+     */
+    public ReservationIndex() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty index sized to hold the expected number of reservations without resizing
+     *
+     * @param expectedSize the number of reservations expected to be stored
+     */
+    public ReservationIndex(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * Computes the power of two table size able to hold the given number of entries
+     *
+     * @param expectedSize the number of entries to hold
+     * @return the table size
+     */
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Allocates empty slot arrays of the given power of two capacity
+     *
+     * @param capacity the number of slots
+     */
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new Reservation[capacity];
+        states = new byte[capacity];
+        before = new int[capacity];
+        after = new int[capacity];
+        head = -1;
+        tail = -1;
+        size = 0;
+        occupiedSlots = 0;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * Spreads the bits of the reservation ID so sequential IDs do not cluster
+     *
+     * @param reservationId the reservation ID
+     * @return the home slot of the ID
+     */
+    private int homeSlot(int reservationId) {
+        int hash = reservationId * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (keys.length - 1);
+    }
+
+    /**
+     * Finds the slot holding the given reservation ID
+     *
+     * @param reservationId the reservation ID to search
+     * @return the slot index, or -1 if the ID is not in the index
+     */
+    private int findSlot(int reservationId) {
+        int mask = keys.length - 1;
+        int slot = homeSlot(reservationId);
+        while (states[slot] != FREE) {
+            if (states[slot] == USED && keys[slot] == reservationId) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Adds a reservation to the index, replacing any reservation with the same ID
+     *
+     * A replaced reservation keeps its original position in the insertion order
+     *
+     * @param reservation the reservation to add
+     * @return the replaced reservation, or null if the ID was not indexed yet
+     */
+    @Override
+    public Reservation put(Reservation reservation) {
+        int reservationId = reservation.getReservationId();
+        int mask = keys.length - 1;
+        int slot = homeSlot(reservationId);
+        int firstRemoved = -1;
+        while (states[slot] != FREE) {
+            if (states[slot] == USED && keys[slot] == reservationId) {
+                Reservation replaced = values[slot];
+                values[slot] = reservation;
+                return replaced;
+            }
+            if (states[slot] == REMOVED && firstRemoved == -1) {
+                firstRemoved = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (firstRemoved != -1) {
+            slot = firstRemoved;
+        } else {
+            occupiedSlots++;
+        }
+        keys[slot] = reservationId;
+        values[slot] = reservation;
+        states[slot] = USED;
+        linkLast(slot);
+        size++;
+
+        if (occupiedSlots > resizeThreshold) {
+            rehash(size * 2 > resizeThreshold ? keys.length << 1 : keys.length);
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves the reservation with the given ID
+     *
+     * @param reservationId the reservation ID to search
+     * @return the reservation, or null if not found
+     */
+    @Override
+    public Reservation get(int reservationId) {
+        int slot = findSlot(reservationId);
+        return slot == -1 ? null : values[slot];
+    }
+
+    /**
+     * Removes the reservation with the given ID
+     *
+     * @param reservationId the reservation ID to remove
+     * @return the removed reservation, or null if not found
+     */
+    @Override
+    public Reservation remove(int reservationId) {
+        int slot = findSlot(reservationId);
+        if (slot == -1) {
+            return null;
+        }
+        Reservation removed = values[slot];
+        values[slot] = null;
+        states[slot] = REMOVED;
+        unlink(slot);
+        size--;
+        return removed;
+    }
+
+    /**
+     * Resizes the table once so that the given number of new reservations fit without rehashing
+     *
+     * @param additionalReservations the number of reservations about to be added
+     */
+    @Override
+    public void ensureCapacity(int additionalReservations) {
+        int capacity = tableSizeFor(size + additionalReservations);
+        if (capacity > keys.length) {
+            rehash(capacity);
+        }
+    }
+
+    /**
+     * Retrieves the number of indexed reservations
+     *
+     * @return the number of reservations
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether the index holds no reservations
+     *
+     * @return true if the index is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Copies the indexed reservations into a new list in insertion order
+     *
+     * @return the reservations in insertion order
+     */
+    @Override
+    public List<Reservation> toList() {
+        List<Reservation> list = new ArrayList<>(size);
+        for (int slot = head; slot != -1; slot = after[slot]) {
+            list.add(values[slot]);
+        }
+        return list;
+    }
+
+    /**
+     * Iterates the reservations in insertion order
+     *
+     * @return an iterator over the reservations
+     */
+    @Override
+    public Iterator<Reservation> iterator() {
+        return new Iterator<>() {
+            private int nextSlot = head;
+
+            @Override
+            public boolean hasNext() {
+                return nextSlot != -1;
+            }
+
+            @Override
+            public Reservation next() {
+                if (nextSlot == -1) {
+                    throw new NoSuchElementException();
+                }
+                Reservation reservation = values[nextSlot];
+                nextSlot = after[nextSlot];
+                return reservation;
+            }
+        };
+    }
+
+    /**
+     * Appends a slot to the end of the insertion order
+     *
+     * @param slot the slot to append
+     */
+    private void linkLast(int slot) {
+        before[slot] = tail;
+        after[slot] = -1;
+        if (tail == -1) {
+            head = slot;
+        } else {
+            after[tail] = slot;
+        }
+        tail = slot;
+    }
+
+    /**
+     * Removes a slot from the insertion order
+     *
+     * @param slot the slot to remove
+     */
+    private void unlink(int slot) {
+        int previous = before[slot];
+        int next = after[slot];
+        if (previous == -1) {
+            head = next;
+        } else {
+            after[previous] = next;
+        }
+        if (next == -1) {
+            tail = previous;
+        } else {
+            before[next] = previous;
+        }
+    }
+
+    /**
+     * Rebuilds the table at the given capacity, dropping removed slots
+     * and keeping the insertion order
+     *
+     * @param capacity the new number of slots
+     */
+    private void rehash(int capacity) {
+        Reservation[] oldValues = values;
+        int[] oldAfter = after;
+        int oldHead = head;
+
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int oldSlot = oldHead; oldSlot != -1; oldSlot = oldAfter[oldSlot]) {
+            Reservation reservation = oldValues[oldSlot];
+            int slot = homeSlot(reservation.getReservationId());
+            while (states[slot] != FREE) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = reservation.getReservationId();
+            values[slot] = reservation;
+            states[slot] = USED;
+            linkLast(slot);
+            size++;
+            occupiedSlots++;
+        }
+    }
+}
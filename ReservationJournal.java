@@ -0,0 +1,611 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * Persists the bookings and cancellations of a resort so they survive a restart
+ *
+ * Every change is appended to a binary journal file as a length-prefixed, checksummed record.
+ * Records are buffered and written with a single fsync every flush interval, so a crash loses
+ * at most the changes of the last interval. After a configurable number of records the journal
+ * rolls over to a new generation and the full resort is written to a snapshot in the background;
+ * once the snapshot is safely on disk the older journal generations are deleted.
+ *
+ * On attach, the snapshot and the remaining journals are read through memory-mapped buffers and
+ * replayed into the resort, and the reservation ID sequence is moved past every ID seen.
+ * A torn record at the end of the newest journal, left by a crash mid-write, is dropped.
+ * Files of the first format version, which held costs as doubles, are still replayed, but a
+ * journal of that version is never appended to: journaling goes on in a new generation
+ */
+public class ReservationJournal implements ReservationListener, Closeable {
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 20;
+    public static final int DEFAULT_SNAPSHOT_EVERY_RECORDS = 1_000_000;
+
+    private static final int JOURNAL_MAGIC = 0x5253564A;
+    private static final int SNAPSHOT_MAGIC = 0x52535653;
+    private static final int FORMAT_VERSION = 2;
+    private static final int DOUBLE_COST_FORMAT_VERSION = 1;
+    private static final int JOURNAL_HEADER_SIZE = 4 + 4;
+    private static final int SNAPSHOT_HEADER_SIZE = 4 + 4 + 8 + 4 + 4;
+    private static final int RECORD_OVERHEAD = 4 + 4;
+    private static final byte ADD_RECORD = 1;
+    private static final byte CANCEL_RECORD = 2;
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+    private static final int SNAPSHOT_BUFFER_SIZE = 1 << 20;
+
+    private static final String SNAPSHOT_FILE = "reservations.snapshot";
+    private static final String SNAPSHOT_TEMP_FILE = "reservations.snapshot.tmp";
+    private static final String JOURNAL_PREFIX = "reservations-";
+    private static final String JOURNAL_SUFFIX = ".journal";
+
+    private final Path directory;
+    private final MusandamResort resort;
+    private final int snapshotEveryRecords;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+    private final CRC32C checksum = new CRC32C();
+    private final ScheduledExecutorService background;
+    private final Object snapshotLock = new Object();
+
+    private FileChannel journalChannel;
+    private long generation;
+    private long snapshotGeneration;
+    private boolean replayedDoubleCostJournal;
+    private int recordsSinceSnapshot;
+    private boolean snapshotPending;
+    private boolean unsynced;
+    private volatile IOException backgroundFailure;
+
+    /**
+     * A point-in-time copy of the resort waiting to be written as a snapshot
+     */
+    private static final class PendingSnapshot {
+        private final long generation;
+        private final int nextReservationId;
+        private final List<Reservation> reservations;
+
+        /**
+         * Captures the state to write
+         *
+         * @param generation the first journal generation not covered by the snapshot
+         * @param nextReservationId the next reservation ID at capture time
+         * @param reservations the reservations at capture time
+         */
+        private PendingSnapshot(long generation, int nextReservationId, List<Reservation> reservations) {
+            this.generation = generation;
+            this.nextReservationId = nextReservationId;
+            this.reservations = reservations;
+        }
+    }
+
+    /**
+     * Creates a journal for the given directory and resort
+     *
+     * @param directory the directory holding the journal and snapshot files
+     * @param resort the resort to persist
+     * @param snapshotEveryRecords the number of journal records between snapshots
+     */
+    private ReservationJournal(Path directory, MusandamResort resort, int snapshotEveryRecords) {
+        this.directory = directory;
+        this.resort = resort;
+        this.snapshotEveryRecords = snapshotEveryRecords;
+        this.background = Executors.newScheduledThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "reservation-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Restores the resort from the directory and starts journaling its changes with the default settings
+     *
+     * @param directory the directory holding the journal and snapshot files, created if missing
+     * @param resort the resort to restore and persist, expected to be empty
+     * @return the attached journal, to be closed on shutdown
+     * @throws IOException if the files cannot be read or created
+     */
+    public static ReservationJournal attach(Path directory, MusandamResort resort) throws IOException {
+        return attach(directory, resort, DEFAULT_FLUSH_INTERVAL_MILLIS, DEFAULT_SNAPSHOT_EVERY_RECORDS);
+    }
+
+    /**
+     * Restores the resort from the directory and starts journaling its changes
+     *
+     * Snapshots are captured on the thread whose booking crosses the record threshold, so the
+     * resort store is only ever read from a thread that may already use it
+     *
+     * @param directory the directory holding the journal and snapshot files, created if missing
+     * @param resort the resort to restore and persist, expected to be empty
+     * @param flushIntervalMillis the longest time a change may stay in memory before it is fsynced
+     * @param snapshotEveryRecords the number of journal records between snapshots
+     * @return the attached journal, to be closed on shutdown
+     * @throws IOException if the files cannot be read or created
+     */
+    public static ReservationJournal attach(Path directory, MusandamResort resort,
+                                            long flushIntervalMillis, int snapshotEveryRecords) throws IOException {
+        Files.createDirectories(directory);
+        ReservationJournal journal = new ReservationJournal(directory, resort, snapshotEveryRecords);
+        journal.recover();
+        resort.addReservationListener(journal);
+        journal.background.scheduleWithFixedDelay(
+                journal::flushInBackground, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS
+        );
+        return journal;
+    }
+
+    /**
+     * Loads the snapshot, replays the journals after it and opens the newest journal for appending
+     *
+     * @throws IOException if the files cannot be read or are not journal files
+     */
+    private void recover() throws IOException {
+        Path snapshotPath = directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshotPath)) {
+            snapshotGeneration = loadSnapshot(snapshotPath);
+        }
+        generation = snapshotGeneration;
+
+        long validLength = -1;
+        for (long journalGeneration : journalGenerations()) {
+            if (journalGeneration < snapshotGeneration) {
+                Files.delete(journalPath(journalGeneration));
+            } else {
+                validLength = replayJournal(journalPath(journalGeneration));
+                generation = journalGeneration;
+            }
+        }
+
+        if (replayedDoubleCostJournal) {
+            generation++;
+            journalChannel = createJournal(generation);
+        } else if (validLength < JOURNAL_HEADER_SIZE) {
+            journalChannel = createJournal(generation);
+        } else {
+            journalChannel = FileChannel.open(journalPath(generation), StandardOpenOption.WRITE);
+            journalChannel.truncate(validLength);
+            journalChannel.position(validLength);
+        }
+    }
+
+    /**
+     * Restores every reservation of the snapshot file
+     *
+     * @param snapshotPath the snapshot file
+     * @return the first journal generation not covered by the snapshot
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    private long loadSnapshot(Path snapshotPath) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = map(channel);
+            if (buffer.remaining() < SNAPSHOT_HEADER_SIZE || buffer.getInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a reservation snapshot: " + snapshotPath);
+            }
+            boolean doubleCost = readFormatVersion(buffer, snapshotPath);
+            long coveredGeneration = buffer.getLong();
+            int nextReservationId = buffer.getInt();
+            int reservationCount = buffer.getInt();
+            for (int i = 0; i < reservationCount; i++) {
+                resort.restoreReservation(doubleCost ? ReservationCodec.readDoubleCost(buffer) : ReservationCodec.read(buffer));
+            }
+            resort.getIdSequence().advancePast(nextReservationId - 1);
+            return coveredGeneration;
+        }
+    }
+
+    /**
+     * Replays every intact record of a journal file into the resort
+     *
+     * @param path the journal file
+     * @return the length of the intact prefix of the file
+     * @throws IOException if the file cannot be read or is not a journal
+     */
+    private long replayJournal(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = map(channel);
+            if (buffer.remaining() < JOURNAL_HEADER_SIZE) {
+                return 0;
+            }
+            if (buffer.getInt() != JOURNAL_MAGIC) {
+                throw new IOException("Not a reservation journal: " + path);
+            }
+            boolean doubleCost = readFormatVersion(buffer, path);
+            replayedDoubleCostJournal = doubleCost;
+
+            while (buffer.remaining() >= RECORD_OVERHEAD) {
+                int recordStart = buffer.position();
+                int payloadSize = buffer.getInt();
+                if (payloadSize <= 0 || buffer.remaining() < payloadSize + 4) {
+                    buffer.position(recordStart);
+                    break;
+                }
+                checksum.reset();
+                checksum.update(buffer.duplicate().limit(buffer.position() + payloadSize));
+                int payloadEnd = buffer.position() + payloadSize;
+                if ((int) checksum.getValue() != buffer.getInt(payloadEnd)) {
+                    buffer.position(recordStart);
+                    break;
+                }
+
+                byte recordType = buffer.get();
+                if (recordType == ADD_RECORD) {
+                    resort.restoreReservation(doubleCost ? ReservationCodec.readDoubleCost(buffer) : ReservationCodec.read(buffer));
+                } else if (recordType == CANCEL_RECORD) {
+                    resort.restoreCancellation(buffer.getInt());
+                }
+                buffer.position(payloadEnd + 4);
+            }
+            return buffer.position();
+        }
+    }
+
+    /**
+     * Reads the format version of a snapshot or journal file
+     *
+     * @param buffer the buffer positioned at the version
+     * @param path the file, for error messages
+     * @return true if the file holds costs as doubles, false if it holds them in cents
+     * @throws IOException if the version is not supported
+     */
+    private static boolean readFormatVersion(ByteBuffer buffer, Path path) throws IOException {
+        int formatVersion = buffer.getInt();
+        if (formatVersion != FORMAT_VERSION && formatVersion != DOUBLE_COST_FORMAT_VERSION) {
+            throw new IOException("Unsupported reservation file version " + formatVersion + ": " + path);
+        }
+        return formatVersion == DOUBLE_COST_FORMAT_VERSION;
+    }
+
+    /**
+     * Maps a whole file read-only
+     *
+     * @param channel the channel of the file
+     * @return the mapped buffer
+     * @throws IOException if the file is too large to map at once or cannot be mapped
+     */
+    private static MappedByteBuffer map(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("File too large to replay: " + size + " bytes");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+
+    /**
+     * Lists the generations of the journal files in the directory, oldest first
+     *
+     * @return the sorted journal generations
+     * @throws IOException if the directory cannot be listed
+     */
+    private List<Long> journalGenerations() throws IOException {
+        List<Long> generations = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, JOURNAL_PREFIX + "*" + JOURNAL_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String number = name.substring(JOURNAL_PREFIX.length(), name.length() - JOURNAL_SUFFIX.length());
+                try {
+                    generations.add(Long.parseLong(number));
+                } catch (NumberFormatException e) {
+                    // Not one of our journal files
+                }
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    /**
+     * Resolves the file of a journal generation
+     *
+     * @param journalGeneration the journal generation
+     * @return the journal file
+     */
+    private Path journalPath(long journalGeneration) {
+        return directory.resolve(JOURNAL_PREFIX + journalGeneration + JOURNAL_SUFFIX);
+    }
+
+    /**
+     * Creates an empty journal file with its header
+     *
+     * @param journalGeneration the generation of the new journal
+     * @return the channel to append to
+     * @throws IOException if the file cannot be created
+     */
+    private FileChannel createJournal(long journalGeneration) throws IOException {
+        FileChannel channel = FileChannel.open(journalPath(journalGeneration),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(JOURNAL_HEADER_SIZE);
+        header.putInt(JOURNAL_MAGIC).putInt(FORMAT_VERSION).flip();
+        writeFully(channel, header);
+        channel.force(false);
+        return channel;
+    }
+
+    /**
+     * Journals a new reservation
+     *
+     * @param reservation the new reservation
+     */
+    @Override
+    public void reservationAdded(Reservation reservation) {
+        appendRecord(ADD_RECORD, reservation);
+    }
+
+    /**
+     * Journals a cancellation
+     *
+     * @param reservation the cancelled reservation
+     */
+    @Override
+    public void reservationCancelled(Reservation reservation) {
+        appendRecord(CANCEL_RECORD, reservation);
+    }
+
+    /**
+     * Appends a record to the write buffer, and rolls the journal over once enough records were written
+     *
+     * @param recordType ADD_RECORD or CANCEL_RECORD
+     * @param reservation the reservation the record is about
+     * @throws UncheckedIOException if the journal cannot be written
+     */
+    private synchronized void appendRecord(byte recordType, Reservation reservation) {
+        IOException failure = backgroundFailure;
+        if (failure != null) {
+            throw new UncheckedIOException("Reservation journal failed", failure);
+        }
+
+        int payloadSize = 1 + (recordType == ADD_RECORD ? ReservationCodec.encodedSize(reservation) : 4);
+        int recordSize = RECORD_OVERHEAD + payloadSize;
+        try {
+            if (writeBuffer.remaining() < recordSize) {
+                drainWriteBuffer();
+            }
+            ByteBuffer target = recordSize <= writeBuffer.capacity() ? writeBuffer : ByteBuffer.allocate(recordSize);
+            int recordStart = target.position();
+            try {
+                target.putInt(payloadSize);
+                target.put(recordType);
+                if (recordType == ADD_RECORD) {
+                    ReservationCodec.write(target, reservation);
+                } else {
+                    target.putInt(reservation.getReservationId());
+                }
+            } catch (RuntimeException e) {
+                target.position(recordStart);
+                throw e;
+            }
+            checksum.reset();
+            checksum.update(target.duplicate().position(recordStart + 4).limit(target.position()));
+            target.putInt((int) checksum.getValue());
+
+            if (target != writeBuffer) {
+                target.flip();
+                writeFully(journalChannel, target);
+                unsynced = true;
+            }
+
+            recordsSinceSnapshot++;
+            if (recordsSinceSnapshot >= snapshotEveryRecords && !snapshotPending) {
+                snapshotInBackground(rollOver());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write the reservation journal", e);
+        }
+    }
+
+    /**
+     * Writes the buffered records to the journal file, without fsyncing
+     *
+     * @throws IOException if the file cannot be written
+     */
+    private void drainWriteBuffer() throws IOException {
+        if (writeBuffer.position() == 0) {
+            return;
+        }
+        writeBuffer.flip();
+        writeFully(journalChannel, writeBuffer);
+        writeBuffer.clear();
+        unsynced = true;
+    }
+
+    /**
+     * Writes every remaining byte of the buffer to the channel
+     *
+     * @param channel the channel to write to
+     * @param buffer the buffer to write
+     * @throws IOException if the channel cannot be written
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Writes the buffered records and fsyncs the journal file
+     *
+     * The fsync runs without holding the journal lock, so bookings keep appending meanwhile
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public void sync() throws IOException {
+        FileChannel channel;
+        synchronized (this) {
+            drainWriteBuffer();
+            if (!unsynced) {
+                return;
+            }
+            unsynced = false;
+            channel = journalChannel;
+        }
+        try {
+            channel.force(false);
+        } catch (ClosedChannelException e) {
+            // The journal rolled over, which already fsynced this file
+        }
+    }
+
+    /**
+     * Periodic flush task run by the background thread
+     */
+    private void flushInBackground() {
+        try {
+            sync();
+        } catch (IOException e) {
+            backgroundFailure = e;
+        }
+    }
+
+    /**
+     * Writes a snapshot of the resort now and deletes the journals it covers
+     *
+     * Must be called from a thread allowed to read the resort store
+     *
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void snapshot() throws IOException {
+        PendingSnapshot pendingSnapshot;
+        synchronized (this) {
+            pendingSnapshot = rollOver();
+        }
+        writeSnapshot(pendingSnapshot);
+    }
+
+    /**
+     * Captures the resort and switches appending to the next journal generation
+     *
+     * Called with the journal lock held, so no record can fall between the capture and the switch
+     *
+     * @return the captured state to write as a snapshot
+     * @throws IOException if the journals cannot be written
+     */
+    private PendingSnapshot rollOver() throws IOException {
+        drainWriteBuffer();
+        journalChannel.force(false);
+        unsynced = false;
+
+        List<Reservation> reservations = resort.getReservations();
+        int nextReservationId = resort.getIdSequence().peek();
+
+        FileChannel nextChannel = createJournal(generation + 1);
+        journalChannel.close();
+        journalChannel = nextChannel;
+        generation++;
+        recordsSinceSnapshot = 0;
+        return new PendingSnapshot(generation, nextReservationId, reservations);
+    }
+
+    /**
+     * Hands a captured state to the background thread to be written as a snapshot
+     *
+     * @param pendingSnapshot the captured state
+     */
+    private void snapshotInBackground(PendingSnapshot pendingSnapshot) {
+        snapshotPending = true;
+        background.execute(() -> {
+            try {
+                writeSnapshot(pendingSnapshot);
+            } catch (IOException e) {
+                backgroundFailure = e;
+            } finally {
+                synchronized (this) {
+                    snapshotPending = false;
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes a captured state to the snapshot file and deletes the journals it covers
+     *
+     * The snapshot is written to a temporary file and atomically renamed, so a crash
+     * leaves either the old or the new snapshot in place
+     *
+     * @param pendingSnapshot the captured state
+     * @throws IOException if the snapshot cannot be written
+     */
+    private void writeSnapshot(PendingSnapshot pendingSnapshot) throws IOException {
+        synchronized (snapshotLock) {
+            if (pendingSnapshot.generation <= snapshotGeneration) {
+                return;
+            }
+
+            Path temporaryPath = directory.resolve(SNAPSHOT_TEMP_FILE);
+            try (FileChannel channel = FileChannel.open(temporaryPath,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(SNAPSHOT_BUFFER_SIZE);
+                buffer.putInt(SNAPSHOT_MAGIC)
+                        .putInt(FORMAT_VERSION)
+                        .putLong(pendingSnapshot.generation)
+                        .putInt(pendingSnapshot.nextReservationId)
+                        .putInt(pendingSnapshot.reservations.size());
+
+                for (Reservation reservation : pendingSnapshot.reservations) {
+                    int size = ReservationCodec.encodedSize(reservation);
+                    if (buffer.remaining() < size) {
+                        buffer.flip();
+                        writeFully(channel, buffer);
+                        buffer.clear();
+                    }
+                    if (size > buffer.capacity()) {
+                        ByteBuffer large = ByteBuffer.allocate(size);
+                        ReservationCodec.write(large, reservation);
+                        large.flip();
+                        writeFully(channel, large);
+                    } else {
+                        ReservationCodec.write(buffer, reservation);
+                    }
+                }
+                buffer.flip();
+                writeFully(channel, buffer);
+                channel.force(true);
+            }
+            Files.move(temporaryPath, directory.resolve(SNAPSHOT_FILE),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            snapshotGeneration = pendingSnapshot.generation;
+
+            for (long journalGeneration : journalGenerations()) {
+                if (journalGeneration < snapshotGeneration) {
+                    Files.deleteIfExists(journalPath(journalGeneration));
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops journaling, waits for a running snapshot and fsyncs the remaining records
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        resort.removeReservationListener(this);
+        background.shutdown();
+        try {
+            background.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sync();
+        synchronized (this) {
+            journalChannel.close();
+        }
+        IOException failure = backgroundFailure;
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
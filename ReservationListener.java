@@ -0,0 +1,22 @@
+/**
+ * Receives the bookings and cancellations made on a resort
+ *
+ * Callbacks run on the thread that made the change, after the store was updated.
+ * For any one reservation the added callback always runs before the cancelled one
+ */
+public interface ReservationListener {
+
+    /**
+     * Called after a reservation was booked
+     *
+     * @param reservation the new reservation
+     */
+    void reservationAdded(Reservation reservation);
+
+    /**
+     * Called after a reservation was cancelled
+     *
+     * @param reservation the cancelled reservation
+     */
+    void reservationCancelled(Reservation reservation);
+}
@@ -0,0 +1,268 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Local load test for the HTTP booking API
+ *
+ * Starts a ReservationHttpServer over a StripedReservationStore, or targets an already running
+ * server, and lets many concurrent clients book, look up, cancel and list reservations on
+ * kept-alive connections. After a warm-up the requests of the measured period are counted and
+ * timed, and the throughput and latency percentiles are printed.
+ *
+ * Run with: java ReservationLoadTest [--clients 200] [--seconds 10] [--warmup 3] [--url http://host:port]
+ */
+public class ReservationLoadTest {
+    private static final int KEPT_IDS_PER_CLIENT = 256;
+    private static final String ROOM_BODY = "{\"nights\":3,\"requirements\":[\"TV\",\"internet\"]}";
+    private static final String CONFERENCE_BODY = "{\"nights\":2,\"guests\":40}";
+
+    private final HttpClient client;
+    private final URI baseUri;
+    private volatile boolean recording;
+    private volatile boolean running = true;
+
+    /**
+     * The requests one client made while recording
+     */
+    private static final class ClientResult {
+        private long[] latencies = new long[1024];
+        private int requests;
+        private int failures;
+
+        /**
+         * Records the latency of a successful request
+         *
+         * @param nanos the latency
+         */
+        private void record(long nanos) {
+            if (requests == latencies.length) {
+                latencies = Arrays.copyOf(latencies, requests * 2);
+            }
+            latencies[requests++] = nanos;
+        }
+    }
+
+    /**
+     * Creates a load test against a server
+     *
+     * @param baseUri the server address, for example http://localhost:8080
+     */
+    private ReservationLoadTest(URI baseUri) {
+        this.baseUri = baseUri;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), task -> {
+                    Thread thread = new Thread(task, "load-test-http");
+                    thread.setDaemon(true);
+                    return thread;
+                }))
+                .build();
+    }
+
+    /**
+     * Sends requests until the test stops: 40% room bookings, 20% conference bookings,
+     * 29% lookups, 10% cancellations and 1% listings of a 50 reservation page
+     *
+     * @return the requests made while recording
+     */
+    private ClientResult runClient() {
+        ClientResult result = new ClientResult();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int[] bookedIds = new int[KEPT_IDS_PER_CLIENT];
+        int booked = 0;
+
+        while (running) {
+            int choice = random.nextInt(100);
+            HttpRequest request;
+            boolean booking = false;
+            int cancelledSlot = -1;
+            if (choice < 60 || booked == 0) {
+                boolean room = choice < 40 || booked == 0;
+                request = HttpRequest.newBuilder(baseUri.resolve(room ? "/reservations/room" : "/reservations/conference"))
+                        .POST(HttpRequest.BodyPublishers.ofString(room ? ROOM_BODY : CONFERENCE_BODY))
+                        .header("Content-Type", "application/json")
+                        .build();
+                booking = true;
+            } else if (choice < 89) {
+                int id = bookedIds[random.nextInt(Math.min(booked, KEPT_IDS_PER_CLIENT))];
+                request = HttpRequest.newBuilder(baseUri.resolve("/reservations/" + id)).GET().build();
+            } else if (choice < 99) {
+                cancelledSlot = random.nextInt(Math.min(booked, KEPT_IDS_PER_CLIENT));
+                request = HttpRequest.newBuilder(baseUri.resolve("/reservations/" + bookedIds[cancelledSlot]))
+                        .DELETE()
+                        .build();
+            } else {
+                request = HttpRequest.newBuilder(baseUri.resolve("/reservations?limit=50")).GET().build();
+            }
+
+            long start = System.nanoTime();
+            try {
+                HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                long latency = System.nanoTime() - start;
+                if (booking && response.statusCode() == 201) {
+                    bookedIds[booked++ % KEPT_IDS_PER_CLIENT] = parseReservationId(response.body());
+                } else if (cancelledSlot >= 0 && response.statusCode() == 200) {
+                    // Replace the cancelled ID with a live one so lookups keep hitting
+                    bookedIds[cancelledSlot] = bookedIds[(booked - 1) % KEPT_IDS_PER_CLIENT];
+                }
+                if (recording) {
+                    if (response.statusCode() < 300 || response.statusCode() == 404) {
+                        result.record(latency);
+                    } else {
+                        result.failures++;
+                    }
+                }
+            } catch (IOException e) {
+                if (recording) {
+                    result.failures++;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the reservationId field of a reservation object
+     *
+     * @param json the response body
+     * @return the reservation ID
+     */
+    private static int parseReservationId(String json) {
+        int start = json.indexOf("\"reservationId\":") + "\"reservationId\":".length();
+        int end = start;
+        while (end < json.length() && Character.isDigit(json.charAt(end))) {
+            end++;
+        }
+        return Integer.parseInt(json.substring(start, end));
+    }
+
+    /**
+     * Runs the clients through the warm-up and measured periods and prints the results
+     *
+     * @param clients the number of concurrent clients
+     * @param warmupSeconds the unrecorded period
+     * @param seconds the recorded period
+     * @throws Exception if a client fails unexpectedly
+     */
+    private void run(int clients, int warmupSeconds, int seconds) throws Exception {
+        ExecutorService clientThreads = Executors.newFixedThreadPool(clients, task -> {
+            Thread thread = new Thread(task, "load-test-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Future<ClientResult>> futures = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            futures.add(clientThreads.submit(this::runClient));
+        }
+
+        Thread.sleep(warmupSeconds * 1000L);
+        recording = true;
+        long start = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        recording = false;
+        long elapsed = System.nanoTime() - start;
+        running = false;
+
+        List<ClientResult> results = new ArrayList<>(clients);
+        int requests = 0;
+        int failures = 0;
+        for (Future<ClientResult> future : futures) {
+            ClientResult result = future.get();
+            results.add(result);
+            requests += result.requests;
+            failures += result.failures;
+        }
+        long[] latencies = new long[requests];
+        int merged = 0;
+        for (ClientResult result : results) {
+            System.arraycopy(result.latencies, 0, latencies, merged, result.requests);
+            merged += result.requests;
+        }
+        clientThreads.shutdown();
+        Arrays.sort(latencies);
+
+        System.out.printf(Locale.ROOT, "Clients:      %d%n", clients);
+        System.out.printf(Locale.ROOT, "Requests:     %d (%d failed)%n", requests, failures);
+        System.out.printf(Locale.ROOT, "Throughput:   %.1f requests/s%n", requests / (elapsed / 1e9));
+        System.out.printf(Locale.ROOT, "Latency p50:  %.3f ms%n", percentileMillis(latencies, 0.50));
+        System.out.printf(Locale.ROOT, "Latency p99:  %.3f ms%n", percentileMillis(latencies, 0.99));
+        System.out.printf(Locale.ROOT, "Latency p999: %.3f ms%n", percentileMillis(latencies, 0.999));
+        System.out.printf(Locale.ROOT, "Latency max:  %.3f ms%n", latencies.length > 0 ? latencies[latencies.length - 1] / 1e6 : 0.0);
+    }
+
+    /**
+     * Reads a percentile from sorted latencies
+     *
+     * @param sortedLatencies the latencies in nanoseconds, in ascending order
+     * @param percentile the percentile, between 0 and 1
+     * @return the latency in milliseconds, or 0 if there are none
+     */
+    private static double percentileMillis(long[] sortedLatencies, double percentile) {
+        if (sortedLatencies.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(0, index)] / 1e6;
+    }
+
+    /**
+     * Main method
+     *
+     * @param args the program arguments
+     * @throws Exception if the server cannot start or a client fails unexpectedly
+     */
+    public static void main(String[] args) throws Exception {
+        int clients = 200;
+        int seconds = 10;
+        int warmupSeconds = 3;
+        String url = null;
+        for (int i = 0; i < args.length - 1; i++) {
+            if ("--clients".equals(args[i])) {
+                clients = Integer.parseInt(args[++i]);
+            } else if ("--seconds".equals(args[i])) {
+                seconds = Integer.parseInt(args[++i]);
+            } else if ("--warmup".equals(args[i])) {
+                warmupSeconds = Integer.parseInt(args[++i]);
+            } else if ("--url".equals(args[i])) {
+                url = args[++i];
+            }
+        }
+
+        ReservationHttpServer server = null;
+        if (url == null) {
+            List<BookingInfo> bookingInfoList = Arrays.asList(
+                    new BookingInfo("room", 0.05, 24.98),
+                    new BookingInfo("conference", 0.1, 100.0, 15.0)
+            );
+            MusandamResort resort = new MusandamResort(bookingInfoList, new StripedReservationStore());
+            ReservationHttpServer.enableNoDelay();
+            server = ReservationHttpServer.start(resort, 0);
+            url = "http://localhost:" + server.getPort();
+            System.out.println("Started an embedded server on " + url);
+        }
+
+        try {
+            new ReservationLoadTest(URI.create(url)).run(clients, warmupSeconds, seconds);
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+    }
+}
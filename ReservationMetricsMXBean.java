@@ -0,0 +1,48 @@
+/**
+ * Management interface of ReservationMetrics, registered under
+ * MusandamResort:type=ReservationMetrics
+ *
+ * Every statistic covers the period since the metrics were enabled or last reset
+ */
+public interface ReservationMetricsMXBean {
+
+    /**
+     * Retrieves the statistics of addRoomReservation
+     *
+     * @return the statistics
+     */
+    OperationStats getAddRoomReservation();
+
+    /**
+     * Retrieves the statistics of addConferenceReservation
+     *
+     * @return the statistics
+     */
+    OperationStats getAddConferenceReservation();
+
+    /**
+     * Retrieves the statistics of getReservationById
+     *
+     * @return the statistics
+     */
+    OperationStats getGetReservationById();
+
+    /**
+     * Retrieves the statistics of cancelReservationById
+     *
+     * @return the statistics
+     */
+    OperationStats getCancelReservationById();
+
+    /**
+     * Formats every statistic as text, one operation per line
+     *
+     * @return the report
+     */
+    String getReport();
+
+    /**
+     * Clears every histogram and restarts the period
+     */
+    void reset();
+}
@@ -0,0 +1,109 @@
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * One page of a listing in reservation ID order, with the cursor of the page after it
+ *
+ * The cursor is an opaque string to hand back unchanged for the next page. It records the last
+ * reservation ID of the page rather than a position, so the next page starts right after that
+ * ID however deep the listing is, and bookings or cancellations between two requests neither
+ * repeat nor skip the reservations that were already listed
+ */
+public final class ReservationPage implements Iterable<Reservation> {
+    private static final byte CURSOR_VERSION = 1;
+    private static final int CURSOR_BYTES = 5;
+
+    private final List<Reservation> reservations;
+    private final String nextCursor;
+
+    /**
+     * Creates a page
+     *
+     * @param reservations the reservations of the page in ID order
+     * @param nextCursor the cursor of the next page, or null for the last page
+     */
+    ReservationPage(List<Reservation> reservations, String nextCursor) {
+        this.reservations = Collections.unmodifiableList(reservations);
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Retrieves the reservations of the page
+     *
+     * @return an unmodifiable list of the reservations in ID order
+     */
+    public List<Reservation> getReservations() {
+        return reservations;
+    }
+
+    /**
+     * Retrieves the cursor to pass for the next page
+     *
+     * @return the cursor, or null if this is the last page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Checks whether more reservations follow this page
+     *
+     * @return true if there is a next page
+     */
+    public boolean hasNextPage() {
+        return nextCursor != null;
+    }
+
+    /**
+     * Retrieves the number of reservations on the page
+     *
+     * @return the page length
+     */
+    public int size() {
+        return reservations.size();
+    }
+
+    /**
+     * Iterates over the reservations of the page
+     *
+     * @return an iterator in reservation ID order
+     */
+    @Override
+    public Iterator<Reservation> iterator() {
+        return reservations.iterator();
+    }
+
+    /**
+     * Encodes the cursor of the page starting after a reservation ID
+     *
+     * @param reservationId the last reservation ID already listed
+     * @return the opaque cursor
+     */
+    static String cursorAfter(int reservationId) {
+        ByteBuffer bytes = ByteBuffer.allocate(CURSOR_BYTES).put(CURSOR_VERSION).putInt(reservationId);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.array());
+    }
+
+    /**
+     * Decodes a cursor made by cursorAfter
+     *
+     * @param cursor the cursor of a previous page
+     * @return the last reservation ID already listed
+     * @throws IllegalArgumentException if the string is not a page cursor
+     */
+    static int decodeCursor(String cursor) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid page cursor: " + cursor, e);
+        }
+        if (bytes.length != CURSOR_BYTES || bytes[0] != CURSOR_VERSION) {
+            throw new IllegalArgumentException("Invalid page cursor: " + cursor);
+        }
+        return ByteBuffer.wrap(bytes, 1, Integer.BYTES).getInt();
+    }
+}
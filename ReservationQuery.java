@@ -0,0 +1,140 @@
+import java.util.Collection;
+import java.util.stream.Stream;
+
+/**
+ * A combination of filters over the reservations of a ReservationQueryIndex
+ *
+ * Filters narrow each other: a query for conference reservations of more than 7 nights is
+ * query().ofType("conference").nightsAtLeast(8). The most selective index available drives the
+ * query and the remaining filters are checked on each reservation it yields, so results come
+ * ordered by cost when a cost range is set, otherwise by nights when a nights range is set,
+ * otherwise in booking order. Nothing is copied: stream walks the live index lazily
+ */
+public final class ReservationQuery {
+    private final ReservationQueryIndex index;
+    private String type;
+    private boolean nightsFiltered;
+    private int minNights;
+    private int maxNights;
+    private boolean costFiltered;
+    private long minCents;
+    private long maxCents;
+
+    /**
+     * Creates a query matching every reservation
+     *
+     * @param index the indexes to query
+     */
+    ReservationQuery(ReservationQueryIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Keeps only the reservations of a type
+     *
+     * @param type the reservation type, for example "room" or "conference", ignoring case
+     * @return this query
+     */
+    public ReservationQuery ofType(String type) {
+        this.type = type;
+        return this;
+    }
+
+    /**
+     * Keeps only the stays of at least the given number of nights
+     *
+     * @param minNights the fewest nights, inclusive
+     * @return this query
+     */
+    public ReservationQuery nightsAtLeast(int minNights) {
+        return nightsBetween(minNights, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Keeps only the stays of a range of nights
+     *
+     * @param minNights the fewest nights, inclusive
+     * @param maxNights the most nights, inclusive
+     * @return this query
+     * @throws IllegalArgumentException if the range is empty
+     */
+    public ReservationQuery nightsBetween(int minNights, int maxNights) {
+        if (minNights > maxNights) {
+            throw new IllegalArgumentException("Invalid nights range: " + minNights + " to " + maxNights);
+        }
+        this.nightsFiltered = true;
+        this.minNights = minNights;
+        this.maxNights = maxNights;
+        return this;
+    }
+
+    /**
+     * Keeps only the reservations costing a range of amounts
+     *
+     * @param minCost the lowest cost, inclusive, for example 100
+     * @param maxCost the highest cost, inclusive, for example 500
+     * @return this query
+     * @throws IllegalArgumentException if the range is empty
+     */
+    public ReservationQuery costBetween(double minCost, double maxCost) {
+        return costBetweenCents(Money.toCents(minCost), Money.toCents(maxCost));
+    }
+
+    /**
+     * Keeps only the reservations costing a range of cents
+     *
+     * @param minCents the lowest cost in cents, inclusive
+     * @param maxCents the highest cost in cents, inclusive
+     * @return this query
+     * @throws IllegalArgumentException if the range is empty
+     */
+    public ReservationQuery costBetweenCents(long minCents, long maxCents) {
+        if (minCents > maxCents) {
+            throw new IllegalArgumentException("Invalid cost range: " + minCents + " to " + maxCents + " cents");
+        }
+        this.costFiltered = true;
+        this.minCents = minCents;
+        this.maxCents = maxCents;
+        return this;
+    }
+
+    /**
+     * Streams the matching reservations lazily from the indexes
+     *
+     * @return the matching reservations
+     */
+    public Stream<Reservation> stream() {
+        Collection<Reservation> driver;
+        if (costFiltered) {
+            driver = index.withCostBetween(minCents, maxCents);
+        } else if (nightsFiltered) {
+            driver = index.withNightsBetween(minNights, maxNights);
+        } else if (type != null) {
+            driver = index.ofType(type);
+        } else {
+            driver = index.all();
+        }
+
+        Stream<Reservation> matches = driver.stream();
+        if (type != null && (costFiltered || nightsFiltered)) {
+            String wantedType = type;
+            matches = matches.filter(reservation -> reservation.getReservationType().equalsIgnoreCase(wantedType));
+        }
+        if (costFiltered && nightsFiltered) {
+            int fewestNights = minNights;
+            int mostNights = maxNights;
+            matches = matches.filter(reservation -> reservation.getNumberOfNights() >= fewestNights
+                    && reservation.getNumberOfNights() <= mostNights);
+        }
+        return matches;
+    }
+
+    /**
+     * Counts the matching reservations
+     *
+     * @return the number of matching reservations
+     */
+    public long count() {
+        return stream().count();
+    }
+}
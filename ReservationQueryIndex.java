@@ -0,0 +1,213 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Secondary indexes over the reservations of a resort, for queries other than lookups by ID
+ *
+ * Registered as a listener, it files every booking under its type and in two sorted indexes,
+ * by number of nights and by cost, and drops cancelled reservations from all of them. Each
+ * update is logarithmic in the number of reservations. The indexes are concurrent skip lists,
+ * so bookings may come from many threads and queries read them without locking or copying:
+ * a query walks only the range it asks for, and sees changes made while it runs or not.
+ * Listings are paged by reservation ID with page, which seeks to the cursor rather than
+ * skipping the rows before it
+ */
+public class ReservationQueryIndex implements ReservationListener {
+    private final ConcurrentSkipListMap<Integer, Reservation> byId = new ConcurrentSkipListMap<>();
+    private final Map<String, ConcurrentSkipListMap<Integer, Reservation>> byType = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<SortKey, Reservation> byNights = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<SortKey, Reservation> byCost = new ConcurrentSkipListMap<>();
+
+    /**
+     * Position of a reservation in a sorted index: the indexed value, ties broken by reservation ID
+     */
+    private static final class SortKey implements Comparable<SortKey> {
+        private final long value;
+        private final int reservationId;
+
+        /**
+         * Creates a sort key
+         *
+         * @param value the indexed value
+         * @param reservationId the reservation ID
+         */
+        private SortKey(long value, int reservationId) {
+            this.value = value;
+            this.reservationId = reservationId;
+        }
+
+        @Override
+        public int compareTo(SortKey other) {
+            int byValue = Long.compare(value, other.value);
+            return byValue != 0 ? byValue : Integer.compare(reservationId, other.reservationId);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof SortKey && compareTo((SortKey) other) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(value) * 31 + reservationId;
+        }
+    }
+
+    /**
+     * Creates indexes holding the current reservations of a resort and keeps them up to date
+     *
+     * Must be called after the reservations were restored, and before other threads start
+     * booking on the resort
+     *
+     * @param resort the resort to follow
+     * @return the attached indexes
+     */
+    public static ReservationQueryIndex attach(MusandamResort resort) {
+        ReservationQueryIndex index = new ReservationQueryIndex();
+        for (Reservation reservation : resort.getReservations()) {
+            index.reservationAdded(reservation);
+        }
+        resort.addReservationListener(index);
+        return index;
+    }
+
+    /**
+     * Files a new reservation in every index
+     *
+     * @param reservation the new reservation
+     */
+    @Override
+    public void reservationAdded(Reservation reservation) {
+        int reservationId = reservation.getReservationId();
+        byId.put(reservationId, reservation);
+        byType.computeIfAbsent(typeKey(reservation.getReservationType()), type -> new ConcurrentSkipListMap<>())
+                .put(reservationId, reservation);
+        byNights.put(new SortKey(reservation.getNumberOfNights(), reservationId), reservation);
+        byCost.put(new SortKey(reservation.getCostInCents(), reservationId), reservation);
+    }
+
+    /**
+     * Drops a cancelled reservation from every index
+     *
+     * @param reservation the cancelled reservation
+     */
+    @Override
+    public void reservationCancelled(Reservation reservation) {
+        int reservationId = reservation.getReservationId();
+        byId.remove(reservationId);
+        Map<Integer, Reservation> sameType = byType.get(typeKey(reservation.getReservationType()));
+        if (sameType != null) {
+            sameType.remove(reservationId);
+        }
+        byNights.remove(new SortKey(reservation.getNumberOfNights(), reservationId));
+        byCost.remove(new SortKey(reservation.getCostInCents(), reservationId));
+    }
+
+    /**
+     * Starts a query over the indexed reservations
+     *
+     * @return a query matching every reservation until filters are added
+     */
+    public ReservationQuery query() {
+        return new ReservationQuery(this);
+    }
+
+    /**
+     * Lists one page of the reservations in ID order
+     *
+     * @param cursor the cursor of the previous page, or null for the first page
+     * @param pageSize the most reservations to return
+     * @return the page, with the cursor of the next one
+     * @throws IllegalArgumentException if the cursor is invalid or the page size is not positive
+     */
+    public ReservationPage page(String cursor, int pageSize) {
+        return pageAfter(cursor == null ? Integer.MIN_VALUE : ReservationPage.decodeCursor(cursor), pageSize);
+    }
+
+    /**
+     * Lists the reservations following an ID, in ID order
+     *
+     * Seeks straight to the ID in the ID index and walks only the page, so a page costs the
+     * same however deep it is. The ID need not be booked anymore
+     *
+     * @param afterReservationId the reservation ID the page starts after
+     * @param pageSize the most reservations to return
+     * @return the page, with the cursor of the next one
+     * @throws IllegalArgumentException if the page size is not positive
+     */
+    public ReservationPage pageAfter(int afterReservationId, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Invalid page size: " + pageSize);
+        }
+        List<Reservation> reservations = new ArrayList<>(Math.min(pageSize, 1024));
+        Iterator<Reservation> iterator = byId.tailMap(afterReservationId, false).values().iterator();
+        while (reservations.size() < pageSize && iterator.hasNext()) {
+            reservations.add(iterator.next());
+        }
+        String nextCursor = iterator.hasNext()
+                ? ReservationPage.cursorAfter(reservations.get(reservations.size() - 1).getReservationId())
+                : null;
+        return new ReservationPage(reservations, nextCursor);
+    }
+
+    /**
+     * Retrieves a live view of every reservation
+     *
+     * @return the reservations in ID order
+     */
+    Collection<Reservation> all() {
+        return byId.values();
+    }
+
+    /**
+     * Retrieves a live view of the reservations of a type
+     *
+     * @param type the reservation type, ignoring case
+     * @return the reservations of the type in ID order
+     */
+    Collection<Reservation> ofType(String type) {
+        Map<Integer, Reservation> sameType = byType.get(typeKey(type));
+        return sameType != null ? sameType.values() : Collections.emptyList();
+    }
+
+    /**
+     * Retrieves a live view of the reservations staying a range of nights
+     *
+     * @param minNights the fewest nights, inclusive
+     * @param maxNights the most nights, inclusive
+     * @return the reservations ordered by nights, then by ID
+     */
+    Collection<Reservation> withNightsBetween(int minNights, int maxNights) {
+        return byNights.subMap(new SortKey(minNights, Integer.MIN_VALUE), true,
+                new SortKey(maxNights, Integer.MAX_VALUE), true).values();
+    }
+
+    /**
+     * Retrieves a live view of the reservations costing a range of cents
+     *
+     * @param minCents the lowest cost, inclusive
+     * @param maxCents the highest cost, inclusive
+     * @return the reservations ordered by cost, then by ID
+     */
+    Collection<Reservation> withCostBetween(long minCents, long maxCents) {
+        return byCost.subMap(new SortKey(minCents, Integer.MIN_VALUE), true,
+                new SortKey(maxCents, Integer.MAX_VALUE), true).values();
+    }
+
+    /**
+     * Normalizes a reservation type
+     *
+     * @param type the reservation type
+     * @return the lower case type
+     */
+    private static String typeKey(String type) {
+        return type.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,297 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+/**
+ * Streams reservations to a console, file or other writer as a table, CSV or TSV report
+ *
+ * Rows are laid out by hand into one reused builder and copied into a large reused
+ * character buffer, so writing a row parses no format string and allocates nothing.
+ * The buffer is only handed to the underlying writer when it fills up or on flush
+ */
+public class ReservationReportWriter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    /**
+     * The layout of the report
+     */
+    public enum Format {
+        /**
+         * Fixed-width columns, as shown by the console menu
+         */
+        TABLE,
+        /**
+         * Comma separated values with a header row
+         */
+        CSV,
+        /**
+         * Tab separated values with a header row
+         */
+        TSV
+    }
+
+    private final Writer sink;
+    private final boolean closeSink;
+    private final Format format;
+    private final StringBuilder row = new StringBuilder(256);
+    private final StringBuilder details = new StringBuilder(128);
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int buffered;
+
+    /**
+     * Creates a report writer on top of the given writer
+     *
+     * @param sink the writer receiving the report
+     * @param format the layout of the report
+     * @param closeSink whether closing the report writer also closes the sink
+     */
+    public ReservationReportWriter(Writer sink, Format format, boolean closeSink) {
+        this.sink = sink;
+        this.format = format;
+        this.closeSink = closeSink;
+    }
+
+    /**
+     * Creates a report writer printing a table to the console
+     *
+     * Closing it flushes the report but leaves System.out open
+     *
+     * @return the report writer
+     */
+    public static ReservationReportWriter toConsole() {
+        return new ReservationReportWriter(new OutputStreamWriter(System.out), Format.TABLE, false);
+    }
+
+    /**
+     * Creates a report writer writing to a UTF-8 file, replacing any existing content
+     *
+     * @param path the report file
+     * @param format the layout of the report
+     * @return the report writer
+     * @throws IOException if the file cannot be created
+     */
+    public static ReservationReportWriter toFile(Path path, Format format) throws IOException {
+        return new ReservationReportWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8), format, true);
+    }
+
+    /**
+     * Writes the header followed by every reservation
+     *
+     * @param reservations the reservations to report
+     * @return the number of reservations written
+     * @throws IOException if the report cannot be written
+     */
+    public int writeReport(Iterable<Reservation> reservations) throws IOException {
+        return writeReport(reservations, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Writes the header followed by one page of reservations
+     *
+     * @param reservations the reservations to report
+     * @param offset the number of reservations to skip
+     * @param limit the maximum number of reservations to write
+     * @return the number of reservations written
+     * @throws IOException if the report cannot be written
+     */
+    public int writeReport(Iterable<Reservation> reservations, int offset, int limit) throws IOException {
+        writeHeader();
+        Iterator<Reservation> iterator = reservations.iterator();
+        for (int skipped = 0; skipped < offset && iterator.hasNext(); skipped++) {
+            iterator.next();
+        }
+        int written = 0;
+        while (written < limit && iterator.hasNext()) {
+            writeRow(iterator.next());
+            written++;
+        }
+        flush();
+        return written;
+    }
+
+    /**
+     * Writes the column headers
+     *
+     * @throws IOException if the report cannot be written
+     */
+    public void writeHeader() throws IOException {
+        row.setLength(0);
+        switch (format) {
+            case TABLE:
+                row.append("Reserv. ID  Reserv. Type  NumOfNights      Reserv. Cost").append(LINE_SEPARATOR);
+                row.append("-------------------------------------------------------");
+                break;
+            case CSV:
+                row.append("reservationId,reservationType,numberOfNights,costOfReservation,additionalDetails");
+                break;
+            default:
+                row.append("reservationId\treservationType\tnumberOfNights\tcostOfReservation\tadditionalDetails");
+                break;
+        }
+        row.append(LINE_SEPARATOR);
+        emit(row);
+    }
+
+    /**
+     * Writes a single reservation row
+     *
+     * @param reservation the reservation to write
+     * @throws IOException if the report cannot be written
+     */
+    public void writeRow(Reservation reservation) throws IOException {
+        row.setLength(0);
+        details.setLength(0);
+        reservation.appendAdditionalDetails(details);
+
+        if (format == Format.TABLE) {
+            int start = row.length();
+            row.append(reservation.getReservationId());
+            pad(start, 12);
+            start = row.length();
+            row.append(reservation.getReservationType());
+            pad(start, 14);
+            start = row.length();
+            row.append(reservation.getNumberOfNights());
+            pad(start, 17);
+            start = row.length();
+            Money.append(row, reservation.getCostInCents());
+            pad(start, 12);
+            row.append(details);
+        } else {
+            char separator = format == Format.CSV ? ',' : '\t';
+            row.append(reservation.getReservationId()).append(separator);
+            row.append(reservation.getReservationType()).append(separator);
+            row.append(reservation.getNumberOfNights()).append(separator);
+            Money.append(row, reservation.getCostInCents());
+            row.append(separator);
+            if (format == Format.CSV) {
+                appendCsvField(details);
+            } else {
+                appendTsvField(details);
+            }
+        }
+        row.append(LINE_SEPARATOR);
+        emit(row);
+    }
+
+    /**
+     * Writes a line of free text, such as a message between report rows
+     *
+     * @param text the text, without a line separator
+     * @throws IOException if the report cannot be written
+     */
+    public void writeLine(CharSequence text) throws IOException {
+        row.setLength(0);
+        row.append(text).append(LINE_SEPARATOR);
+        emit(row);
+    }
+
+    /**
+     * Pads the column started at the given position with spaces up to the column width
+     *
+     * @param start the position where the column starts in the row
+     * @param width the column width
+     */
+    private void pad(int start, int width) {
+        for (int i = row.length() - start; i < width; i++) {
+            row.append(' ');
+        }
+    }
+
+    /**
+     * Appends a CSV field, quoting it when it holds a separator, quote or line break
+     *
+     * @param field the field to append
+     */
+    private void appendCsvField(CharSequence field) {
+        boolean needsQuotes = false;
+        for (int i = 0; i < field.length() && !needsQuotes; i++) {
+            char c = field.charAt(i);
+            needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!needsQuotes) {
+            row.append(field);
+            return;
+        }
+        row.append('"');
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '"') {
+                row.append('"');
+            }
+            row.append(c);
+        }
+        row.append('"');
+    }
+
+    /**
+     * Appends a TSV field, replacing tabs and line breaks with spaces
+     *
+     * @param field the field to append
+     */
+    private void appendTsvField(CharSequence field) {
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            row.append(c == '\t' || c == '\n' || c == '\r' ? ' ' : c);
+        }
+    }
+
+    /**
+     * Copies text into the buffer, handing full buffers to the sink
+     *
+     * @param text the text to copy
+     * @throws IOException if the sink cannot be written
+     */
+    private void emit(StringBuilder text) throws IOException {
+        int length = text.length();
+        int copied = 0;
+        while (copied < length) {
+            if (buffered == buffer.length) {
+                drain();
+            }
+            int chunk = Math.min(length - copied, buffer.length - buffered);
+            text.getChars(copied, copied + chunk, buffer, buffered);
+            buffered += chunk;
+            copied += chunk;
+        }
+    }
+
+    /**
+     * Hands the buffered characters to the sink
+     *
+     * @throws IOException if the sink cannot be written
+     */
+    private void drain() throws IOException {
+        sink.write(buffer, 0, buffered);
+        buffered = 0;
+    }
+
+    /**
+     * Writes every buffered row and flushes the sink
+     *
+     * @throws IOException if the sink cannot be written
+     */
+    public void flush() throws IOException {
+        drain();
+        sink.flush();
+    }
+
+    /**
+     * Flushes the report, and closes the sink if this writer owns it
+     *
+     * @throws IOException if the sink cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+        if (closeSink) {
+            sink.close();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Point-in-time view of the reservations of a store
+ *
+ * A snapshot never changes once taken, whatever is booked or cancelled afterwards, so it can
+ * be iterated any number of times while other threads keep writing to the store
+ */
+public interface ReservationSnapshot extends Iterable<Reservation> {
+
+    /**
+     * Retrieves the number of reservations in the snapshot
+     *
+     * @return the number of reservations
+     */
+    int size();
+
+    /**
+     * Streams the reservations of the snapshot in the order the store lists them
+     *
+     * @return a sequential stream over the reservations
+     */
+    default Stream<Reservation> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Copies the reservations of the snapshot into a new list
+     *
+     * @return the reservations in the order the store lists them
+     */
+    default List<Reservation> toList() {
+        List<Reservation> list = new ArrayList<>(size());
+        for (Reservation reservation : this) {
+            list.add(reservation);
+        }
+        return list;
+    }
+
+    /**
+     * Wraps a list the caller will no longer modify as a snapshot
+     *
+     * @param reservations the reservations of the snapshot
+     * @return the snapshot
+     */
+    static ReservationSnapshot of(List<Reservation> reservations) {
+        List<Reservation> view = Collections.unmodifiableList(reservations);
+        return new ReservationSnapshot() {
+            @Override
+            public int size() {
+                return view.size();
+            }
+
+            @Override
+            public Iterator<Reservation> iterator() {
+                return view.iterator();
+            }
+        };
+    }
+}
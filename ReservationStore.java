@@ -0,0 +1,132 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Storage backend for the reservations of a resort
+ *
+ * Implementations decide how reservations are laid out and whether they may be
+ * shared between threads
+ */
+public interface ReservationStore {
+
+    /**
+     * Stores a reservation, replacing any reservation with the same ID
+     *
+     * @param reservation the reservation to store
+     * @return the replaced reservation, or null if the ID was not stored yet
+     */
+    Reservation put(Reservation reservation);
+
+    /**
+     * Retrieves the reservation with the given ID
+     *
+     * @param reservationId the reservation ID to search
+     * @return the reservation, or null if not found
+     */
+    Reservation get(int reservationId);
+
+    /**
+     * Retrieves a cancelled reservation the store still remembers
+     *
+     * The default implementation forgets reservations as soon as they are removed
+     *
+     * @param reservationId the reservation ID to search
+     * @return the cancelled reservation, or null if the store does not know it as cancelled
+     */
+    default Reservation getCancelled(int reservationId) {
+        return null;
+    }
+
+    /**
+     * Removes the reservation with the given ID
+     *
+     * @param reservationId the reservation ID to remove
+     * @return the removed reservation, or null if not found
+     */
+    Reservation remove(int reservationId);
+
+    /**
+     * Prepares the store to take the given number of new reservations without growing
+     *
+     * Only a hint; the default implementation does nothing
+     *
+     * @param additionalReservations the number of reservations about to be stored
+     */
+    default void ensureCapacity(int additionalReservations) {
+    }
+
+    /**
+     * Stores a batch of reservations with new IDs
+     *
+     * The default implementation presizes the store once and puts the reservations one by
+     * one, so concurrent readers may see part of the batch; stores that publish views to
+     * readers should make the whole batch visible at once
+     *
+     * @param batch the reservations to store, none of whose IDs is stored yet
+     */
+    default void putAll(List<Reservation> batch) {
+        ensureCapacity(batch.size());
+        for (Reservation reservation : batch) {
+            put(reservation);
+        }
+    }
+
+    /**
+     * Removes a batch of reservations
+     *
+     * The default implementation removes the reservations one by one; stores that publish
+     * views to readers should hide the whole batch at once
+     *
+     * @param batch the reservations to remove, matched by ID
+     */
+    default void removeAll(List<Reservation> batch) {
+        for (Reservation reservation : batch) {
+            remove(reservation.getReservationId());
+        }
+    }
+
+    /**
+     * Retrieves the number of stored reservations
+     *
+     * @return the number of reservations
+     */
+    int size();
+
+    /**
+     * Copies the stored reservations into a new list in the order they were booked
+     *
+     * @return the reservations in booking order
+     */
+    List<Reservation> toList();
+
+    /**
+     * Takes a point-in-time view of the stored reservations
+     *
+     * The default implementation copies the reservations with toList, so it costs time
+     * proportional to the size of the store and is only as consistent as toList is
+     *
+     * @return the snapshot
+     */
+    default ReservationSnapshot snapshot() {
+        return ReservationSnapshot.of(toList());
+    }
+
+    /**
+     * Finds the room reservations needing every requirement of a mask
+     *
+     * The default implementation scans a copy of the stored reservations
+     *
+     * @param requirementMask a bitmask built by RequirementDictionary.maskOf
+     * @return the matching room reservations in booking order
+     */
+    default List<Reservation> findRoomReservations(long requirementMask) {
+        List<Reservation> matches = new ArrayList<>();
+        for (Reservation reservation : toList()) {
+            if (reservation instanceof RoomReservation
+                    && ((RoomReservation) reservation).hasRequirements(requirementMask)) {
+                matches.add(reservation);
+            }
+        }
+        return matches;
+    }
+}
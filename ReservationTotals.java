@@ -0,0 +1,217 @@
+import java.util.Arrays;
+
+/**
+ * Immutable revenue and occupancy figures for a set of reservations
+ *
+ * Figures are kept per unit type; revenue is held in whole cents so that totals
+ * built by adding and removing reservations stay exact
+ */
+public final class ReservationTotals {
+    public static final int ROOM = 0;
+    public static final int CONFERENCE = 1;
+    public static final int TYPE_COUNT = 2;
+
+    /**
+     * Stays of this many nights or more share the last histogram bucket
+     */
+    public static final int MAX_HISTOGRAM_NIGHTS = 30;
+
+    private final long[] counts;
+    private final long[] nights;
+    private final long[] revenueCents;
+    private final long[][] nightsHistograms;
+
+    /**
+     * Creates totals from per-type figures; the arrays are owned by the new instance
+     *
+     * @param counts the number of reservations per type
+     * @param nights the number of nights booked per type
+     * @param revenueCents the revenue in cents per type
+     * @param nightsHistograms per type, the number of reservations by length of stay
+     */
+    ReservationTotals(long[] counts, long[] nights, long[] revenueCents, long[][] nightsHistograms) {
+        this.counts = counts;
+        this.nights = nights;
+        this.revenueCents = revenueCents;
+        this.nightsHistograms = nightsHistograms;
+    }
+
+    /**
+     * Retrieves the type index of a reservation
+     *
+     * @param reservation the reservation
+     * @return ROOM or CONFERENCE
+     * @throws IllegalArgumentException if the reservation type is not supported
+     */
+    public static int typeIndex(Reservation reservation) {
+        if (reservation instanceof RoomReservation) {
+            return ROOM;
+        }
+        if (reservation instanceof ConferenceReservation) {
+            return CONFERENCE;
+        }
+        throw new IllegalArgumentException("Unsupported reservation type: " + reservation.getClass().getName());
+    }
+
+    /**
+     * Retrieves the histogram bucket of a length of stay
+     *
+     * @param numberOfNights the number of nights
+     * @return the bucket index, from 0 up to MAX_HISTOGRAM_NIGHTS
+     */
+    public static int histogramBucket(int numberOfNights) {
+        return Math.max(0, Math.min(numberOfNights, MAX_HISTOGRAM_NIGHTS));
+    }
+
+    /**
+     * Retrieves the total number of reservations
+     *
+     * @return the number of reservations
+     */
+    public long getCount() {
+        return counts[ROOM] + counts[CONFERENCE];
+    }
+
+    /**
+     * Retrieves the number of reservations of a type
+     *
+     * @param type ROOM or CONFERENCE
+     * @return the number of reservations of the type
+     */
+    public long getCount(int type) {
+        return counts[type];
+    }
+
+    /**
+     * Retrieves the total number of nights booked
+     *
+     * @return the number of nights
+     */
+    public long getNights() {
+        return nights[ROOM] + nights[CONFERENCE];
+    }
+
+    /**
+     * Retrieves the number of nights booked for a type
+     *
+     * @param type ROOM or CONFERENCE
+     * @return the number of nights of the type
+     */
+    public long getNights(int type) {
+        return nights[type];
+    }
+
+    /**
+     * Retrieves the total revenue
+     *
+     * @return the revenue
+     */
+    public double getRevenue() {
+        return (revenueCents[ROOM] + revenueCents[CONFERENCE]) / 100.0;
+    }
+
+    /**
+     * Retrieves the revenue of a type
+     *
+     * @param type ROOM or CONFERENCE
+     * @return the revenue of the type
+     */
+    public double getRevenue(int type) {
+        return revenueCents[type] / 100.0;
+    }
+
+    /**
+     * Retrieves the revenue of a type in whole cents
+     *
+     * @param type ROOM or CONFERENCE
+     * @return the revenue of the type in cents
+     */
+    public long getRevenueCents(int type) {
+        return revenueCents[type];
+    }
+
+    /**
+     * Retrieves the average length of stay
+     *
+     * @return the average number of nights, or 0 if there are no reservations
+     */
+    public double getAverageStay() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) getNights() / count;
+    }
+
+    /**
+     * Retrieves the number of reservations of a type staying a given number of nights
+     *
+     * @param type ROOM or CONFERENCE
+     * @param numberOfNights the length of stay; MAX_HISTOGRAM_NIGHTS counts every longer stay too
+     * @return the number of matching reservations
+     */
+    public long getStayCount(int type, int numberOfNights) {
+        return nightsHistograms[type][histogramBucket(numberOfNights)];
+    }
+
+    /**
+     * Adds two sets of totals, for example those of separate resorts
+     *
+     * @param other the totals to add to these
+     * @return new totals holding the sum of every figure
+     */
+    public ReservationTotals plus(ReservationTotals other) {
+        long[] summedCounts = new long[TYPE_COUNT];
+        long[] summedNights = new long[TYPE_COUNT];
+        long[] summedRevenueCents = new long[TYPE_COUNT];
+        long[][] summedHistograms = new long[TYPE_COUNT][MAX_HISTOGRAM_NIGHTS + 1];
+        for (int type = 0; type < TYPE_COUNT; type++) {
+            summedCounts[type] = counts[type] + other.counts[type];
+            summedNights[type] = nights[type] + other.nights[type];
+            summedRevenueCents[type] = revenueCents[type] + other.revenueCents[type];
+            for (int bucket = 0; bucket <= MAX_HISTOGRAM_NIGHTS; bucket++) {
+                summedHistograms[type][bucket] = nightsHistograms[type][bucket] + other.nightsHistograms[type][bucket];
+            }
+        }
+        return new ReservationTotals(summedCounts, summedNights, summedRevenueCents, summedHistograms);
+    }
+
+    /**
+     * Compares two sets of totals field by field
+     *
+     * @param other the object to compare to
+     * @return true if every figure is equal
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof ReservationTotals)) {
+            return false;
+        }
+        ReservationTotals totals = (ReservationTotals) other;
+        return Arrays.equals(counts, totals.counts)
+                && Arrays.equals(nights, totals.nights)
+                && Arrays.equals(revenueCents, totals.revenueCents)
+                && Arrays.deepEquals(nightsHistograms, totals.nightsHistograms);
+    }
+
+    /**
+     * Computes a hash code consistent with equals
+     *
+     * @return the hash code
+     */
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(counts) * 31 + Arrays.hashCode(revenueCents);
+    }
+
+    /**
+     * Converts the totals to a human-readable string
+     *
+     * @return String representation of the totals
+     */
+    @Override
+    public String toString() {
+        return "ReservationTotals, " + getCount() + " reservations, " + getNights() + " nights, revenue "
+                + getRevenue() + " (room " + getRevenue(ROOM) + ", conference " + getRevenue(CONFERENCE) + ")";
+    }
+}
@@ -1,3 +1,5 @@
+import java.time.LocalDate;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -8,20 +10,96 @@ import java.util.List;
  * Extends from the abstract Reservation class
  */
 public class RoomReservation extends Reservation {
-    private List<String> requirements;
+    /**
+     * The unit type whose tariff prices room reservations
+     */
+    public static final String UNIT_TYPE = "room";
+
+    private long requirementMask;
+    private List<String> unencodedRequirements = Collections.emptyList();
 
     /**
      * Constructs a RoomReservation instance
      *
-     * Calls the inherited constructor from the Reservation class
+     * @param reservationId the reservation ID
+     * @param numberOfNights the number of nights reserved
+     * @param costInCents total cost of the reservation in cents
+     * @param requirements list of requirements specified by the guest
+     * @param checkInDate the date of the first night, or null if no date was booked
+     * @param unitNumber the number of the reserved room, or 0 if no date was booked
+     */
+    public RoomReservation(int reservationId, int numberOfNights, long costInCents, List<String> requirements,
+                           LocalDate checkInDate, int unitNumber) {
+        super(reservationId, numberOfNights, costInCents, checkInDate, unitNumber);
+        encodeRequirements(requirements);
+    }
+
+    /**
+     * Constructs a RoomReservation instance from requirements already split by the shared
+     * RequirementDictionary into a mask and the requirements without a bit
      *
+     * @param reservationId the reservation ID
      * @param numberOfNights the number of nights reserved
-     * @param costOfReservation total cost of the reservation
+     * @param costInCents total cost of the reservation in cents
+     * @param requirementMask the bitmask of the guest requirements
+     * @param unencodedRequirements the guest requirements without a bit, as listed by
+     *                              RequirementDictionary.unencoded
+     * @param checkInDate the date of the first night, or null if no date was booked
+     * @param unitNumber the number of the reserved room, or 0 if no date was booked
+     */
+    public RoomReservation(int reservationId, int numberOfNights, long costInCents, long requirementMask,
+                           List<String> unencodedRequirements, LocalDate checkInDate, int unitNumber) {
+        super(reservationId, numberOfNights, costInCents, checkInDate, unitNumber);
+        this.requirementMask = requirementMask;
+        this.unencodedRequirements = unencodedRequirements;
+    }
+
+    /**
+     * Encodes the guest requirements, keeping those the dictionary has no bit for as strings
+     *
      * @param requirements list of requirements specified by the guest
      */
-    public RoomReservation(int numberOfNights, double costOfReservation, List<String> requirements) {
-        super(numberOfNights, costOfReservation);
-        this.requirements = requirements;
+    private void encodeRequirements(List<String> requirements) {
+        RequirementDictionary dictionary = RequirementDictionary.shared();
+        this.requirementMask = dictionary.encode(requirements);
+        this.unencodedRequirements = dictionary.unencoded(requirements);
+    }
+
+    /**
+     * Retrieves the guest requirements, in the order the requirement dictionary first saw them
+     *
+     * @return the list of guest requirements
+     */
+    public List<String> getRequirements() {
+        return RequirementDictionary.shared().decode(requirementMask, unencodedRequirements);
+    }
+
+    /**
+     * Retrieves the guest requirements as a bitmask of the shared RequirementDictionary
+     *
+     * @return the bitmask of the guest requirements that have a bit
+     */
+    public long getRequirementMask() {
+        return requirementMask;
+    }
+
+    /**
+     * Retrieves the guest requirements the shared RequirementDictionary had no bit for
+     *
+     * @return the unmodifiable list of requirements missing from the mask, usually empty
+     */
+    public List<String> getUnencodedRequirements() {
+        return unencodedRequirements;
+    }
+
+    /**
+     * Checks whether the guest asked for every requirement of a mask
+     *
+     * @param mask a bitmask built by RequirementDictionary.maskOf
+     * @return true if all requirements of the mask were requested
+     */
+    public boolean hasRequirements(long mask) {
+        return mask != -1 && (requirementMask & mask) == mask;
     }
 
     /**
@@ -37,11 +115,27 @@ public class RoomReservation extends Reservation {
     /**
      * String representation for the additional requirements for room reservations
      *
+     * The string is cached per distinct set of requirements that all have a bit
+     *
      * @return a string containing the guest requirements
      */
     @Override
     public String getAdditionalDetails() {
-        return "With requirements: " + String.join(" ", requirements);
+        return RequirementDictionary.shared().render(requirementMask, unencodedRequirements);
+    }
+
+    /**
+     * Appends the guest requirements to a builder, in the same form as getAdditionalDetails
+     *
+     * The text is cached per distinct set of requirements that all have a bit, so usually
+     * nothing is allocated
+     *
+     * @param builder the builder to append to
+     * @return the builder
+     */
+    @Override
+    public StringBuilder appendAdditionalDetails(StringBuilder builder) {
+        return builder.append(RequirementDictionary.shared().render(requirementMask, unencodedRequirements));
     }
 
     /**
@@ -51,6 +145,6 @@ public class RoomReservation extends Reservation {
      */
     @Override
     public String toString() {
-        return "RoomReservation, " + getReservationId() + ", " + getNumberOfNights() + ", " + getCostOfReservation() + ", " + requirements;
+        return "RoomReservation, " + getReservationId() + ", " + getNumberOfNights() + ", " + getCostOfReservation() + ", " + getRequirements();
     }
 }
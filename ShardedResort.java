@@ -0,0 +1,240 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Several properties run as shards of one reservation space
+ *
+ * Each shard is a MusandamResort of its own, booked through getShard, with its own store,
+ * calendar and listeners. Shard i of N hands out the IDs i + 1, i + 1 + N, i + 1 + 2N and so
+ * on, so IDs never collide across shards and the shard owning an ID is (ID - 1) % N: lookups
+ * and cancellations go straight to one shard without searching the others.
+ *
+ * Listings and totals across shards are computed on the common fork-join pool, one task per
+ * shard, and merged pairwise in reservation ID order
+ */
+public class ShardedResort {
+    private final MusandamResort[] shards;
+
+    /**
+     * Creates the shards, each keeping its reservations in a VersionedReservationStore
+     *
+     * @param pricingTable the pricing table shared by the shards
+     * @param shardCount the number of shards
+     * @throws IllegalArgumentException if the number of shards is not positive
+     */
+    public ShardedResort(PricingTable pricingTable, int shardCount) {
+        this(pricingTable, shardCount, VersionedReservationStore::new);
+    }
+
+    /**
+     * Creates the shards, each keeping its reservations in a new store
+     *
+     * @param pricingTable the pricing table shared by the shards
+     * @param shardCount the number of shards
+     * @param storeFactory creates the store of each shard; pick a thread-safe store if
+     *                     shards are booked while other threads list them
+     * @throws IllegalArgumentException if the number of shards is not positive
+     */
+    public ShardedResort(PricingTable pricingTable, int shardCount, Supplier<ReservationStore> storeFactory) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Invalid shard count: " + shardCount);
+        }
+        this.shards = new MusandamResort[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new MusandamResort(pricingTable, storeFactory.get(), new ReservationIdSequence(i + 1, shardCount));
+        }
+    }
+
+    /**
+     * Retrieves the number of shards
+     *
+     * @return the number of shards
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Retrieves a shard, to book reservations at its property
+     *
+     * @param shardIndex the index of the shard, from 0
+     * @return the resort of the shard
+     * @throws IllegalArgumentException if there is no such shard
+     */
+    public MusandamResort getShard(int shardIndex) {
+        if (shardIndex < 0 || shardIndex >= shards.length) {
+            throw new IllegalArgumentException("Invalid shard index: " + shardIndex);
+        }
+        return shards[shardIndex];
+    }
+
+    /**
+     * Finds the shard that handed out a reservation ID
+     *
+     * @param reservationId the reservation ID
+     * @return the index of the shard, or -1 if the ID is not positive
+     */
+    public int shardOf(int reservationId) {
+        return reservationId <= 0 ? -1 : (reservationId - 1) % shards.length;
+    }
+
+    /**
+     * Retrieves a reservation from the shard owning its ID
+     *
+     * @param reservationId the reservation ID to search
+     * @return the reservation, or null if not found
+     */
+    public Reservation getReservationById(int reservationId) {
+        int shardIndex = shardOf(reservationId);
+        return shardIndex < 0 ? null : shards[shardIndex].getReservationById(reservationId);
+    }
+
+    /**
+     * Cancels a reservation in the shard owning its ID
+     *
+     * @param reservationId the reservation ID to cancel
+     * @return the cancelled reservation, or null if not found
+     */
+    public Reservation cancelReservationById(int reservationId) {
+        int shardIndex = shardOf(reservationId);
+        return shardIndex < 0 ? null : shards[shardIndex].cancelReservationById(reservationId);
+    }
+
+    /**
+     * Lists the reservations of every shard, taking the shard snapshots in parallel
+     *
+     * Each shard is listed from one snapshot, but the shards are not frozen together, so
+     * bookings made while the listing runs may appear in some shards and not in others
+     *
+     * @return the reservations of all shards in reservation ID order
+     */
+    public List<Reservation> getReservations() {
+        return acrossShards(ShardedResort::listById, ShardedResort::mergeById);
+    }
+
+    /**
+     * Computes the revenue and occupancy figures of every shard in parallel and adds them up
+     *
+     * @return the totals of all shards
+     */
+    public ReservationTotals computeTotals() {
+        return acrossShards(shard -> ReservationAnalytics.recompute(shard.getReservationSnapshot().toList()),
+                ReservationTotals::plus);
+    }
+
+    /**
+     * Counts the reservations of every shard
+     *
+     * @return the number of reservations
+     */
+    public int size() {
+        int size = 0;
+        for (MusandamResort shard : shards) {
+            size += shard.getReservationSnapshot().size();
+        }
+        return size;
+    }
+
+    /**
+     * Runs a computation on every shard on the common fork-join pool and combines the results
+     *
+     * @param perShard computes the result of one shard
+     * @param combiner combines the results of two neighbouring ranges of shards, lower first
+     * @param <R> the result type
+     * @return the combined result
+     */
+    private <R> R acrossShards(Function<MusandamResort, R> perShard, BinaryOperator<R> combiner) {
+        return ForkJoinPool.commonPool().invoke(new ShardTask<>(perShard, combiner, 0, shards.length));
+    }
+
+    /**
+     * Lists the reservations of one shard in ID order
+     *
+     * Shards hand out IDs in increasing order, so the snapshot is normally sorted already and
+     * the sort only verifies it
+     *
+     * @param shard the shard
+     * @return the reservations of the shard in ID order
+     */
+    private static List<Reservation> listById(MusandamResort shard) {
+        List<Reservation> reservations = shard.getReservationSnapshot().toList();
+        reservations.sort(Comparator.comparingInt(Reservation::getReservationId));
+        return reservations;
+    }
+
+    /**
+     * Merges two lists sorted by reservation ID
+     *
+     * @param left the first list
+     * @param right the second list
+     * @return a new list holding both, in ID order
+     */
+    private static List<Reservation> mergeById(List<Reservation> left, List<Reservation> right) {
+        if (left.isEmpty()) {
+            return right;
+        }
+        if (right.isEmpty()) {
+            return left;
+        }
+        List<Reservation> merged = new ArrayList<>(left.size() + right.size());
+        int i = 0;
+        int j = 0;
+        while (i < left.size() && j < right.size()) {
+            if (left.get(i).getReservationId() <= right.get(j).getReservationId()) {
+                merged.add(left.get(i++));
+            } else {
+                merged.add(right.get(j++));
+            }
+        }
+        merged.addAll(left.subList(i, left.size()));
+        merged.addAll(right.subList(j, right.size()));
+        return merged;
+    }
+
+    /**
+     * Fork-join task computing a range of shards, splitting it in halves down to single shards
+     *
+     * @param <R> the result type
+     */
+    private final class ShardTask<R> extends RecursiveTask<R> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Function<MusandamResort, R> perShard;
+        private final transient BinaryOperator<R> combiner;
+        private final int from;
+        private final int to;
+
+        /**
+         * Creates a task for a range of shards
+         *
+         * @param perShard computes the result of one shard
+         * @param combiner combines the results of two neighbouring ranges
+         * @param from the first shard of the range
+         * @param to the shard after the last one of the range
+         */
+        private ShardTask(Function<MusandamResort, R> perShard, BinaryOperator<R> combiner, int from, int to) {
+            this.perShard = perShard;
+            this.combiner = combiner;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected R compute() {
+            if (to - from == 1) {
+                return perShard.apply(shards[from]);
+            }
+            int middle = (from + to) >>> 1;
+            ShardTask<R> left = new ShardTask<>(perShard, combiner, from, middle);
+            left.fork();
+            R right = new ShardTask<>(perShard, combiner, middle, to).compute();
+            return combiner.apply(left.join(), right);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Checks that ShardedResort hands out disjoint IDs and merges its shards in ID order
+ *
+ * Books on every shard from a thread of its own while another thread lists the shards, then
+ * checks that each ID belongs to the shard that handed it out, that lookups, cancellations and
+ * listings across shards agree with a model, and that the totals add up. Uses an odd number of
+ * shards so the pairwise merge is uneven. Exits with status 1 on failure.
+ *
+ * Run with: java ShardedResortTest
+ */
+public class ShardedResortTest {
+    private static final int SHARDS = 3;
+    private static final int BOOKINGS_PER_SHARD = 3000;
+
+    private ShardedResortTest() {
+    }
+
+    /**
+     * Runs the checks
+     *
+     * @param args unused
+     * @throws InterruptedException if interrupted while waiting for the booking threads
+     */
+    public static void main(String[] args) throws InterruptedException {
+        try {
+            run();
+            System.out.println("ShardedResortTest passed");
+        } catch (AssertionError e) {
+            System.out.println("ShardedResortTest failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Books, lists and cancels across shards and compares them with a model
+     *
+     * @throws InterruptedException if interrupted while waiting for the booking threads
+     */
+    private static void run() throws InterruptedException {
+        ShardedResort resort = new ShardedResort(PricingTable.compile(List.of(
+                new BookingInfo(RoomReservation.UNIT_TYPE, 0.05, 24.98),
+                new BookingInfo(ConferenceReservation.UNIT_TYPE, 0.1, 100.0, 15.0))), SHARDS);
+        check(resort.getShardCount() == SHARDS, "the resort has " + SHARDS + " shards");
+
+        List<List<Reservation>> booked = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        for (int s = 0; s < SHARDS; s++) {
+            MusandamResort shard = resort.getShard(s);
+            List<Reservation> reservations = new ArrayList<>();
+            booked.add(reservations);
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < BOOKINGS_PER_SHARD; i++) {
+                        reservations.add(i % 4 == 0
+                                ? shard.addConferenceReservation(1 + i % 3, 10 + i % 20)
+                                : shard.addRoomReservation(1 + i % 7, List.of()));
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        while (threads.stream().anyMatch(Thread::isAlive)) {
+            checkIdOrder(resort.getReservations(), "while booking");
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        check(failures.isEmpty(), "booking threads failed: " + failures);
+
+        Map<Integer, Reservation> model = new TreeMap<>();
+        for (int s = 0; s < SHARDS; s++) {
+            for (Reservation reservation : booked.get(s)) {
+                int reservationId = reservation.getReservationId();
+                check(model.put(reservationId, reservation) == null, "reservation ID " + reservationId + " is handed out once");
+                check(resort.shardOf(reservationId) == s, "reservation " + reservationId + " belongs to shard " + s);
+            }
+        }
+        compare(resort, model, "after booking");
+
+        for (int reservationId = 1; reservationId <= SHARDS * BOOKINGS_PER_SHARD; reservationId += 2) {
+            check(resort.cancelReservationById(reservationId) == model.remove(reservationId), "cancelling " + reservationId);
+        }
+        check(resort.cancelReservationById(1) == null, "cancelling a cancelled reservation finds nothing");
+        check(resort.getReservationById(0) == null && resort.cancelReservationById(-1) == null, "IDs that are not positive are not found");
+        compare(resort, model, "after cancelling");
+
+        for (int s = 0; s < SHARDS; s++) {
+            Reservation reservation = resort.getShard(s).addRoomReservation(1, List.of());
+            check(resort.shardOf(reservation.getReservationId()) == s, "a shard keeps handing out its own IDs after cancellations");
+            model.put(reservation.getReservationId(), reservation);
+        }
+        compare(resort, model, "after booking again");
+        try {
+            resort.getShard(SHARDS);
+            throw new AssertionError("a missing shard is rejected");
+        } catch (IllegalArgumentException e) {
+            check(e.getMessage().contains(String.valueOf(SHARDS)), "the rejection names the shard");
+        }
+    }
+
+    /**
+     * Compares the listing, lookups, size and totals across shards with the model
+     *
+     * @param resort the sharded resort
+     * @param model the expected reservations by ID
+     * @param when when the comparison is made
+     */
+    private static void compare(ShardedResort resort, Map<Integer, Reservation> model, String when) {
+        List<Reservation> expected = new ArrayList<>(model.values());
+        check(resort.size() == model.size(), "size " + when + ", expected " + model.size() + ", got " + resort.size());
+        List<Reservation> listed = resort.getReservations();
+        checkIdOrder(listed, when);
+        check(listed.equals(expected), "the merged listing " + when + " holds every reservation of every shard");
+        for (Reservation reservation : expected) {
+            check(resort.getReservationById(reservation.getReservationId()) == reservation,
+                    "lookup of " + reservation.getReservationId() + " " + when);
+        }
+        ReservationTotals totals = resort.computeTotals();
+        ReservationTotals recomputed = ReservationAnalytics.recompute(expected);
+        for (int type = 0; type < ReservationTotals.TYPE_COUNT; type++) {
+            check(totals.getCount(type) == recomputed.getCount(type), "count of type " + type + " " + when);
+            check(totals.getNights(type) == recomputed.getNights(type), "nights of type " + type + " " + when);
+            check(totals.getRevenueCents(type) == recomputed.getRevenueCents(type), "revenue of type " + type + " " + when);
+        }
+    }
+
+    /**
+     * Checks that a listing is in strictly increasing ID order
+     *
+     * @param listed the listing
+     * @param when when the listing was taken
+     */
+    private static void checkIdOrder(List<Reservation> listed, String when) {
+        for (int i = 1; i < listed.size(); i++) {
+            check(listed.get(i - 1).getReservationId() < listed.get(i).getReservationId(),
+                    "the merged listing " + when + " is in ID order without duplicates");
+        }
+    }
+
+    /**
+     * Fails the run if a condition does not hold
+     *
+     * @param condition the condition
+     * @param description what the condition checks
+     */
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            throw new AssertionError(description);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Thread-safe reservation store for resorts booked from many threads at once
+ *
+ * Reservations are spread over independently locked stripes by reservation ID, so
+ * concurrent bookings, lookups and cancellations on different IDs rarely contend
+ */
+public class StripedReservationStore implements ReservationStore {
+    private final ReservationIndex[] stripes;
+    private final int stripeMask;
+
+    /**
+     * Creates a store with enough stripes for the available processors
+     */
+    public StripedReservationStore() {
+        this(Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * Creates a store with at least the given number of stripes
+     *
+     * @param minimumStripes the minimum number of stripes, rounded up to a power of two
+     */
+    public StripedReservationStore(int minimumStripes) {
+        int stripeCount = 1;
+        while (stripeCount < minimumStripes) {
+            stripeCount <<= 1;
+        }
+        this.stripes = new ReservationIndex[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new ReservationIndex();
+        }
+        this.stripeMask = stripeCount - 1;
+    }
+
+    /**
+     * Selects the stripe owning a reservation ID
+     *
+     * Sequential IDs land on consecutive stripes, spreading concurrent bookings evenly
+     *
+     * @param reservationId the reservation ID
+     * @return the stripe owning the ID
+     */
+    private ReservationIndex stripeFor(int reservationId) {
+        return stripes[reservationId & stripeMask];
+    }
+
+    @Override
+    public Reservation put(Reservation reservation) {
+        ReservationIndex stripe = stripeFor(reservation.getReservationId());
+        synchronized (stripe) {
+            return stripe.put(reservation);
+        }
+    }
+
+    @Override
+    public Reservation get(int reservationId) {
+        ReservationIndex stripe = stripeFor(reservationId);
+        synchronized (stripe) {
+            return stripe.get(reservationId);
+        }
+    }
+
+    @Override
+    public Reservation remove(int reservationId) {
+        ReservationIndex stripe = stripeFor(reservationId);
+        synchronized (stripe) {
+            return stripe.remove(reservationId);
+        }
+    }
+
+    /**
+     * Presizes every stripe for its share of the new reservations
+     *
+     * @param additionalReservations the number of reservations about to be stored
+     */
+    @Override
+    public void ensureCapacity(int additionalReservations) {
+        int perStripe = additionalReservations / stripes.length + 1;
+        for (ReservationIndex stripe : stripes) {
+            synchronized (stripe) {
+                stripe.ensureCapacity(perStripe);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the number of stored reservations
+     *
+     * The count is not atomic across stripes while other threads are booking
+     *
+     * @return the number of reservations
+     */
+    @Override
+    public int size() {
+        int size = 0;
+        for (ReservationIndex stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Copies the stored reservations into a new list ordered by reservation ID
+     *
+     * Each stripe is copied atomically, but bookings made on other stripes while
+     * the copy is running may or may not be included
+     *
+     * @return the reservations in reservation ID order
+     */
+    @Override
+    public List<Reservation> toList() {
+        List<Reservation> list = new ArrayList<>();
+        for (ReservationIndex stripe : stripes) {
+            synchronized (stripe) {
+                for (Reservation reservation : stripe) {
+                    list.add(reservation);
+                }
+            }
+        }
+        list.sort(Comparator.comparingInt(Reservation::getReservationId));
+        return list;
+    }
+}
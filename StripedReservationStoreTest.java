@@ -0,0 +1,186 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Checks bookings and cancellations made on StripedReservationStore from many threads
+ *
+ * Books from several threads at once through a resort, checks that every reservation got its
+ * own ID and is stored, then cancels every other one from several threads while others look
+ * reservations up and list the store. Uses fewer stripes than threads so stripes are
+ * contended. Exits with status 1 on failure.
+ *
+ * Run with: java StripedReservationStoreTest
+ */
+public class StripedReservationStoreTest {
+    private static final int THREADS = 8;
+    private static final int BOOKINGS_PER_THREAD = 5000;
+    private static final int STRIPES = 4;
+
+    private StripedReservationStoreTest() {
+    }
+
+    /**
+     * Runs the checks
+     *
+     * @param args unused
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    public static void main(String[] args) throws InterruptedException {
+        try {
+            run();
+            System.out.println("StripedReservationStoreTest passed");
+        } catch (AssertionError e) {
+            System.out.println("StripedReservationStoreTest failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Books, cancels and reads concurrently and checks what is left
+     *
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    private static void run() throws InterruptedException {
+        StripedReservationStore store = new StripedReservationStore(STRIPES);
+        MusandamResort resort = new MusandamResort(List.of(new BookingInfo(RoomReservation.UNIT_TYPE, 0.1, 100)), store);
+
+        List<List<Reservation>> booked = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            booked.add(new ArrayList<>());
+        }
+        runConcurrently(THREADS, t -> {
+            for (int i = 0; i < BOOKINGS_PER_THREAD; i++) {
+                booked.get(t).add(resort.addRoomReservation(1, List.of()));
+            }
+        });
+        Set<Integer> ids = new TreeSet<>();
+        for (List<Reservation> reservations : booked) {
+            for (Reservation reservation : reservations) {
+                check(ids.add(reservation.getReservationId()), "reservation ID " + reservation.getReservationId() + " is handed out once");
+                check(store.get(reservation.getReservationId()) == reservation, "reservation " + reservation.getReservationId() + " is stored");
+            }
+        }
+        int total = THREADS * BOOKINGS_PER_THREAD;
+        check(store.size() == total, "the store holds " + total + " reservations, got " + store.size());
+        checkListed(store, ids);
+
+        Set<Integer> kept = Collections.synchronizedSet(new TreeSet<>());
+        List<Throwable> readerFailures = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch cancelled = new CountDownLatch(THREADS);
+        Thread reader = new Thread(() -> {
+            try {
+                while (cancelled.getCount() > 0) {
+                    List<Reservation> listed = store.toList();
+                    for (int i = 1; i < listed.size(); i++) {
+                        if (listed.get(i - 1).getReservationId() >= listed.get(i).getReservationId()) {
+                            throw new AssertionError("toList is in ID order while cancelling");
+                        }
+                    }
+                    for (Reservation reservation : listed) {
+                        Reservation found = store.get(reservation.getReservationId());
+                        if (found != null && found != reservation) {
+                            throw new AssertionError("a lookup returns the stored reservation while cancelling");
+                        }
+                    }
+                }
+            } catch (Throwable e) {
+                readerFailures.add(e);
+            }
+        });
+        reader.start();
+        runConcurrently(THREADS, t -> {
+            try {
+                for (Reservation reservation : booked.get(t)) {
+                    int reservationId = reservation.getReservationId();
+                    if (reservationId % 2 == 0) {
+                        check(resort.cancelReservationById(reservationId) != null, "cancelling " + reservationId + " finds it");
+                    } else {
+                        kept.add(reservationId);
+                    }
+                }
+            } finally {
+                cancelled.countDown();
+            }
+        });
+        reader.join();
+        check(readerFailures.isEmpty(), "reading while cancelling failed: " + readerFailures);
+        check(store.size() == kept.size(), "the store holds " + kept.size() + " reservations after cancelling, got " + store.size());
+        for (int reservationId : ids) {
+            check((store.get(reservationId) != null) == kept.contains(reservationId), "reservation " + reservationId + " is kept only if not cancelled");
+        }
+        checkListed(store, kept);
+    }
+
+    /**
+     * Checks that toList holds exactly the given IDs, in ID order
+     *
+     * @param store the store
+     * @param ids the expected reservation IDs, in ID order
+     */
+    private static void checkListed(StripedReservationStore store, Set<Integer> ids) {
+        List<Integer> listed = new ArrayList<>();
+        for (Reservation reservation : store.toList()) {
+            listed.add(reservation.getReservationId());
+        }
+        check(listed.equals(new ArrayList<>(ids)), "toList lists the stored reservations in ID order");
+    }
+
+    /**
+     * A task run by one of several threads
+     */
+    private interface ThreadTask {
+        /**
+         * Runs the task
+         *
+         * @param thread the number of the thread, from 0
+         */
+        void run(int thread);
+    }
+
+    /**
+     * Runs a task on several threads started together and waits for all of them
+     *
+     * @param threads the number of threads
+     * @param task the task
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    private static void runConcurrently(int threads, ThreadTask task) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> started = new ArrayList<>();
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    task.run(thread);
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+            started.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : started) {
+            worker.join();
+        }
+        check(failures.isEmpty(), "threads failed: " + failures);
+    }
+
+    /**
+     * Fails the run if a condition does not hold
+     *
+     * @param condition the condition
+     * @param description what the condition checks
+     */
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            throw new AssertionError(description);
+        }
+    }
+}
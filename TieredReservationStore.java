@@ -0,0 +1,569 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Thread-safe reservation store that keeps past reservations on disk
+ *
+ * New reservations are hot: they live in memory in a ReservationIndex. demote moves the
+ * reservations matching a test, for example those whose stay ended before a date, to a cold
+ * segment file, encoded with ReservationCodec and appended in one write. In memory, a cold
+ * reservation then only costs its entries in primitive arrays of file locations.
+ *
+ * Lookups serve hot reservations from memory and cold ones transparently from the file,
+ * through a bounded LRU cache of recently read cold reservations, so repeated lookups of the
+ * same past booking do not read the file again. Cancelling a cold reservation forgets its
+ * location; its bytes stay in the file until the store is closed.
+ *
+ * The segment file only backs this store: it is truncated when the store is created and
+ * deleted when it is closed, so durability is left to ReservationJournal
+ */
+public class TieredReservationStore implements ReservationStore, Closeable {
+    public static final int DEFAULT_CACHE_CAPACITY = 10_000;
+
+    /**
+     * Estimated heap bytes held by a hot reservation: the object, its check-in date and its
+     * slot in the hot index; measured on a 64-bit JVM with compressed references
+     */
+    private static final int HOT_BYTES_PER_RESERVATION = 94;
+
+    /**
+     * Estimated heap bytes held by a cold reservation: its slot in the location index and
+     * its entry in the write order
+     */
+    private static final int COLD_BYTES_PER_RESERVATION = 34;
+
+    private static final int LENGTH_BITS = 24;
+    private static final long NO_LOCATION = -1;
+    private static final int SCAN_BUFFER_SIZE = 1 << 20;
+
+    private ReservationIndex hot = new ReservationIndex();
+    private final IntLongMap coldLocations = new IntLongMap();
+    private final LinkedHashMap<Integer, Reservation> cache;
+    private final FileChannel segment;
+    private final Path segmentPath;
+    private long segmentSize;
+    private long deadBytes;
+
+    private int[] coldIds = new int[1024];
+    private long[] coldIdLocations = new long[1024];
+    private int coldAppends;
+
+    private long cacheHits;
+    private long cacheMisses;
+
+    /**
+     * Hot and cold counts of a store, with the hit rate of its cache and the heap it saves
+     */
+    public static final class Stats {
+        private final int hotReservations;
+        private final int coldReservations;
+        private final int cachedReservations;
+        private final long cacheHits;
+        private final long cacheMisses;
+        private final long segmentBytes;
+        private final long deadBytes;
+
+        /**
+         * Creates the statistics of a store
+         *
+         * @param hotReservations the number of reservations kept in memory
+         * @param coldReservations the number of reservations kept in the segment file
+         * @param cachedReservations the number of cold reservations currently cached
+         * @param cacheHits the number of cold lookups served by the cache
+         * @param cacheMisses the number of cold lookups that read the file
+         * @param segmentBytes the size of the segment file
+         * @param deadBytes the bytes of the segment file held by cancelled or replaced reservations
+         */
+        private Stats(int hotReservations, int coldReservations, int cachedReservations, long cacheHits,
+                      long cacheMisses, long segmentBytes, long deadBytes) {
+            this.hotReservations = hotReservations;
+            this.coldReservations = coldReservations;
+            this.cachedReservations = cachedReservations;
+            this.cacheHits = cacheHits;
+            this.cacheMisses = cacheMisses;
+            this.segmentBytes = segmentBytes;
+            this.deadBytes = deadBytes;
+        }
+
+        /**
+         * Retrieves the number of reservations kept in memory
+         *
+         * @return the number of hot reservations
+         */
+        public int getHotReservations() {
+            return hotReservations;
+        }
+
+        /**
+         * Retrieves the number of reservations kept in the segment file
+         *
+         * @return the number of cold reservations
+         */
+        public int getColdReservations() {
+            return coldReservations;
+        }
+
+        /**
+         * Retrieves the number of cold reservations currently cached
+         *
+         * @return the number of cached reservations
+         */
+        public int getCachedReservations() {
+            return cachedReservations;
+        }
+
+        /**
+         * Retrieves the number of cold lookups served by the cache
+         *
+         * @return the number of cache hits
+         */
+        public long getCacheHits() {
+            return cacheHits;
+        }
+
+        /**
+         * Retrieves the number of cold lookups that read the file
+         *
+         * @return the number of cache misses
+         */
+        public long getCacheMisses() {
+            return cacheMisses;
+        }
+
+        /**
+         * Retrieves the share of cold lookups served by the cache
+         *
+         * @return the hit rate, from 0 to 1, or 0 if no cold reservation was looked up
+         */
+        public double getCacheHitRate() {
+            long lookups = cacheHits + cacheMisses;
+            return lookups == 0 ? 0 : (double) cacheHits / lookups;
+        }
+
+        /**
+         * Retrieves the size of the segment file
+         *
+         * @return the number of bytes written to the segment file
+         */
+        public long getSegmentBytes() {
+            return segmentBytes;
+        }
+
+        /**
+         * Retrieves the bytes of the segment file no longer holding a stored reservation
+         *
+         * @return the number of dead bytes
+         */
+        public long getDeadBytes() {
+            return deadBytes;
+        }
+
+        /**
+         * Estimates the heap saved by keeping the cold reservations on disk
+         *
+         * Counts what the cold reservations would hold if they were hot, less their location
+         * index entries; the cached ones are counted as not saved
+         *
+         * @return the estimated number of heap bytes saved
+         */
+        public long getEstimatedHeapSavedBytes() {
+            return (long) coldReservations * (HOT_BYTES_PER_RESERVATION - COLD_BYTES_PER_RESERVATION)
+                    - (long) cachedReservations * HOT_BYTES_PER_RESERVATION;
+        }
+
+        /**
+         * Converts the statistics to a human-readable string
+         *
+         * @return String representation of the statistics
+         */
+        @Override
+        public String toString() {
+            return "TieredReservationStore.Stats, " + hotReservations + " hot, " + coldReservations + " cold ("
+                    + segmentBytes + " bytes, " + deadBytes + " dead), cache " + cachedReservations + " entries, hit rate "
+                    + Math.round(getCacheHitRate() * 1000) / 10.0 + "%, about "
+                    + getEstimatedHeapSavedBytes() / 1024 + " KiB of heap saved";
+        }
+    }
+
+    /**
+     * Creates an empty store with a cache of the default capacity
+     *
+     * @param segmentPath the cold segment file, created or truncated
+     * @throws IOException if the file cannot be opened
+     */
+    public TieredReservationStore(Path segmentPath) throws IOException {
+        this(segmentPath, DEFAULT_CACHE_CAPACITY);
+    }
+
+    /**
+     * Creates an empty store
+     *
+     * @param segmentPath the cold segment file, created or truncated
+     * @param cacheCapacity the number of cold reservations to keep cached
+     * @throws IOException if the file cannot be opened
+     * @throws IllegalArgumentException if the cache capacity is negative
+     */
+    public TieredReservationStore(Path segmentPath, int cacheCapacity) throws IOException {
+        if (cacheCapacity < 0) {
+            throw new IllegalArgumentException("Invalid cache capacity: " + cacheCapacity);
+        }
+        this.segmentPath = segmentPath;
+        this.segment = FileChannel.open(segmentPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Reservation> eldest) {
+                return size() > cacheCapacity;
+            }
+        };
+    }
+
+    /**
+     * Stores a reservation as hot, replacing any reservation with the same ID
+     *
+     * @param reservation the reservation to store
+     * @return the replaced reservation, or null if the ID was not stored yet
+     */
+    @Override
+    public synchronized Reservation put(Reservation reservation) {
+        Reservation replaced = removeCold(reservation.getReservationId());
+        Reservation replacedHot = hot.put(reservation);
+        return replaced != null ? replaced : replacedHot;
+    }
+
+    /**
+     * Retrieves a reservation from memory, or from the cache or segment file if it is cold
+     *
+     * @param reservationId the reservation ID to search
+     * @return the reservation, or null if not found
+     * @throws UncheckedIOException if the segment file cannot be read
+     */
+    @Override
+    public synchronized Reservation get(int reservationId) {
+        Reservation reservation = hot.get(reservationId);
+        if (reservation != null) {
+            return reservation;
+        }
+        long location = coldLocations.get(reservationId, NO_LOCATION);
+        return location == NO_LOCATION ? null : readCold(reservationId, location);
+    }
+
+    /**
+     * Removes a hot or cold reservation
+     *
+     * @param reservationId the reservation ID to remove
+     * @return the removed reservation, or null if not found
+     * @throws UncheckedIOException if the segment file cannot be read
+     */
+    @Override
+    public synchronized Reservation remove(int reservationId) {
+        Reservation removed = hot.remove(reservationId);
+        return removed != null ? removed : removeCold(reservationId);
+    }
+
+    /**
+     * Retrieves the number of hot and cold reservations
+     *
+     * @return the number of reservations
+     */
+    @Override
+    public synchronized int size() {
+        return hot.size() + coldLocations.size();
+    }
+
+    /**
+     * Copies the hot and cold reservations into a new list ordered by reservation ID
+     *
+     * Reads the cold reservations from the segment file in one sequential scan, without
+     * going through the cache
+     *
+     * @return the reservations in reservation ID order
+     * @throws UncheckedIOException if the segment file cannot be read
+     */
+    @Override
+    public synchronized List<Reservation> toList() {
+        List<Reservation> list = new ArrayList<>(size());
+        ByteBuffer window = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long windowStart = 0;
+        window.limit(0);
+        try {
+            for (int i = 0; i < coldAppends; i++) {
+                long location = coldIdLocations[i];
+                if (coldLocations.get(coldIds[i], NO_LOCATION) != location) {
+                    continue;
+                }
+                long offset = offsetOf(location);
+                int length = lengthOf(location);
+                if (offset < windowStart || offset + length > windowStart + window.limit()) {
+                    window = length > window.capacity() ? ByteBuffer.allocate(length) : window;
+                    window.clear();
+                    readFully(window, offset);
+                    windowStart = offset;
+                }
+                window.position((int) (offset - windowStart));
+                list.add(decode(window, length, coldIds[i]));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        list.addAll(hot.toList());
+        list.sort(Comparator.comparingInt(Reservation::getReservationId));
+        return list;
+    }
+
+    /**
+     * Moves the hot reservations passing a test to the segment file
+     *
+     * The reservations are encoded and appended in one write; if it fails, they stay hot
+     *
+     * @param isCold selects the reservations to move
+     * @return the number of reservations moved
+     * @throws IOException if the segment file cannot be written
+     */
+    public synchronized int demote(Predicate<Reservation> isCold) throws IOException {
+        List<Reservation> moving = new ArrayList<>();
+        int bytes = 0;
+        for (Reservation reservation : hot) {
+            if (isCold.test(reservation)) {
+                moving.add(reservation);
+                bytes = Math.addExact(bytes, ReservationCodec.encodedSize(reservation));
+            }
+        }
+        if (moving.isEmpty()) {
+            return 0;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(bytes);
+        long[] locations = new long[moving.size()];
+        for (int i = 0; i < moving.size(); i++) {
+            int start = buffer.position();
+            ReservationCodec.write(buffer, moving.get(i));
+            locations[i] = location(segmentSize + start, buffer.position() - start);
+        }
+        buffer.flip();
+        long position = segmentSize;
+        while (buffer.hasRemaining()) {
+            position += segment.write(buffer, position);
+        }
+        segmentSize = position;
+
+        for (int i = 0; i < moving.size(); i++) {
+            int reservationId = moving.get(i).getReservationId();
+            hot.remove(reservationId);
+            coldLocations.put(reservationId, locations[i]);
+            appendColdId(reservationId, locations[i]);
+        }
+
+        // The hot index never shrinks by itself, so rebuild it at the size of what stayed hot
+        ReservationIndex remaining = new ReservationIndex(hot.size());
+        for (Reservation reservation : hot) {
+            remaining.put(reservation);
+        }
+        hot = remaining;
+        return moving.size();
+    }
+
+    /**
+     * Moves to the segment file the dated reservations whose stay ended by a date
+     *
+     * @param date the first date still considered current
+     * @return the number of reservations moved
+     * @throws IOException if the segment file cannot be written
+     */
+    public int demoteCompletedBefore(LocalDate date) throws IOException {
+        long firstCurrentDay = date.toEpochDay();
+        return demote(reservation -> reservation.isScheduled()
+                && reservation.getCheckInDate().toEpochDay() + reservation.getNumberOfNights() <= firstCurrentDay);
+    }
+
+    /**
+     * Retrieves the hot and cold counts, the cache hit rate and the estimated heap savings
+     *
+     * @return the current statistics
+     */
+    public synchronized Stats getStats() {
+        return new Stats(hot.size(), coldLocations.size(), cache.size(), cacheHits, cacheMisses, segmentSize, deadBytes);
+    }
+
+    /**
+     * Closes and deletes the segment file
+     *
+     * @throws IOException if the file cannot be closed or deleted
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        segment.close();
+        Files.deleteIfExists(segmentPath);
+    }
+
+    /**
+     * Forgets a cold reservation
+     *
+     * @param reservationId the reservation ID
+     * @return the cold reservation, or null if the ID is not cold
+     */
+    private Reservation removeCold(int reservationId) {
+        long location = coldLocations.get(reservationId, NO_LOCATION);
+        if (location == NO_LOCATION) {
+            return null;
+        }
+        Reservation removed = cache.remove(reservationId);
+        if (removed == null) {
+            removed = readRecord(reservationId, location);
+        }
+        coldLocations.remove(reservationId);
+        deadBytes += lengthOf(location);
+        return removed;
+    }
+
+    /**
+     * Retrieves a cold reservation from the cache, reading and caching it on a miss
+     *
+     * @param reservationId the reservation ID
+     * @param location the location of its record in the segment file
+     * @return the reservation
+     * @throws UncheckedIOException if the record cannot be read
+     */
+    private Reservation readCold(int reservationId, long location) {
+        Reservation cached = cache.get(reservationId);
+        if (cached != null) {
+            cacheHits++;
+            return cached;
+        }
+        cacheMisses++;
+        Reservation reservation = readRecord(reservationId, location);
+        cache.put(reservationId, reservation);
+        return reservation;
+    }
+
+    /**
+     * Reads a cold reservation from the segment file
+     *
+     * @param reservationId the reservation ID
+     * @param location the location of its record in the segment file
+     * @return the reservation
+     * @throws UncheckedIOException if the record cannot be read
+     */
+    private Reservation readRecord(int reservationId, long location) {
+        try {
+            ByteBuffer record = ByteBuffer.allocate(lengthOf(location));
+            readFully(record, offsetOf(location));
+            return decode(record, lengthOf(location), reservationId);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads the segment file from an offset until the buffer is full or the file ends
+     *
+     * @param buffer the buffer to fill, flipped for reading once filled
+     * @param offset the offset of the first byte to read
+     * @throws IOException if the file cannot be read
+     */
+    private void readFully(ByteBuffer buffer, long offset) throws IOException {
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            int read = segment.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Decodes a cold record, checking it is the expected reservation and fills its length
+     *
+     * @param buffer the buffer positioned at the record
+     * @param length the length of the record
+     * @param reservationId the expected reservation ID
+     * @return the reservation
+     * @throws IOException if the record is truncated or corrupt
+     */
+    private Reservation decode(ByteBuffer buffer, int length, int reservationId) throws IOException {
+        int recordEnd = buffer.position() + length;
+        if (recordEnd > buffer.limit()) {
+            throw new IOException("Truncated cold segment " + segmentPath + " at reservation " + reservationId);
+        }
+        int limit = buffer.limit();
+        buffer.limit(recordEnd);
+        try {
+            Reservation reservation = ReservationCodec.read(buffer);
+            if (buffer.position() != recordEnd || reservation.getReservationId() != reservationId) {
+                throw new IOException("Corrupt cold segment " + segmentPath + " at reservation " + reservationId);
+            }
+            return reservation;
+        } catch (BufferUnderflowException | IllegalArgumentException | DateTimeException e) {
+            throw new IOException("Corrupt cold segment " + segmentPath + " at reservation " + reservationId, e);
+        } finally {
+            buffer.limit(limit);
+        }
+    }
+
+    /**
+     * Remembers the order in which a reservation was written to the segment file
+     *
+     * @param reservationId the reservation ID
+     * @param location the location of its record
+     */
+    private void appendColdId(int reservationId, long location) {
+        if (coldAppends == coldIds.length) {
+            coldIds = Arrays.copyOf(coldIds, coldAppends << 1);
+            coldIdLocations = Arrays.copyOf(coldIdLocations, coldAppends << 1);
+        }
+        coldIds[coldAppends] = reservationId;
+        coldIdLocations[coldAppends] = location;
+        coldAppends++;
+    }
+
+    /**
+     * Packs the offset and length of a record into one index value
+     *
+     * @param offset the offset of the record in the segment file
+     * @param length the length of the record
+     * @return the packed location
+     */
+    private static long location(long offset, int length) {
+        return offset << LENGTH_BITS | length;
+    }
+
+    /**
+     * Unpacks the offset of a record
+     *
+     * @param location the packed location
+     * @return the offset in the segment file
+     */
+    private static long offsetOf(long location) {
+        return location >>> LENGTH_BITS;
+    }
+
+    /**
+     * Unpacks the length of a record
+     *
+     * @param location the packed location
+     * @return the length in bytes
+     */
+    private static int lengthOf(long location) {
+        return (int) (location & ((1 << LENGTH_BITS) - 1));
+    }
+}
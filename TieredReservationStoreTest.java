@@ -0,0 +1,165 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Checks cold reads, demotion and listings of TieredReservationStore
+ *
+ * Demotes past stays to a segment file in a temporary directory, then reads them back through
+ * a small cache, cancels, re-puts and demotes them again, comparing lookups and toList with a
+ * model after each change. Exits with status 1 on failure.
+ *
+ * Run with: java TieredReservationStoreTest
+ */
+public class TieredReservationStoreTest {
+    private static final LocalDate FIRST_NIGHT = LocalDate.of(2027, 1, 1);
+    private static final int RESERVATIONS = 200;
+    private static final int CACHE_CAPACITY = 8;
+
+    private TieredReservationStoreTest() {
+    }
+
+    /**
+     * Runs the checks
+     *
+     * @param args unused
+     * @throws IOException if the segment file cannot be used
+     */
+    public static void main(String[] args) throws IOException {
+        Path directory = Files.createTempDirectory("tiered-store-test");
+        try {
+            run(directory.resolve("cold.segment"));
+            System.out.println("TieredReservationStoreTest passed");
+        } catch (AssertionError e) {
+            System.out.println("TieredReservationStoreTest failed: " + e.getMessage());
+            System.exit(1);
+        } finally {
+            Files.deleteIfExists(directory.resolve("cold.segment"));
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    /**
+     * Demotes, reads, cancels and re-puts reservations
+     *
+     * @param segmentPath the segment file of the store
+     * @throws IOException if the segment file cannot be written
+     */
+    private static void run(Path segmentPath) throws IOException {
+        Map<Integer, Reservation> model = new TreeMap<>();
+        try (TieredReservationStore store = new TieredReservationStore(segmentPath, CACHE_CAPACITY)) {
+            for (int id = 1; id <= RESERVATIONS; id++) {
+                put(store, model, id % 5 == 0
+                        ? new ConferenceReservation(id, 2, 5000L + id, 10 + id, FIRST_NIGHT.plusDays(id), 1)
+                        : id % 7 == 0
+                        ? new RoomReservation(id, 1, 1000L + id, List.of("TV"), null, 0)
+                        : new RoomReservation(id, 1, 1000L + id, List.of("TV", "sea view"), FIRST_NIGHT.plusDays(id), 2));
+            }
+            LocalDate cutoff = FIRST_NIGHT.plusDays(RESERVATIONS / 2);
+            int demoted = store.demoteCompletedBefore(cutoff);
+            check(demoted > 0 && store.getStats().getColdReservations() == demoted, "past stays are demoted, got " + store.getStats());
+            compare(store, model, "after demoting");
+            for (int id = 1; id <= RESERVATIONS; id++) {
+                compareReservation(store.get(id), model.get(id), "cold read of " + id);
+            }
+            check(store.getStats().getCacheMisses() > CACHE_CAPACITY, "cold reads go past the cache to the file");
+            store.get(1);
+            long hits = store.getStats().getCacheHits();
+            store.get(1);
+            check(store.getStats().getCacheHits() == hits + 1, "a repeated cold read hits the cache");
+
+            int cancelled = 3;
+            int replaced = 6;
+            check(store.getStats().getColdReservations() > 0 && store.get(cancelled).isScheduled(),
+                    "the reservations to change are cold");
+            compareReservation(store.remove(cancelled), model.remove(cancelled), "cancelling a cold reservation");
+            check(store.get(cancelled) == null, "a cancelled cold reservation is gone");
+            compare(store, model, "after cancelling a cold reservation");
+
+            put(store, model, new RoomReservation(cancelled, 3, 777L, List.of("crib"), null, 0));
+            compare(store, model, "after re-putting a cancelled cold ID");
+            check(store.get(cancelled) == model.get(cancelled), "a re-put ID is served hot");
+
+            Reservation update = new RoomReservation(replaced, 4, 888L, List.of("late checkout"), FIRST_NIGHT, 2);
+            compareReservation(store.put(update), model.put(replaced, update), "replacing a cold reservation");
+            compare(store, model, "after replacing a cold reservation");
+
+            int demotedAgain = store.demote(reservation -> reservation.getReservationId() == cancelled
+                    || reservation.getReservationId() == replaced);
+            check(demotedAgain == 2, "re-put reservations can be demoted again, got " + demotedAgain);
+            compare(store, model, "after demoting re-put reservations again");
+            check(store.getStats().getDeadBytes() > 0, "the records of cancelled and replaced reservations are dead");
+        }
+        check(!Files.exists(segmentPath), "closing deletes the segment file");
+    }
+
+    /**
+     * Puts a reservation in the store and the model
+     *
+     * @param store the store
+     * @param model the expected reservations by ID
+     * @param reservation the reservation
+     */
+    private static void put(TieredReservationStore store, Map<Integer, Reservation> model, Reservation reservation) {
+        store.put(reservation);
+        model.put(reservation.getReservationId(), reservation);
+    }
+
+    /**
+     * Compares the size, lookups and toList of the store with the model
+     *
+     * @param store the store
+     * @param model the expected reservations by ID
+     * @param when when the comparison is made
+     */
+    private static void compare(TieredReservationStore store, Map<Integer, Reservation> model, String when) {
+        check(store.size() == model.size(), "size " + when + ", expected " + model.size() + ", got " + store.size());
+        List<Reservation> listed = store.toList();
+        List<Reservation> expected = new ArrayList<>(model.values());
+        check(listed.size() == expected.size(), "toList size " + when + ", got " + listed.size());
+        for (int i = 0; i < expected.size(); i++) {
+            compareReservation(listed.get(i), expected.get(i), "toList " + when);
+        }
+    }
+
+    /**
+     * Compares every field of a reservation read back with the one stored
+     *
+     * @param actual the reservation read back
+     * @param expected the reservation stored
+     * @param what what is compared
+     */
+    private static void compareReservation(Reservation actual, Reservation expected, String what) {
+        check(actual != null, what + ": missing reservation " + expected.getReservationId());
+        check(describe(actual).equals(describe(expected)), what + ": expected " + describe(expected) + ", got " + describe(actual));
+    }
+
+    /**
+     * Describes every field of a reservation
+     *
+     * @param reservation the reservation
+     * @return the description
+     */
+    private static String describe(Reservation reservation) {
+        return reservation.getReservationId() + " " + reservation.getReservationType() + " " + reservation.getNumberOfNights()
+                + " " + reservation.getCostInCents() + " " + reservation.getAdditionalDetails() + " "
+                + reservation.getCheckInDate() + " " + reservation.getUnitNumber();
+    }
+
+    /**
+     * Fails the run if a condition does not hold
+     *
+     * @param condition the condition
+     * @param description what the condition checks
+     */
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            throw new AssertionError(description);
+        }
+    }
+}
@@ -0,0 +1,390 @@
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread-safe reservation store that cancels by leaving tombstones
+ *
+ * Reservations are kept in rows in booking order, found through a primitive ID index.
+ * Cancelling only marks the row of the reservation as cancelled, in constant time, and the
+ * cancelled reservation can still be looked up with getCancelled until its row is reclaimed.
+ *
+ * Dead rows are reclaimed by an incremental compactor that slides the live rows over them, a
+ * bounded number of rows per step, keeping the booking order. Each step holds the lock only
+ * briefly, so bookings and lookups are never paused for a whole pass. Steps run on a
+ * background thread once startCompactor is called, whenever dead rows make up more than
+ * a quarter of the rows, or can be run by hand with compactStep. Reclaimed rows are reused
+ * by later bookings; the row arrays never shrink
+ */
+public class TombstoneReservationStore implements ReservationStore, Closeable {
+    public static final int ROWS_PER_COMPACTION_STEP = 4096;
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int MIN_DEAD_ROWS_TO_COMPACT = 1024;
+    private static final long NO_ROW = -1;
+
+    private static final byte FREE = 0;
+    private static final byte LIVE = 1;
+    private static final byte CANCELLED = 2;
+
+    private Reservation[] records;
+    private byte[] states;
+    private int rowCount;
+    private int liveRows;
+    private int deadRows;
+    private final IntLongMap rowsById;
+
+    private boolean compacting;
+    private int compactionReadRow;
+    private int compactionWriteRow;
+    private long reclaimedRows;
+    private long compactionPasses;
+
+    private ScheduledExecutorService compactor;
+
+    /**
+     * Live and dead row counts of a store, with what the compactor reclaimed so far
+     */
+    public static final class Stats {
+        private final int liveRows;
+        private final int deadRows;
+        private final int capacity;
+        private final long reclaimedRows;
+        private final long compactionPasses;
+
+        /**
+         * Creates the statistics of a store
+         *
+         * @param liveRows the number of stored reservations
+         * @param deadRows the number of cancelled rows not reclaimed yet
+         * @param capacity the number of rows allocated
+         * @param reclaimedRows the number of dead rows reclaimed since the store was created
+         * @param compactionPasses the number of completed compaction passes
+         */
+        private Stats(int liveRows, int deadRows, int capacity, long reclaimedRows, long compactionPasses) {
+            this.liveRows = liveRows;
+            this.deadRows = deadRows;
+            this.capacity = capacity;
+            this.reclaimedRows = reclaimedRows;
+            this.compactionPasses = compactionPasses;
+        }
+
+        /**
+         * Retrieves the number of stored reservations
+         *
+         * @return the number of live rows
+         */
+        public int getLiveRows() {
+            return liveRows;
+        }
+
+        /**
+         * Retrieves the number of cancelled rows not reclaimed yet
+         *
+         * @return the number of dead rows
+         */
+        public int getDeadRows() {
+            return deadRows;
+        }
+
+        /**
+         * Retrieves the share of the used rows that are dead
+         *
+         * @return the dead ratio, from 0 to 1
+         */
+        public double getDeadRatio() {
+            int usedRows = liveRows + deadRows;
+            return usedRows == 0 ? 0 : (double) deadRows / usedRows;
+        }
+
+        /**
+         * Retrieves the number of rows allocated
+         *
+         * @return the row capacity
+         */
+        public int getCapacity() {
+            return capacity;
+        }
+
+        /**
+         * Retrieves the number of dead rows reclaimed since the store was created
+         *
+         * @return the number of reclaimed rows
+         */
+        public long getReclaimedRows() {
+            return reclaimedRows;
+        }
+
+        /**
+         * Retrieves the number of completed compaction passes
+         *
+         * @return the number of passes
+         */
+        public long getCompactionPasses() {
+            return compactionPasses;
+        }
+
+        /**
+         * Converts the statistics to a human-readable string
+         *
+         * @return String representation of the statistics
+         */
+        @Override
+        public String toString() {
+            return "TombstoneReservationStore.Stats, " + liveRows + " live, " + deadRows + " dead ("
+                    + Math.round(getDeadRatio() * 100) + "%), capacity " + capacity + ", reclaimed "
+                    + reclaimedRows + " in " + compactionPasses + " passes";
+        }
+    }
+
+    /**
+     * Creates an empty store with the default capacity
+     */
+    public TombstoneReservationStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty store sized to hold the expected number of reservations without growing
+     *
+     * @param expectedSize the number of reservations expected to be stored
+     */
+    public TombstoneReservationStore(int expectedSize) {
+        int capacity = Math.max(expectedSize, 16);
+        records = new Reservation[capacity];
+        states = new byte[capacity];
+        rowsById = new IntLongMap(expectedSize);
+    }
+
+    /**
+     * Stores a reservation, replacing any live reservation with the same ID in its row
+     *
+     * Storing a reservation whose ID was cancelled revives it in a new row
+     *
+     * @param reservation the reservation to store
+     * @return the replaced reservation, or null if the ID was not stored yet
+     */
+    @Override
+    public synchronized Reservation put(Reservation reservation) {
+        int reservationId = reservation.getReservationId();
+        int row = (int) rowsById.get(reservationId, NO_ROW);
+        if (row != NO_ROW && states[row] == LIVE) {
+            Reservation replaced = records[row];
+            records[row] = reservation;
+            return replaced;
+        }
+        if (rowCount == records.length) {
+            grow(records.length << 1);
+        }
+        records[rowCount] = reservation;
+        states[rowCount] = LIVE;
+        rowsById.put(reservationId, rowCount);
+        rowCount++;
+        liveRows++;
+        return null;
+    }
+
+    /**
+     * Retrieves the live reservation with the given ID
+     *
+     * @param reservationId the reservation ID to search
+     * @return the reservation, or null if not found or cancelled
+     */
+    @Override
+    public synchronized Reservation get(int reservationId) {
+        int row = (int) rowsById.get(reservationId, NO_ROW);
+        return row != NO_ROW && states[row] == LIVE ? records[row] : null;
+    }
+
+    /**
+     * Retrieves a cancelled reservation whose row was not reclaimed yet
+     *
+     * @param reservationId the reservation ID to search
+     * @return the cancelled reservation, or null if the ID is live, unknown or reclaimed
+     */
+    @Override
+    public synchronized Reservation getCancelled(int reservationId) {
+        int row = (int) rowsById.get(reservationId, NO_ROW);
+        return row != NO_ROW && states[row] == CANCELLED ? records[row] : null;
+    }
+
+    /**
+     * Cancels the reservation with the given ID by marking its row dead
+     *
+     * @param reservationId the reservation ID to remove
+     * @return the cancelled reservation, or null if not found
+     */
+    @Override
+    public synchronized Reservation remove(int reservationId) {
+        int row = (int) rowsById.get(reservationId, NO_ROW);
+        if (row == NO_ROW || states[row] != LIVE) {
+            return null;
+        }
+        states[row] = CANCELLED;
+        liveRows--;
+        deadRows++;
+        return records[row];
+    }
+
+    /**
+     * Retrieves the number of stored reservations
+     *
+     * @return the number of live reservations
+     */
+    @Override
+    public synchronized int size() {
+        return liveRows;
+    }
+
+    /**
+     * Copies the live reservations into a new list in booking order
+     *
+     * @return the reservations in booking order
+     */
+    @Override
+    public synchronized List<Reservation> toList() {
+        List<Reservation> list = new ArrayList<>(liveRows);
+        for (int row = 0; row < rowCount; row++) {
+            if (states[row] == LIVE) {
+                list.add(records[row]);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Grows the rows once so that the given number of new reservations fit
+     *
+     * @param additionalReservations the number of reservations about to be stored
+     */
+    @Override
+    public synchronized void ensureCapacity(int additionalReservations) {
+        int needed = rowCount + additionalReservations;
+        if (needed > records.length) {
+            grow(Math.max(needed, records.length << 1));
+        }
+    }
+
+    /**
+     * Retrieves the live and dead row counts
+     *
+     * @return the current statistics
+     */
+    public synchronized Stats getStats() {
+        return new Stats(liveRows, deadRows, records.length, reclaimedRows, compactionPasses);
+    }
+
+    /**
+     * Checks whether enough rows are dead to start a compaction pass
+     *
+     * @return true if dead rows are over a quarter of the used rows
+     */
+    private boolean needsCompaction() {
+        return deadRows >= MIN_DEAD_ROWS_TO_COMPACT && deadRows * 4 > liveRows + deadRows;
+    }
+
+    /**
+     * Runs one bounded step of compaction, starting a pass if enough rows are dead
+     *
+     * A step slides at most ROWS_PER_COMPACTION_STEP rows over the dead ones before it, forgets
+     * the cancelled reservations in the dead rows it passes, and clears the rows it vacates.
+     * Rows booked during a pass are appended after the rows still to be visited, so the pass
+     * reaches them too
+     *
+     * @return true if the pass is not finished and another step should follow
+     */
+    public synchronized boolean compactStep() {
+        if (!compacting) {
+            if (!needsCompaction()) {
+                return false;
+            }
+            compacting = true;
+            compactionReadRow = 0;
+            compactionWriteRow = 0;
+        }
+        int end = Math.min(rowCount, compactionReadRow + ROWS_PER_COMPACTION_STEP);
+        for (int row = compactionReadRow; row < end; row++) {
+            Reservation record = records[row];
+            if (states[row] == LIVE) {
+                if (row != compactionWriteRow) {
+                    records[compactionWriteRow] = record;
+                    states[compactionWriteRow] = LIVE;
+                    records[row] = null;
+                    states[row] = FREE;
+                    rowsById.put(record.getReservationId(), compactionWriteRow);
+                }
+                compactionWriteRow++;
+            } else if (states[row] == CANCELLED) {
+                if (rowsById.get(record.getReservationId(), NO_ROW) == row) {
+                    rowsById.remove(record.getReservationId());
+                }
+                records[row] = null;
+                states[row] = FREE;
+                deadRows--;
+                reclaimedRows++;
+            }
+        }
+        compactionReadRow = end;
+        if (compactionReadRow < rowCount) {
+            return true;
+        }
+        rowCount = compactionWriteRow;
+        compacting = false;
+        compactionPasses++;
+        return false;
+    }
+
+    /**
+     * Starts compacting in the background
+     *
+     * Every interval, the compactor runs steps one after the other, releasing the lock in
+     * between, until the pass is finished
+     *
+     * @param intervalMillis how often to check whether compaction is needed
+     * @throws IllegalStateException if the compactor is already running
+     */
+    public synchronized void startCompactor(long intervalMillis) {
+        if (compactor != null) {
+            throw new IllegalStateException("The compactor is already running");
+        }
+        compactor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "reservation-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(() -> {
+            while (compactStep()) {
+                Thread.yield();
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background compactor, if it runs
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService running;
+        synchronized (this) {
+            running = compactor;
+            compactor = null;
+        }
+        if (running != null) {
+            running.shutdownNow();
+        }
+    }
+
+    /**
+     * Grows the rows
+     *
+     * @param capacity the new number of rows, larger than the current one
+     */
+    private void grow(int capacity) {
+        records = Arrays.copyOf(records, capacity);
+        states = Arrays.copyOf(states, capacity);
+    }
+}
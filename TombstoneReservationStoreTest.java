@@ -0,0 +1,220 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Checks that TombstoneReservationStore compaction keeps the reservations booked alongside it
+ *
+ * Interleaves compaction steps with cancellations and re-puts of cancelled IDs, on both sides
+ * of the compaction cursor, and compares the store with a model after every step; then runs
+ * the background compactor while several threads book, cancel and re-put. Exits with
+ * status 1 on failure.
+ *
+ * Run with: java TombstoneReservationStoreTest
+ */
+public class TombstoneReservationStoreTest {
+    private static final int ROWS = 3 * TombstoneReservationStore.ROWS_PER_COMPACTION_STEP;
+    private static final int THREADS = 4;
+    private static final int IDS_PER_THREAD = 20000;
+
+    private TombstoneReservationStoreTest() {
+    }
+
+    /**
+     * Runs the checks
+     *
+     * @param args unused
+     * @throws InterruptedException if interrupted while waiting for the booking threads
+     */
+    public static void main(String[] args) throws InterruptedException {
+        try {
+            checkRePutDuringPass();
+            checkBackgroundCompactor();
+            System.out.println("TombstoneReservationStoreTest passed");
+        } catch (AssertionError e) {
+            System.out.println("TombstoneReservationStoreTest failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Re-puts cancelled IDs behind and ahead of the compaction cursor in the middle of a pass
+     */
+    private static void checkRePutDuringPass() {
+        TombstoneReservationStore store = new TombstoneReservationStore();
+        Map<Integer, Reservation> model = new LinkedHashMap<>();
+        for (int id = 1; id <= ROWS; id++) {
+            put(store, model, reservation(id));
+        }
+        for (int id = 1; id <= ROWS; id++) {
+            if (id % 4 != 0) {
+                remove(store, model, id);
+            }
+        }
+
+        check(store.compactStep(), "a pass over several steps is not finished after one step");
+        check(store.getCancelled(1) == null, "rows behind the cursor are reclaimed");
+        int behind = 2;
+        int ahead = ROWS - 1;
+        check(store.getCancelled(ahead) != null, "rows ahead of the cursor are not reclaimed yet");
+        put(store, model, reservation(behind));
+        put(store, model, reservation(ahead));
+        remove(store, model, 8);
+        remove(store, model, ROWS);
+        put(store, model, reservation(ROWS));
+        compare(store, model, "after re-puts in the middle of a pass");
+
+        while (store.compactStep()) {
+            compare(store, model, "during the pass");
+        }
+        compare(store, model, "after the pass");
+        check(store.get(ahead) == model.get(ahead), "a re-put ahead of the cursor survives its old row being reclaimed");
+        check(store.getCancelled(ahead) == null, "the old row of a re-put ID is reclaimed");
+        check(store.getStats().getDeadRows() == 1, "every dead row but the one cancelled behind the cursor is reclaimed, got "
+                + store.getStats());
+        check(store.getCancelled(8) != null, "a reservation cancelled behind the cursor waits for the next pass");
+        check(store.getStats().getCompactionPasses() == 1, "the pass is counted");
+
+        put(store, model, reservation(ROWS + 1));
+        compare(store, model, "after booking into reclaimed rows");
+    }
+
+    /**
+     * Runs the background compactor while threads book, cancel and re-put their own IDs
+     *
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    private static void checkBackgroundCompactor() throws InterruptedException {
+        List<Map<Integer, Reservation>> models = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        try (TombstoneReservationStore store = new TombstoneReservationStore()) {
+            store.startCompactor(1);
+            for (int t = 0; t < THREADS; t++) {
+                int firstId = 1 + t * IDS_PER_THREAD;
+                Map<Integer, Reservation> model = new LinkedHashMap<>();
+                models.add(model);
+                Thread thread = new Thread(() -> {
+                    try {
+                        book(store, model, firstId, new Random(firstId));
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            check(failures.isEmpty(), "booking threads failed: " + failures);
+            while (store.compactStep()) {
+                Thread.yield();
+            }
+
+            Map<Integer, Reservation> live = new LinkedHashMap<>();
+            for (Map<Integer, Reservation> model : models) {
+                live.putAll(model);
+            }
+            check(store.size() == live.size(), "the store holds " + live.size() + " reservations, got " + store.size());
+            for (Map.Entry<Integer, Reservation> entry : live.entrySet()) {
+                check(store.get(entry.getKey()) == entry.getValue(), "reservation " + entry.getKey() + " is kept");
+            }
+            List<Reservation> listed = store.toList();
+            check(listed.size() == live.size(), "toList lists every live reservation");
+            for (Map<Integer, Reservation> model : models) {
+                List<Reservation> ownOrder = new ArrayList<>(listed);
+                ownOrder.retainAll(model.values());
+                check(ownOrder.equals(new ArrayList<>(model.values())), "toList keeps the booking order of each thread");
+            }
+            check(store.getStats().getCompactionPasses() > 0, "the background compactor ran, got " + store.getStats());
+        }
+    }
+
+    /**
+     * Books, cancels and re-puts IDs of one thread
+     *
+     * @param store the store
+     * @param model the reservations the thread expects to be live, in booking order
+     * @param firstId the first ID the thread owns
+     * @param random the source of the choices
+     */
+    private static void book(TombstoneReservationStore store, Map<Integer, Reservation> model, int firstId, Random random) {
+        for (int i = 0; i < IDS_PER_THREAD; i++) {
+            put(store, model, reservation(firstId + i));
+            if (random.nextInt(3) != 0) {
+                remove(store, model, firstId + random.nextInt(i + 1));
+            }
+            if (random.nextInt(8) == 0) {
+                int id = firstId + random.nextInt(i + 1);
+                if (!model.containsKey(id)) {
+                    put(store, model, reservation(id));
+                }
+            }
+        }
+    }
+
+    /**
+     * Puts a reservation in the store and the model
+     *
+     * @param store the store
+     * @param model the expected live reservations
+     * @param reservation the reservation
+     */
+    private static void put(TombstoneReservationStore store, Map<Integer, Reservation> model, Reservation reservation) {
+        store.put(reservation);
+        model.put(reservation.getReservationId(), reservation);
+    }
+
+    /**
+     * Cancels a reservation in the store and the model
+     *
+     * @param store the store
+     * @param model the expected live reservations
+     * @param reservationId the reservation ID
+     */
+    private static void remove(TombstoneReservationStore store, Map<Integer, Reservation> model, int reservationId) {
+        Reservation expected = model.remove(reservationId);
+        check(store.remove(reservationId) == expected, "cancelling " + reservationId + " returns the live reservation");
+    }
+
+    /**
+     * Compares the store with the model
+     *
+     * @param store the store
+     * @param model the expected live reservations, in booking order
+     * @param when when the comparison is made
+     */
+    private static void compare(TombstoneReservationStore store, Map<Integer, Reservation> model, String when) {
+        check(store.size() == model.size(), "size " + when);
+        check(store.toList().equals(new ArrayList<>(model.values())), "toList " + when);
+        for (Map.Entry<Integer, Reservation> entry : model.entrySet()) {
+            check(store.get(entry.getKey()) == entry.getValue(), "lookup of " + entry.getKey() + " " + when);
+        }
+    }
+
+    /**
+     * Creates an undated room reservation
+     *
+     * @param reservationId the reservation ID
+     * @return the reservation
+     */
+    private static Reservation reservation(int reservationId) {
+        return new RoomReservation(reservationId, 1, 10000, List.of(), null, 0);
+    }
+
+    /**
+     * Fails the run if a condition does not hold
+     *
+     * @param condition the condition
+     * @param description what the condition checks
+     */
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            throw new AssertionError(description);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+/**
+ * Thrown when a booking asks for a room or hall that is already reserved for some of its nights
+ */
+public class UnitUnavailableException extends IllegalStateException {
+    private static final long serialVersionUID = 1L;
+
+    private final int unitNumber;
+
+    /**
+     * Creates the exception
+     *
+     * @param unitNumber the number of the unavailable unit
+     * @param message the detail message
+     */
+    public UnitUnavailableException(int unitNumber, String message) {
+        super(message);
+        this.unitNumber = unitNumber;
+    }
+
+    /**
+     * Retrieves the number of the unavailable unit
+     *
+     * @return the unit number
+     */
+    public int getUnitNumber() {
+        return unitNumber;
+    }
+}
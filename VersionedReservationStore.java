@@ -0,0 +1,364 @@
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe reservation store whose snapshots are taken in constant time
+ *
+ * Reservations are appended to a log of fixed-size chunks in booking order, and every change
+ * is numbered with a version. A cancellation does not move anything: it stamps the entry with
+ * the version that removed it. A snapshot is therefore just the log length and the version
+ * current when it was taken, published by writers as one immutable object, so readers never
+ * lock, never copy and never see a half-applied change, while writers carry on appending.
+ *
+ * Writers are serialized by a short lock, and point lookups take the same lock. Once the log
+ * holds more cancelled entries than live ones, the live entries are copied into a fresh log;
+ * snapshots taken earlier keep the old chunks, which are never modified again. A replaced
+ * reservation moves to the end of the booking order. Batches are stored and removed as one
+ * change, so snapshots hold all of a batch or none of it
+ */
+public class VersionedReservationStore implements ReservationStore {
+    private static final int CHUNK_SHIFT = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int MIN_COMPACTION_LENGTH = 4 * CHUNK_SIZE;
+
+    private Reservation[][] entries;
+    private AtomicLongArray[] removedVersions;
+    private IntLongMap positions;
+    private int length;
+    private int size;
+    private long version;
+
+    private volatile Snapshot current;
+
+    /**
+     * Creates an empty store
+     */
+    public VersionedReservationStore() {
+        this.entries = new Reservation[1][];
+        this.removedVersions = new AtomicLongArray[1];
+        this.positions = new IntLongMap();
+        publish();
+    }
+
+    /**
+     * Stores a reservation, replacing any reservation with the same ID
+     *
+     * @param reservation the reservation to store
+     * @return the replaced reservation, or null if the ID was not stored yet
+     */
+    @Override
+    public synchronized Reservation put(Reservation reservation) {
+        version++;
+        Reservation replaced = store(reservation);
+        publish();
+        return replaced;
+    }
+
+    /**
+     * Stores a batch of reservations as one change, published in a single snapshot
+     *
+     * @param batch the reservations to store
+     */
+    @Override
+    public synchronized void putAll(List<Reservation> batch) {
+        version++;
+        for (Reservation reservation : batch) {
+            store(reservation);
+        }
+        publish();
+    }
+
+    /**
+     * Stores a reservation at the current version without publishing it
+     *
+     * @param reservation the reservation to store
+     * @return the replaced reservation, or null if the ID was not stored yet
+     */
+    private Reservation store(Reservation reservation) {
+        int reservationId = reservation.getReservationId();
+        long position = positions.get(reservationId, -1);
+        Reservation replaced = null;
+        if (position >= 0) {
+            replaced = entries[chunkOf(position)][offsetOf(position)];
+            removedVersions[chunkOf(position)].set(offsetOf(position), version);
+        } else {
+            size++;
+        }
+        positions.put(reservationId, append(reservation));
+        return replaced;
+    }
+
+    /**
+     * Retrieves the reservation with the given ID
+     *
+     * @param reservationId the reservation ID to search
+     * @return the reservation, or null if not found
+     */
+    @Override
+    public synchronized Reservation get(int reservationId) {
+        long position = positions.get(reservationId, -1);
+        return position < 0 ? null : entries[chunkOf(position)][offsetOf(position)];
+    }
+
+    /**
+     * Removes the reservation with the given ID
+     *
+     * @param reservationId the reservation ID to remove
+     * @return the removed reservation, or null if not found
+     */
+    @Override
+    public synchronized Reservation remove(int reservationId) {
+        if (positions.get(reservationId, -1) < 0) {
+            return null;
+        }
+        version++;
+        Reservation removed = unstore(reservationId);
+        compactIfSparse();
+        publish();
+        return removed;
+    }
+
+    /**
+     * Removes a batch of reservations as one change, published in a single snapshot
+     *
+     * @param batch the reservations to remove, matched by ID
+     */
+    @Override
+    public synchronized void removeAll(List<Reservation> batch) {
+        version++;
+        for (Reservation reservation : batch) {
+            unstore(reservation.getReservationId());
+        }
+        compactIfSparse();
+        publish();
+    }
+
+    /**
+     * Stamps a stored reservation as removed at the current version without publishing it
+     *
+     * @param reservationId the reservation ID to remove
+     * @return the removed reservation, or null if not found
+     */
+    private Reservation unstore(int reservationId) {
+        long position = positions.get(reservationId, -1);
+        if (position < 0) {
+            return null;
+        }
+        Reservation removed = entries[chunkOf(position)][offsetOf(position)];
+        removedVersions[chunkOf(position)].set(offsetOf(position), version);
+        positions.remove(reservationId);
+        size--;
+        return removed;
+    }
+
+    /**
+     * Compacts the log once it holds more cancelled entries than live ones
+     */
+    private void compactIfSparse() {
+        if (length >= MIN_COMPACTION_LENGTH && length - size > size) {
+            compact();
+        }
+    }
+
+    /**
+     * Retrieves the number of stored reservations
+     *
+     * @return the number of reservations
+     */
+    @Override
+    public int size() {
+        return current.size;
+    }
+
+    /**
+     * Copies the stored reservations into a new list in booking order
+     *
+     * @return the reservations in booking order
+     */
+    @Override
+    public List<Reservation> toList() {
+        return current.toList();
+    }
+
+    /**
+     * Takes a point-in-time view of the stored reservations without copying them
+     *
+     * @return the snapshot, listing the reservations in booking order
+     */
+    @Override
+    public Snapshot snapshot() {
+        return current;
+    }
+
+    /**
+     * Finds the chunk holding a log position
+     *
+     * @param position the log position
+     * @return the chunk index
+     */
+    private static int chunkOf(long position) {
+        return (int) (position >>> CHUNK_SHIFT);
+    }
+
+    /**
+     * Finds the offset of a log position within its chunk
+     *
+     * @param position the log position
+     * @return the offset in the chunk
+     */
+    private static int offsetOf(long position) {
+        return (int) position & CHUNK_MASK;
+    }
+
+    /**
+     * Appends a live reservation to the log, adding a chunk when the last one is full
+     *
+     * @param reservation the reservation to append
+     * @return the log position of the reservation
+     */
+    private int append(Reservation reservation) {
+        int chunk = chunkOf(length);
+        if (chunk == entries.length) {
+            // Published snapshots keep the old directories, which still see every chunk they need
+            Reservation[][] grownEntries = new Reservation[chunk * 2][];
+            AtomicLongArray[] grownRemovedVersions = new AtomicLongArray[chunk * 2];
+            System.arraycopy(entries, 0, grownEntries, 0, chunk);
+            System.arraycopy(removedVersions, 0, grownRemovedVersions, 0, chunk);
+            entries = grownEntries;
+            removedVersions = grownRemovedVersions;
+        }
+        if (entries[chunk] == null) {
+            entries[chunk] = new Reservation[CHUNK_SIZE];
+            removedVersions[chunk] = new AtomicLongArray(CHUNK_SIZE);
+        }
+        entries[chunk][offsetOf(length)] = reservation;
+        return length++;
+    }
+
+    /**
+     * Copies the live reservations into a fresh log, dropping the cancelled entries
+     */
+    private void compact() {
+        Reservation[][] oldEntries = entries;
+        AtomicLongArray[] oldRemovedVersions = removedVersions;
+        int oldLength = length;
+
+        int chunkCount = Integer.highestOneBit(chunkOf(size) + 1) << 1;
+        entries = new Reservation[chunkCount][];
+        removedVersions = new AtomicLongArray[chunkCount];
+        positions = new IntLongMap(size);
+        length = 0;
+        for (int position = 0; position < oldLength; position++) {
+            if (oldRemovedVersions[chunkOf(position)].get(offsetOf(position)) == 0) {
+                Reservation reservation = oldEntries[chunkOf(position)][offsetOf(position)];
+                positions.put(reservation.getReservationId(), append(reservation));
+            }
+        }
+    }
+
+    /**
+     * Publishes the current state of the log to readers
+     */
+    private void publish() {
+        current = new Snapshot(entries, removedVersions, length, size, version);
+    }
+
+    /**
+     * A published state of the log: every entry before the length whose removal, if any,
+     * happened after the version
+     */
+    public static final class Snapshot implements ReservationSnapshot {
+        private final Reservation[][] entries;
+        private final AtomicLongArray[] removedVersions;
+        private final int length;
+        private final int size;
+        private final long version;
+
+        /**
+         * Creates a snapshot of a log
+         *
+         * @param entries the chunk directory of the log
+         * @param removedVersions the versions that removed each entry, 0 while it is stored
+         * @param length the number of entries appended to the log
+         * @param size the number of live entries
+         * @param version the version of the last change included
+         */
+        private Snapshot(Reservation[][] entries, AtomicLongArray[] removedVersions, int length, int size, long version) {
+            this.entries = entries;
+            this.removedVersions = removedVersions;
+            this.length = length;
+            this.size = size;
+            this.version = version;
+        }
+
+        /**
+         * Retrieves the number of changes made to the store before the snapshot was taken
+         *
+         * Two snapshots with the same version list the same reservations
+         *
+         * @return the version of the snapshot
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Checks whether the entry at a log position is part of the snapshot
+         *
+         * @param position the log position
+         * @return true if the entry had not been removed at the version of the snapshot
+         */
+        private boolean includes(int position) {
+            long removedVersion = removedVersions[chunkOf(position)].get(offsetOf(position));
+            return removedVersion == 0 || removedVersion > version;
+        }
+
+        /**
+         * Iterates the reservations of the snapshot in booking order
+         *
+         * @return an iterator over the reservations
+         */
+        @Override
+        public Iterator<Reservation> iterator() {
+            return new Iterator<>() {
+                private int nextPosition = advance(0);
+
+                /**
+                 * Skips the entries removed before the snapshot was taken
+                 *
+                 * @param position the first position to consider
+                 * @return the next included position, or the log length if there is none
+                 */
+                private int advance(int position) {
+                    while (position < length && !includes(position)) {
+                        position++;
+                    }
+                    return position;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return nextPosition < length;
+                }
+
+                @Override
+                public Reservation next() {
+                    if (nextPosition >= length) {
+                        throw new NoSuchElementException();
+                    }
+                    Reservation reservation = entries[chunkOf(nextPosition)][offsetOf(nextPosition)];
+                    nextPosition = advance(nextPosition + 1);
+                    return reservation;
+                }
+            };
+        }
+    }
+}
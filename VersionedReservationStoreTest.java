@@ -0,0 +1,189 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks that snapshots of VersionedReservationStore do not change after they are taken
+ *
+ * Takes snapshots, then books, replaces and cancels reservations, cancelling enough of them for
+ * the log to be compacted, and checks that each snapshot still lists what the store held when it
+ * was taken; then reads snapshots while another thread stores and removes batches, checking that
+ * each snapshot holds all of a batch or none of it. Exits with status 1 on failure.
+ *
+ * Run with: java VersionedReservationStoreTest
+ */
+public class VersionedReservationStoreTest {
+    private static final int RESERVATIONS = 10000;
+    private static final int BATCH_SIZE = 10;
+    private static final int BATCHES = 2000;
+
+    private VersionedReservationStoreTest() {
+    }
+
+    /**
+     * Runs the checks
+     *
+     * @param args unused
+     * @throws InterruptedException if interrupted while waiting for the writer thread
+     */
+    public static void main(String[] args) throws InterruptedException {
+        try {
+            checkStableSnapshots();
+            checkBatches();
+            System.out.println("VersionedReservationStoreTest passed");
+        } catch (AssertionError e) {
+            System.out.println("VersionedReservationStoreTest failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Changes the store after taking snapshots and checks they still list what they did
+     */
+    private static void checkStableSnapshots() {
+        VersionedReservationStore store = new VersionedReservationStore();
+        Map<Integer, Reservation> model = new LinkedHashMap<>();
+        for (int id = 1; id <= RESERVATIONS; id++) {
+            put(store, model, reservation(id, 1));
+        }
+        VersionedReservationStore.Snapshot booked = store.snapshot();
+        List<Reservation> bookedList = new ArrayList<>(model.values());
+        compare(store, model, booked, "after booking");
+
+        put(store, model, reservation(1, 2));
+        check(store.toList().get(RESERVATIONS - 1) == model.get(1), "a replaced reservation moves to the end of the booking order");
+        VersionedReservationStore.Snapshot replaced = store.snapshot();
+        List<Reservation> replacedList = new ArrayList<>(model.values());
+        check(replaced.getVersion() > booked.getVersion(), "every change gets a new version");
+
+        for (int id = 2; id <= RESERVATIONS; id++) {
+            if (id % 10 != 0) {
+                check(store.remove(id) == model.remove(id), "cancelling " + id + " returns the reservation");
+            }
+        }
+        check(store.remove(2) == null, "cancelling a cancelled reservation finds nothing");
+        put(store, model, reservation(RESERVATIONS + 1, 1));
+        put(store, model, reservation(3, 3));
+        compare(store, model, store.snapshot(), "after cancelling most reservations");
+
+        check(booked.toList().equals(bookedList), "a snapshot keeps the reservations cancelled after it was taken");
+        check(booked.size() == RESERVATIONS, "a snapshot keeps its size");
+        check(replaced.toList().equals(replacedList), "a snapshot keeps the booking order of a replaced reservation");
+        check(booked.stream().count() == RESERVATIONS, "a snapshot streams its reservations");
+    }
+
+    /**
+     * Reads snapshots while another thread stores and removes batches
+     *
+     * @throws InterruptedException if interrupted while waiting for the writer thread
+     */
+    private static void checkBatches() throws InterruptedException {
+        VersionedReservationStore store = new VersionedReservationStore();
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        Thread writer = new Thread(() -> {
+            try {
+                List<List<Reservation>> stored = new ArrayList<>();
+                for (int b = 0; b < BATCHES; b++) {
+                    List<Reservation> batch = new ArrayList<>();
+                    for (int i = 0; i < BATCH_SIZE; i++) {
+                        batch.add(reservation(1 + b * BATCH_SIZE + i, 1));
+                    }
+                    store.putAll(batch);
+                    stored.add(batch);
+                    if (b % 3 == 2) {
+                        store.removeAll(stored.remove(b % stored.size()));
+                    }
+                }
+            } catch (Throwable e) {
+                failures.add(e);
+            }
+        });
+        writer.start();
+        int snapshots = 0;
+        while (writer.isAlive()) {
+            VersionedReservationStore.Snapshot snapshot = store.snapshot();
+            checkWholeBatches(snapshot);
+            snapshots++;
+        }
+        writer.join();
+        check(failures.isEmpty(), "the writer failed: " + failures);
+        checkWholeBatches(store.snapshot());
+        check(store.size() == (BATCHES - BATCHES / 3) * BATCH_SIZE, "the store holds the batches not removed, got " + store.size());
+        check(snapshots > 0, "snapshots were read while batches were stored");
+    }
+
+    /**
+     * Checks that a snapshot holds whole batches and lists as many reservations as its size
+     *
+     * @param snapshot the snapshot
+     */
+    private static void checkWholeBatches(VersionedReservationStore.Snapshot snapshot) {
+        int[] perBatch = new int[BATCHES];
+        int listed = 0;
+        for (Reservation reservation : snapshot) {
+            perBatch[(reservation.getReservationId() - 1) / BATCH_SIZE]++;
+            listed++;
+        }
+        check(listed == snapshot.size(), "snapshot " + snapshot.getVersion() + " lists " + snapshot.size() + " reservations, got " + listed);
+        for (int b = 0; b < BATCHES; b++) {
+            check(perBatch[b] == 0 || perBatch[b] == BATCH_SIZE,
+                    "snapshot " + snapshot.getVersion() + " holds " + perBatch[b] + " reservations of batch " + b);
+        }
+    }
+
+    /**
+     * Puts a reservation in the store and the model, moving a replaced ID to the end of the model
+     *
+     * @param store the store
+     * @param model the expected reservations, in booking order
+     * @param reservation the reservation
+     */
+    private static void put(VersionedReservationStore store, Map<Integer, Reservation> model, Reservation reservation) {
+        check(store.put(reservation) == model.remove(reservation.getReservationId()), "a put returns the replaced reservation");
+        model.put(reservation.getReservationId(), reservation);
+    }
+
+    /**
+     * Compares the store and a snapshot with the model
+     *
+     * @param store the store
+     * @param model the expected reservations, in booking order
+     * @param snapshot the snapshot taken last
+     * @param when when the comparison is made
+     */
+    private static void compare(VersionedReservationStore store, Map<Integer, Reservation> model,
+            VersionedReservationStore.Snapshot snapshot, String when) {
+        List<Reservation> expected = new ArrayList<>(model.values());
+        check(store.size() == model.size(), "size " + when + ", expected " + model.size() + ", got " + store.size());
+        check(store.toList().equals(expected), "toList " + when);
+        check(snapshot.toList().equals(expected), "snapshot " + when);
+        for (Map.Entry<Integer, Reservation> entry : model.entrySet()) {
+            check(store.get(entry.getKey()) == entry.getValue(), "lookup of " + entry.getKey() + " " + when);
+        }
+    }
+
+    /**
+     * Creates an undated room reservation
+     *
+     * @param reservationId the reservation ID
+     * @param nights the number of nights, to tell replacements apart
+     * @return the reservation
+     */
+    private static Reservation reservation(int reservationId, int nights) {
+        return new RoomReservation(reservationId, nights, 10000, List.of(), null, 0);
+    }
+
+    /**
+     * Fails the run if a condition does not hold
+     *
+     * @param condition the condition
+     * @param description what the condition checks
+     */
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            throw new AssertionError(description);
+        }
+    }
+}